@@ -0,0 +1,246 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+#include "class_cache.hpp"
+
+#include <string>
+#include <vector>
+
+#include "jni_helpers.hpp"
+
+
+namespace
+{
+    jcoral::ClassCache g_classes;
+    std::vector<jobject> g_globalRefs;
+
+    jobject MakeGlobal(JNIEnv* env, jobject localRef)
+    {
+        const auto globalRef = env->NewGlobalRef(localRef);
+        jcoral::CheckJNIReturn(globalRef);
+        env->DeleteLocalRef(localRef);
+        g_globalRefs.push_back(globalRef);
+        return globalRef;
+    }
+
+    jclass GlobalClass(JNIEnv* env, const char* name)
+    {
+        return static_cast<jclass>(MakeGlobal(env, jcoral::FindClass(env, name)));
+    }
+
+    jobject GlobalEnum(JNIEnv* env, const char* enumName, const char* fieldName)
+    {
+        return MakeGlobal(env, jcoral::GetEnumField(env, enumName, fieldName));
+    }
+
+    void ReleaseAll(JNIEnv* env)
+    {
+        for (const auto ref : g_globalRefs) env->DeleteGlobalRef(ref);
+        g_globalRefs.clear();
+        g_classes = jcoral::ClassCache{};
+    }
+
+    void LookUpAll(JNIEnv* env)
+    {
+        using jcoral::GetMethodID;
+        auto& c = g_classes;
+
+        c.objectClass = GlobalClass(env, "java/lang/Object");
+        c.objectToString = GetMethodID(env, c.objectClass, "toString", "()Ljava/lang/String;");
+
+        c.stringClass = GlobalClass(env, "java/lang/String");
+
+        c.iterableClass = GlobalClass(env, "java/lang/Iterable");
+        c.iterableIterator = GetMethodID(env, c.iterableClass, "iterator", "()Ljava/util/Iterator;");
+        c.iteratorClass = GlobalClass(env, "java/util/Iterator");
+        c.iteratorHasNext = GetMethodID(env, c.iteratorClass, "hasNext", "()Z");
+        c.iteratorNext = GetMethodID(env, c.iteratorClass, "next", "()Ljava/lang/Object;");
+
+        c.dataTypeReal    = GlobalEnum(env, "no/viproma/coral/model/DataType", "REAL");
+        c.dataTypeInteger = GlobalEnum(env, "no/viproma/coral/model/DataType", "INTEGER");
+        c.dataTypeBoolean = GlobalEnum(env, "no/viproma/coral/model/DataType", "BOOLEAN");
+        c.dataTypeString  = GlobalEnum(env, "no/viproma/coral/model/DataType", "STRING");
+
+        c.causalityParameter           = GlobalEnum(env, "no/viproma/coral/model/Causality", "PARAMETER");
+        c.causalityCalculatedParameter = GlobalEnum(env, "no/viproma/coral/model/Causality", "CALCULATED_PARAMETER");
+        c.causalityInput               = GlobalEnum(env, "no/viproma/coral/model/Causality", "INPUT");
+        c.causalityOutput              = GlobalEnum(env, "no/viproma/coral/model/Causality", "OUTPUT");
+        c.causalityLocal               = GlobalEnum(env, "no/viproma/coral/model/Causality", "LOCAL");
+
+        c.variabilityConstant   = GlobalEnum(env, "no/viproma/coral/model/Variability", "CONSTANT");
+        c.variabilityFixed      = GlobalEnum(env, "no/viproma/coral/model/Variability", "FIXED");
+        c.variabilityTunable    = GlobalEnum(env, "no/viproma/coral/model/Variability", "TUNABLE");
+        c.variabilityDiscrete   = GlobalEnum(env, "no/viproma/coral/model/Variability", "DISCRETE");
+        c.variabilityContinuous = GlobalEnum(env, "no/viproma/coral/model/Variability", "CONTINUOUS");
+
+        c.fmiVersionV1_0 = GlobalEnum(env, "no/viproma/coral/fmi/FMIVersion", "V1_0");
+        c.fmiVersionV2_0 = GlobalEnum(env, "no/viproma/coral/fmi/FMIVersion", "V2_0");
+
+        c.slaveIDClass = GlobalClass(env, "no/viproma/coral/model/SlaveID");
+        c.slaveIDInit = GetMethodID(env, c.slaveIDClass, "<init>", "(I)V");
+        c.slaveIDGetID = GetMethodID(env, c.slaveIDClass, "getID", "()I");
+
+        c.scalarValueClass = GlobalClass(env, "no/viproma/coral/model/ScalarValue");
+        c.scalarValueGetDataType = GetMethodID(
+            env, c.scalarValueClass, "getDataType", "()Lno/viproma/coral/model/DataType;");
+        c.scalarValueGetRealValue = GetMethodID(env, c.scalarValueClass, "getRealValue", "()D");
+        c.scalarValueGetIntegerValue = GetMethodID(env, c.scalarValueClass, "getIntegerValue", "()I");
+        c.scalarValueGetBooleanValue = GetMethodID(env, c.scalarValueClass, "getBooleanValue", "()Z");
+        c.scalarValueGetStringValue = GetMethodID(
+            env, c.scalarValueClass, "getStringValue", "()Ljava/lang/String;");
+
+        c.variableDescriptionClass = GlobalClass(env, "no/viproma/coral/model/VariableDescription");
+        c.variableDescriptionInit = GetMethodID(env, c.variableDescriptionClass, "<init>", "()V");
+        c.variableDescriptionSetID = GetMethodID(env, c.variableDescriptionClass, "setID", "(I)V");
+        c.variableDescriptionSetName = GetMethodID(
+            env, c.variableDescriptionClass, "setName", "(Ljava/lang/String;)V");
+        c.variableDescriptionSetDataType = GetMethodID(
+            env, c.variableDescriptionClass, "setDataType", "(Lno/viproma/coral/model/DataType;)V");
+        c.variableDescriptionSetCausality = GetMethodID(
+            env, c.variableDescriptionClass, "setCausality", "(Lno/viproma/coral/model/Causality;)V");
+        c.variableDescriptionSetVariability = GetMethodID(
+            env, c.variableDescriptionClass, "setVariability", "(Lno/viproma/coral/model/Variability;)V");
+        c.variableDescriptionGetID = GetMethodID(env, c.variableDescriptionClass, "getID", "()I");
+        c.variableDescriptionGetName = GetMethodID(
+            env, c.variableDescriptionClass, "getName", "()Ljava/lang/String;");
+        c.variableDescriptionGetDataType = GetMethodID(
+            env, c.variableDescriptionClass, "getDataType", "()Lno/viproma/coral/model/DataType;");
+        c.variableDescriptionGetCausality = GetMethodID(
+            env, c.variableDescriptionClass, "getCausality", "()Lno/viproma/coral/model/Causality;");
+        c.variableDescriptionGetVariability = GetMethodID(
+            env, c.variableDescriptionClass, "getVariability", "()Lno/viproma/coral/model/Variability;");
+
+        c.slaveTypeDescriptionClass = GlobalClass(env, "no/viproma/coral/model/SlaveTypeDescription");
+        c.slaveTypeDescriptionInit = GetMethodID(env, c.slaveTypeDescriptionClass, "<init>",
+            "("
+                "Ljava/lang/String;"
+                "Ljava/lang/String;"
+                "Ljava/lang/String;"
+                "Ljava/lang/String;"
+                "Ljava/lang/String;"
+                "[Lno/viproma/coral/model/VariableDescription;"
+            ")V");
+        c.slaveTypeDescriptionGetName = GetMethodID(
+            env, c.slaveTypeDescriptionClass, "getName", "()Ljava/lang/String;");
+        c.slaveTypeDescriptionGetUUID = GetMethodID(
+            env, c.slaveTypeDescriptionClass, "getUUID", "()Ljava/lang/String;");
+        c.slaveTypeDescriptionGetDescription = GetMethodID(
+            env, c.slaveTypeDescriptionClass, "getDescription", "()Ljava/lang/String;");
+        c.slaveTypeDescriptionGetAuthor = GetMethodID(
+            env, c.slaveTypeDescriptionClass, "getAuthor", "()Ljava/lang/String;");
+        c.slaveTypeDescriptionGetVersion = GetMethodID(
+            env, c.slaveTypeDescriptionClass, "getVersion", "()Ljava/lang/String;");
+        c.slaveTypeDescriptionGetVariables = GetMethodID(
+            env, c.slaveTypeDescriptionClass, "getVariables", "()Ljava/lang/Iterable;");
+
+        c.variableClass = GlobalClass(env, "no/viproma/coral/model/Variable");
+        c.variableGetSlaveID = GetMethodID(
+            env, c.variableClass, "getSlaveID", "()Lno/viproma/coral/model/SlaveID;");
+        c.variableGetVariableID = GetMethodID(env, c.variableClass, "getVariableID", "()I");
+
+        c.variableSettingClass = GlobalClass(env, "no/viproma/coral/model/VariableSetting");
+        c.variableSettingGetVariableID = GetMethodID(
+            env, c.variableSettingClass, "getVariableID", "()I");
+        c.variableSettingHasValue = GetMethodID(env, c.variableSettingClass, "hasValue", "()Z");
+        c.variableSettingGetValue = GetMethodID(
+            env, c.variableSettingClass, "getValue", "()Lno/viproma/coral/model/ScalarValue;");
+        c.variableSettingIsConnectionChange = GetMethodID(
+            env, c.variableSettingClass, "isConnectionChange", "()Z");
+        c.variableSettingGetConnectedOutput = GetMethodID(
+            env, c.variableSettingClass, "getConnectedOutput", "()Lno/viproma/coral/model/Variable;");
+
+        c.slaveLocatorClass = GlobalClass(env, "no/viproma/coral/net/SlaveLocator");
+        c.slaveLocatorInit = GetMethodID(
+            env, c.slaveLocatorClass, "<init>", "(Ljava/lang/String;Ljava/lang/String;)V");
+        c.slaveLocatorGetControlEndpoint = GetMethodID(
+            env, c.slaveLocatorClass, "getControlEndpoint", "()Ljava/lang/String;");
+        c.slaveLocatorGetDataPubEndpoint = GetMethodID(
+            env, c.slaveLocatorClass, "getDataPubEndpoint", "()Ljava/lang/String;");
+
+        c.addedSlaveClass = GlobalClass(env, "no/viproma/coral/master/AddedSlave");
+        c.addedSlaveGetLocator = GetMethodID(
+            env, c.addedSlaveClass, "getLocator", "()Lno/viproma/coral/net/SlaveLocator;");
+        c.addedSlaveGetName = GetMethodID(env, c.addedSlaveClass, "getName", "()Ljava/lang/String;");
+        c.addedSlaveSetID = GetMethodID(
+            env, c.addedSlaveClass, "setID", "(Lno/viproma/coral/model/SlaveID;)V");
+        c.addedSlaveSetError = GetMethodID(
+            env, c.addedSlaveClass, "setError", "(Ljava/lang/String;)V");
+
+        c.slaveConfigClass = GlobalClass(env, "no/viproma/coral/master/SlaveConfig");
+        c.slaveConfigGetSlaveID = GetMethodID(
+            env, c.slaveConfigClass, "getSlaveID", "()Lno/viproma/coral/model/SlaveID;");
+        c.slaveConfigGetVariableSettings = GetMethodID(
+            env, c.slaveConfigClass, "getVariableSettings", "()Ljava/lang/Iterable;");
+        c.slaveConfigSetError = GetMethodID(
+            env, c.slaveConfigClass, "setError", "(Ljava/lang/String;)V");
+
+        c.slaveTypeClass = GlobalClass(env, "no/viproma/coral/master/ProviderCluster$SlaveType");
+        c.slaveTypeInit = GetMethodID(env, c.slaveTypeClass, "<init>",
+            "("
+                "Lno/viproma/coral/model/SlaveTypeDescription;"
+                "[Ljava/lang/String;"
+            ")V");
+
+        c.abstractInstanceClass = GlobalClass(env, "no/viproma/coral/slave/AbstractInstance");
+        c.abstractInstanceSetup = GetMethodID(env, c.abstractInstanceClass, "setup",
+            "(Ljava/lang/String;Ljava/lang/String;DD)V");
+        c.abstractInstanceStartSimulation = GetMethodID(
+            env, c.abstractInstanceClass, "startSimulation", "()V");
+        c.abstractInstanceEndSimulation = GetMethodID(
+            env, c.abstractInstanceClass, "endSimulation", "()V");
+        c.abstractInstanceDoStep = GetMethodID(env, c.abstractInstanceClass, "doStep", "(DD)Z");
+        c.abstractInstanceGetRealVariable = GetMethodID(
+            env, c.abstractInstanceClass, "getRealVariable", "(I)D");
+        c.abstractInstanceGetIntegerVariable = GetMethodID(
+            env, c.abstractInstanceClass, "getIntegerVariable", "(I)I");
+        c.abstractInstanceGetBooleanVariable = GetMethodID(
+            env, c.abstractInstanceClass, "getBooleanVariable", "(I)Z");
+        c.abstractInstanceGetStringVariable = GetMethodID(
+            env, c.abstractInstanceClass, "getStringVariable", "(I)Ljava/lang/String;");
+        c.abstractInstanceSetRealVariable = GetMethodID(
+            env, c.abstractInstanceClass, "setRealVariable", "(ID)Z");
+        c.abstractInstanceSetIntegerVariable = GetMethodID(
+            env, c.abstractInstanceClass, "setIntegerVariable", "(II)Z");
+        c.abstractInstanceSetBooleanVariable = GetMethodID(
+            env, c.abstractInstanceClass, "setBooleanVariable", "(IZ)Z");
+        c.abstractInstanceSetStringVariable = GetMethodID(
+            env, c.abstractInstanceClass, "setStringVariable", "(ILjava/lang/String;)Z");
+    }
+}
+
+
+const jcoral::ClassCache& jcoral::Classes()
+{
+    return g_classes;
+}
+
+
+// The library is loaded by the static initialiser of each class that has
+// native methods, but the JVM only calls JNI_OnLoad() the first time.
+JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM* vm, void*)
+{
+    JNIEnv* env = nullptr;
+    if (vm->GetEnv(reinterpret_cast<void**>(&env), JNI_VERSION_1_6) != JNI_OK) {
+        return JNI_ERR;
+    }
+    try {
+        LookUpAll(env);
+    } catch (...) {
+        // A Java exception (e.g. NoClassDefFoundError) is pending, and will
+        // be reported along with the UnsatisfiedLinkError.
+        ReleaseAll(env);
+        return JNI_ERR;
+    }
+    return JNI_VERSION_1_6;
+}
+
+
+JNIEXPORT void JNICALL JNI_OnUnload(JavaVM* vm, void*)
+{
+    JNIEnv* env = nullptr;
+    if (vm->GetEnv(reinterpret_cast<void**>(&env), JNI_VERSION_1_6) == JNI_OK) {
+        ReleaseAll(env);
+    }
+}
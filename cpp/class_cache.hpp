@@ -0,0 +1,161 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+/*
+ * A registry of Java class references, method IDs and enum constants which
+ * are looked up once, when the library is loaded, and shared by all native
+ * functions and type converters.
+ */
+#ifndef JCORAL_CLASS_CACHE_HPP
+#define JCORAL_CLASS_CACHE_HPP
+
+#include <jni.h>
+
+
+namespace jcoral
+{
+
+
+// All class and object references in this structure are global references,
+// and therefore valid in any thread for as long as the library is loaded.
+struct ClassCache
+{
+    // java.lang.Object
+    jclass objectClass;
+    jmethodID objectToString;
+
+    // java.lang.String
+    jclass stringClass;
+
+    // java.lang.Iterable and java.util.Iterator
+    jclass iterableClass;
+    jmethodID iterableIterator;
+    jclass iteratorClass;
+    jmethodID iteratorHasNext;
+    jmethodID iteratorNext;
+
+    // no.viproma.coral.model.DataType
+    jobject dataTypeReal;
+    jobject dataTypeInteger;
+    jobject dataTypeBoolean;
+    jobject dataTypeString;
+
+    // no.viproma.coral.model.Causality
+    jobject causalityParameter;
+    jobject causalityCalculatedParameter;
+    jobject causalityInput;
+    jobject causalityOutput;
+    jobject causalityLocal;
+
+    // no.viproma.coral.model.Variability
+    jobject variabilityConstant;
+    jobject variabilityFixed;
+    jobject variabilityTunable;
+    jobject variabilityDiscrete;
+    jobject variabilityContinuous;
+
+    // no.viproma.coral.fmi.FMIVersion
+    jobject fmiVersionV1_0;
+    jobject fmiVersionV2_0;
+
+    // no.viproma.coral.model.SlaveID
+    jclass slaveIDClass;
+    jmethodID slaveIDInit;
+    jmethodID slaveIDGetID;
+
+    // no.viproma.coral.model.ScalarValue
+    jclass scalarValueClass;
+    jmethodID scalarValueGetDataType;
+    jmethodID scalarValueGetRealValue;
+    jmethodID scalarValueGetIntegerValue;
+    jmethodID scalarValueGetBooleanValue;
+    jmethodID scalarValueGetStringValue;
+
+    // no.viproma.coral.model.VariableDescription
+    jclass variableDescriptionClass;
+    jmethodID variableDescriptionInit;
+    jmethodID variableDescriptionSetID;
+    jmethodID variableDescriptionSetName;
+    jmethodID variableDescriptionSetDataType;
+    jmethodID variableDescriptionSetCausality;
+    jmethodID variableDescriptionSetVariability;
+    jmethodID variableDescriptionGetID;
+    jmethodID variableDescriptionGetName;
+    jmethodID variableDescriptionGetDataType;
+    jmethodID variableDescriptionGetCausality;
+    jmethodID variableDescriptionGetVariability;
+
+    // no.viproma.coral.model.SlaveTypeDescription
+    jclass slaveTypeDescriptionClass;
+    jmethodID slaveTypeDescriptionInit;
+    jmethodID slaveTypeDescriptionGetName;
+    jmethodID slaveTypeDescriptionGetUUID;
+    jmethodID slaveTypeDescriptionGetDescription;
+    jmethodID slaveTypeDescriptionGetAuthor;
+    jmethodID slaveTypeDescriptionGetVersion;
+    jmethodID slaveTypeDescriptionGetVariables;
+
+    // no.viproma.coral.model.Variable
+    jclass variableClass;
+    jmethodID variableGetSlaveID;
+    jmethodID variableGetVariableID;
+
+    // no.viproma.coral.model.VariableSetting
+    jclass variableSettingClass;
+    jmethodID variableSettingGetVariableID;
+    jmethodID variableSettingHasValue;
+    jmethodID variableSettingGetValue;
+    jmethodID variableSettingIsConnectionChange;
+    jmethodID variableSettingGetConnectedOutput;
+
+    // no.viproma.coral.net.SlaveLocator
+    jclass slaveLocatorClass;
+    jmethodID slaveLocatorInit;
+    jmethodID slaveLocatorGetControlEndpoint;
+    jmethodID slaveLocatorGetDataPubEndpoint;
+
+    // no.viproma.coral.master.AddedSlave
+    jclass addedSlaveClass;
+    jmethodID addedSlaveGetLocator;
+    jmethodID addedSlaveGetName;
+    jmethodID addedSlaveSetID;
+    jmethodID addedSlaveSetError;
+
+    // no.viproma.coral.master.SlaveConfig
+    jclass slaveConfigClass;
+    jmethodID slaveConfigGetSlaveID;
+    jmethodID slaveConfigGetVariableSettings;
+    jmethodID slaveConfigSetError;
+
+    // no.viproma.coral.master.ProviderCluster.SlaveType
+    jclass slaveTypeClass;
+    jmethodID slaveTypeInit;
+
+    // no.viproma.coral.slave.AbstractInstance
+    jclass abstractInstanceClass;
+    jmethodID abstractInstanceSetup;
+    jmethodID abstractInstanceStartSimulation;
+    jmethodID abstractInstanceEndSimulation;
+    jmethodID abstractInstanceDoStep;
+    jmethodID abstractInstanceGetRealVariable;
+    jmethodID abstractInstanceGetIntegerVariable;
+    jmethodID abstractInstanceGetBooleanVariable;
+    jmethodID abstractInstanceGetStringVariable;
+    jmethodID abstractInstanceSetRealVariable;
+    jmethodID abstractInstanceSetIntegerVariable;
+    jmethodID abstractInstanceSetBooleanVariable;
+    jmethodID abstractInstanceSetStringVariable;
+};
+
+
+// Returns the registry.  This may only be called after JNI_OnLoad() has
+// completed successfully, which is guaranteed for code that runs as part
+// of a native method of one of our classes.
+const ClassCache& Classes();
+
+
+} // namespace
+#endif // header guard
@@ -24,9 +24,9 @@ JNIEXPORT jobject JNICALL Java_no_viproma_coral_fmi_FMU_getFMIVersionNative(
         const auto fmu = jcoral::UnwrapCppObject<jcoral::FMU>(selfPtr);
         const auto ver = fmu->FMIVersion();
         if (ver == coral::fmi::FMIVersion::v1_0) {
-            return jcoral::GetEnumField(env, "no/viproma/coral/fmi/FMIVersion", "V1_0");
+            return jcoral::Classes().fmiVersionV1_0;
         } else if (ver == coral::fmi::FMIVersion::v2_0) {
-            return jcoral::GetEnumField(env, "no/viproma/coral/fmi/FMIVersion", "V2_0");
+            return jcoral::Classes().fmiVersionV2_0;
         } else {
             // This should never happen.
             throw std::logic_error("Unknown FMI version");
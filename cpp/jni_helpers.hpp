@@ -22,6 +22,8 @@
 #include <jni.h>
 #include <boost/numeric/conversion/cast.hpp>
 
+#include "class_cache.hpp"
+
 
 // Compiler-agnostic noreturn attribute
 #if __cplusplus >= 201103L
@@ -329,7 +331,7 @@ inline std::string CallStringMethod(
     const auto ret = env->CallObjectMethodV(obj, methodID, args);
     va_end(args);
     CheckNotThrown(env);
-    assert(env->IsInstanceOf(ret, jcoral::FindClass(env, "java/lang/String")));
+    assert(env->IsInstanceOf(ret, jcoral::Classes().stringClass));
     return ToString(env, static_cast<jstring>(ret));
 }
 
@@ -396,6 +398,91 @@ inline void SetField(
     SetField(env, object, fieldName, "Ljava/lang/String;", ToJString(env, cValue));
 }
 
+// =========================================================================
+// THREADS
+// =========================================================================
+
+// Returns the JNI environment of the current thread.
+//
+// This is for code that may run in threads that were started by native
+// code, e.g. by Coral or by our own worker pools.  If the current thread is
+// not attached to the JVM, it is attached as a daemon thread, and it is
+// detached again when it exits.  Note that local references are never
+// freed automatically in such threads, so code that uses this must free
+// them explicitly.
+inline JNIEnv* CurrentThreadEnv(JavaVM* vm)
+{
+    JNIEnv* env = nullptr;
+    const auto rc = vm->GetEnv(reinterpret_cast<void**>(&env), JNI_VERSION_1_6);
+    if (rc == JNI_OK) return env;
+    if (rc != JNI_EDETACHED) {
+        throw std::runtime_error("Failed to obtain JNI environment");
+    }
+
+    struct Attachment
+    {
+        ~Attachment() { if (vm) vm->DetachCurrentThread(); }
+        JavaVM* vm = nullptr;
+    };
+    thread_local Attachment attachment;
+    if (vm->AttachCurrentThreadAsDaemon(reinterpret_cast<void**>(&env), nullptr) != JNI_OK) {
+        throw std::runtime_error("Failed to attach thread to the JVM");
+    }
+    attachment.vm = vm;
+    return env;
+}
+
+
+// =========================================================================
+// LOCAL REFERENCE MANAGEMENT
+// =========================================================================
+
+// A RAII wrapper around PushLocalFrame()/PopLocalFrame(), which ensures that
+// local references created while an object of this class is alive are freed
+// when it is destroyed.
+//
+// Long-running loops should call Reset() periodically, so that the number of
+// live local references stays bounded regardless of how many iterations
+// there are.
+class LocalFrame
+{
+public:
+    LocalFrame(JNIEnv* env, jint capacity)
+        : env_{env}, capacity_{capacity}
+    {
+        CheckJNIReturn(env_->PushLocalFrame(capacity_) == 0);
+        pushed_ = true;
+    }
+
+    ~LocalFrame() noexcept
+    {
+        if (pushed_) env_->PopLocalFrame(nullptr);
+    }
+
+    // Frees all local references created since the frame was created or
+    // last reset.
+    void Reset()
+    {
+        env_->PopLocalFrame(nullptr);
+        pushed_ = false;
+        CheckJNIReturn(env_->PushLocalFrame(capacity_) == 0);
+        pushed_ = true;
+    }
+
+    LocalFrame(const LocalFrame&) = delete;
+    LocalFrame& operator=(const LocalFrame&) = delete;
+
+private:
+    JNIEnv* env_;
+    jint capacity_;
+    bool pushed_ = false;
+};
+
+// The number of elements which the collection helpers below process between
+// each time they free local references.
+const int LOCAL_FRAME_CHUNK_SIZE = 64;
+
+
 // Creates a Java array containing the same elements as the random-access
 // range defined by the `begin` and `end` iterators.  Each element is converted
 // using `conv`.  `elementClass` will be the element type of the array, and
@@ -414,38 +501,41 @@ jobjectArray ToJArray(
     const auto array = env->NewObjectArray(
         boost::numeric_cast<jsize>(end-begin), elementClass, nullptr);
     CheckJNIReturn(array);
-    for (size_t i = 0; begin != end; ++i, ++begin) {
-        env->SetObjectArrayElement(
-            array, boost::numeric_cast<jsize>(i), conv(*begin));
+    {
+        LocalFrame frame{env, 4 * LOCAL_FRAME_CHUNK_SIZE};
+        for (size_t i = 0; begin != end; ++i, ++begin) {
+            if (i > 0 && i % LOCAL_FRAME_CHUNK_SIZE == 0) frame.Reset();
+            env->SetObjectArrayElement(
+                array, boost::numeric_cast<jsize>(i), conv(*begin));
+            CheckNotThrown(env);
+        }
     }
     return array;
 }
 
 
 // Calls `fun` for each element in the Iterable object `iterable`.
+//
+// The element references, and any other local references created by `fun`,
+// are freed periodically, so `fun` must not retain them.
 inline void ForEach(
     JNIEnv* env, jobject iterable, std::function<void(jobject)> fun)
 {
-    const auto iterableClass = jcoral::FindClass(env, "java/lang/Iterable");
-    const auto iteratorClass = jcoral::FindClass(env, "java/util/Iterator");
-    assert(env->IsInstanceOf(iterable, iterableClass));
-    const auto getIteratorMID = jcoral::GetMethodID(
-        env,
-        iterableClass,
-        "iterator",
-        "()Ljava/util/Iterator;");
-    const auto hasNextMID =
-        jcoral::GetMethodID(env, iteratorClass, "hasNext", "()Z");
-    const auto nextMID =
-        jcoral::GetMethodID(env, iteratorClass, "next", "()Ljava/lang/Object;");
+    const auto& classes = jcoral::Classes();
+    assert(env->IsInstanceOf(iterable, classes.iterableClass));
 
     const auto iterator =
-        jcoral::CallObjectMethod(env, iterable, getIteratorMID);
-    assert(env->IsInstanceOf(iterator, iteratorClass));
-
-    while (jcoral::CallBooleanMethod(env, iterator, hasNextMID)) {
-        fun(jcoral::CallObjectMethod(env, iterator, nextMID));
+        jcoral::CallObjectMethod(env, iterable, classes.iterableIterator);
+    assert(env->IsInstanceOf(iterator, classes.iteratorClass));
+
+    LocalFrame frame{env, 4 * LOCAL_FRAME_CHUNK_SIZE};
+    for (int i = 1;
+            jcoral::CallBooleanMethod(env, iterator, classes.iteratorHasNext);
+            ++i) {
+        fun(jcoral::CallObjectMethod(env, iterator, classes.iteratorNext));
+        if (i % LOCAL_FRAME_CHUNK_SIZE == 0) frame.Reset();
     }
+    env->DeleteLocalRef(iterator);
 }
 
 
@@ -3,9 +3,19 @@
  * License, v. 2.0. If a copy of the MPL was not distributed with this
  * file, You can obtain one at http://mozilla.org/MPL/2.0/.
  */
+#include <algorithm>
+#include <atomic>
+#include <cstdint>
+#include <cstring>
+#include <map>
+#include <memory>
+#include <sstream>
+#include <vector>
+
 #include <boost/numeric/conversion/cast.hpp>
 #include <boost/variant.hpp>
 
+#include <coral/bus/variable_io.hpp>
 #include <coral/master/execution.hpp>
 
 #include "jni_helpers.hpp"
@@ -33,6 +43,288 @@ namespace
 }
 
 
+// The native object referred to by Execution.nativePtr_.
+namespace
+{
+    // What we need to remember about each slave in the execution.
+    struct SlaveInfo
+    {
+        coral::net::Endpoint dataPubEndpoint;
+        std::map<coral::model::VariableID, coral::model::DataType> dataTypes;
+    };
+
+    using SlaveInfoMap = std::map<coral::model::SlaveID, SlaveInfo>;
+
+    // Receives the values of a fixed set of variables as they are published
+    // by the slaves, and copies them into Java arrays on request.
+    class Observer
+    {
+    public:
+        Observer(
+            const SlaveInfoMap& slaves,
+            std::vector<coral::model::Variable> realVariables,
+            std::vector<coral::model::Variable> integerVariables,
+            std::vector<coral::model::Variable> booleanVariables)
+            : realVariables_(std::move(realVariables))
+            , integerVariables_(std::move(integerVariables))
+            , booleanVariables_(std::move(booleanVariables))
+            , realValues_(realVariables_.size())
+            , integerValues_(integerVariables_.size())
+            , booleanValues_(booleanVariables_.size())
+        {
+            CheckDataTypes(slaves, realVariables_, coral::model::REAL_DATATYPE);
+            CheckDataTypes(slaves, integerVariables_, coral::model::INTEGER_DATATYPE);
+            CheckDataTypes(slaves, booleanVariables_, coral::model::BOOLEAN_DATATYPE);
+
+            // Connect to the slaves that own the variables, each only once.
+            std::vector<coral::model::SlaveID> slaveIDs;
+            for (const auto vars : {&realVariables_, &integerVariables_, &booleanVariables_}) {
+                for (const auto& v : *vars) slaveIDs.push_back(v.Slave());
+            }
+            std::sort(slaveIDs.begin(), slaveIDs.end());
+            slaveIDs.erase(std::unique(slaveIDs.begin(), slaveIDs.end()), slaveIDs.end());
+            std::vector<coral::net::Endpoint> endpoints;
+            for (const auto id : slaveIDs) {
+                endpoints.push_back(slaves.at(id).dataPubEndpoint);
+            }
+            subscriber_.Connect(endpoints.data(), endpoints.size());
+
+            for (const auto vars : {&realVariables_, &integerVariables_, &booleanVariables_}) {
+                for (const auto& v : *vars) subscriber_.Subscribe(v);
+            }
+        }
+
+        // Waits for the values published at step `stepID` and copies them
+        // into the given arrays.  The arrays are assumed to be large enough.
+        void Read(
+            JNIEnv* env,
+            coral::model::StepID stepID,
+            std::chrono::milliseconds timeout,
+            jdoubleArray realValues,
+            jintArray integerValues,
+            jbooleanArray booleanValues)
+        {
+            Fetch(stepID, timeout);
+
+            // Set<Prim>ArrayRegion() copies straight into the Java arrays,
+            // so no Java objects are allocated here.
+            if (!realValues_.empty()) {
+                env->SetDoubleArrayRegion(
+                    realValues, 0, boost::numeric_cast<jsize>(realValues_.size()),
+                    realValues_.data());
+                jcoral::CheckNotThrown(env);
+            }
+            if (!integerValues_.empty()) {
+                env->SetIntArrayRegion(
+                    integerValues, 0, boost::numeric_cast<jsize>(integerValues_.size()),
+                    integerValues_.data());
+                jcoral::CheckNotThrown(env);
+            }
+            if (!booleanValues_.empty()) {
+                env->SetBooleanArrayRegion(
+                    booleanValues, 0, boost::numeric_cast<jsize>(booleanValues_.size()),
+                    booleanValues_.data());
+                jcoral::CheckNotThrown(env);
+            }
+        }
+
+        // The size of one record in a buffer set with SetBuffer().  This
+        // must match Execution.Observer.getRecordSize() on the Java side.
+        std::size_t RecordSize() const
+        {
+            const auto size = RECORD_HEADER_SIZE
+                + sizeof(jdouble) * realValues_.size()
+                + sizeof(jint) * integerValues_.size()
+                + sizeof(jboolean) * booleanValues_.size();
+            return (size + 7) / 8 * 8;
+        }
+
+        // Sets the memory area (i.e., the contents of a direct ByteBuffer)
+        // into which Record() writes, or clears it if `data` is null.
+        void SetBuffer(void* data, std::size_t size)
+        {
+            if (data == nullptr) {
+                buffer_ = nullptr;
+                bufferSlots_ = 0;
+                return;
+            }
+            if (size < BUFFER_HEADER_SIZE + RecordSize()) {
+                throw jcoral::JavaException(
+                    "java/lang/IllegalArgumentException",
+                    "Buffer too small to hold a single record");
+            }
+            buffer_ = static_cast<char*>(data);
+            bufferSlots_ = (size - BUFFER_HEADER_SIZE) / RecordSize();
+            recordCount_ = 0;
+            std::memcpy(buffer_, &recordCount_, sizeof recordCount_);
+        }
+
+        bool HasBuffer() const { return buffer_ != nullptr; }
+
+        // Waits for the values published at step `stepID` and writes them
+        // to the next record slot in the buffer, followed by an update of
+        // the record count in the buffer header.
+        void Record(
+            coral::model::StepID stepID,
+            coral::model::TimePoint time,
+            std::chrono::milliseconds timeout)
+        {
+            assert(HasBuffer());
+            Fetch(stepID, timeout);
+
+            auto p = buffer_ + BUFFER_HEADER_SIZE
+                + (recordCount_ % bufferSlots_) * RecordSize();
+            const std::int64_t stepID64 = stepID;
+            const double time64 = time;
+            p = Put(p, &stepID64, 1);
+            p = Put(p, &time64, 1);
+            p = Put(p, realValues_.data(), realValues_.size());
+            p = Put(p, integerValues_.data(), integerValues_.size());
+            Put(p, booleanValues_.data(), booleanValues_.size());
+
+            // Make sure the record is visible before the new count is.
+            ++recordCount_;
+            std::atomic_thread_fence(std::memory_order_release);
+            std::memcpy(buffer_, &recordCount_, sizeof recordCount_);
+        }
+
+        // Layout constants.  These must match the Java side.
+        static const std::size_t BUFFER_HEADER_SIZE = 8; // record count
+        static const std::size_t RECORD_HEADER_SIZE = 16; // step ID and time
+
+    private:
+        // Waits for the values published at step `stepID` and copies them
+        // into our own buffers.
+        void Fetch(coral::model::StepID stepID, std::chrono::milliseconds timeout)
+        {
+            if (!subscriber_.Update(stepID, timeout)) {
+                throw std::runtime_error(
+                    "Timeout while waiting for observed variable values");
+            }
+            for (std::size_t i = 0; i < realVariables_.size(); ++i) {
+                realValues_[i] =
+                    boost::get<double>(subscriber_.Value(realVariables_[i]));
+            }
+            for (std::size_t i = 0; i < integerVariables_.size(); ++i) {
+                integerValues_[i] =
+                    boost::get<int>(subscriber_.Value(integerVariables_[i]));
+            }
+            for (std::size_t i = 0; i < booleanVariables_.size(); ++i) {
+                booleanValues_[i] =
+                    boost::get<bool>(subscriber_.Value(booleanVariables_[i]));
+            }
+        }
+
+        template<typename T>
+        static char* Put(char* p, const T* values, std::size_t count)
+        {
+            std::memcpy(p, values, sizeof(T) * count);
+            return p + sizeof(T) * count;
+        }
+
+        static void CheckDataTypes(
+            const SlaveInfoMap& slaves,
+            const std::vector<coral::model::Variable>& variables,
+            coral::model::DataType expectedType)
+        {
+            for (const auto& v : variables) {
+                const auto slave = slaves.find(v.Slave());
+                if (slave == slaves.end()) {
+                    throw jcoral::JavaException(
+                        "java/lang/IllegalArgumentException",
+                        "Unknown slave ID: " + std::to_string(v.Slave()));
+                }
+                const auto dataType = slave->second.dataTypes.find(v.ID());
+                if (dataType == slave->second.dataTypes.end()) {
+                    throw jcoral::JavaException(
+                        "java/lang/IllegalArgumentException",
+                        "Unknown variable ID: " + std::to_string(v.ID()));
+                }
+                if (dataType->second != expectedType) {
+                    throw jcoral::JavaException(
+                        "java/lang/IllegalArgumentException",
+                        "Variable " + std::to_string(v.ID())
+                            + " of slave " + std::to_string(v.Slave())
+                            + " has the wrong data type");
+                }
+            }
+        }
+
+        coral::bus::VariableSubscriber subscriber_;
+        std::vector<coral::model::Variable> realVariables_;
+        std::vector<coral::model::Variable> integerVariables_;
+        std::vector<coral::model::Variable> booleanVariables_;
+        std::vector<jdouble> realValues_;
+        std::vector<jint> integerValues_;
+        std::vector<jboolean> booleanValues_;
+
+        char* buffer_ = nullptr;
+        std::size_t bufferSlots_ = 0;
+        std::int64_t recordCount_ = 0;
+    };
+
+    struct ExecutionState
+    {
+        ExecutionState(
+            const std::string& name,
+            const coral::master::ExecutionOptions& options)
+            : execution{name, options}
+            , currentTime{options.startTime}
+        {
+        }
+
+        coral::master::Execution execution;
+
+        // The slaves that have been successfully added to the execution.
+        SlaveInfoMap slaves;
+
+        // The ID of the step currently in progress and of the last step
+        // that was accepted.  Coral numbers steps consecutively from zero,
+        // and slaves tag the variable values they publish with the step ID.
+        coral::model::StepID currentStepID = -1;
+        coral::model::StepID acceptedStepID = -1;
+
+        // The current simulation time, and the length of the step in progress.
+        coral::model::TimePoint currentTime;
+        coral::model::TimeDuration currentStepSize = 0.0;
+
+        // Observers created with Execution.createObserver().
+        std::vector<std::unique_ptr<Observer>> observers;
+    };
+
+    ExecutionState& UnwrapExecutionState(jlong selfPtr)
+    {
+        return jcoral::UnwrapCppObject<ExecutionState>(selfPtr);
+    }
+
+    // Performs a time step, keeping track of the step ID.
+    bool Step(
+        ExecutionState& state,
+        coral::model::TimeDuration stepSize,
+        std::chrono::milliseconds timeout)
+    {
+        const auto result = state.execution.Step(stepSize, timeout);
+        ++state.currentStepID;
+        state.currentStepSize = stepSize;
+        return result == coral::master::StepResult::completed;
+    }
+
+    // Accepts a time step, keeping track of the step ID, and records the
+    // new variable values for observers that have a buffer.
+    void AcceptStep(ExecutionState& state, std::chrono::milliseconds timeout)
+    {
+        state.execution.AcceptStep(timeout);
+        state.acceptedStepID = state.currentStepID;
+        state.currentTime += state.currentStepSize;
+        for (const auto& observer : state.observers) {
+            if (observer->HasBuffer()) {
+                observer->Record(state.acceptedStepID, state.currentTime, timeout);
+            }
+        }
+    }
+}
+
+
 JNIEXPORT jlong JNICALL Java_no_viproma_coral_master_Execution_createNative(
     JNIEnv* env,
     jclass,
@@ -40,7 +332,7 @@ JNIEXPORT jlong JNICALL Java_no_viproma_coral_master_Execution_createNative(
     jobject options)
 {
     try {
-        return reinterpret_cast<jlong>(new coral::master::Execution(
+        return jcoral::AssumeWrappedCppObject(env, new ExecutionState(
             jcoral::ToString(env, executionName),
             ToExecutionOptions(env, options)));
     } catch (...) {
@@ -56,10 +348,9 @@ JNIEXPORT void JNICALL Java_no_viproma_coral_master_Execution_destroyNative(
     jlong selfPtr)
 {
     try {
-        jcoral::EnforceNotNull(selfPtr);
-        const auto exe = reinterpret_cast<coral::master::Execution*>(selfPtr);
-        exe->Terminate();
-        delete exe;
+        auto& state = UnwrapExecutionState(selfPtr);
+        state.execution.Terminate();
+        jcoral::DeleteWrappedCppObject<ExecutionState>(selfPtr);
     } catch (...) {
         jcoral::RethrowAsJavaException(env);
     }
@@ -76,11 +367,11 @@ namespace
             : env_{env}
             , slConv_{env}
             , siConv_{env}
-            , addedSlaveClass_{jcoral::FindClass(env, "no/viproma/coral/master/AddedSlave")}
-            , getLocator_{jcoral::GetMethodID(env, addedSlaveClass_, "getLocator", "()Lno/viproma/coral/net/SlaveLocator;")}
-            , getName_{jcoral::GetMethodID(env, addedSlaveClass_, "getName", "()Ljava/lang/String;")}
-            , setID_{jcoral::GetMethodID(env, addedSlaveClass_, "setID", "(Lno/viproma/coral/model/SlaveID;)V")}
-            , setError_{jcoral::GetMethodID(env, addedSlaveClass_, "setError", "(Ljava/lang/String;)V")}
+            , addedSlaveClass_{jcoral::Classes().addedSlaveClass}
+            , getLocator_{jcoral::Classes().addedSlaveGetLocator}
+            , getName_{jcoral::Classes().addedSlaveGetName}
+            , setID_{jcoral::Classes().addedSlaveSetID}
+            , setError_{jcoral::Classes().addedSlaveSetError}
         {
         }
 
@@ -89,7 +380,9 @@ namespace
             assert(env_->IsInstanceOf(obj, addedSlaveClass_));
             const auto jLocator = jcoral::CallObjectMethod(env_, obj, getLocator_);
             const auto name = jcoral::CallStringMethod(env_, obj, getName_);
-            return coral::master::AddedSlave{slConv_.ToCpp(jLocator), name};
+            const auto locator = slConv_.ToCpp(jLocator);
+            env_->DeleteLocalRef(jLocator);
+            return coral::master::AddedSlave{locator, name};
         }
 
         void CopyToJavaOutput(const coral::master::AddedSlave& src, jobject tgt)
@@ -127,8 +420,7 @@ JNIEXPORT void JNICALL Java_no_viproma_coral_master_Execution_addSlavesNative(
     jlong selfPtr, jobject slavesToAdd, jint commTimeout_ms)
 {
     try {
-        jcoral::EnforceNotNull(selfPtr);
-        const auto exe = reinterpret_cast<coral::master::Execution*>(selfPtr);
+        auto& state = UnwrapExecutionState(selfPtr);
 
         const auto asConv = AddedSlaveConverter{env};
         auto addedSlaves = std::vector<coral::master::AddedSlave>{};
@@ -146,7 +438,15 @@ JNIEXPORT void JNICALL Java_no_viproma_coral_master_Execution_addSlavesNative(
         };
 
         try {
-            exe->Reconstitute(addedSlaves, std::chrono::milliseconds(commTimeout_ms));
+            state.execution.Reconstitute(
+                addedSlaves, std::chrono::milliseconds(commTimeout_ms));
+            for (const auto& as : addedSlaves) {
+                auto& info = state.slaves[as.info.ID()];
+                info.dataPubEndpoint = as.locator.DataPubEndpoint();
+                for (const auto& v : as.info.TypeDescription().Variables()) {
+                    info.dataTypes[v.ID()] = v.DataType();
+                }
+            }
             transferResults();
         } catch (...) {
             // TODO: This is strictly speaking not OK, because transferResults()
@@ -169,26 +469,10 @@ namespace
             : env_{env}
             , siConv_{env}
             , vsConv_{env}
-            , slaveConfigClass_{
-                jcoral::FindClass(env, "no/viproma/coral/master/SlaveConfig")}
-            , getSlaveID_{
-                jcoral::GetMethodID(
-                    env,
-                    slaveConfigClass_,
-                    "getSlaveID",
-                    "()Lno/viproma/coral/model/SlaveID;")}
-            , getVariableSettings_{
-                jcoral::GetMethodID(
-                    env,
-                    slaveConfigClass_,
-                    "getVariableSettings",
-                    "()Ljava/lang/Iterable;")}
-            , setError_{
-                jcoral::GetMethodID(
-                    env,
-                    slaveConfigClass_,
-                    "setError",
-                    "(Ljava/lang/String;)V")}
+            , slaveConfigClass_{jcoral::Classes().slaveConfigClass}
+            , getSlaveID_{jcoral::Classes().slaveConfigGetSlaveID}
+            , getVariableSettings_{jcoral::Classes().slaveConfigGetVariableSettings}
+            , setError_{jcoral::Classes().slaveConfigSetError}
         {
         }
 
@@ -201,10 +485,12 @@ namespace
 
             coral::master::SlaveConfig slaveConfig;
             slaveConfig.slaveID = siConv_.ToCpp(jSlaveID);
+            env_->DeleteLocalRef(jSlaveID);
             jcoral::ForEach(env_, jVariableSettings, [this, &slaveConfig] (jobject jvs)
             {
                 slaveConfig.variableSettings.push_back(vsConv_.ToCpp(jvs));
             });
+            env_->DeleteLocalRef(jVariableSettings);
             return slaveConfig;
         }
 
@@ -242,8 +528,7 @@ JNIEXPORT void JNICALL Java_no_viproma_coral_master_Execution_reconfigureNative(
     jint commTimeout_ms)
 {
     try {
-        jcoral::EnforceNotNull(selfPtr);
-        const auto exe = reinterpret_cast<coral::master::Execution*>(selfPtr);
+        auto& state = UnwrapExecutionState(selfPtr);
 
         const auto scConv = SlaveConfigConverter{env};
         auto slaveConfigs = std::vector<coral::master::SlaveConfig>{};
@@ -261,7 +546,7 @@ JNIEXPORT void JNICALL Java_no_viproma_coral_master_Execution_reconfigureNative(
         };
 
         try {
-            exe->Reconfigure(
+            state.execution.Reconfigure(
                 slaveConfigs, std::chrono::milliseconds(commTimeout_ms));
             transferResults();
         } catch (...) {
@@ -276,6 +561,163 @@ JNIEXPORT void JNICALL Java_no_viproma_coral_master_Execution_reconfigureNative(
 }
 
 
+// Helpers for reconfigureBatch()
+namespace
+{
+    // These must match the constants in SlaveConfigBatch.
+    const jbyte VALUE_NONE = -1;
+    const jbyte VALUE_REAL = 0;
+    const jbyte VALUE_INTEGER = 1;
+    const jbyte VALUE_BOOLEAN = 2;
+    const jbyte VALUE_STRING = 3;
+    const jint NO_CONNECTION_CHANGE = -1;
+    const jint DISCONNECT = -2;
+
+    // Copies the first `count` elements of a primitive Java array.
+    template<typename T, typename ArrayT, typename Getter>
+    std::vector<T> CopyArray(
+        JNIEnv* env, ArrayT array, jsize count, Getter getRegion)
+    {
+        jcoral::EnforceNotNull(array);
+        auto v = std::vector<T>(count);
+        if (count > 0) {
+            (env->*getRegion)(array, 0, count, v.data());
+            jcoral::CheckNotThrown(env);
+        }
+        return v;
+    }
+}
+
+
+JNIEXPORT void JNICALL Java_no_viproma_coral_master_Execution_reconfigureBatchNative(
+    JNIEnv* env,
+    jclass,
+    jlong selfPtr,
+    jobjectArray jSlaves,
+    jint slaveCount,
+    jint settingCount,
+    jintArray jSlaveIndices,
+    jintArray jVariableIDs,
+    jbyteArray jValueTypes,
+    jdoubleArray jRealValues,
+    jintArray jIntegerValues,
+    jbooleanArray jBooleanValues,
+    jobjectArray jStringValues,
+    jintArray jConnectedSlaveIndices,
+    jintArray jConnectedVariableIDs,
+    jobjectArray jErrors,
+    jint commTimeout_ms)
+{
+    try {
+        auto& state = UnwrapExecutionState(selfPtr);
+
+        // Convert the slave table.
+        const auto siConv = jcoral::SlaveIDConverter{env};
+        auto slaves = std::vector<coral::model::SlaveID>();
+        slaves.reserve(slaveCount);
+        for (jsize i = 0; i < slaveCount; ++i) {
+            const auto js = env->GetObjectArrayElement(jSlaves, i);
+            jcoral::CheckNotThrown(env);
+            slaves.push_back(siConv.ToCpp(js));
+            env->DeleteLocalRef(js);
+        }
+
+        // Copy the settings out of the Java arrays in one go.
+        const auto slaveIndices = CopyArray<jint>(
+            env, jSlaveIndices, settingCount, &JNIEnv::GetIntArrayRegion);
+        const auto variableIDs = CopyArray<jint>(
+            env, jVariableIDs, settingCount, &JNIEnv::GetIntArrayRegion);
+        const auto valueTypes = CopyArray<jbyte>(
+            env, jValueTypes, settingCount, &JNIEnv::GetByteArrayRegion);
+        const auto realValues = CopyArray<jdouble>(
+            env, jRealValues, settingCount, &JNIEnv::GetDoubleArrayRegion);
+        const auto integerValues = CopyArray<jint>(
+            env, jIntegerValues, settingCount, &JNIEnv::GetIntArrayRegion);
+        const auto booleanValues = CopyArray<jboolean>(
+            env, jBooleanValues, settingCount, &JNIEnv::GetBooleanArrayRegion);
+        const auto connectedSlaveIndices = CopyArray<jint>(
+            env, jConnectedSlaveIndices, settingCount, &JNIEnv::GetIntArrayRegion);
+        const auto connectedVariableIDs = CopyArray<jint>(
+            env, jConnectedVariableIDs, settingCount, &JNIEnv::GetIntArrayRegion);
+
+        // Group the settings by slave, in order of first appearance.
+        auto configIndex = std::vector<int>(slaveCount, -1);
+        auto slaveConfigs = std::vector<coral::master::SlaveConfig>{};
+        for (jsize i = 0; i < settingCount; ++i) {
+            auto& ci = configIndex.at(slaveIndices[i]);
+            if (ci < 0) {
+                ci = boost::numeric_cast<int>(slaveConfigs.size());
+                slaveConfigs.emplace_back();
+                slaveConfigs.back().slaveID = slaves.at(slaveIndices[i]);
+            }
+
+            coral::model::ScalarValue value;
+            switch (valueTypes[i]) {
+                case VALUE_NONE:
+                    break;
+                case VALUE_REAL:
+                    value = realValues[i];
+                    break;
+                case VALUE_INTEGER:
+                    value = integerValues[i];
+                    break;
+                case VALUE_BOOLEAN:
+                    value = (booleanValues[i] ? true : false);
+                    break;
+                case VALUE_STRING: {
+                    const auto js = env->GetObjectArrayElement(jStringValues, i);
+                    jcoral::CheckNotThrown(env);
+                    value = jcoral::ToString(env, static_cast<jstring>(js));
+                    env->DeleteLocalRef(js);
+                    break;
+                }
+                default:
+                    throw std::logic_error("Invalid value type tag");
+            }
+
+            const auto variableID =
+                boost::numeric_cast<coral::model::VariableID>(variableIDs[i]);
+            const auto c = connectedSlaveIndices[i];
+            const auto output = (c >= 0)
+                ? coral::model::Variable{
+                    slaves.at(c),
+                    boost::numeric_cast<coral::model::VariableID>(connectedVariableIDs[i])}
+                : coral::model::Variable{};
+            auto& settings = slaveConfigs[ci].variableSettings;
+            if (c == NO_CONNECTION_CHANGE) {
+                if (valueTypes[i] == VALUE_NONE) {
+                    throw std::logic_error("Variable setting has neither value nor connection");
+                }
+                settings.emplace_back(variableID, value);
+            } else if (valueTypes[i] == VALUE_NONE) {
+                settings.emplace_back(variableID, output);
+            } else {
+                settings.emplace_back(variableID, value, output);
+            }
+            assert(c >= 0 || c == NO_CONNECTION_CHANGE || c == DISCONNECT);
+        }
+
+        try {
+            state.execution.Reconfigure(
+                slaveConfigs, std::chrono::milliseconds(commTimeout_ms));
+        } catch (...) {
+            for (jsize i = 0; i < slaveCount; ++i) {
+                const auto ci = configIndex[i];
+                if (ci >= 0 && slaveConfigs[ci].error) {
+                    const auto msg = jcoral::ToJString(
+                        env, slaveConfigs[ci].error.message());
+                    env->SetObjectArrayElement(jErrors, i, msg);
+                    env->DeleteLocalRef(msg);
+                }
+            }
+            throw;
+        }
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+    }
+}
+
+
 JNIEXPORT jboolean JNICALL Java_no_viproma_coral_master_Execution_stepNative(
     JNIEnv* env,
     jclass,
@@ -284,13 +726,11 @@ JNIEXPORT jboolean JNICALL Java_no_viproma_coral_master_Execution_stepNative(
     jint timeout_ms)
 {
     try {
-        jcoral::EnforceNotNull(selfPtr);
-        const auto exe = reinterpret_cast<coral::master::Execution*>(selfPtr);
-
-        const auto result = exe->Step(
+        auto& state = UnwrapExecutionState(selfPtr);
+        return Step(
+            state,
             boost::numeric_cast<coral::model::TimeDuration>(stepSize),
             std::chrono::milliseconds(timeout_ms));
-        return result == coral::master::StepResult::completed;
     } catch (...) {
         jcoral::RethrowAsJavaException(env);
         return false;
@@ -300,12 +740,214 @@ JNIEXPORT jboolean JNICALL Java_no_viproma_coral_master_Execution_stepNative(
 
 JNIEXPORT void JNICALL Java_no_viproma_coral_master_Execution_acceptStepNative(
     JNIEnv* env, jclass, jlong selfPtr, jint timeout_ms)
+{
+    try {
+        auto& state = UnwrapExecutionState(selfPtr);
+        AcceptStep(state, std::chrono::milliseconds(timeout_ms));
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+    }
+}
+
+
+JNIEXPORT jlong JNICALL Java_no_viproma_coral_master_Execution_simulateNative(
+    JNIEnv* env,
+    jclass,
+    jlong selfPtr,
+    jdouble origin,
+    jlong tick,
+    jdouble targetTime,
+    jlong targetTick,
+    jdouble stepSize,
+    jint maxSteps,
+    jint stepTimeout_ms,
+    jint acceptStepTimeout_ms)
+{
+    try {
+        auto& state = UnwrapExecutionState(selfPtr);
+        const auto stepTimeout = std::chrono::milliseconds(stepTimeout_ms);
+        const auto acceptStepTimeout = std::chrono::milliseconds(acceptStepTimeout_ms);
+
+        // Performs step/acceptStep pairs until we reach targetTick or have
+        // performed maxSteps steps (if maxSteps is positive).  Time points
+        // are computed from the tick number rather than accumulated, so
+        // rounding errors don't build up, and the step which ends on
+        // targetTick ends exactly on targetTime.
+        const auto TimeAt = [=] (jlong n) {
+            return n == targetTick ? targetTime : origin + n * stepSize;
+        };
+        for (jint n = 0; tick < targetTick && (maxSteps <= 0 || n < maxSteps); ++n) {
+            const auto t = TimeAt(tick);
+            const auto dt = TimeAt(tick + 1) - t;
+            const auto ok = Step(
+                state,
+                boost::numeric_cast<coral::model::TimeDuration>(dt),
+                stepTimeout);
+            if (!ok) {
+                std::ostringstream msg;
+                msg << "The simulation was aborted at t=" << t
+                    << " because one or more slaves failed to complete a time step of length dt="
+                    << dt;
+                throw jcoral::JavaException("java/lang/Exception", msg.str());
+            }
+            AcceptStep(state, acceptStepTimeout);
+            ++tick;
+        }
+        return tick;
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+        return tick;
+    }
+}
+
+
+// Helpers for the observer functions
+namespace
+{
+    std::vector<coral::model::Variable> ToVariableVector(
+        JNIEnv* env, jobjectArray jVariables)
+    {
+        auto variables = std::vector<coral::model::Variable>{};
+        if (jVariables == nullptr) return variables;
+        const auto varConv = jcoral::VariableConverter{env};
+        const auto n = env->GetArrayLength(jVariables);
+        for (jsize i = 0; i < n; ++i) {
+            const auto jv = env->GetObjectArrayElement(jVariables, i);
+            jcoral::CheckNotThrown(env);
+            jcoral::EnforceNotNull(jv);
+            variables.push_back(varConv.ToCpp(jv));
+            env->DeleteLocalRef(jv);
+        }
+        return variables;
+    }
+}
+
+
+JNIEXPORT jlong JNICALL Java_no_viproma_coral_master_Execution_createObserverNative(
+    JNIEnv* env,
+    jclass,
+    jlong selfPtr,
+    jobjectArray realVariables,
+    jobjectArray integerVariables,
+    jobjectArray booleanVariables)
+{
+    try {
+        auto& state = UnwrapExecutionState(selfPtr);
+        state.observers.push_back(std::make_unique<Observer>(
+            state.slaves,
+            ToVariableVector(env, realVariables),
+            ToVariableVector(env, integerVariables),
+            ToVariableVector(env, booleanVariables)));
+        return jcoral::AssumeWrappedCppObject(env, state.observers.back().get());
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+        return 0;
+    }
+}
+
+
+JNIEXPORT void JNICALL Java_no_viproma_coral_master_Execution_destroyObserverNative(
+    JNIEnv* env,
+    jclass,
+    jlong selfPtr,
+    jlong observerPtr)
+{
+    try {
+        auto& state = UnwrapExecutionState(selfPtr);
+        const auto observer = &jcoral::UnwrapCppObject<Observer>(observerPtr);
+        state.observers.erase(
+            std::remove_if(
+                state.observers.begin(),
+                state.observers.end(),
+                [observer] (const std::unique_ptr<Observer>& o) {
+                    return o.get() == observer;
+                }),
+            state.observers.end());
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+    }
+}
+
+
+JNIEXPORT void JNICALL Java_no_viproma_coral_master_Execution_readObserverNative(
+    JNIEnv* env,
+    jclass,
+    jlong selfPtr,
+    jlong observerPtr,
+    jdoubleArray realValues,
+    jintArray integerValues,
+    jbooleanArray booleanValues,
+    jint timeout_ms)
+{
+    try {
+        const auto& state = UnwrapExecutionState(selfPtr);
+        auto& observer = jcoral::UnwrapCppObject<Observer>(observerPtr);
+        if (state.acceptedStepID < 0) {
+            throw jcoral::JavaException(
+                "java/lang/IllegalStateException",
+                "No time steps have been completed yet");
+        }
+        observer.Read(
+            env,
+            state.acceptedStepID,
+            std::chrono::milliseconds(timeout_ms),
+            realValues,
+            integerValues,
+            booleanValues);
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+    }
+}
+
+
+JNIEXPORT void JNICALL Java_no_viproma_coral_master_Execution_setObserverBufferNative(
+    JNIEnv* env,
+    jclass,
+    jlong selfPtr,
+    jlong observerPtr,
+    jobject buffer)
 {
     try {
         jcoral::EnforceNotNull(selfPtr);
-        const auto exe = reinterpret_cast<coral::master::Execution*>(selfPtr);
-        exe->AcceptStep(std::chrono::milliseconds(timeout_ms));
+        auto& observer = jcoral::UnwrapCppObject<Observer>(observerPtr);
+        if (buffer == nullptr) {
+            observer.SetBuffer(nullptr, 0);
+            return;
+        }
+        const auto data = env->GetDirectBufferAddress(buffer);
+        const auto capacity = env->GetDirectBufferCapacity(buffer);
+        if (data == nullptr || capacity < 0) {
+            throw jcoral::JavaException(
+                "java/lang/IllegalArgumentException",
+                "Not a direct buffer");
+        }
+        observer.SetBuffer(data, boost::numeric_cast<std::size_t>(capacity));
     } catch (...) {
         jcoral::RethrowAsJavaException(env);
     }
 }
+
+
+JNIEXPORT jlong JNICALL Java_no_viproma_coral_master_Execution_getRecordCountNative(
+    JNIEnv* env,
+    jclass,
+    jobject buffer)
+{
+    try {
+        const auto data = env->GetDirectBufferAddress(buffer);
+        if (data == nullptr) {
+            throw jcoral::JavaException(
+                "java/lang/IllegalArgumentException",
+                "Not a direct buffer");
+        }
+        // Pairs with the release fence in Observer::Record(), so the
+        // records counted are visible to the caller.
+        std::int64_t count;
+        std::memcpy(&count, data, sizeof count);
+        std::atomic_thread_fence(std::memory_order_acquire);
+        return count;
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+        return 0;
+    }
+}
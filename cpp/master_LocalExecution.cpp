@@ -0,0 +1,913 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+#include <algorithm>
+#include <atomic>
+#include <condition_variable>
+#include <cstddef>
+#include <exception>
+#include <map>
+#include <memory>
+#include <mutex>
+#include <sstream>
+#include <stdexcept>
+#include <string>
+#include <thread>
+#include <utility>
+#include <vector>
+
+#include <boost/numeric/conversion/cast.hpp>
+
+#include <coral/slave/instance.hpp>
+
+#include "common_types.hpp"
+#include "jni_helpers.hpp"
+#include "type_converters.hpp"
+#include "no_viproma_coral_master_LocalExecution.h"
+
+
+// The native object referred to by LocalExecution.nativePtr_.
+namespace
+{
+    using coral::model::VariableID;
+
+    // A fixed-size array.  (We can't use std::vector, because
+    // std::vector<bool> doesn't have contiguous storage.)
+    template<typename T>
+    class Buffer
+    {
+    public:
+        void Resize(std::size_t size)
+        {
+            data_ = std::make_unique<T[]>(size);
+            size_ = size;
+        }
+
+        T* Data() { return data_.get(); }
+        const T* Data() const { return data_.get(); }
+        std::size_t Size() const { return size_; }
+        T& operator[](std::size_t i) { return data_[i]; }
+        const T& operator[](std::size_t i) const { return data_[i]; }
+
+    private:
+        std::unique_ptr<T[]> data_;
+        std::size_t size_ = 0;
+    };
+
+    template<typename T>
+    gsl::span<const T> ConstSpan(const T* data, std::size_t size)
+    {
+        return gsl::span<const T>(data, boost::numeric_cast<std::ptrdiff_t>(size));
+    }
+
+    template<typename T>
+    gsl::span<T> Span(T* data, std::size_t size)
+    {
+        return gsl::span<T>(data, boost::numeric_cast<std::ptrdiff_t>(size));
+    }
+
+    // Type-dispatched wrappers around the batch accessors of
+    // coral::slave::Instance.
+    void GetVariables(
+        const coral::slave::Instance& i,
+        gsl::span<const VariableID> ids,
+        gsl::span<double> values)
+    {
+        i.GetRealVariables(ids, values);
+    }
+
+    void GetVariables(
+        const coral::slave::Instance& i,
+        gsl::span<const VariableID> ids,
+        gsl::span<int> values)
+    {
+        i.GetIntegerVariables(ids, values);
+    }
+
+    void GetVariables(
+        const coral::slave::Instance& i,
+        gsl::span<const VariableID> ids,
+        gsl::span<bool> values)
+    {
+        i.GetBooleanVariables(ids, values);
+    }
+
+    void GetVariables(
+        const coral::slave::Instance& i,
+        gsl::span<const VariableID> ids,
+        gsl::span<std::string> values)
+    {
+        i.GetStringVariables(ids, values);
+    }
+
+    bool SetVariables(
+        coral::slave::Instance& i,
+        gsl::span<const VariableID> ids,
+        gsl::span<const double> values)
+    {
+        return i.SetRealVariables(ids, values);
+    }
+
+    bool SetVariables(
+        coral::slave::Instance& i,
+        gsl::span<const VariableID> ids,
+        gsl::span<const int> values)
+    {
+        return i.SetIntegerVariables(ids, values);
+    }
+
+    bool SetVariables(
+        coral::slave::Instance& i,
+        gsl::span<const VariableID> ids,
+        gsl::span<const bool> values)
+    {
+        return i.SetBooleanVariables(ids, values);
+    }
+
+    bool SetVariables(
+        coral::slave::Instance& i,
+        gsl::span<const VariableID> ids,
+        gsl::span<const std::string> values)
+    {
+        return i.SetStringVariables(ids, values);
+    }
+
+    // The values of one data type which are transferred from and to a
+    // single slave after each time step.
+    template<typename T>
+    struct Transfer
+    {
+        // The output variables to read, and the position in the execution's
+        // value buffer where the first of them is stored.
+        std::vector<VariableID> outputIDs;
+        std::size_t outputOffset = 0;
+
+        // The input variables to write, the positions of their values in the
+        // execution's value buffer, and room to collect the values.
+        std::vector<VariableID> inputIDs;
+        std::vector<std::size_t> inputSources;
+        Buffer<T> inputValues;
+    };
+
+    template<typename T>
+    void ReadOutputs(
+        const coral::slave::Instance& instance,
+        const Transfer<T>& transfer,
+        Buffer<T>& values)
+    {
+        if (transfer.outputIDs.empty()) return;
+        GetVariables(
+            instance,
+            ConstSpan(transfer.outputIDs.data(), transfer.outputIDs.size()),
+            Span(values.Data() + transfer.outputOffset, transfer.outputIDs.size()));
+    }
+
+    template<typename T>
+    bool WriteInputs(
+        coral::slave::Instance& instance,
+        Transfer<T>& transfer,
+        const Buffer<T>& values)
+    {
+        const auto n = transfer.inputIDs.size();
+        if (n == 0) return true;
+        for (std::size_t i = 0; i < n; ++i) {
+            transfer.inputValues[i] = values[transfer.inputSources[i]];
+        }
+        return SetVariables(
+            instance,
+            ConstSpan(transfer.inputIDs.data(), n),
+            ConstSpan(transfer.inputValues.Data(), n));
+    }
+
+    // A fixed set of threads which, together with the calling thread, run
+    // a function for each index in a range, and then wait for each other.
+    // That is, every call to ForEach() is a fork-join operation with a
+    // barrier at the end.
+    class WorkerPool
+    {
+    public:
+        // Creates a pool with `threadCount` threads in addition to the
+        // calling thread.
+        explicit WorkerPool(std::size_t threadCount)
+        {
+            threads_.reserve(threadCount);
+            for (std::size_t i = 0; i < threadCount; ++i) {
+                threads_.emplace_back([this] { Work(); });
+            }
+        }
+
+        ~WorkerPool() noexcept
+        {
+            {
+                std::lock_guard<std::mutex> lock(mutex_);
+                stop_ = true;
+            }
+            workCondition_.notify_all();
+            for (auto& t : threads_) t.join();
+        }
+
+        WorkerPool(const WorkerPool&) = delete;
+        WorkerPool& operator=(const WorkerPool&) = delete;
+
+        // Calls `f(i)` for all i in [0, count), in parallel, and returns when
+        // all calls have completed.  If any of them throws, the first
+        // exception is rethrown once all have completed.  This does not
+        // allocate memory.
+        template<typename F>
+        void ForEach(std::size_t count, F& f)
+        {
+            if (threads_.empty() || count < 2) {
+                for (std::size_t i = 0; i < count; ++i) f(i);
+                return;
+            }
+            {
+                std::lock_guard<std::mutex> lock(mutex_);
+                function_ = &f;
+                invoke_ = [] (void* fn, std::size_t i) { (*static_cast<F*>(fn))(i); };
+                count_ = count;
+                next_ = 0;
+                busyThreads_ = threads_.size();
+                error_ = nullptr;
+                ++generation_;
+            }
+            workCondition_.notify_all();
+            Run();
+
+            std::unique_lock<std::mutex> lock(mutex_);
+            doneCondition_.wait(lock, [this] { return busyThreads_ == 0; });
+            function_ = nullptr;
+            if (error_) {
+                const auto e = error_;
+                error_ = nullptr;
+                std::rethrow_exception(e);
+            }
+        }
+
+    private:
+        void Work()
+        {
+            std::size_t generation = 0;
+            std::unique_lock<std::mutex> lock(mutex_);
+            while (true) {
+                workCondition_.wait(lock, [&] {
+                    return stop_ || generation_ != generation;
+                });
+                if (stop_) return;
+                generation = generation_;
+                lock.unlock();
+                Run();
+                lock.lock();
+                if (--busyThreads_ == 0) doneCondition_.notify_one();
+            }
+        }
+
+        // Takes indices and calls the function until there are none left.
+        void Run()
+        {
+            for (auto i = next_++; i < count_; i = next_++) {
+                try {
+                    invoke_(function_, i);
+                } catch (...) {
+                    std::lock_guard<std::mutex> lock(mutex_);
+                    if (!error_) error_ = std::current_exception();
+                }
+            }
+        }
+
+        std::vector<std::thread> threads_;
+
+        std::mutex mutex_;
+        std::condition_variable workCondition_;
+        std::condition_variable doneCondition_;
+        bool stop_ = false;
+        std::size_t generation_ = 0;
+        std::size_t busyThreads_ = 0;
+        std::exception_ptr error_;
+
+        // The current task.  These are set under the mutex before
+        // generation_ is incremented, so the workers see them.
+        void* function_ = nullptr;
+        void (*invoke_)(void*, std::size_t) = nullptr;
+        std::size_t count_ = 0;
+        std::atomic<std::size_t> next_{0};
+    };
+
+    // What we need to know about each slave in the execution.
+    struct LocalSlave
+    {
+        LocalSlave(jcoral::SlaveInstance instance_, std::string name_)
+            : instance(std::move(instance_))
+            , name(std::move(name_))
+        {
+            for (const auto& v : instance->TypeDescription().Variables()) {
+                dataTypes[v.ID()] = v.DataType();
+            }
+        }
+
+        jcoral::SlaveInstance instance;
+        std::string name;
+        std::map<VariableID, coral::model::DataType> dataTypes;
+
+        Transfer<double> realTransfer;
+        Transfer<int> integerTransfer;
+        Transfer<bool> booleanTransfer;
+        Transfer<std::string> stringTransfer;
+    };
+
+    // A variable, identified by slave index and variable ID.
+    using VariableRef = std::pair<std::size_t, VariableID>;
+
+    class LocalExecutionState
+    {
+    public:
+        LocalExecutionState(
+            std::string executionName,
+            coral::model::TimePoint startTime,
+            coral::model::TimePoint maxTime)
+            : executionName_(std::move(executionName))
+            , startTime_(startTime)
+            , maxTime_(maxTime)
+            , workers_(std::make_unique<WorkerPool>(0))
+        { }
+
+        ~LocalExecutionState() noexcept
+        {
+            if (!started_) return;
+            for (auto& slave : slaves_) {
+                try {
+                    slave.instance->EndSimulation();
+                } catch (...) {
+                    // There's not much we can do about it at this point.
+                }
+            }
+        }
+
+        LocalExecutionState(const LocalExecutionState&) = delete;
+        LocalExecutionState& operator=(const LocalExecutionState&) = delete;
+
+        coral::model::SlaveID AddSlave(
+            jcoral::SlaveInstance instance,
+            const std::string& name)
+        {
+            if (started_) {
+                throw std::logic_error("Slaves cannot be added after the simulation has started");
+            }
+            const auto id = boost::numeric_cast<coral::model::SlaveID>(slaves_.size() + 1);
+            auto slaveName = name;
+            if (slaveName.empty()) {
+                slaveName = "slave" + std::to_string(id);
+            }
+            for (const auto& slave : slaves_) {
+                if (slave.name == slaveName) {
+                    throw jcoral::JavaException(
+                        "java/lang/IllegalArgumentException",
+                        "Duplicate slave name: " + slaveName);
+                }
+            }
+            instance->Setup(slaveName, executionName_, startTime_, maxTime_, false, 0.0);
+            slaves_.emplace_back(std::move(instance), slaveName);
+            return id;
+        }
+
+        // Sets the number of threads used to step the slaves and transfer
+        // values, including the calling thread.
+        void SetParallelism(std::size_t threadCount)
+        {
+            if (threadCount < 1) {
+                throw jcoral::JavaException(
+                    "java/lang/IllegalArgumentException",
+                    "Thread count must be positive");
+            }
+            workers_.reset();
+            workers_ = std::make_unique<WorkerPool>(threadCount - 1);
+        }
+
+        // Returns the index of the slave with the given ID.
+        std::size_t SlaveIndex(coral::model::SlaveID id) const
+        {
+            if (id < 1 || id > slaves_.size()) {
+                throw jcoral::JavaException(
+                    "java/lang/IllegalArgumentException", "Invalid slave ID");
+            }
+            return id - 1;
+        }
+
+        // Returns the data type of a variable, or throws if it doesn't exist.
+        coral::model::DataType DataType(std::size_t slaveIndex, VariableID variableID) const
+        {
+            const auto& dataTypes = slaves_[slaveIndex].dataTypes;
+            const auto it = dataTypes.find(variableID);
+            if (it == dataTypes.end()) {
+                throw jcoral::JavaException(
+                    "java/lang/IllegalArgumentException",
+                    "Slave " + slaves_[slaveIndex].name + " has no variable with ID "
+                        + std::to_string(variableID));
+            }
+            return it->second;
+        }
+
+        // Sets the value of a variable, returning false on failure.
+        template<typename T>
+        bool SetValue(std::size_t slaveIndex, VariableID variableID, const T& value)
+        {
+            return SetVariables(
+                *slaves_[slaveIndex].instance,
+                ConstSpan(&variableID, 1),
+                ConstSpan(&value, 1));
+        }
+
+        template<typename T>
+        T GetValue(std::size_t slaveIndex, VariableID variableID) const
+        {
+            T value;
+            GetVariables(
+                *slaves_[slaveIndex].instance,
+                ConstSpan(&variableID, 1),
+                Span(&value, 1));
+            return value;
+        }
+
+        // Connects an input to an output, or disconnects it if `output` is
+        // null.  The change takes effect at the next value transfer.
+        void Connect(VariableRef input, const VariableRef* output)
+        {
+            if (output) {
+                if (DataType(output->first, output->second)
+                        != DataType(input.first, input.second)) {
+                    throw std::runtime_error("Cannot connect variables of different data types");
+                }
+                connections_[input] = *output;
+            } else {
+                connections_.erase(input);
+            }
+            transfersValid_ = false;
+        }
+
+        // Performs a time step, transferring values first if this is the
+        // first step.  The slaves perform the step in parallel if more than
+        // one thread is used.  Throws if any of the slaves fails.
+        void Step(coral::model::TimePoint t, coral::model::TimeDuration dt)
+        {
+            if (!started_) {
+                for (auto& slave : slaves_) slave.instance->StartSimulation();
+                started_ = true;
+                TransferValues();
+            }
+            auto doStep = [this, t, dt] (std::size_t i) {
+                auto& slave = slaves_[i];
+                if (!slave.instance->DoStep(t, dt)) {
+                    std::ostringstream msg;
+                    msg << "The simulation was aborted at t=" << t
+                        << " because slave " << slave.name
+                        << " failed to complete a time step of length dt=" << dt;
+                    throw std::runtime_error(msg.str());
+                }
+            };
+            workers_->ForEach(slaves_.size(), doStep);
+            TransferValues();
+        }
+
+    private:
+        // Copies the values of all connected outputs to their inputs.
+        // All outputs are read before any inputs are written, so the order
+        // in which the slaves are processed doesn't matter.
+        void TransferValues()
+        {
+            if (!transfersValid_) UpdateTransfers();
+            auto readOutputs = [this] (std::size_t i) {
+                auto& slave = slaves_[i];
+                ReadOutputs(*slave.instance, slave.realTransfer, realValues_);
+                ReadOutputs(*slave.instance, slave.integerTransfer, integerValues_);
+                ReadOutputs(*slave.instance, slave.booleanTransfer, booleanValues_);
+                ReadOutputs(*slave.instance, slave.stringTransfer, stringValues_);
+            };
+            workers_->ForEach(slaves_.size(), readOutputs);
+            auto writeInputs = [this] (std::size_t i) {
+                auto& slave = slaves_[i];
+                const bool ok =
+                    WriteInputs(*slave.instance, slave.realTransfer, realValues_)
+                    && WriteInputs(*slave.instance, slave.integerTransfer, integerValues_)
+                    && WriteInputs(*slave.instance, slave.booleanTransfer, booleanValues_)
+                    && WriteInputs(*slave.instance, slave.stringTransfer, stringValues_);
+                if (!ok) {
+                    throw std::runtime_error(
+                        "Failed to set input variables of slave " + slave.name);
+                }
+            };
+            workers_->ForEach(slaves_.size(), writeInputs);
+        }
+
+        // Rebuilds the per-slave transfer lists from connections_.
+        void UpdateTransfers()
+        {
+            UpdateTransfers(&LocalSlave::realTransfer, coral::model::REAL_DATATYPE, realValues_);
+            UpdateTransfers(&LocalSlave::integerTransfer, coral::model::INTEGER_DATATYPE, integerValues_);
+            UpdateTransfers(&LocalSlave::booleanTransfer, coral::model::BOOLEAN_DATATYPE, booleanValues_);
+            UpdateTransfers(&LocalSlave::stringTransfer, coral::model::STRING_DATATYPE, stringValues_);
+            transfersValid_ = true;
+        }
+
+        template<typename T>
+        void UpdateTransfers(
+            Transfer<T> LocalSlave::* member,
+            coral::model::DataType dataType,
+            Buffer<T>& values)
+        {
+            for (auto& slave : slaves_) slave.*member = Transfer<T>();
+
+            // Give each distinct output a position in the value buffer.
+            // The outputs of each slave are stored contiguously, so they can
+            // be read with one call.
+            std::map<VariableRef, std::size_t> outputIndices;
+            for (const auto& c : connections_) {
+                if (DataType(c.second.first, c.second.second) != dataType) continue;
+                if (outputIndices.count(c.second)) continue;
+                auto& outputIDs = (slaves_[c.second.first].*member).outputIDs;
+                outputIndices[c.second] = outputIDs.size();
+                outputIDs.push_back(c.second.second);
+            }
+            std::size_t offset = 0;
+            for (auto& slave : slaves_) {
+                (slave.*member).outputOffset = offset;
+                offset += (slave.*member).outputIDs.size();
+            }
+            values.Resize(offset);
+
+            for (const auto& c : connections_) {
+                if (DataType(c.second.first, c.second.second) != dataType) continue;
+                auto& transfer = slaves_[c.first.first].*member;
+                transfer.inputIDs.push_back(c.first.second);
+                transfer.inputSources.push_back(
+                    (slaves_[c.second.first].*member).outputOffset
+                    + outputIndices[c.second]);
+            }
+            for (auto& slave : slaves_) {
+                auto& transfer = slave.*member;
+                transfer.inputValues.Resize(transfer.inputIDs.size());
+            }
+        }
+
+        std::string executionName_;
+        coral::model::TimePoint startTime_;
+        coral::model::TimePoint maxTime_;
+        bool started_ = false;
+
+        std::vector<LocalSlave> slaves_;
+
+        // Input -> output
+        std::map<VariableRef, VariableRef> connections_;
+        bool transfersValid_ = false;
+
+        // The values of the connected outputs, after the last step.
+        Buffer<double> realValues_;
+        Buffer<int> integerValues_;
+        Buffer<bool> booleanValues_;
+        Buffer<std::string> stringValues_;
+
+        std::unique_ptr<WorkerPool> workers_;
+    };
+
+    LocalExecutionState& UnwrapLocalExecutionState(jlong selfPtr)
+    {
+        return jcoral::UnwrapCppObject<LocalExecutionState>(selfPtr);
+    }
+}
+
+
+JNIEXPORT jlong JNICALL Java_no_viproma_coral_master_LocalExecution_createNative(
+    JNIEnv* env,
+    jclass,
+    jstring executionName,
+    jdouble startTime,
+    jdouble maxTime)
+{
+    try {
+        return jcoral::AssumeWrappedCppObject(env, new LocalExecutionState(
+            jcoral::ToString(env, executionName),
+            startTime,
+            maxTime));
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+        return 0;
+    }
+}
+
+
+JNIEXPORT void JNICALL Java_no_viproma_coral_master_LocalExecution_destroyNative(
+    JNIEnv* env,
+    jclass,
+    jlong selfPtr)
+{
+    jcoral::DeleteWrappedCppObject<LocalExecutionState>(selfPtr);
+}
+
+
+JNIEXPORT jobject JNICALL Java_no_viproma_coral_master_LocalExecution_addSlaveNative(
+    JNIEnv* env,
+    jclass,
+    jlong selfPtr,
+    jlong instancePtr,
+    jstring name)
+{
+    try {
+        auto& state = UnwrapLocalExecutionState(selfPtr);
+        const auto instance =
+            jcoral::UnwrapCppObject<jcoral::SlaveInstance>(instancePtr);
+        const auto id = state.AddSlave(
+            instance,
+            name ? jcoral::ToString(env, name) : std::string());
+        return jcoral::SlaveIDConverter(env).ToJava(id);
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+        return nullptr;
+    }
+}
+
+
+JNIEXPORT void JNICALL Java_no_viproma_coral_master_LocalExecution_setParallelismNative(
+    JNIEnv* env,
+    jclass,
+    jlong selfPtr,
+    jint threadCount)
+{
+    try {
+        UnwrapLocalExecutionState(selfPtr).SetParallelism(
+            boost::numeric_cast<std::size_t>(std::max(threadCount, 0)));
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+    }
+}
+
+
+// Helpers for reconfigureBatchNative
+namespace
+{
+    // These must match the constants in SlaveConfigBatch.
+    const jbyte VALUE_NONE = -1;
+    const jbyte VALUE_REAL = 0;
+    const jbyte VALUE_INTEGER = 1;
+    const jbyte VALUE_BOOLEAN = 2;
+    const jbyte VALUE_STRING = 3;
+    const jint NO_CONNECTION_CHANGE = -1;
+
+    const coral::model::DataType VALUE_DATA_TYPES[] = {
+        coral::model::REAL_DATATYPE,
+        coral::model::INTEGER_DATATYPE,
+        coral::model::BOOLEAN_DATATYPE,
+        coral::model::STRING_DATATYPE
+    };
+
+    // Copies the first `count` elements of a primitive Java array.
+    template<typename T, typename ArrayT, typename Getter>
+    std::vector<T> CopyArray(
+        JNIEnv* env, ArrayT array, jsize count, Getter getRegion)
+    {
+        jcoral::EnforceNotNull(array);
+        auto v = std::vector<T>(count);
+        if (count > 0) {
+            (env->*getRegion)(array, 0, count, v.data());
+            jcoral::CheckNotThrown(env);
+        }
+        return v;
+    }
+}
+
+
+JNIEXPORT void JNICALL Java_no_viproma_coral_master_LocalExecution_reconfigureBatchNative(
+    JNIEnv* env,
+    jclass,
+    jlong selfPtr,
+    jobjectArray jSlaves,
+    jint slaveCount,
+    jint settingCount,
+    jintArray jSlaveIndices,
+    jintArray jVariableIDs,
+    jbyteArray jValueTypes,
+    jdoubleArray jRealValues,
+    jintArray jIntegerValues,
+    jbooleanArray jBooleanValues,
+    jobjectArray jStringValues,
+    jintArray jConnectedSlaveIndices,
+    jintArray jConnectedVariableIDs,
+    jobjectArray jErrors)
+{
+    try {
+        auto& state = UnwrapLocalExecutionState(selfPtr);
+
+        // Convert the slave table to slave indices.
+        const auto siConv = jcoral::SlaveIDConverter{env};
+        auto slaves = std::vector<std::size_t>();
+        slaves.reserve(slaveCount);
+        for (jsize i = 0; i < slaveCount; ++i) {
+            const auto js = env->GetObjectArrayElement(jSlaves, i);
+            jcoral::CheckNotThrown(env);
+            slaves.push_back(state.SlaveIndex(siConv.ToCpp(js)));
+            env->DeleteLocalRef(js);
+        }
+
+        const auto slaveIndices = CopyArray<jint>(
+            env, jSlaveIndices, settingCount, &JNIEnv::GetIntArrayRegion);
+        const auto variableIDs = CopyArray<jint>(
+            env, jVariableIDs, settingCount, &JNIEnv::GetIntArrayRegion);
+        const auto valueTypes = CopyArray<jbyte>(
+            env, jValueTypes, settingCount, &JNIEnv::GetByteArrayRegion);
+        const auto realValues = CopyArray<jdouble>(
+            env, jRealValues, settingCount, &JNIEnv::GetDoubleArrayRegion);
+        const auto integerValues = CopyArray<jint>(
+            env, jIntegerValues, settingCount, &JNIEnv::GetIntArrayRegion);
+        const auto booleanValues = CopyArray<jboolean>(
+            env, jBooleanValues, settingCount, &JNIEnv::GetBooleanArrayRegion);
+        const auto connectedSlaveIndices = CopyArray<jint>(
+            env, jConnectedSlaveIndices, settingCount, &JNIEnv::GetIntArrayRegion);
+        const auto connectedVariableIDs = CopyArray<jint>(
+            env, jConnectedVariableIDs, settingCount, &JNIEnv::GetIntArrayRegion);
+
+        // Apply the settings one by one, recording the first error for
+        // each slave.
+        auto errors = std::vector<std::string>(slaveCount);
+        bool failed = false;
+        for (jsize i = 0; i < settingCount; ++i) {
+            const auto slave = slaves.at(slaveIndices[i]);
+            const auto variableID =
+                boost::numeric_cast<VariableID>(variableIDs[i]);
+            std::string error;
+            try {
+                if (valueTypes[i] != VALUE_NONE) {
+                    if (valueTypes[i] < VALUE_REAL || valueTypes[i] > VALUE_STRING) {
+                        throw std::logic_error("Invalid value type tag");
+                    }
+                    if (state.DataType(slave, variableID) != VALUE_DATA_TYPES[valueTypes[i]]) {
+                        throw std::runtime_error(
+                            "Wrong data type for variable " + std::to_string(variableID));
+                    }
+                    bool ok = false;
+                    switch (valueTypes[i]) {
+                        case VALUE_REAL:
+                            ok = state.SetValue(slave, variableID, static_cast<double>(realValues[i]));
+                            break;
+                        case VALUE_INTEGER:
+                            ok = state.SetValue(slave, variableID, static_cast<int>(integerValues[i]));
+                            break;
+                        case VALUE_BOOLEAN:
+                            ok = state.SetValue(slave, variableID, booleanValues[i] ? true : false);
+                            break;
+                        case VALUE_STRING: {
+                            const auto js = env->GetObjectArrayElement(jStringValues, i);
+                            jcoral::CheckNotThrown(env);
+                            ok = state.SetValue(
+                                slave, variableID, jcoral::ToString(env, static_cast<jstring>(js)));
+                            env->DeleteLocalRef(js);
+                            break;
+                        }
+                    }
+                    if (!ok) {
+                        throw std::runtime_error(
+                            "Failed to set value of variable " + std::to_string(variableID));
+                    }
+                }
+                const auto c = connectedSlaveIndices[i];
+                if (c != NO_CONNECTION_CHANGE) {
+                    const auto input = VariableRef{slave, variableID};
+                    if (c >= 0) {
+                        const auto output = VariableRef{
+                            slaves.at(c),
+                            boost::numeric_cast<VariableID>(connectedVariableIDs[i])};
+                        state.Connect(input, &output);
+                    } else {
+                        state.Connect(input, nullptr);
+                    }
+                }
+            } catch (const jcoral::PendingJavaException&) {
+                throw;
+            } catch (const std::exception& e) {
+                failed = true;
+                if (errors[slaveIndices[i]].empty()) {
+                    errors[slaveIndices[i]] = e.what();
+                }
+            }
+        }
+
+        if (failed) {
+            for (jsize i = 0; i < slaveCount; ++i) {
+                if (!errors[i].empty()) {
+                    const auto msg = jcoral::ToJString(env, errors[i]);
+                    env->SetObjectArrayElement(jErrors, i, msg);
+                    env->DeleteLocalRef(msg);
+                }
+            }
+            throw std::runtime_error("Failed to configure one or more slaves");
+        }
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+    }
+}
+
+
+JNIEXPORT jlong JNICALL Java_no_viproma_coral_master_LocalExecution_simulateNative(
+    JNIEnv* env,
+    jclass,
+    jlong selfPtr,
+    jdouble origin,
+    jlong tick,
+    jdouble targetTime,
+    jlong targetTick,
+    jdouble stepSize,
+    jint maxSteps)
+{
+    try {
+        auto& state = UnwrapLocalExecutionState(selfPtr);
+
+        // See Execution.simulateNative().
+        const auto TimeAt = [=] (jlong n) {
+            return n == targetTick ? targetTime : origin + n * stepSize;
+        };
+        for (jint n = 0; tick < targetTick && (maxSteps <= 0 || n < maxSteps); ++n) {
+            const auto t = TimeAt(tick);
+            state.Step(t, TimeAt(tick + 1) - t);
+            ++tick;
+        }
+        return tick;
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+        return tick;
+    }
+}
+
+
+// Helpers for the variable getters
+namespace
+{
+    template<typename T>
+    T GetValue(
+        JNIEnv* env,
+        jlong selfPtr,
+        jobject slave,
+        jint variableID,
+        coral::model::DataType dataType)
+    {
+        jcoral::EnforceNotNull(slave);
+        auto& state = UnwrapLocalExecutionState(selfPtr);
+        const auto slaveIndex =
+            state.SlaveIndex(jcoral::SlaveIDConverter(env).ToCpp(slave));
+        const auto id = boost::numeric_cast<VariableID>(variableID);
+        if (state.DataType(slaveIndex, id) != dataType) {
+            throw jcoral::JavaException(
+                "java/lang/IllegalArgumentException", "Wrong variable data type");
+        }
+        return state.GetValue<T>(slaveIndex, id);
+    }
+}
+
+
+JNIEXPORT jdouble JNICALL Java_no_viproma_coral_master_LocalExecution_getRealValueNative(
+    JNIEnv* env, jclass, jlong selfPtr, jobject slave, jint variableID)
+{
+    try {
+        return GetValue<double>(
+            env, selfPtr, slave, variableID, coral::model::REAL_DATATYPE);
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+        return 0.0;
+    }
+}
+
+
+JNIEXPORT jint JNICALL Java_no_viproma_coral_master_LocalExecution_getIntegerValueNative(
+    JNIEnv* env, jclass, jlong selfPtr, jobject slave, jint variableID)
+{
+    try {
+        return GetValue<int>(
+            env, selfPtr, slave, variableID, coral::model::INTEGER_DATATYPE);
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+        return 0;
+    }
+}
+
+
+JNIEXPORT jboolean JNICALL Java_no_viproma_coral_master_LocalExecution_getBooleanValueNative(
+    JNIEnv* env, jclass, jlong selfPtr, jobject slave, jint variableID)
+{
+    try {
+        return GetValue<bool>(
+            env, selfPtr, slave, variableID, coral::model::BOOLEAN_DATATYPE);
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+        return false;
+    }
+}
+
+
+JNIEXPORT jstring JNICALL Java_no_viproma_coral_master_LocalExecution_getStringValueNative(
+    JNIEnv* env, jclass, jlong selfPtr, jobject slave, jint variableID)
+{
+    try {
+        return jcoral::ToJString(env, GetValue<std::string>(
+            env, selfPtr, slave, variableID, coral::model::STRING_DATATYPE));
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+        return nullptr;
+    }
+}
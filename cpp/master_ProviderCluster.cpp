@@ -50,14 +50,8 @@ namespace
         SlaveTypeConverter(JNIEnv* env)
             : env_{env}
             , stdConv_{env}
-            , class_{
-                jcoral::FindClass(env_, "no/viproma/coral/master/ProviderCluster$SlaveType")}
-            , constructor_{
-                jcoral::GetMethodID(env_, class_, "<init>",
-                    "("
-                        "Lno/viproma/coral/model/SlaveTypeDescription;"
-                        "[Ljava/lang/String;"
-                    ")V")}
+            , class_{jcoral::Classes().slaveTypeClass}
+            , constructor_{jcoral::Classes().slaveTypeInit}
         {
         }
 
@@ -65,7 +59,7 @@ namespace
         {
             auto providers = jcoral::ToJArray<std::string>(
                 env_,
-                jcoral::FindClass(env_, "java/lang/String"),
+                jcoral::Classes().stringClass,
                 begin(cst.providers),
                 end(cst.providers),
                 [this] (const std::string& s) { return jcoral::ToJString(env_, s); });
@@ -100,7 +94,7 @@ JNIEXPORT jobjectArray JNICALL Java_no_viproma_coral_master_ProviderCluster_getS
         const auto stConv = SlaveTypeConverter{env};
         return jcoral::ToJArray<coral::master::ProviderCluster::SlaveType>(
             env,
-            jcoral::FindClass(env, "no/viproma/coral/master/ProviderCluster$SlaveType"),
+            jcoral::Classes().slaveTypeClass,
             begin(slaveTypes),
             end(slaveTypes),
             [&stConv] (const coral::master::ProviderCluster::SlaveType& st) {
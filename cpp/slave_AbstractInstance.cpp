@@ -0,0 +1,384 @@
+#include <memory>
+#include <new>
+#include <stdexcept>
+#include <string>
+
+#include <coral/model.hpp>
+#include <coral/slave/instance.hpp>
+
+#include "common_types.hpp"
+#include "jni_helpers.hpp"
+#include "type_converters.hpp"
+#include "no_viproma_coral_slave_AbstractInstance.h"
+
+
+namespace
+{
+    // If a Java exception is pending, this clears it and throws a
+    // std::runtime_error with the same message instead.
+    //
+    // The exception must not be left pending, because the calling code is
+    // Coral's, and it may continue to call JNI functions (through us) before
+    // control returns to Java, if it ever does.
+    void CheckUpcall(JNIEnv* env)
+    {
+        if (!env->ExceptionCheck()) return;
+        const auto ex = env->ExceptionOccurred();
+        env->ExceptionClear();
+
+        auto msg = std::string("Unknown error in Java slave instance");
+        const auto jMsg = static_cast<jstring>(
+            env->CallObjectMethod(ex, jcoral::Classes().objectToString));
+        if (env->ExceptionCheck()) {
+            env->ExceptionClear();
+        } else if (jMsg) {
+            const auto cMsg = env->GetStringUTFChars(jMsg, nullptr);
+            if (cMsg) {
+                msg = cMsg;
+                env->ReleaseStringUTFChars(jMsg, cMsg);
+            } else {
+                env->ExceptionClear();
+            }
+            env->DeleteLocalRef(jMsg);
+        }
+        env->DeleteLocalRef(ex);
+        throw std::runtime_error(msg);
+    }
+
+
+    // Converts a Java string returned by an upcall to a C++ string, and
+    // deletes the local reference.
+    std::string TakeString(JNIEnv* env, jstring jString)
+    {
+        CheckUpcall(env);
+        if (!jString) {
+            throw std::runtime_error("Java slave instance returned a null string");
+        }
+        const auto cString = env->GetStringUTFChars(jString, nullptr);
+        if (!cString) {
+            env->DeleteLocalRef(jString);
+            CheckUpcall(env);
+            throw std::bad_alloc();
+        }
+        auto cppString = std::string(cString);
+        env->ReleaseStringUTFChars(jString, cString);
+        env->DeleteLocalRef(jString);
+        return cppString;
+    }
+
+
+    // Converts a C++ string to a Java string which is passed to an upcall.
+    jstring MakeString(JNIEnv* env, const std::string& cppString)
+    {
+        const auto jString = env->NewStringUTF(cppString.c_str());
+        if (!jString) {
+            CheckUpcall(env);
+            throw std::bad_alloc();
+        }
+        return jString;
+    }
+
+
+    // A local reference to the Java object, which is deleted on destruction.
+    //
+    // The calls may be made from threads that never return to Java (e.g.
+    // a Coral slave runner's or our own worker threads), so local
+    // references must be freed explicitly, or they would accumulate.
+    class LocalSelf
+    {
+    public:
+        LocalSelf(JNIEnv* env, jweak self)
+            : env_{env}
+            , ref_{env->NewLocalRef(self)}
+        {
+            if (!ref_) {
+                throw std::logic_error(
+                    "Java slave instance has been garbage collected");
+            }
+        }
+
+        ~LocalSelf() { env_->DeleteLocalRef(ref_); }
+
+        LocalSelf(const LocalSelf&) = delete;
+        LocalSelf& operator=(const LocalSelf&) = delete;
+
+        jobject Get() const { return ref_; }
+
+    private:
+        JNIEnv* env_;
+        jobject ref_;
+    };
+
+
+    // An implementation of coral::slave::Instance which forwards all calls
+    // to an no.viproma.coral.slave.AbstractInstance object.
+    //
+    // We only keep a weak reference to the Java object.  The Java object owns
+    // this one, and a strong reference would prevent it from ever being
+    // garbage collected.  Variable values are transferred one at a time,
+    // using primitive types for everything but strings, so that no Java
+    // objects need to be created to transfer them.
+    class JavaInstance : public coral::slave::Instance
+    {
+    public:
+        JavaInstance(
+            JNIEnv* env,
+            jobject self,
+            coral::model::SlaveTypeDescription typeDescription)
+            : vm_{nullptr}
+            , self_{nullptr}
+            , typeDescription_(std::move(typeDescription))
+        {
+            JCORAL_REQUIRE(env, env->GetJavaVM(&vm_) == 0);
+            self_ = env->NewWeakGlobalRef(self);
+            jcoral::CheckJNIReturn(self_);
+        }
+
+        ~JavaInstance() noexcept
+        {
+            try {
+                jcoral::CurrentThreadEnv(vm_)->DeleteWeakGlobalRef(self_);
+            } catch (...) {
+                // Leak the reference rather than crash.
+            }
+        }
+
+        JavaInstance(const JavaInstance&) = delete;
+        JavaInstance& operator=(const JavaInstance&) = delete;
+
+        coral::model::SlaveTypeDescription TypeDescription() const override
+        {
+            return typeDescription_;
+        }
+
+        void Setup(
+            const std::string& slaveName,
+            const std::string& executionName,
+            coral::model::TimePoint startTime,
+            coral::model::TimePoint stopTime,
+            bool /*adaptiveStepSize*/,
+            double /*relativeTolerance*/) override
+        {
+            const auto env = Env();
+            const LocalSelf self(env, self_);
+            const auto jSlaveName = MakeString(env, slaveName);
+            const auto jExecutionName = env->NewStringUTF(executionName.c_str());
+            if (jExecutionName) {
+                env->CallVoidMethod(
+                    self.Get(),
+                    jcoral::Classes().abstractInstanceSetup,
+                    jSlaveName,
+                    jExecutionName,
+                    static_cast<jdouble>(startTime),
+                    static_cast<jdouble>(stopTime));
+                env->DeleteLocalRef(jExecutionName);
+            }
+            env->DeleteLocalRef(jSlaveName);
+            CheckUpcall(env);
+        }
+
+        void StartSimulation() override
+        {
+            const auto env = Env();
+            const LocalSelf self(env, self_);
+            env->CallVoidMethod(
+                self.Get(), jcoral::Classes().abstractInstanceStartSimulation);
+            CheckUpcall(env);
+        }
+
+        void EndSimulation() override
+        {
+            const auto env = Env();
+            const LocalSelf self(env, self_);
+            env->CallVoidMethod(
+                self.Get(), jcoral::Classes().abstractInstanceEndSimulation);
+            CheckUpcall(env);
+        }
+
+        bool DoStep(
+            coral::model::TimePoint currentT,
+            coral::model::TimeDuration deltaT) override
+        {
+            const auto env = Env();
+            const LocalSelf self(env, self_);
+            const auto ok = env->CallBooleanMethod(
+                self.Get(),
+                jcoral::Classes().abstractInstanceDoStep,
+                static_cast<jdouble>(currentT),
+                static_cast<jdouble>(deltaT));
+            CheckUpcall(env);
+            return ok == JNI_TRUE;
+        }
+
+        void GetRealVariables(
+            gsl::span<const coral::model::VariableID> variables,
+            gsl::span<double> values) const override
+        {
+            const auto env = Env();
+            const LocalSelf self(env, self_);
+            const auto method = jcoral::Classes().abstractInstanceGetRealVariable;
+            for (std::ptrdiff_t i = 0; i < variables.size(); ++i) {
+                values[i] = env->CallDoubleMethod(
+                    self.Get(), method, static_cast<jint>(variables[i]));
+                CheckUpcall(env);
+            }
+        }
+
+        void GetIntegerVariables(
+            gsl::span<const coral::model::VariableID> variables,
+            gsl::span<int> values) const override
+        {
+            const auto env = Env();
+            const LocalSelf self(env, self_);
+            const auto method = jcoral::Classes().abstractInstanceGetIntegerVariable;
+            for (std::ptrdiff_t i = 0; i < variables.size(); ++i) {
+                values[i] = env->CallIntMethod(
+                    self.Get(), method, static_cast<jint>(variables[i]));
+                CheckUpcall(env);
+            }
+        }
+
+        void GetBooleanVariables(
+            gsl::span<const coral::model::VariableID> variables,
+            gsl::span<bool> values) const override
+        {
+            const auto env = Env();
+            const LocalSelf self(env, self_);
+            const auto method = jcoral::Classes().abstractInstanceGetBooleanVariable;
+            for (std::ptrdiff_t i = 0; i < variables.size(); ++i) {
+                values[i] = JNI_TRUE == env->CallBooleanMethod(
+                    self.Get(), method, static_cast<jint>(variables[i]));
+                CheckUpcall(env);
+            }
+        }
+
+        void GetStringVariables(
+            gsl::span<const coral::model::VariableID> variables,
+            gsl::span<std::string> values) const override
+        {
+            const auto env = Env();
+            const LocalSelf self(env, self_);
+            const auto method = jcoral::Classes().abstractInstanceGetStringVariable;
+            for (std::ptrdiff_t i = 0; i < variables.size(); ++i) {
+                values[i] = TakeString(env, static_cast<jstring>(
+                    env->CallObjectMethod(
+                        self.Get(), method, static_cast<jint>(variables[i]))));
+            }
+        }
+
+        bool SetRealVariables(
+            gsl::span<const coral::model::VariableID> variables,
+            gsl::span<const double> values) override
+        {
+            const auto env = Env();
+            const LocalSelf self(env, self_);
+            const auto method = jcoral::Classes().abstractInstanceSetRealVariable;
+            bool ok = true;
+            for (std::ptrdiff_t i = 0; i < variables.size(); ++i) {
+                ok &= JNI_TRUE == env->CallBooleanMethod(
+                    self.Get(),
+                    method,
+                    static_cast<jint>(variables[i]),
+                    static_cast<jdouble>(values[i]));
+                CheckUpcall(env);
+            }
+            return ok;
+        }
+
+        bool SetIntegerVariables(
+            gsl::span<const coral::model::VariableID> variables,
+            gsl::span<const int> values) override
+        {
+            const auto env = Env();
+            const LocalSelf self(env, self_);
+            const auto method = jcoral::Classes().abstractInstanceSetIntegerVariable;
+            bool ok = true;
+            for (std::ptrdiff_t i = 0; i < variables.size(); ++i) {
+                ok &= JNI_TRUE == env->CallBooleanMethod(
+                    self.Get(),
+                    method,
+                    static_cast<jint>(variables[i]),
+                    static_cast<jint>(values[i]));
+                CheckUpcall(env);
+            }
+            return ok;
+        }
+
+        bool SetBooleanVariables(
+            gsl::span<const coral::model::VariableID> variables,
+            gsl::span<const bool> values) override
+        {
+            const auto env = Env();
+            const LocalSelf self(env, self_);
+            const auto method = jcoral::Classes().abstractInstanceSetBooleanVariable;
+            bool ok = true;
+            for (std::ptrdiff_t i = 0; i < variables.size(); ++i) {
+                ok &= JNI_TRUE == env->CallBooleanMethod(
+                    self.Get(),
+                    method,
+                    static_cast<jint>(variables[i]),
+                    static_cast<jboolean>(values[i] ? JNI_TRUE : JNI_FALSE));
+                CheckUpcall(env);
+            }
+            return ok;
+        }
+
+        bool SetStringVariables(
+            gsl::span<const coral::model::VariableID> variables,
+            gsl::span<const std::string> values) override
+        {
+            const auto env = Env();
+            const LocalSelf self(env, self_);
+            const auto method = jcoral::Classes().abstractInstanceSetStringVariable;
+            bool ok = true;
+            for (std::ptrdiff_t i = 0; i < variables.size(); ++i) {
+                const auto jValue = MakeString(env, values[i]);
+                ok &= JNI_TRUE == env->CallBooleanMethod(
+                    self.Get(),
+                    method,
+                    static_cast<jint>(variables[i]),
+                    jValue);
+                env->DeleteLocalRef(jValue);
+                CheckUpcall(env);
+            }
+            return ok;
+        }
+
+    private:
+        JNIEnv* Env() const { return jcoral::CurrentThreadEnv(vm_); }
+
+        JavaVM* vm_;
+        jweak self_;
+        coral::model::SlaveTypeDescription typeDescription_;
+    };
+}
+
+
+JNIEXPORT jlong JNICALL Java_no_viproma_coral_slave_AbstractInstance_createNative(
+    JNIEnv* env,
+    jclass,
+    jobject self,
+    jobject typeDescription)
+{
+    try {
+        jcoral::EnforceNotNull(self);
+        auto cTypeDescription =
+            jcoral::SlaveTypeDescriptionConverter(env).ToCpp(typeDescription);
+        return jcoral::WrapCppObject(
+            env,
+            jcoral::SlaveInstance(std::make_shared<JavaInstance>(
+                env, self, std::move(cTypeDescription))));
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+        return 0;
+    }
+}
+
+
+JNIEXPORT void JNICALL Java_no_viproma_coral_slave_AbstractInstance_destroyNative(
+    JNIEnv* env,
+    jclass,
+    jlong selfPtr)
+{
+    jcoral::DeleteWrappedCppObject<jcoral::SlaveInstance>(selfPtr);
+}
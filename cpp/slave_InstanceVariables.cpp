@@ -0,0 +1,412 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+#include <cstddef>
+#include <memory>
+#include <string>
+
+#include <coral/model.hpp>
+#include <coral/slave/instance.hpp>
+
+#include "common_types.hpp"
+#include "jni_helpers.hpp"
+#include "type_converters.hpp"
+#include "no_viproma_coral_slave_InstanceVariables.h"
+
+
+namespace
+{
+    using coral::model::VariableID;
+
+    // A temporary array which is taken from a per-thread pool, so that
+    // repeated calls don't allocate memory.
+    //
+    // The pool has room for one array of each type.  If it is already in
+    // use, e.g. because a Java slave (see AbstractInstance) calls the bulk
+    // accessors of another instance while its own are being called, a new
+    // array is allocated instead.  (We can't use std::vector, because
+    // std::vector<bool> doesn't have contiguous storage.)
+    template<typename T>
+    class Scratch
+    {
+    public:
+        explicit Scratch(jsize size)
+        {
+            auto& pool = Pool();
+            const auto n = static_cast<std::size_t>(size);
+            if (pool.inUse) {
+                owned_ = std::make_unique<T[]>(n);
+                data_ = owned_.get();
+            } else {
+                if (n > pool.capacity) {
+                    pool.data = std::make_unique<T[]>(n);
+                    pool.capacity = n;
+                }
+                pool.inUse = true;
+                data_ = pool.data.get();
+            }
+        }
+
+        ~Scratch()
+        {
+            if (!owned_) Pool().inUse = false;
+        }
+
+        Scratch(const Scratch&) = delete;
+        Scratch& operator=(const Scratch&) = delete;
+
+        T* Data() const { return data_; }
+
+    private:
+        struct PoolData
+        {
+            std::unique_ptr<T[]> data;
+            std::size_t capacity = 0;
+            bool inUse = false;
+        };
+
+        static PoolData& Pool()
+        {
+            thread_local PoolData pool;
+            return pool;
+        }
+
+        std::unique_ptr<T[]> owned_;
+        T* data_;
+    };
+
+
+    template<typename T>
+    gsl::span<T> Span(T* data, jsize size)
+    {
+        return gsl::span<T>(data, static_cast<std::ptrdiff_t>(size));
+    }
+
+
+    template<typename T>
+    gsl::span<const T> ConstSpan(const T* data, jsize size)
+    {
+        return gsl::span<const T>(data, static_cast<std::ptrdiff_t>(size));
+    }
+
+
+    // Checks that neither array is null and that they have the same length,
+    // which is returned.
+    jsize CheckArrays(JNIEnv* env, jintArray ids, jarray values)
+    {
+        jcoral::EnforceNotNull(ids);
+        jcoral::EnforceNotNull(values);
+        const auto size = env->GetArrayLength(ids);
+        if (env->GetArrayLength(values) != size) {
+            throw jcoral::JavaException(
+                "java/lang/IllegalArgumentException",
+                "ids and values have different lengths");
+        }
+        return size;
+    }
+
+
+    // Copies the contents of a primitive Java array into a C++ array,
+    // converting each element with static_cast.
+    //
+    // A critical section is used so that the elements can be converted
+    // directly, without an intermediate copy.  No JNI functions may be called
+    // inside it.
+    template<typename JavaT, typename T>
+    void ReadArray(JNIEnv* env, jarray array, T* out, jsize size)
+    {
+        if (size == 0) return;
+        const auto in = static_cast<const JavaT*>(
+            env->GetPrimitiveArrayCritical(array, nullptr));
+        jcoral::CheckJNIReturn(in);
+        for (jsize i = 0; i < size; ++i) out[i] = static_cast<T>(in[i]);
+        env->ReleasePrimitiveArrayCritical(array, const_cast<JavaT*>(in), JNI_ABORT);
+    }
+
+
+    // The reverse of ReadArray().
+    template<typename JavaT, typename T>
+    void WriteArray(JNIEnv* env, const T* in, jarray array, jsize size)
+    {
+        if (size == 0) return;
+        const auto out = static_cast<JavaT*>(
+            env->GetPrimitiveArrayCritical(array, nullptr));
+        jcoral::CheckJNIReturn(out);
+        for (jsize i = 0; i < size; ++i) out[i] = static_cast<JavaT>(in[i]);
+        env->ReleasePrimitiveArrayCritical(array, out, 0);
+    }
+
+
+    // Copies and validates an array of variable IDs.
+    void ReadIDs(JNIEnv* env, jintArray array, VariableID* out, jsize size)
+    {
+        if (size == 0) return;
+        const auto in = static_cast<const jint*>(
+            env->GetPrimitiveArrayCritical(array, nullptr));
+        jcoral::CheckJNIReturn(in);
+        bool valid = true;
+        for (jsize i = 0; i < size; ++i) {
+            valid &= in[i] >= 0;
+            out[i] = static_cast<VariableID>(in[i]);
+        }
+        env->ReleasePrimitiveArrayCritical(array, const_cast<jint*>(in), JNI_ABORT);
+        if (!valid) {
+            throw jcoral::JavaException(
+                "java/lang/IllegalArgumentException",
+                "Negative variable ID");
+        }
+    }
+
+
+    // Type-dispatched wrappers around the batch accessors of
+    // coral::slave::Instance.
+    void GetVariables(
+        const coral::slave::Instance& i,
+        gsl::span<const VariableID> ids,
+        gsl::span<double> values)
+    {
+        i.GetRealVariables(ids, values);
+    }
+
+    void GetVariables(
+        const coral::slave::Instance& i,
+        gsl::span<const VariableID> ids,
+        gsl::span<int> values)
+    {
+        i.GetIntegerVariables(ids, values);
+    }
+
+    void GetVariables(
+        const coral::slave::Instance& i,
+        gsl::span<const VariableID> ids,
+        gsl::span<bool> values)
+    {
+        i.GetBooleanVariables(ids, values);
+    }
+
+    bool SetVariables(
+        coral::slave::Instance& i,
+        gsl::span<const VariableID> ids,
+        gsl::span<const double> values)
+    {
+        return i.SetRealVariables(ids, values);
+    }
+
+    bool SetVariables(
+        coral::slave::Instance& i,
+        gsl::span<const VariableID> ids,
+        gsl::span<const int> values)
+    {
+        return i.SetIntegerVariables(ids, values);
+    }
+
+    bool SetVariables(
+        coral::slave::Instance& i,
+        gsl::span<const VariableID> ids,
+        gsl::span<const bool> values)
+    {
+        return i.SetBooleanVariables(ids, values);
+    }
+
+
+    // Common implementation of the get*Native() functions for primitive
+    // types.  T is the C++ value type, JavaT the corresponding JNI type.
+    template<typename T, typename JavaT>
+    void GetPrimitive(
+        JNIEnv* env,
+        jlong instancePtr,
+        jintArray ids,
+        jarray values)
+    {
+        const auto instance =
+            jcoral::UnwrapCppObject<jcoral::SlaveInstance>(instancePtr);
+        const auto size = CheckArrays(env, ids, values);
+        const Scratch<VariableID> cIDs(size);
+        ReadIDs(env, ids, cIDs.Data(), size);
+        const Scratch<T> cValues(size);
+        GetVariables(
+            *instance,
+            ConstSpan(cIDs.Data(), size),
+            Span(cValues.Data(), size));
+        WriteArray<JavaT>(env, cValues.Data(), values, size);
+    }
+
+
+    // Common implementation of the set*Native() functions for primitive
+    // types.
+    template<typename T, typename JavaT>
+    bool SetPrimitive(
+        JNIEnv* env,
+        jlong instancePtr,
+        jintArray ids,
+        jarray values)
+    {
+        const auto instance =
+            jcoral::UnwrapCppObject<jcoral::SlaveInstance>(instancePtr);
+        const auto size = CheckArrays(env, ids, values);
+        const Scratch<VariableID> cIDs(size);
+        ReadIDs(env, ids, cIDs.Data(), size);
+        const Scratch<T> cValues(size);
+        ReadArray<JavaT>(env, values, cValues.Data(), size);
+        return SetVariables(
+            *instance,
+            ConstSpan(cIDs.Data(), size),
+            ConstSpan<T>(cValues.Data(), size));
+    }
+}
+
+
+JNIEXPORT void JNICALL Java_no_viproma_coral_slave_InstanceVariables_getRealNative(
+    JNIEnv* env,
+    jclass,
+    jlong instancePtr,
+    jintArray ids,
+    jdoubleArray values)
+{
+    try {
+        GetPrimitive<double, jdouble>(env, instancePtr, ids, values);
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+    }
+}
+
+
+JNIEXPORT void JNICALL Java_no_viproma_coral_slave_InstanceVariables_getIntegerNative(
+    JNIEnv* env,
+    jclass,
+    jlong instancePtr,
+    jintArray ids,
+    jintArray values)
+{
+    try {
+        GetPrimitive<int, jint>(env, instancePtr, ids, values);
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+    }
+}
+
+
+JNIEXPORT void JNICALL Java_no_viproma_coral_slave_InstanceVariables_getBooleanNative(
+    JNIEnv* env,
+    jclass,
+    jlong instancePtr,
+    jintArray ids,
+    jbooleanArray values)
+{
+    try {
+        GetPrimitive<bool, jboolean>(env, instancePtr, ids, values);
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+    }
+}
+
+
+JNIEXPORT void JNICALL Java_no_viproma_coral_slave_InstanceVariables_getStringNative(
+    JNIEnv* env,
+    jclass,
+    jlong instancePtr,
+    jintArray ids,
+    jobjectArray values)
+{
+    try {
+        const auto instance =
+            jcoral::UnwrapCppObject<jcoral::SlaveInstance>(instancePtr);
+        const auto size = CheckArrays(env, ids, values);
+        const Scratch<VariableID> cIDs(size);
+        ReadIDs(env, ids, cIDs.Data(), size);
+        const Scratch<std::string> cValues(size);
+        instance->GetStringVariables(
+            ConstSpan(cIDs.Data(), size),
+            Span(cValues.Data(), size));
+        for (jsize i = 0; i < size; ++i) {
+            const auto jValue = jcoral::ToJString(env, cValues.Data()[i]);
+            env->SetObjectArrayElement(values, i, jValue);
+            env->DeleteLocalRef(jValue);
+            jcoral::CheckNotThrown(env);
+        }
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+    }
+}
+
+
+JNIEXPORT jboolean JNICALL Java_no_viproma_coral_slave_InstanceVariables_setRealNative(
+    JNIEnv* env,
+    jclass,
+    jlong instancePtr,
+    jintArray ids,
+    jdoubleArray values)
+{
+    try {
+        return SetPrimitive<double, jdouble>(env, instancePtr, ids, values);
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+        return JNI_FALSE;
+    }
+}
+
+
+JNIEXPORT jboolean JNICALL Java_no_viproma_coral_slave_InstanceVariables_setIntegerNative(
+    JNIEnv* env,
+    jclass,
+    jlong instancePtr,
+    jintArray ids,
+    jintArray values)
+{
+    try {
+        return SetPrimitive<int, jint>(env, instancePtr, ids, values);
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+        return JNI_FALSE;
+    }
+}
+
+
+JNIEXPORT jboolean JNICALL Java_no_viproma_coral_slave_InstanceVariables_setBooleanNative(
+    JNIEnv* env,
+    jclass,
+    jlong instancePtr,
+    jintArray ids,
+    jbooleanArray values)
+{
+    try {
+        return SetPrimitive<bool, jboolean>(env, instancePtr, ids, values);
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+        return JNI_FALSE;
+    }
+}
+
+
+JNIEXPORT jboolean JNICALL Java_no_viproma_coral_slave_InstanceVariables_setStringNative(
+    JNIEnv* env,
+    jclass,
+    jlong instancePtr,
+    jintArray ids,
+    jobjectArray values)
+{
+    try {
+        const auto instance =
+            jcoral::UnwrapCppObject<jcoral::SlaveInstance>(instancePtr);
+        const auto size = CheckArrays(env, ids, values);
+        const Scratch<VariableID> cIDs(size);
+        ReadIDs(env, ids, cIDs.Data(), size);
+        const Scratch<std::string> cValues(size);
+        for (jsize i = 0; i < size; ++i) {
+            const auto jValue = static_cast<jstring>(
+                env->GetObjectArrayElement(values, i));
+            jcoral::CheckNotThrown(env);
+            jcoral::EnforceNotNull(jValue);
+            cValues.Data()[i] = jcoral::ToString(env, jValue);
+            env->DeleteLocalRef(jValue);
+        }
+        return instance->SetStringVariables(
+            ConstSpan(cIDs.Data(), size),
+            ConstSpan<std::string>(cValues.Data(), size));
+    } catch (...) {
+        jcoral::RethrowAsJavaException(env);
+        return JNI_FALSE;
+    }
+}
@@ -15,12 +15,15 @@
 #include <exception>
 #include <limits>
 #include <memory>
+#include <string>
 #include <type_traits>
+#include <vector>
 
 #include <boost/numeric/conversion/cast.hpp>
 #include <coral/model.hpp>
 #include <coral/net.hpp>
 
+#include "class_cache.hpp"
 #include "jni_helpers.hpp"
 
 
@@ -34,10 +37,10 @@ class DataTypeConverter
 public:
     DataTypeConverter(JNIEnv* env)
         : env_{env}
-        , real_   {jcoral::GetEnumField(env, "no/viproma/coral/model/DataType", "REAL")}
-        , integer_{jcoral::GetEnumField(env, "no/viproma/coral/model/DataType", "INTEGER")}
-        , boolean_{jcoral::GetEnumField(env, "no/viproma/coral/model/DataType", "BOOLEAN")}
-        , string_ {jcoral::GetEnumField(env, "no/viproma/coral/model/DataType", "STRING")}
+        , real_   {jcoral::Classes().dataTypeReal}
+        , integer_{jcoral::Classes().dataTypeInteger}
+        , boolean_{jcoral::Classes().dataTypeBoolean}
+        , string_ {jcoral::Classes().dataTypeString}
     {
     }
 
@@ -76,11 +79,11 @@ class CausalityConverter
 public:
     CausalityConverter(JNIEnv* env)
         : env_{env}
-        , parameter_          {jcoral::GetEnumField(env, "no/viproma/coral/model/Causality", "PARAMETER")}
-        , calculatedParameter_{jcoral::GetEnumField(env, "no/viproma/coral/model/Causality", "CALCULATED_PARAMETER")}
-        , input_              {jcoral::GetEnumField(env, "no/viproma/coral/model/Causality", "INPUT")}
-        , output_             {jcoral::GetEnumField(env, "no/viproma/coral/model/Causality", "OUTPUT")}
-        , local_              {jcoral::GetEnumField(env, "no/viproma/coral/model/Causality", "LOCAL")}
+        , parameter_          {jcoral::Classes().causalityParameter}
+        , calculatedParameter_{jcoral::Classes().causalityCalculatedParameter}
+        , input_              {jcoral::Classes().causalityInput}
+        , output_             {jcoral::Classes().causalityOutput}
+        , local_              {jcoral::Classes().causalityLocal}
     {
     }
 
@@ -96,6 +99,16 @@ public:
         }
     }
 
+    coral::model::Causality ToCpp(jobject x) const
+    {
+        if (env_->IsSameObject(x, parameter_))                return coral::model::PARAMETER_CAUSALITY;
+        else if (env_->IsSameObject(x, calculatedParameter_)) return coral::model::CALCULATED_PARAMETER_CAUSALITY;
+        else if (env_->IsSameObject(x, input_))               return coral::model::INPUT_CAUSALITY;
+        else if (env_->IsSameObject(x, output_))              return coral::model::OUTPUT_CAUSALITY;
+        else if (env_->IsSameObject(x, local_))               return coral::model::LOCAL_CAUSALITY;
+        else JCORAL_FATAL(env_, "Unsupported variable causality encountered");
+    }
+
 private:
     JNIEnv* env_;
     jobject parameter_;
@@ -112,11 +125,11 @@ class VariabilityConverter
 public:
     VariabilityConverter(JNIEnv* env)
         : env_(env)
-        , constant_  {jcoral::GetEnumField(env, "no/viproma/coral/model/Variability", "CONSTANT")}
-        , fixed_     {jcoral::GetEnumField(env, "no/viproma/coral/model/Variability", "FIXED")}
-        , tunable_   {jcoral::GetEnumField(env, "no/viproma/coral/model/Variability", "TUNABLE")}
-        , discrete_  {jcoral::GetEnumField(env, "no/viproma/coral/model/Variability", "DISCRETE")}
-        , continuous_{jcoral::GetEnumField(env, "no/viproma/coral/model/Variability", "CONTINUOUS")}
+        , constant_  {jcoral::Classes().variabilityConstant}
+        , fixed_     {jcoral::Classes().variabilityFixed}
+        , tunable_   {jcoral::Classes().variabilityTunable}
+        , discrete_  {jcoral::Classes().variabilityDiscrete}
+        , continuous_{jcoral::Classes().variabilityContinuous}
     {
     }
 
@@ -132,6 +145,16 @@ public:
         }
     }
 
+    coral::model::Variability ToCpp(jobject x) const
+    {
+        if (env_->IsSameObject(x, constant_))        return coral::model::CONSTANT_VARIABILITY;
+        else if (env_->IsSameObject(x, fixed_))      return coral::model::FIXED_VARIABILITY;
+        else if (env_->IsSameObject(x, tunable_))    return coral::model::TUNABLE_VARIABILITY;
+        else if (env_->IsSameObject(x, discrete_))   return coral::model::DISCRETE_VARIABILITY;
+        else if (env_->IsSameObject(x, continuous_)) return coral::model::CONTINUOUS_VARIABILITY;
+        else JCORAL_FATAL(env_, "Unsupported variable variability encountered");
+    }
+
 private:
     JNIEnv* env_;
     jobject constant_;
@@ -148,9 +171,9 @@ class SlaveIDConverter
 public:
     explicit SlaveIDConverter(JNIEnv* env)
         : env_{env}
-        , slaveIDClass_{jcoral::FindClass(env, "no/viproma/coral/model/SlaveID")}
-        , init_{jcoral::GetMethodID(env, slaveIDClass_, "<init>", "(I)V")}
-        , getID_{jcoral::GetMethodID(env, slaveIDClass_, "getID", "()I")}
+        , slaveIDClass_{jcoral::Classes().slaveIDClass}
+        , init_{jcoral::Classes().slaveIDInit}
+        , getID_{jcoral::Classes().slaveIDGetID}
     {
     }
 
@@ -185,20 +208,12 @@ public:
     ScalarValueConverter(JNIEnv* env)
         : env_{env}
         , dtConv_{env}
-        , scalarValueClass_{
-            jcoral::FindClass(env, "no/viproma/coral/model/ScalarValue")}
-        , getDataType_{
-            jcoral::GetMethodID(
-                env, scalarValueClass_, "getDataType", "()Lno/viproma/coral/model/DataType;")}
-        , getRealValue_{
-            jcoral::GetMethodID(env, scalarValueClass_, "getRealValue", "()D")}
-        , getIntegerValue_{
-            jcoral::GetMethodID(env, scalarValueClass_, "getIntegerValue", "()I")}
-        , getBooleanValue_{
-            jcoral::GetMethodID(env, scalarValueClass_, "getBooleanValue", "()Z")}
-        , getStringValue_{
-            jcoral::GetMethodID(
-                env, scalarValueClass_, "getStringValue", "()Ljava/lang/String;")}
+        , scalarValueClass_{jcoral::Classes().scalarValueClass}
+        , getDataType_{jcoral::Classes().scalarValueGetDataType}
+        , getRealValue_{jcoral::Classes().scalarValueGetRealValue}
+        , getIntegerValue_{jcoral::Classes().scalarValueGetIntegerValue}
+        , getBooleanValue_{jcoral::Classes().scalarValueGetBooleanValue}
+        , getStringValue_{jcoral::Classes().scalarValueGetStringValue}
     {
     }
 
@@ -207,6 +222,7 @@ public:
         assert(env_->IsInstanceOf(obj, scalarValueClass_));
         const auto jDataType = jcoral::CallObjectMethod(env_, obj, getDataType_);
         const auto dataType = dtConv_.ToCpp(jDataType);
+        env_->DeleteLocalRef(jDataType);
 
         coral::model::ScalarValue sv;
         switch (dataType) {
@@ -219,11 +235,13 @@ public:
             case coral::model::BOOLEAN_DATATYPE:
                 sv = (jcoral::CallBooleanMethod(env_, obj, getBooleanValue_) ? true : false);
                 break;
-            case coral::model::STRING_DATATYPE:
-                sv = jcoral::ToString(
-                    env_,
-                    static_cast<jstring>(jcoral::CallObjectMethod(env_, obj, getStringValue_)));
+            case coral::model::STRING_DATATYPE: {
+                const auto jString = static_cast<jstring>(
+                    jcoral::CallObjectMethod(env_, obj, getStringValue_));
+                sv = jcoral::ToString(env_, jString);
+                env_->DeleteLocalRef(jString);
                 break;
+            }
         }
         jcoral::CheckNotThrown(env_);
         return sv;
@@ -250,29 +268,18 @@ public:
         , dtConv_{env}
         , csConv_{env}
         , vbConv_{env}
-        , class_{jcoral::FindClass(env, "no/viproma/coral/model/VariableDescription")}
-        , constructor_{jcoral::GetMethodID(env, class_, "<init>", "()V")}
-        , setID_{jcoral::GetMethodID(env, class_, "setID", "(I)V")}
-        , setName_{
-            jcoral::GetMethodID(env, class_, "setName", "(Ljava/lang/String;)V")}
-        , setDataType_{
-            jcoral::GetMethodID(
-                env,
-                class_,
-                "setDataType",
-                "(Lno/viproma/coral/model/DataType;)V")}
-        , setCausality_{
-            jcoral::GetMethodID(
-                env,
-                class_,
-                "setCausality",
-                "(Lno/viproma/coral/model/Causality;)V")}
-        , setVariability_{
-            jcoral::GetMethodID(
-                env,
-                class_,
-                "setVariability",
-                "(Lno/viproma/coral/model/Variability;)V")}
+        , class_{jcoral::Classes().variableDescriptionClass}
+        , constructor_{jcoral::Classes().variableDescriptionInit}
+        , setID_{jcoral::Classes().variableDescriptionSetID}
+        , setName_{jcoral::Classes().variableDescriptionSetName}
+        , setDataType_{jcoral::Classes().variableDescriptionSetDataType}
+        , setCausality_{jcoral::Classes().variableDescriptionSetCausality}
+        , setVariability_{jcoral::Classes().variableDescriptionSetVariability}
+        , getID_{jcoral::Classes().variableDescriptionGetID}
+        , getName_{jcoral::Classes().variableDescriptionGetName}
+        , getDataType_{jcoral::Classes().variableDescriptionGetDataType}
+        , getCausality_{jcoral::Classes().variableDescriptionGetCausality}
+        , getVariability_{jcoral::Classes().variableDescriptionGetVariability}
     {
     }
 
@@ -281,8 +288,9 @@ public:
         const auto jvd = jcoral::NewObject(env_, class_, constructor_);
         jcoral::CallVoidMethod(
             env_, jvd, setID_, boost::numeric_cast<jint>(cvd.ID()));
-        jcoral::CallVoidMethod(
-            env_, jvd, setName_, ToJString(env_, cvd.Name()));
+        const auto jName = ToJString(env_, cvd.Name());
+        jcoral::CallVoidMethod(env_, jvd, setName_, jName);
+        env_->DeleteLocalRef(jName);
         jcoral::CallVoidMethod(
             env_, jvd, setDataType_, dtConv_.ToJava(cvd.DataType()));
         jcoral::CallVoidMethod(
@@ -292,6 +300,34 @@ public:
         return jvd;
     }
 
+    coral::model::VariableDescription ToCpp(jobject obj) const
+    {
+        EnforceNotNull(obj);
+        assert(env_->IsInstanceOf(obj, class_));
+        const auto id = jcoral::CallIntMethod(env_, obj, getID_);
+        const auto jName = static_cast<jstring>(
+            jcoral::CallObjectMethod(env_, obj, getName_));
+        const auto name = jcoral::ToString(env_, jName);
+        env_->DeleteLocalRef(jName);
+
+        const auto jDataType = jcoral::CallObjectMethod(env_, obj, getDataType_);
+        const auto dataType = dtConv_.ToCpp(jDataType);
+        env_->DeleteLocalRef(jDataType);
+        const auto jCausality = jcoral::CallObjectMethod(env_, obj, getCausality_);
+        const auto causality = csConv_.ToCpp(jCausality);
+        env_->DeleteLocalRef(jCausality);
+        const auto jVariability = jcoral::CallObjectMethod(env_, obj, getVariability_);
+        const auto variability = vbConv_.ToCpp(jVariability);
+        env_->DeleteLocalRef(jVariability);
+
+        return coral::model::VariableDescription(
+            boost::numeric_cast<coral::model::VariableID>(id),
+            name,
+            dataType,
+            causality,
+            variability);
+    }
+
 private:
     JNIEnv* env_;
     jcoral::DataTypeConverter dtConv_;
@@ -304,6 +340,11 @@ private:
     jmethodID setDataType_;
     jmethodID setCausality_;
     jmethodID setVariability_;
+    jmethodID getID_;
+    jmethodID getName_;
+    jmethodID getDataType_;
+    jmethodID getCausality_;
+    jmethodID getVariability_;
 };
 
 
@@ -315,18 +356,14 @@ public:
     SlaveTypeDescriptionConverter(JNIEnv* env)
         : env_{env}
         , vdConv_{env}
-        , class_{
-            jcoral::FindClass(env_, "no/viproma/coral/model/SlaveTypeDescription")}
-        , constructor_{
-            jcoral::GetMethodID(env_, class_, "<init>",
-                "("
-                    "Ljava/lang/String;"
-                    "Ljava/lang/String;"
-                    "Ljava/lang/String;"
-                    "Ljava/lang/String;"
-                    "Ljava/lang/String;"
-                    "[Lno/viproma/coral/model/VariableDescription;"
-                ")V")}
+        , class_{jcoral::Classes().slaveTypeDescriptionClass}
+        , constructor_{jcoral::Classes().slaveTypeDescriptionInit}
+        , getName_{jcoral::Classes().slaveTypeDescriptionGetName}
+        , getUUID_{jcoral::Classes().slaveTypeDescriptionGetUUID}
+        , getDescription_{jcoral::Classes().slaveTypeDescriptionGetDescription}
+        , getAuthor_{jcoral::Classes().slaveTypeDescriptionGetAuthor}
+        , getVersion_{jcoral::Classes().slaveTypeDescriptionGetVersion}
+        , getVariables_{jcoral::Classes().slaveTypeDescriptionGetVariables}
     {
     }
 
@@ -339,7 +376,7 @@ public:
                 end(variableDescriptionRange)};
         const auto variables = jcoral::ToJArray<coral::model::VariableDescription>(
             env_,
-            jcoral::FindClass(env_, "no/viproma/coral/model/VariableDescription"),
+            jcoral::Classes().variableDescriptionClass,
             begin(variableDescriptionVector),
             end(variableDescriptionVector),
             [this] (const coral::model::VariableDescription& vd)
@@ -356,11 +393,48 @@ public:
             variables);
     }
 
+    coral::model::SlaveTypeDescription ToCpp(jobject obj) const
+    {
+        EnforceNotNull(obj);
+        assert(env_->IsInstanceOf(obj, class_));
+        std::vector<coral::model::VariableDescription> variables;
+        const auto jVariables = jcoral::CallObjectMethod(env_, obj, getVariables_);
+        jcoral::ForEach(env_, jVariables, [&] (jobject jvd) {
+            variables.push_back(vdConv_.ToCpp(jvd));
+        });
+        env_->DeleteLocalRef(jVariables);
+        return coral::model::SlaveTypeDescription(
+            CallOptionalStringMethod(obj, getName_),
+            CallOptionalStringMethod(obj, getUUID_),
+            CallOptionalStringMethod(obj, getDescription_),
+            CallOptionalStringMethod(obj, getAuthor_),
+            CallOptionalStringMethod(obj, getVersion_),
+            variables);
+    }
+
 private:
+    // Calls a method that returns a string, which may be null.  Null is
+    // converted to an empty string.
+    std::string CallOptionalStringMethod(jobject obj, jmethodID method) const
+    {
+        const auto jString = static_cast<jstring>(
+            jcoral::CallObjectMethod(env_, obj, method));
+        if (!jString) return std::string();
+        const auto cString = jcoral::ToString(env_, jString);
+        env_->DeleteLocalRef(jString);
+        return cString;
+    }
+
     JNIEnv* env_;
     jcoral::VariableDescriptionConverter vdConv_;
     jclass class_;
     jmethodID constructor_;
+    jmethodID getName_;
+    jmethodID getUUID_;
+    jmethodID getDescription_;
+    jmethodID getAuthor_;
+    jmethodID getVersion_;
+    jmethodID getVariables_;
 };
 
 
@@ -371,12 +445,9 @@ public:
     explicit VariableConverter(JNIEnv* env)
         : env_{env}
         , siConv_{env}
-        , variableClass_{jcoral::FindClass(env, "no/viproma/coral/model/Variable")}
-        , getSlaveID_{
-            jcoral::GetMethodID(
-                env, variableClass_, "getSlaveID", "()Lno/viproma/coral/model/SlaveID;")}
-        , getVariableID_{
-            jcoral::GetMethodID(env, variableClass_, "getVariableID", "()I")}
+        , variableClass_{jcoral::Classes().variableClass}
+        , getSlaveID_{jcoral::Classes().variableGetSlaveID}
+        , getVariableID_{jcoral::Classes().variableGetVariableID}
     {
     }
 
@@ -385,8 +456,10 @@ public:
         assert(env_->IsInstanceOf(obj, variableClass_));
         const auto jSlaveID = jcoral::CallObjectMethod(env_, obj, getSlaveID_);
         const auto jVariableID = jcoral::CallIntMethod(env_, obj, getVariableID_);
+        const auto slaveID = siConv_.ToCpp(jSlaveID);
+        env_->DeleteLocalRef(jSlaveID);
         return coral::model::Variable{
-            siConv_.ToCpp(jSlaveID),
+            slaveID,
             boost::numeric_cast<coral::model::VariableID>(jVariableID)};
     }
 
@@ -407,22 +480,12 @@ public:
         : env_{env}
         , scalarConv_{env}
         , varConv_{env}
-        , variableSettingClass_{jcoral::FindClass(env, "no/viproma/coral/model/VariableSetting")}
-        , getVariableID_{
-            jcoral::GetMethodID(
-                env, variableSettingClass_, "getVariableID", "()I")}
-        , hasValue_{
-            jcoral::GetMethodID(
-                env, variableSettingClass_, "hasValue", "()Z")}
-        , getValue_{
-            jcoral::GetMethodID(
-                env, variableSettingClass_, "getValue", "()Lno/viproma/coral/model/ScalarValue;")}
-        , isConnectionChange_{
-            jcoral::GetMethodID(
-                env, variableSettingClass_, "isConnectionChange", "()Z")}
-        , getConnectedOutput_{
-            jcoral::GetMethodID(
-                env, variableSettingClass_, "getConnectedOutput", "()Lno/viproma/coral/model/Variable;")}
+        , variableSettingClass_{jcoral::Classes().variableSettingClass}
+        , getVariableID_{jcoral::Classes().variableSettingGetVariableID}
+        , hasValue_{jcoral::Classes().variableSettingHasValue}
+        , getValue_{jcoral::Classes().variableSettingGetValue}
+        , isConnectionChange_{jcoral::Classes().variableSettingIsConnectionChange}
+        , getConnectedOutput_{jcoral::Classes().variableSettingGetConnectedOutput}
     {
     }
 
@@ -442,25 +505,22 @@ public:
 
         const auto variableID =
             boost::numeric_cast<coral::model::VariableID>(jVariableID);
+        const auto connectedOutput = (jConnectedOutput != nullptr)
+            ? varConv_.ToCpp(jConnectedOutput)
+            : coral::model::Variable();
+        if (jConnectedOutput != nullptr) env_->DeleteLocalRef(jConnectedOutput);
+
         if (jHasValue) {
+            const auto value = scalarConv_.ToCpp(jValue);
+            env_->DeleteLocalRef(jValue);
             if (jIsConnectionChange) {
                 return coral::model::VariableSetting(
-                    variableID,
-                    scalarConv_.ToCpp(jValue),
-                    jConnectedOutput != nullptr
-                        ? varConv_.ToCpp(jConnectedOutput)
-                        : coral::model::Variable());
+                    variableID, value, connectedOutput);
             } else {
-                return coral::model::VariableSetting(
-                    variableID,
-                    scalarConv_.ToCpp(jValue));
+                return coral::model::VariableSetting(variableID, value);
             }
         } else if (jIsConnectionChange) {
-            return coral::model::VariableSetting(
-                variableID,
-                jConnectedOutput != nullptr
-                    ? varConv_.ToCpp(jConnectedOutput)
-                    : coral::model::Variable());
+            return coral::model::VariableSetting(variableID, connectedOutput);
         } else {
             JCORAL_FATAL(env_, "Invalid VariableSetting object encountered");
         }
@@ -486,10 +546,10 @@ class SlaveLocatorConverter
 public:
     explicit SlaveLocatorConverter(JNIEnv* env)
         : env_{env}
-        , class_{jcoral::FindClass(env, "no/viproma/coral/net/SlaveLocator")}
-        , constructor_{jcoral::GetMethodID(env, class_, "<init>", "(Ljava/lang/String;Ljava/lang/String;)V")}
-        , getControlEndpoint_{jcoral::GetMethodID(env, class_, "getControlEndpoint", "()Ljava/lang/String;")}
-        , getDataPubEndpoint_{jcoral::GetMethodID(env, class_, "getDataPubEndpoint", "()Ljava/lang/String;")}
+        , class_{jcoral::Classes().slaveLocatorClass}
+        , constructor_{jcoral::Classes().slaveLocatorInit}
+        , getControlEndpoint_{jcoral::Classes().slaveLocatorGetControlEndpoint}
+        , getDataPubEndpoint_{jcoral::Classes().slaveLocatorGetDataPubEndpoint}
     {
     }
 
@@ -38,5 +38,21 @@ public class Logging
             "close() was not called before finalization, so resource was not released properly");
     }
 
+    /**
+     *  Internal convenience method for logging a specific message.
+     *  <p>
+     *  This method is only designed for private use by this library.
+     */
+    public static void logNotClosedBeforeCollection(Class<?> sourceClass, boolean released)
+    {
+        logger_.logp(
+            Level.WARNING,
+            sourceClass.getName(),
+            "close",
+            released
+                ? "close() was not called before garbage collection, so resource was released late"
+                : "close() was not called before garbage collection, so resource was not released");
+    }
+
     private static Logger logger_ = Logger.getLogger(getLoggerName());
 }
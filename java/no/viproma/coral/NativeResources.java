@@ -0,0 +1,205 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+
+/**
+ *  A registry of the native resources held by objects of this library.
+ *  <p>
+ *  Every object which owns a native resource (such as an
+ *  {@link no.viproma.coral.master.Execution} or an
+ *  {@link no.viproma.coral.fmi.FMU}) registers it here, and the entry is
+ *  removed when the object's <code>close()</code> method is called.
+ *  If an object becomes unreachable without having been closed, this is
+ *  detected by a background thread, which logs a warning and, if
+ *  {@link #setFreeLeaked} has been enabled, releases the resource.
+ *  <p>
+ *  This serves the same purpose as overriding <code>finalize()</code>,
+ *  without the cost that finalizable objects impose on allocation and
+ *  garbage collection.
+ */
+public final class NativeResources
+{
+    /**
+     *  A function which releases a native resource whose owner was not
+     *  closed.
+     *  <p>
+     *  This is only designed for private use by this library.
+     */
+    public interface Destructor
+    {
+        void destroy(long nativePtr) throws Exception;
+    }
+
+    /**
+     *  A registered native resource.
+     *  <p>
+     *  This is only designed for private use by this library.
+     */
+    public static final class Handle extends PhantomReference<Object>
+    {
+        private Handle(Object owner, long nativePtr, Destructor destructor)
+        {
+            super(owner, queue_);
+            ownerClass_ = owner.getClass();
+            nativePtr_ = nativePtr;
+            destructor_ = destructor;
+        }
+
+        /**
+         *  Removes the resource from the registry.  This must be called by
+         *  the owner's <code>close()</code> method <em>before</em> it
+         *  releases the resource.  Subsequent calls have no effect.
+         */
+        public void unregister()
+        {
+            if (released_.compareAndSet(false, true)) live_.remove(this);
+        }
+
+        // Called by the cleaner thread when the owner has become unreachable.
+        private void onOwnerCollected()
+        {
+            if (released_.get()) return;
+            final boolean free = freeLeaked_;
+            Logging.logNotClosedBeforeCollection(ownerClass_, free);
+            if (free && released_.compareAndSet(false, true)) {
+                live_.remove(this);
+                try {
+                    destructor_.destroy(nativePtr_);
+                } catch (Exception e) {
+                    Logging.getLogger().logp(
+                        Level.WARNING,
+                        ownerClass_.getName(),
+                        "close",
+                        "Failed to release leaked native resource",
+                        e);
+                }
+            }
+        }
+
+        private final Class<?> ownerClass_;
+        private final long nativePtr_;
+        private final Destructor destructor_;
+        private final AtomicBoolean released_ = new AtomicBoolean(false);
+    }
+
+    /**
+     *  Registers a native resource owned by <code>owner</code>.
+     *  <p>
+     *  This is only designed for private use by this library.
+     *  <code>destructor</code> must not refer to <code>owner</code>, or the
+     *  owner will never become unreachable.
+     */
+    public static Handle register(Object owner, long nativePtr, Destructor destructor)
+    {
+        final Handle handle = new Handle(owner, nativePtr, destructor);
+        live_.add(handle);
+        CleanerThreadHolder.ensureStarted();
+        return handle;
+    }
+
+    /**
+     *  Sets whether resources whose owners are garbage collected without
+     *  having been closed should be released automatically.
+     *  <p>
+     *  The resources are released in a background thread, which may not be
+     *  safe for all types of resources, e.g. an execution whose slaves are
+     *  still running.  The default is therefore <code>false</code>, in which
+     *  case such resources are merely reported.
+     */
+    public static void setFreeLeaked(boolean value)
+    {
+        freeLeaked_ = value;
+    }
+
+    /** Returns the value set with {@link #setFreeLeaked}. */
+    public static boolean isFreeLeaked()
+    {
+        return freeLeaked_;
+    }
+
+    /**
+     *  Returns the number of native resources that have not been released,
+     *  including those whose owners have been garbage collected without
+     *  being closed.
+     */
+    public static int getLiveCount()
+    {
+        return live_.size();
+    }
+
+    /**
+     *  Returns the number of native resources that have not been released,
+     *  per owner class name.
+     */
+    public static Map<String, Integer> getLiveCounts()
+    {
+        final Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for (Handle h : live_) {
+            final String name = h.ownerClass_.getName();
+            final Integer n = counts.get(name);
+            counts.put(name, n == null ? 1 : n + 1);
+        }
+        return counts;
+    }
+
+    /**
+     *  Logs the number of native resources that have not been released,
+     *  per owner class, through the library {@link Logging logger}.
+     */
+    public static void logLive()
+    {
+        final Map<String, Integer> counts = getLiveCounts();
+        if (counts.isEmpty()) {
+            Logging.getLogger().info("No native resources are held");
+        } else {
+            Logging.getLogger().info("Native resources held: " + counts);
+        }
+    }
+
+    // =========================================================================
+
+    private NativeResources() { }
+
+    // The thread that processes owners which have become unreachable.  It is
+    // started on first use, and is a daemon thread, so it doesn't keep the
+    // JVM alive.
+    private static class CleanerThreadHolder
+    {
+        static void ensureStarted() { }
+
+        static {
+            final Thread t = new Thread("jcoral-cleaner") {
+                public void run()
+                {
+                    while (true) {
+                        try {
+                            ((Handle) queue_.remove()).onOwnerCollected();
+                        } catch (InterruptedException e) {
+                            // Keep going; there's no one to stop us.
+                        }
+                    }
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    private static final ReferenceQueue<Object> queue_ = new ReferenceQueue<Object>();
+    private static final Set<Handle> live_ =
+        ConcurrentHashMap.<Handle>newKeySet();
+    private static volatile boolean freeLeaked_ = false;
+}
@@ -5,7 +5,7 @@
  */
 package no.viproma.coral.fmi;
 
-import no.viproma.coral.Logging;
+import no.viproma.coral.NativeResources;
 import no.viproma.coral.model.SlaveTypeDescription;
 import no.viproma.coral.slave.Instance;
 import no.viproma.coral.slave.OpaqueInstance;
@@ -33,12 +33,7 @@ public class FMU implements AutoCloseable
     FMU(long nativePtr)
     {
         nativePtr_ = nativePtr;
-    }
-
-    @Override
-    protected void finalize()
-    {
-        if (nativePtr_ != 0) Logging.logNotClosedOnFinalization(getClass());
+        handle_ = NativeResources.register(this, nativePtr_, FMU::destroyNative);
     }
 
     /**
@@ -54,6 +49,7 @@ public class FMU implements AutoCloseable
     public void close()
     {
         if (nativePtr_ != 0) {
+            handle_.unregister();
             destroyNative(nativePtr_);
             nativePtr_ = 0;
         }
@@ -93,4 +89,5 @@ public class FMU implements AutoCloseable
         throws Exception;
 
     private long nativePtr_ = 0;
+    private NativeResources.Handle handle_;
 }
@@ -6,7 +6,7 @@
 package no.viproma.coral.fmi;
 
 import java.io.File;
-import no.viproma.coral.Logging;
+import no.viproma.coral.NativeResources;
 import no.viproma.coral.fmi.FMU;
 
 
@@ -56,6 +56,7 @@ public class Importer implements AutoCloseable
     public Importer(File cachePath) throws Exception
     {
         nativePtr_ = createNativeP(cachePath.toString());
+        handle_ = NativeResources.register(this, nativePtr_, Importer::destroyNative);
     }
 
     /**
@@ -68,12 +69,7 @@ public class Importer implements AutoCloseable
     public Importer() throws Exception
     {
         nativePtr_ = createNative();
-    }
-
-    @Override
-    protected void finalize()
-    {
-        if (nativePtr_ != 0) Logging.logNotClosedOnFinalization(getClass());
+        handle_ = NativeResources.register(this, nativePtr_, Importer::destroyNative);
     }
 
     /**
@@ -89,6 +85,7 @@ public class Importer implements AutoCloseable
     public void close()
     {
         if (nativePtr_ != 0) {
+            handle_.unregister();
             destroyNative(nativePtr_);
             nativePtr_ = 0;
         }
@@ -151,4 +148,5 @@ public class Importer implements AutoCloseable
         throws Exception;
 
     private long nativePtr_;
+    private NativeResources.Handle handle_;
 }
@@ -0,0 +1,109 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.master;
+
+import java.util.Arrays;
+
+
+/**
+ * An execution-specific scenario in a compact, precomputed form.
+ * <p>
+ * Objects of this class are created with {@link ScenarioBuilder#compile},
+ * and may be passed to
+ * {@link Execution#simulateCompiled}.
+ * The events are grouped by time point, and the values of the events at
+ * each distinct time point are encoded directly into the primitive arrays
+ * of a {@link SlaveConfigBatch} up front, so no per-event work is needed
+ * while the simulation is running.
+ * <p>
+ * Objects of this class are immutable, and the same scenario may be
+ * simulated several times, as long as it is used with the execution whose
+ * {@link ModelSlaveMap} it was compiled with.  <code>simulate()</code>
+ * locates the first event to apply based on the execution's current time.
+ */
+public final class CompiledScenario
+{
+    // timePoints must be sorted and distinct.  firstEvents[i] is the index
+    // of the first event at timePoints[i], and firstEvents has one extra
+    // element at the end, which is the total number of events.  batches[i]
+    // holds the events at timePoints[i].
+    CompiledScenario(
+        double[] timePoints,
+        int[] firstEvents,
+        SlaveConfigBatch[] batches)
+    {
+        assert firstEvents.length == timePoints.length + 1;
+        assert batches.length == timePoints.length;
+        eventCount_ = firstEvents[timePoints.length];
+        timePoints_ = timePoints;
+        firstEvents_ = firstEvents;
+        batches_ = batches;
+    }
+
+    /** Returns the total number of events in the scenario. */
+    public int getEventCount()
+    {
+        return eventCount_;
+    }
+
+    /** Returns the number of distinct time points at which events occur. */
+    public int getTimePointCount()
+    {
+        return timePoints_.length;
+    }
+
+    /**
+     * Returns the <code>i</code>th distinct event time point, where the
+     * time points are sorted in increasing order.
+     */
+    public double getTimePoint(int i)
+    {
+        return timePoints_[i];
+    }
+
+    /**
+     * Returns the number of events that occur at the <code>i</code>th
+     * distinct event time point.
+     */
+    public int getEventCountAt(int i)
+    {
+        return firstEvents_[i+1] - firstEvents_[i];
+    }
+
+    // Returns the index of the first time point which is not less than t.
+    int findTimePoint(double t)
+    {
+        int i = Arrays.binarySearch(timePoints_, t);
+        return i >= 0 ? i : -(i + 1);
+    }
+
+    // Returns the slave configuration changes for the ith time point.
+    SlaveConfigBatch getBatch(int i)
+    {
+        return batches_[i];
+    }
+
+    // Returns the slave configuration changes for the time points in the
+    // range [begin, end).
+    SlaveConfigBatch getBatch(int begin, int end)
+    {
+        if (end - begin == 1) return getBatch(begin);
+
+        SlaveConfigBatch merged =
+            new SlaveConfigBatch(firstEvents_[end] - firstEvents_[begin]);
+        for (int i = begin; i < end; ++i) merged.addAll(batches_[i]);
+        return merged;
+    }
+
+    private final int eventCount_;
+
+    // The distinct event time points, the index of the first event at
+    // each of them (plus one past the end), and the precomputed slave
+    // configuration changes.
+    private final double[] timePoints_;
+    private final int[] firstEvents_;
+    private final SlaveConfigBatch[] batches_;
+}
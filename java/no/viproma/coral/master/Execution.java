@@ -5,17 +5,26 @@
  */
 package no.viproma.coral.master;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import no.viproma.coral.Logging;
+import no.viproma.coral.NativeResources;
 import no.viproma.coral.master.ExecutionOptions;
 import no.viproma.coral.master.SimulationProgressMonitor;
 import no.viproma.coral.model.SlaveID;
-import no.viproma.coral.model.VariableSetting;
+import no.viproma.coral.model.Variable;
 
 
 /**
@@ -50,7 +59,10 @@ public final class Execution implements AutoCloseable
         throws Exception
     {
         nativePtr_ = createNative(executionName, options);
+        handle_ = NativeResources.register(this, nativePtr_, Execution::destroyNative);
         simTime_ = options.getStartTime();
+        progressInterval_ = options.getProgressInterval();
+        stepAlignment_ = options.getStepAlignment();
     }
 
     /**
@@ -62,12 +74,6 @@ public final class Execution implements AutoCloseable
         this(executionName, new ExecutionOptions());
     }
 
-    @Override
-    protected void finalize()
-    {
-        if (nativePtr_ != 0) Logging.logNotClosedOnFinalization(getClass());
-    }
-
     /**
      * Terminates the execution and releases native
      * resources (such as memory) associated with this object.
@@ -78,7 +84,12 @@ public final class Execution implements AutoCloseable
     @Override
     public void close() throws Exception
     {
+        if (asyncPending_.get()) {
+            throw new IllegalStateException(
+                "Cannot close execution while an asynchronous operation is in progress");
+        }
         if (nativePtr_ != 0) {
+            handle_.unregister();
             destroyNative(nativePtr_);
             nativePtr_ = 0;
         }
@@ -147,6 +158,35 @@ public final class Execution implements AutoCloseable
         reconfigureNative(nativePtr_, slaveConfigs, timeout_ms);
     }
 
+    /**
+     *  Sets input variable values and establishes connections between
+     *  output and input variables, using a compact representation of the
+     *  changes.
+     *  <p>
+     *  This has the same effect as {@link #reconfigure(Iterable, int)},
+     *  but the changes are passed to native code as a handful of primitive
+     *  arrays rather than object by object, which is much faster when there
+     *  are many settings.
+     *  <p>
+     *  If the function throws an exception, and the error originates in
+     *  one or more of the slaves, {@link SlaveConfigBatch#getError} will
+     *  return textual descriptions of the errors.
+     *
+     *  @param batch
+     *      The variable value/connection changes.  If empty, the function
+     *      returns vacuously.
+     *  @param timeout_ms
+     *      The communications timeout used to detect loss of communication
+     *      with the slaves.  The value -1 means no timeout.
+     */
+    public void reconfigure(SlaveConfigBatch batch, int timeout_ms)
+        throws Exception
+    {
+        CheckSelf();
+        if (batch.size() == 0) return;
+        batch.reconfigure(nativePtr_, timeout_ms);
+    }
+
     /**
      *  Initiates a time step.
      *  <p>
@@ -220,6 +260,397 @@ public final class Execution implements AutoCloseable
         simTime_ += lastStepSize_;
     }
 
+    /**
+     *  Initiates a time step asynchronously.
+     *  <p>
+     *  This is equivalent to {@link #step}, except that the function returns
+     *  immediately, and the step is carried out by a thread from a small,
+     *  shared pool of background threads.  This allows the calling thread to
+     *  do other work, or to drive other executions, while the slaves perform
+     *  their calculations.
+     *  <p>
+     *  The pool has a fixed number of threads (twice the number of
+     *  processors, but at least four), and operations are queued when all of
+     *  them are busy.  Since a thread is occupied for as long as the slaves
+     *  take to perform the step, applications which drive many executions at
+     *  once may want to supply their own executor to
+     *  {@link #stepAsync(double, int, Executor)} instead.
+     *  <p>
+     *  No other methods may be called on this object until the returned
+     *  future has completed.  Doing so results in an
+     *  {@link IllegalStateException}.
+     *
+     *  @param stepSize
+     *      How much the simulation should be advanced in time.
+     *      This must be a positive number.
+     *  @param timeout_ms
+     *      The communications timeout used to detect loss of communication
+     *      with slaves.  The value -1 means no timeout.
+     *
+     *  @return
+     *      A future which is completed with the result of the step, or
+     *      completed exceptionally with the exception <code>step()</code>
+     *      would have thrown.
+     */
+    public CompletableFuture<StepResult> stepAsync(double stepSize, int timeout_ms)
+    {
+        return stepAsync(stepSize, timeout_ms, asyncExecutor());
+    }
+
+    /**
+     *  Forwards to {@link #stepAsync(double, int)}, but uses the given
+     *  executor to run the step instead of the shared background pool.
+     */
+    public CompletableFuture<StepResult> stepAsync(
+        final double stepSize, final int timeout_ms, Executor executor)
+    {
+        CheckSelf();
+        if (stepSize < 0.0) throw new IllegalArgumentException("Negative step size");
+        return runAsync(
+            new Callable<StepResult>() {
+                public StepResult call() throws Exception
+                {
+                    boolean ok = stepNative(nativePtr_, stepSize, timeout_ms);
+                    lastStepSize_ = stepSize;
+                    return ok ? StepResult.COMPLETE : StepResult.FAILED;
+                }
+            },
+            executor);
+    }
+
+    /**
+     *  Confirms and completes a time step asynchronously.
+     *  <p>
+     *  This is equivalent to {@link #acceptStep}, except that the function
+     *  returns immediately.  See {@link #stepAsync(double, int)} for details.
+     *
+     *  @param timeout_ms
+     *      The communications timeout used to detect loss of communication
+     *      with slaves.  The value -1 means no timeout.
+     *
+     *  @return
+     *      A future which is completed when the step has been accepted,
+     *      or completed exceptionally with the exception
+     *      <code>acceptStep()</code> would have thrown.
+     */
+    public CompletableFuture<Void> acceptStepAsync(int timeout_ms)
+    {
+        return acceptStepAsync(timeout_ms, asyncExecutor());
+    }
+
+    /**
+     *  Forwards to {@link #acceptStepAsync(int)}, but uses the given
+     *  executor to accept the step instead of the shared background pool.
+     */
+    public CompletableFuture<Void> acceptStepAsync(
+        final int timeout_ms, Executor executor)
+    {
+        CheckSelf();
+        return runAsync(
+            new Callable<Void>() {
+                public Void call() throws Exception
+                {
+                    acceptStepNative(nativePtr_, timeout_ms);
+                    simTime_ += lastStepSize_;
+                    return null;
+                }
+            },
+            executor);
+    }
+
+    /**
+     *  Creates an object which can be used to read the values of output
+     *  variables while the simulation is running.
+     *  <p>
+     *  The variables to observe are registered once, here, grouped by data
+     *  type.  Their values can then be read after each time step with
+     *  {@link Observer#read}, which fills caller-supplied arrays in a
+     *  single native call without allocating any Java objects.
+     *  <p>
+     *  The values are received directly from the slaves, as they publish
+     *  them at the end of each time step.  It is therefore recommended
+     *  to create the observer before the first time step whose values are
+     *  of interest.  Only variables that slaves publish (i.e., output
+     *  variables) can be observed.
+     *  <p>
+     *  The observer is closed automatically when the execution is closed.
+     *
+     *  @param realVariables
+     *      Real variables to observe.  May be null.
+     *  @param integerVariables
+     *      Integer variables to observe.  May be null.
+     *  @param booleanVariables
+     *      Boolean variables to observe.  May be null.
+     *
+     *  @throws IllegalArgumentException
+     *      If one of the variables does not exist or does not have the
+     *      data type that corresponds to the sequence it is in.
+     */
+    public Observer createObserver(
+        Iterable<Variable> realVariables,
+        Iterable<Variable> integerVariables,
+        Iterable<Variable> booleanVariables)
+        throws Exception
+    {
+        CheckSelf();
+        Variable[] reals = toArray(realVariables);
+        Variable[] integers = toArray(integerVariables);
+        Variable[] booleans = toArray(booleanVariables);
+        long observerPtr = createObserverNative(nativePtr_, reals, integers, booleans);
+        return new Observer(observerPtr, reals.length, integers.length, booleans.length);
+    }
+
+    /**
+     *  Reads the values of a fixed set of variables during a simulation.
+     *  <p>
+     *  Objects of this class are created with {@link #createObserver}.
+     *  <p>
+     *  Values may be read on demand with {@link #read}, or the observer
+     *  may be given a direct {@link ByteBuffer} with {@link #setBuffer},
+     *  into which the native code writes the values after every time step.
+     *  In the latter case, the buffer is laid out as follows (all numbers
+     *  in native byte order):
+     *  <ul>
+     *   <li>At offset 0, a <code>long</code> which holds the number of
+     *       records written so far.  It is updated after the record has
+     *       been written, and should be read with {@link #getRecordCount},
+     *       which guarantees that the records it counts are visible to the
+     *       calling thread.  (Reading it directly from the buffer is only
+     *       safe on the thread that steps the execution, between steps.)</li>
+     *   <li>From offset {@link #BUFFER_HEADER_SIZE}, a ring of fixed-size
+     *       records, each {@link #getRecordSize} bytes long.  Record
+     *       number <em>n</em> (counting from zero) is stored in slot
+     *       <em>n</em> modulo {@link #getRecordCapacity}.</li>
+     *  </ul>
+     *  Each record starts with the step ID (a <code>long</code>) and the
+     *  simulation time at the end of the step (a <code>double</code>),
+     *  followed by the real (<code>double</code>), integer
+     *  (<code>int</code>) and boolean (one byte, 0 or 1) values, whose
+     *  offsets within the record are given by {@link #getRealOffset},
+     *  {@link #getIntegerOffset} and {@link #getBooleanOffset}.  A consumer
+     *  must keep up with the writer so that records are not overwritten
+     *  before they have been read.
+     */
+    public final class Observer implements AutoCloseable
+    {
+        private Observer(
+            long nativePtr, int realCount, int integerCount, int booleanCount)
+        {
+            nativePtr_ = nativePtr;
+            realCount_ = realCount;
+            integerCount_ = integerCount;
+            booleanCount_ = booleanCount;
+        }
+
+        /** Returns the number of real variables being observed. */
+        public int getRealVariableCount() { return realCount_; }
+
+        /** Returns the number of integer variables being observed. */
+        public int getIntegerVariableCount() { return integerCount_; }
+
+        /** Returns the number of boolean variables being observed. */
+        public int getBooleanVariableCount() { return booleanCount_; }
+
+        /**
+         *  Reads the values of the observed variables at the end of the
+         *  last completed time step.
+         *  <p>
+         *  The values are stored in the given arrays, in the same order as
+         *  the variables were passed to {@link #createObserver}.
+         *
+         *  @param realValues
+         *      Array that receives the real values.  Its length must be at
+         *      least {@link #getRealVariableCount}.  May be null if no real
+         *      variables are observed.
+         *  @param integerValues
+         *      Array that receives the integer values.  Its length must be at
+         *      least {@link #getIntegerVariableCount}.  May be null if no
+         *      integer variables are observed.
+         *  @param booleanValues
+         *      Array that receives the boolean values.  Its length must be at
+         *      least {@link #getBooleanVariableCount}.  May be null if no
+         *      boolean variables are observed.
+         *  @param timeout_ms
+         *      How long to wait for the slaves' values to arrive.
+         *      The value -1 means no timeout.
+         *
+         *  @throws IllegalStateException
+         *      If no time steps have been completed yet, or if the observer
+         *      or the execution has been closed.
+         */
+        public void read(
+            double[] realValues,
+            int[] integerValues,
+            boolean[] booleanValues,
+            int timeout_ms)
+            throws Exception
+        {
+            CheckObserver();
+            checkLength(realValues == null ? 0 : realValues.length, realCount_);
+            checkLength(integerValues == null ? 0 : integerValues.length, integerCount_);
+            checkLength(booleanValues == null ? 0 : booleanValues.length, booleanCount_);
+            readObserverNative(
+                Execution.this.nativePtr_, nativePtr_,
+                realValues, integerValues, booleanValues, timeout_ms);
+        }
+
+        /** The size of the buffer header, in bytes. */
+        public static final int BUFFER_HEADER_SIZE = 8;
+
+        /** The offset of the step ID within a record, in bytes. */
+        public static final int STEP_ID_OFFSET = 0;
+
+        /** The offset of the simulation time within a record, in bytes. */
+        public static final int TIME_OFFSET = 8;
+
+        /**
+         *  Sets a buffer into which the values of the observed variables
+         *  are written after each time step.
+         *  <p>
+         *  See the {@linkplain Observer class documentation} for a
+         *  description of the buffer layout.  The buffer's byte order is set
+         *  to {@link ByteOrder#nativeOrder()}, and the record count at its
+         *  start is reset to zero.  The buffer must not be written to by
+         *  anyone else while it is in use.
+         *
+         *  @param buffer
+         *      A direct buffer, or null to stop writing to the current
+         *      buffer.  It must be large enough to hold at least one record.
+         */
+        public void setBuffer(ByteBuffer buffer) throws Exception
+        {
+            CheckObserver();
+            if (buffer != null) {
+                if (!buffer.isDirect()) {
+                    throw new IllegalArgumentException("Buffer is not direct");
+                }
+                buffer.order(ByteOrder.nativeOrder());
+            }
+            setObserverBufferNative(Execution.this.nativePtr_, nativePtr_, buffer);
+            // Keep a reference, so the buffer isn't garbage collected while
+            // the native code is writing to it.
+            buffer_ = buffer;
+        }
+
+        /** Returns the buffer set with {@link #setBuffer}, if any. */
+        public ByteBuffer getBuffer() { return buffer_; }
+
+        /** Returns the size of each record in the buffer, in bytes. */
+        public int getRecordSize()
+        {
+            int size = getBooleanOffset(0) + booleanCount_;
+            return (size + 7) / 8 * 8;
+        }
+
+        /** Returns the number of records that fit in the current buffer. */
+        public int getRecordCapacity()
+        {
+            if (buffer_ == null) return 0;
+            return (buffer_.capacity() - BUFFER_HEADER_SIZE) / getRecordSize();
+        }
+
+        /**
+         *  Returns the offset of the value of the <code>i</code>th real
+         *  variable within a record, in bytes.
+         */
+        public int getRealOffset(int i)
+        {
+            return 16 + 8 * i;
+        }
+
+        /**
+         *  Returns the offset of the value of the <code>i</code>th integer
+         *  variable within a record, in bytes.
+         */
+        public int getIntegerOffset(int i)
+        {
+            return getRealOffset(realCount_) + 4 * i;
+        }
+
+        /**
+         *  Returns the offset of the value of the <code>i</code>th boolean
+         *  variable within a record, in bytes.
+         */
+        public int getBooleanOffset(int i)
+        {
+            return getIntegerOffset(integerCount_) + i;
+        }
+
+        /**
+         *  Returns the number of records written to the current buffer so
+         *  far.
+         *  <p>
+         *  Unlike a plain read of the count at the start of the buffer, this
+         *  may be called from any thread: all records counted by the
+         *  returned value are fully written and visible to the caller.
+         *
+         *  @throws IllegalStateException
+         *      If no buffer has been set.
+         */
+        public long getRecordCount()
+        {
+            CheckObserver();
+            CheckBuffer();
+            return getRecordCountNative(buffer_);
+        }
+
+        /**
+         *  Returns the absolute buffer position of record number
+         *  <code>n</code>, counting from zero.
+         *
+         *  @throws IllegalStateException
+         *      If no buffer has been set.
+         */
+        public int getRecordPosition(long n)
+        {
+            CheckBuffer();
+            return BUFFER_HEADER_SIZE
+                + (int) (n % getRecordCapacity()) * getRecordSize();
+        }
+
+        /** Releases the native resources associated with this object. */
+        @Override
+        public void close() throws Exception
+        {
+            if (nativePtr_ != 0) {
+                if (Execution.this.nativePtr_ != 0) {
+                    destroyObserverNative(Execution.this.nativePtr_, nativePtr_);
+                }
+                nativePtr_ = 0;
+                buffer_ = null;
+            }
+        }
+
+        private void CheckBuffer()
+        {
+            if (buffer_ == null) {
+                throw new IllegalStateException("No buffer has been set");
+            }
+        }
+
+        private void CheckObserver()
+        {
+            if (nativePtr_ == 0) {
+                throw new IllegalStateException("Observer has been closed");
+            }
+            CheckSelf();
+        }
+
+        private void checkLength(int actual, int required)
+        {
+            if (actual < required) {
+                throw new IllegalArgumentException(
+                    "Array too short: " + actual + " < " + required);
+            }
+        }
+
+        private long nativePtr_;
+        private ByteBuffer buffer_;
+        private final int realCount_;
+        private final int integerCount_;
+        private final int booleanCount_;
+    }
+
     /** Returns the current simulation time. */
     public double currentTime()
     {
@@ -247,6 +678,10 @@ public final class Execution implements AutoCloseable
      *  <p>
      *  The progress of the simulation may be monitored, and optionally aborted,
      *  by a {@link SimulationProgressMonitor} object.
+     *  <p>
+     *  The time steps are performed in native code, and control only returns
+     *  to Java at scenario event time points and when the progress monitor is
+     *  due to be called (see {@link ExecutionOptions#setProgressInterval}).
      *
      *  @param duration
      *      How much the simulation time should be advanced.
@@ -270,7 +705,59 @@ public final class Execution implements AutoCloseable
     public void simulate(
         double duration,
         double stepSize,
-        Queue<ScenarioEvent> scenario,
+        final Queue<ScenarioEvent> scenario,
+        int stepTimeout_ms,
+        int otherTimeout_ms,
+        SimulationProgressMonitor progressMonitor)
+        throws Exception
+    {
+        simulateStreaming(
+            duration,
+            stepSize,
+            scenario == null ? null : new ScenarioSource() {
+                public ScenarioEvent peek() { return scenario.peek(); }
+                public ScenarioEvent next() { return scenario.poll(); }
+            },
+            stepTimeout_ms,
+            otherTimeout_ms,
+            progressMonitor);
+    }
+
+    /**
+     *  Convenience method for performing multiple time steps in sequence,
+     *  pulling scenario events from a {@link ScenarioSource}.
+     *  <p>
+     *  This is equivalent to
+     *  {@link #simulate(double, double, Queue, int, int, SimulationProgressMonitor)},
+     *  except that events are read lazily from <code>scenario</code> as the
+     *  simulation reaches them, so the scenario never has to be held in
+     *  memory in its entirety.  Leading events whose time is less than the
+     *  current simulation time are consumed and skipped.  Events at or
+     *  after the end time are left in the source, so a subsequent call can
+     *  continue where this one left off.
+     *
+     *  @param duration
+     *      How much the simulation time should be advanced.
+     *      This must be a positive number.
+     *  @param stepSize
+     *      The time step size.  This must be a positive number.
+     *  @param scenario
+     *      A source of time-ordered events, or <code>null</code> if there
+     *      are none.
+     *  @param stepTimeout_ms
+     *      A value which will be used for the <code>timeout_ms</code> argument
+     *      to <code>step()</code>.
+     *  @param otherTimeout_ms
+     *      A value which will be used for the <code>timeout_ms</code> argument
+     *      to commands other than <code>step()</code>.
+     *  @param progressMonitor
+     *      An object for monitoring the simulation. May be null if this
+     *      functionality is not needed.
+     */
+    public void simulateStreaming(
+        double duration,
+        double stepSize,
+        ScenarioSource scenario,
         int stepTimeout_ms,
         int otherTimeout_ms,
         SimulationProgressMonitor progressMonitor)
@@ -288,47 +775,110 @@ public final class Execution implements AutoCloseable
         }
 
         if (scenario != null) {
-            while (!scenario.isEmpty() &&
-                    scenario.element().getTimePoint() < currentTime()) {
-                scenario.remove();
+            while (scenario.peek() != null &&
+                    scenario.peek().getTimePoint() < currentTime()) {
+                scenario.next();
             }
         }
 
-        final double endTime = currentTime() + duration;
-        final double epsilon = stepSize * 1e-6;
+        final StepGrid grid = new StepGrid(stepSize, currentTime() + duration);
+        final SlaveConfigBatch batch = new SlaveConfigBatch();
         while (true) {
-            final double nextStop = (scenario == null || scenario.isEmpty())
-                ? endTime
-                : Math.min(scenario.element().getTimePoint(), endTime);
-            simulateUntil(
-                nextStop, stepSize,
+            final ScenarioEvent nextEvent =
+                (scenario == null) ? null : scenario.peek();
+            final boolean eventDue = nextEvent != null && grid.isDue(nextEvent.getTimePoint());
+            final double nextStop = eventDue
+                ? grid.align(nextEvent.getTimePoint())
+                : grid.endTime;
+            grid.simulateUntil(
+                nextStop,
                 stepTimeout_ms, otherTimeout_ms,
                 progressMonitor);
-            if (nextStop >= endTime) break;
+            if (!eventDue) break;
+
+            batch.clear();
+            do {
+                ScenarioEvent event = scenario.next();
+                batch.add(event.getSlaveID(), event.getVariableSetting());
+            } while (scenario.peek() != null &&
+                     grid.isDueAt(scenario.peek().getTimePoint(), nextStop));
+            reconfigure(batch, otherTimeout_ms);
+        }
+    }
+
+    /**
+     *  Convenience method for performing multiple time steps in sequence,
+     *  applying the events of a compiled scenario along the way.
+     *  <p>
+     *  This is equivalent to
+     *  {@link #simulate(double, double, Queue, int, int, SimulationProgressMonitor)},
+     *  except that the events are taken from a {@link CompiledScenario},
+     *  whose slave configuration changes have been prepared in advance.
+     *  Events whose time is less than the current simulation time are
+     *  skipped.  Since the scenario is not modified, the same object may
+     *  be used for several consecutive calls.
+     *
+     *  @param duration
+     *      How much the simulation time should be advanced.
+     *      This must be a positive number.
+     *  @param stepSize
+     *      The time step size.  This must be a positive number.
+     *  @param scenario
+     *      A scenario compiled for this execution, or <code>null</code> if
+     *      there are no events.
+     *  @param stepTimeout_ms
+     *      A value which will be used for the <code>timeout_ms</code> argument
+     *      to <code>step()</code>.
+     *  @param otherTimeout_ms
+     *      A value which will be used for the <code>timeout_ms</code> argument
+     *      to commands other than <code>step()</code>.
+     *  @param progressMonitor
+     *      An object for monitoring the simulation. May be null if this
+     *      functionality is not needed.
+     */
+    public void simulateCompiled(
+        double duration,
+        double stepSize,
+        CompiledScenario scenario,
+        int stepTimeout_ms,
+        int otherTimeout_ms,
+        SimulationProgressMonitor progressMonitor)
+        throws Exception
+    {
+        if (duration <= 0.0) {
+            throw new IllegalArgumentException("Nonpositive duration");
+        }
+        if (stepSize <= 0.0) {
+            throw new IllegalArgumentException("Nonpositive step size");
+        }
+
+        if (progressMonitor != null && !progressMonitor.progress(simTime_)) {
+            return;
+        }
 
-            assert(scenario != null);
+        final int timePointCount =
+            (scenario == null) ? 0 : scenario.getTimePointCount();
+        int next = (scenario == null) ? 0 : scenario.findTimePoint(currentTime());
 
-            Map<SlaveID, List<VariableSetting>> varSettings =
-                new HashMap<SlaveID, List<VariableSetting>>();
+        final StepGrid grid = new StepGrid(stepSize, currentTime() + duration);
+        while (true) {
+            final boolean eventDue =
+                next < timePointCount && grid.isDue(scenario.getTimePoint(next));
+            final double nextStop = eventDue
+                ? grid.align(scenario.getTimePoint(next))
+                : grid.endTime;
+            grid.simulateUntil(
+                nextStop,
+                stepTimeout_ms, otherTimeout_ms,
+                progressMonitor);
+            if (!eventDue) break;
 
+            final int first = next;
             do {
-                ScenarioEvent event = scenario.element();
-                List<VariableSetting> vs = varSettings.get(event.getSlaveID());
-                if (vs == null) {
-                    vs = new ArrayList<VariableSetting>();
-                    varSettings.put(event.getSlaveID(), vs);
-                }
-                vs.add(event.getVariableSetting());
-                scenario.remove();
-            } while (!scenario.isEmpty() &&
-                     scenario.element().getTimePoint() < nextStop + epsilon);
-
-            List<SlaveConfig> slaveConfigs = new ArrayList<SlaveConfig>();
-            for (Map.Entry<SlaveID, List<VariableSetting>> svs :
-                    varSettings.entrySet()) {
-                slaveConfigs.add(new SlaveConfig(svs.getKey(), svs.getValue()));
-            }
-            reconfigure(slaveConfigs, otherTimeout_ms);
+                ++next;
+            } while (next < timePointCount &&
+                     grid.isDueAt(scenario.getTimePoint(next), nextStop));
+            reconfigure(scenario.getBatch(first, next), otherTimeout_ms);
         }
     }
 
@@ -355,11 +905,170 @@ public final class Execution implements AutoCloseable
         if (nativePtr_ == 0) {
             throw new IllegalStateException("ExecutionController has been closed");
         }
+        if (asyncPending_.get()) {
+            throw new IllegalStateException("An asynchronous operation is in progress");
+        }
+    }
+
+    private static Variable[] toArray(Iterable<Variable> variables)
+    {
+        List<Variable> list = new ArrayList<Variable>();
+        if (variables != null) {
+            for (Variable v : variables) {
+                if (v == null) throw new IllegalArgumentException("Variable is null");
+                list.add(v);
+            }
+        }
+        return list.toArray(new Variable[list.size()]);
+    }
+
+    // Runs `operation` using `executor` and returns a future for its result.
+    // The object is marked as busy until the operation has completed.  The
+    // flag is claimed atomically, so of two threads that both got past
+    // CheckSelf(), only one gets to start an operation.
+    private <T> CompletableFuture<T> runAsync(
+        final Callable<T> operation, Executor executor)
+    {
+        if (!asyncPending_.compareAndSet(false, true)) {
+            throw new IllegalStateException("An asynchronous operation is in progress");
+        }
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            executor.execute(new Runnable() {
+                public void run()
+                {
+                    T result;
+                    try {
+                        result = operation.call();
+                    } catch (Throwable e) {
+                        asyncPending_.set(false);
+                        future.completeExceptionally(e);
+                        return;
+                    }
+                    asyncPending_.set(false);
+                    future.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            asyncPending_.set(false);
+            throw e;
+        }
+        return future;
+    }
+
+    // The shared pool used by the asynchronous methods.  It has a fixed
+    // number of threads and an unbounded queue.  The threads are daemon
+    // threads, so they don't keep the JVM alive, and idle threads are
+    // discarded after a while.
+    private static Executor asyncExecutor()
+    {
+        return AsyncExecutorHolder.executor;
+    }
+
+    private static class AsyncExecutorHolder
+    {
+        static final int THREAD_COUNT =
+            Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+        static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            THREAD_COUNT,
+            THREAD_COUNT,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(
+                        r, "jcoral-execution-" + threadCount_.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+
+                private final AtomicInteger threadCount_ = new AtomicInteger();
+            });
+
+        static
+        {
+            executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    // The time step grid used by one call to simulate(), which maps event
+    // time points to the points at which the simulation stops, according
+    // to the execution's StepAlignment policy.
+    private final class StepGrid
+    {
+        StepGrid(double stepSize, double endTime)
+        {
+            this.stepSize = stepSize;
+            this.endTime = endTime;
+            origin_ = currentTime();
+        }
+
+        // Whether an event at time t should be applied before the end time.
+        boolean isDue(double t)
+        {
+            return t < endTime;
+        }
+
+        // Whether an event at time t should be applied at the given stop.
+        boolean isDueAt(double t, double stop)
+        {
+            return isDue(t) && align(t) < stop + stepSize * TICK_TOLERANCE;
+        }
+
+        // Returns the time point at which an event at time t is applied.
+        double align(double t)
+        {
+            if (stepAlignment_ != StepAlignment.SNAP) return Math.min(t, endTime);
+            final double snapped =
+                origin_ + Math.rint((t - origin_) / stepSize) * stepSize;
+            return Math.max(currentTime(), Math.min(snapped, endTime));
+        }
+
+        // Advances the simulation to the given time point and returns false
+        // iff the simulation was aborted by the progress monitor.
+        boolean simulateUntil(
+            double targetTime,
+            int stepTimeout_ms,
+            int acceptStepTimeout_ms,
+            SimulationProgressMonitor progressMonitor)
+            throws Exception
+        {
+            switch (stepAlignment_) {
+                case SNAP:
+                    return Execution.this.simulateUntil(
+                        origin_, targetTime, stepSize,
+                        stepTimeout_ms, acceptStepTimeout_ms, progressMonitor);
+                case SPREAD:
+                    final double interval = targetTime - currentTime();
+                    final double steps = Math.max(1.0,
+                        Math.ceil(interval / stepSize - TICK_TOLERANCE));
+                    return Execution.this.simulateUntil(
+                        currentTime(), targetTime, interval / steps,
+                        stepTimeout_ms, acceptStepTimeout_ms, progressMonitor);
+                default:
+                    return Execution.this.simulateUntil(
+                        currentTime(), targetTime, stepSize,
+                        stepTimeout_ms, acceptStepTimeout_ms, progressMonitor);
+            }
+        }
+
+        final double stepSize;
+        final double endTime;
+        private final double origin_;
     }
 
-    // Advances the simulation with the given duration and returns false iff
-    // the simulation was aborted by the progress monitor.
+    // Advances the simulation to targetTime and returns false iff the
+    // simulation was aborted by the progress monitor.
+    //
+    // The time points are origin + n*stepSize for integer n ("ticks"), and
+    // the current time must be one of them.  The last step is lengthened or
+    // shortened so that it ends exactly on targetTime, unless this would
+    // make it shorter than TICK_TOLERANCE steps.
     private boolean simulateUntil(
+        double origin,
         double targetTime,
         double stepSize,
         int stepTimeout_ms,
@@ -367,39 +1076,31 @@ public final class Execution implements AutoCloseable
         SimulationProgressMonitor progressMonitor)
         throws Exception
     {
+        CheckSelf();
         if (targetTime == currentTime()) return true;
         assert(targetTime > currentTime());
         assert(stepSize > 0.0);
 
-        while (currentTime() + stepSize < targetTime) {
-            forceStep(stepSize, stepTimeout_ms, acceptStepTimeout_ms);
+        long tick = Math.round((currentTime() - origin) / stepSize);
+        final long targetTick = Math.max(
+            tick + 1,
+            (long) Math.ceil((targetTime - origin) / stepSize - TICK_TOLERANCE));
+
+        // Without a progress monitor, there is no reason to return to Java
+        // before the target time has been reached.
+        final int maxSteps = (progressMonitor == null) ? 0 : progressInterval_;
+        while (tick < targetTick) {
+            tick = simulateNative(
+                nativePtr_, origin, tick, targetTime, targetTick, stepSize,
+                maxSteps, stepTimeout_ms, acceptStepTimeout_ms);
+            simTime_ = (tick == targetTick) ? targetTime : origin + tick * stepSize;
             if (progressMonitor != null && !progressMonitor.progress(currentTime())) {
                 return false;
             }
         }
-        forceStep(targetTime - currentTime(), stepTimeout_ms, acceptStepTimeout_ms);
-        if (progressMonitor != null && !progressMonitor.progress(currentTime())) {
-            return false;
-        }
         return true;
     }
 
-    // Combines step and acceptStep into one operation and throws an exception
-    // if a step fails.
-    private void forceStep(
-        double stepSize,
-        int stepTimeout_ms,
-        int acceptStepTimeout_ms) throws Exception
-    {
-        if (step(stepSize, stepTimeout_ms) != StepResult.COMPLETE) {
-            throw new Exception(
-                "The simulation was aborted at t=" + simTime_
-                + " because one or more slaves failed to complete a time step of length dt="
-                + stepSize);
-        }
-        acceptStep(acceptStepTimeout_ms);
-    }
-
     private static native long createNative(
         String executionName, ExecutionOptions options)
         throws Exception;
@@ -410,14 +1111,72 @@ public final class Execution implements AutoCloseable
     private static native void reconfigureNative(
         long selfPtr, Iterable<SlaveConfig> slaveConfigs, int commTimeout_ms)
         throws Exception;
+    static native void reconfigureBatchNative(
+        long selfPtr,
+        SlaveID[] slaves,
+        int slaveCount,
+        int settingCount,
+        int[] slaveIndices,
+        int[] variableIDs,
+        byte[] valueTypes,
+        double[] realValues,
+        int[] integerValues,
+        boolean[] booleanValues,
+        String[] stringValues,
+        int[] connectedSlaveIndices,
+        int[] connectedVariableIDs,
+        String[] errors,
+        int commTimeout_ms)
+        throws Exception;
     private static native boolean stepNative(
         long selfPtr, double stepSize, int timeout_ms)
         throws Exception;
     private static native void acceptStepNative(long selfPtr, int timeout_ms)
         throws Exception;
+    private static native long createObserverNative(
+        long selfPtr,
+        Variable[] realVariables,
+        Variable[] integerVariables,
+        Variable[] booleanVariables)
+        throws Exception;
+    private static native void destroyObserverNative(
+        long selfPtr, long observerPtr)
+        throws Exception;
+    private static native void readObserverNative(
+        long selfPtr,
+        long observerPtr,
+        double[] realValues,
+        int[] integerValues,
+        boolean[] booleanValues,
+        int timeout_ms)
+        throws Exception;
+    private static native void setObserverBufferNative(
+        long selfPtr, long observerPtr, ByteBuffer buffer)
+        throws Exception;
+    private static native long getRecordCountNative(ByteBuffer buffer);
+    private static native long simulateNative(
+        long selfPtr,
+        double origin,
+        long tick,
+        double targetTime,
+        long targetTick,
+        double stepSize,
+        int maxSteps,
+        int stepTimeout_ms,
+        int acceptStepTimeout_ms)
+        throws Exception;
 
     private long nativePtr_ = 0;
+    private NativeResources.Handle handle_;
+
+    private final AtomicBoolean asyncPending_ = new AtomicBoolean(false);
 
     private double simTime_ = 0.0;
     private double lastStepSize_ = 0.0;
+    private int progressInterval_ = 1;
+    private StepAlignment stepAlignment_ = StepAlignment.EXACT;
+
+    // Time points within this fraction of a step from a grid point are
+    // considered to be on the grid.
+    private static final double TICK_TOLERANCE = 1e-6;
 }
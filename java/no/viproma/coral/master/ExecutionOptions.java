@@ -21,6 +21,8 @@ public class ExecutionOptions
         startTime_ = 0.0;
         maxTime_ = Double.POSITIVE_INFINITY;
         slaveVariableRecvTimeout_ms_ = 1000;
+        progressInterval_ = 1;
+        stepAlignment_ = StepAlignment.EXACT;
     }
 
     /**
@@ -98,7 +100,72 @@ public class ExecutionOptions
         }
     }
 
+    /**
+     *  Gets the number of time steps between each call to the
+     *  {@link SimulationProgressMonitor} used by {@link Execution#simulate}.
+     *  <p>
+     *  The default is 1, i.e., the monitor is called after every step.
+     */
+    public int getProgressInterval()
+    {
+        return progressInterval_;
+    }
+
+    /**
+     *  Sets the number of time steps between each call to the
+     *  {@link SimulationProgressMonitor} used by {@link Execution#simulate}.
+     *  <p>
+     *  <code>simulate()</code> performs its time steps in native code, and
+     *  only returns control to Java when the progress monitor is due to be
+     *  called, or when a scenario event occurs.  Increasing this value
+     *  therefore reduces the per-step overhead of <code>simulate()</code>,
+     *  at the cost of coarser progress reporting.  When no progress monitor
+     *  is given, the setting has no effect.
+     *
+     *  @param steps
+     *      The number of time steps between each progress report.
+     *      Must be positive.
+     */
+    public void setProgressInterval(int steps)
+    {
+        if (steps > 0) {
+            progressInterval_ = steps;
+        } else {
+            throw new IllegalArgumentException("Progress interval is not positive");
+        }
+    }
+
+    /**
+     *  Gets the policy used by {@link Execution#simulate} for scenario events
+     *  that do not fall on the time step grid.
+     *  <p>
+     *  The default is {@link StepAlignment#EXACT}.
+     */
+    public StepAlignment getStepAlignment()
+    {
+        return stepAlignment_;
+    }
+
+    /**
+     *  Sets the policy used by {@link Execution#simulate} for scenario events
+     *  that do not fall on the time step grid.
+     *  <p>
+     *  Every step costs a round trip to all slaves, so with
+     *  {@link StepAlignment#SNAP} or {@link StepAlignment#SPREAD}, the
+     *  number of round trips per simulated time unit depends only on the
+     *  step size and, for <code>SPREAD</code>, the number of events.
+     */
+    public void setStepAlignment(StepAlignment value)
+    {
+        if (value == null) {
+            throw new IllegalArgumentException("Step alignment is null");
+        }
+        stepAlignment_ = value;
+    }
+
     private double startTime_;
     private double maxTime_;
     private int slaveVariableRecvTimeout_ms_;
+    private int progressInterval_;
+    private StepAlignment stepAlignment_;
 }
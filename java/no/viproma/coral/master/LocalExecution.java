@@ -0,0 +1,418 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.master;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import no.viproma.coral.NativeResources;
+import no.viproma.coral.model.SlaveID;
+import no.viproma.coral.model.Variable;
+import no.viproma.coral.slave.Instance;
+
+
+/**
+ *  An execution whose slaves are run directly in the current thread,
+ *  without any network communication.
+ *  <p>
+ *  {@link Execution} communicates with its slaves through Coral's messaging
+ *  layer, even when the slaves run in the same process (see
+ *  {@link no.viproma.coral.slave.InProcessRunner}).  This class instead
+ *  holds on to the slave {@linkplain Instance instances} themselves, and
+ *  performs time steps and transfers variable values between connected
+ *  slaves with plain function calls in native code.  This is much faster
+ *  for models that fit on one machine, but it only works for slaves that
+ *  can be instantiated in this process, e.g. with
+ *  {@link no.viproma.coral.fmi.FMU#instantiateSlave}.
+ *  <p>
+ *  Models are set up with {@link ModelBuilder#apply(LocalExecution, java.util.Map)}
+ *  or {@link PreparedModel#apply(LocalExecution, java.util.Map)}, and
+ *  scenarios can be compiled for this class with
+ *  {@link ScenarioBuilder#compile}, just like for <code>Execution</code>.
+ *  <p>
+ *  As with <code>Execution</code>, all slaves perform each time step
+ *  independently, and the values of connected variables are transferred
+ *  between steps.  A slave therefore always sees the values its inputs'
+ *  sources had at the end of the previous step.  This also means that the
+ *  slaves can be stepped in parallel, on a fixed pool of threads (see
+ *  {@link #setParallelism}).
+ *  <p>
+ *  <strong>Warning:</strong>
+ *  This class is not threadsafe.
+ *  <p>
+ *  Objects of this class should always be disposed of with {@link #close} when
+ *  they are no longer needed, to avoid resource leaks in the underlying native
+ *  code. (A nice, automated way to do this is to use
+ *  <a href="https://docs.oracle.com/javase/tutorial/essential/exceptions/tryResourceClose.html">the
+ *  try-with-resources statement</a>.)
+ */
+public final class LocalExecution implements AutoCloseable
+{
+    static
+    {
+        System.loadLibrary("jcoral");
+    }
+
+    /**
+     *  Constructor which creates a new execution.
+     *
+     *  @param executionName
+     *      A name for the execution, which is passed on to the slaves.
+     *  @param options
+     *      Configuration settings for the execution.  The step alignment
+     *      and communication timeout settings are not used; time steps are
+     *      always shortened to end exactly on scenario event times.
+     */
+    public LocalExecution(String executionName, ExecutionOptions options)
+        throws Exception
+    {
+        nativePtr_ = createNative(
+            executionName, options.getStartTime(), options.getMaxTime());
+        handle_ = NativeResources.register(this, nativePtr_, LocalExecution::destroyNative);
+        simTime_ = options.getStartTime();
+        progressInterval_ = options.getProgressInterval();
+    }
+
+    /**
+     * Forwards to {@link #LocalExecution} using an {@link ExecutionOptions}
+     * object with default values.
+     */
+    public LocalExecution(String executionName) throws Exception
+    {
+        this(executionName, new ExecutionOptions());
+    }
+
+    /**
+     *  Ends the simulation and releases native resources (such as memory)
+     *  associated with this object.
+     *  <p>
+     *  The slave instances are not closed, as they are owned by the caller.
+     *  After this function has been called, any attempt to use the object
+     *  will result in an {@link IllegalStateException}.
+     */
+    @Override
+    public void close()
+    {
+        if (nativePtr_ != 0) {
+            handle_.unregister();
+            destroyNative(nativePtr_);
+            nativePtr_ = 0;
+            instances_.clear();
+        }
+    }
+
+    /**
+     *  Adds a slave to the execution.
+     *  <p>
+     *  Slaves can only be added before the first time step.  The instance
+     *  must not be used elsewhere while it is part of the execution, e.g.
+     *  by an {@link no.viproma.coral.slave.InProcessRunner}.
+     *
+     *  @param instance
+     *      The slave instance.
+     *  @param name
+     *      A name for the slave, unique in the execution.  If null, a unique
+     *      name will be generated.
+     *
+     *  @return
+     *      The slave's ID, which may be used in {@link SlaveConfigBatch}
+     *      objects passed to {@link #reconfigure}.
+     */
+    public SlaveID addSlave(Instance instance, String name) throws Exception
+    {
+        CheckSelf();
+        if (instance == null) {
+            throw new IllegalArgumentException("Instance is null");
+        }
+        final SlaveID id =
+            addSlaveNative(nativePtr_, instance.getNativeInstancePtr(), name);
+        instances_.add(instance);
+        return id;
+    }
+
+    /**
+     *  Sets the number of threads used to perform time steps.
+     *  <p>
+     *  With more than one thread, each time step is performed as a
+     *  fork-join operation:  The slaves' time steps are distributed among
+     *  the threads, which wait for each other when they are done.  Then the
+     *  values of connected variables are read and written in the same
+     *  manner.  The threads are kept alive until the execution is closed or
+     *  this function is called again.
+     *  <p>
+     *  A good value is the number of processor cores, or the number of
+     *  slaves if that is lower.  The default is 1, in which case the slaves
+     *  are stepped one after another in the thread that calls
+     *  {@link #step} or {@link #simulate}, which is also one of the threads
+     *  used when the count is larger.
+     *  <p>
+     *  Note that slave instances may be called from different threads in
+     *  different time steps, though never by more than one thread at a time.
+     *
+     *  @param threadCount
+     *      The number of threads, including the calling thread.
+     *      Must be positive.
+     */
+    public void setParallelism(int threadCount) throws Exception
+    {
+        CheckSelf();
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        setParallelismNative(nativePtr_, threadCount);
+        parallelism_ = threadCount;
+    }
+
+    /** Returns the number of threads used to perform time steps. */
+    public int getParallelism()
+    {
+        return parallelism_;
+    }
+
+    /**
+     *  Sets variable values and/or makes connections between variables.
+     *  <p>
+     *  Values are set immediately.  Connections take effect when values
+     *  are next transferred, i.e. at the start of the next time step.
+     *  If a setting fails, the remaining settings are still applied, and an
+     *  exception is thrown at the end.  {@link SlaveConfigBatch#getError}
+     *  may then be used to find out which slaves had problems.
+     */
+    public void reconfigure(SlaveConfigBatch batch) throws Exception
+    {
+        CheckSelf();
+        batch.reconfigureLocal(nativePtr_);
+    }
+
+    /**
+     *  Performs a time step.
+     *  <p>
+     *  Before the first step, the slaves are told to start the simulation.
+     *  After each step, the values of all connected output variables are
+     *  transferred to the inputs they are connected to.
+     *
+     *  @param stepSize
+     *      The step size.  This must be a positive number.
+     *
+     *  @throws Exception
+     *      If one or more slaves failed to perform the step.  The execution
+     *      cannot be used after this.
+     */
+    public void step(double stepSize) throws Exception
+    {
+        CheckSelf();
+        if (stepSize <= 0.0) {
+            throw new IllegalArgumentException("Nonpositive step size");
+        }
+        final double t = currentTime();
+        simulateNative(nativePtr_, t, 0, t + stepSize, 1, stepSize, 0);
+        simTime_ = t + stepSize;
+    }
+
+    /** Returns the current simulation time. */
+    public double currentTime()
+    {
+        return simTime_;
+    }
+
+    /**
+     *  Performs multiple time steps in sequence, applying the events of a
+     *  compiled scenario along the way.
+     *  <p>
+     *  This works like
+     *  {@link Execution#simulateCompiled(double, double, CompiledScenario, int, int, SimulationProgressMonitor)},
+     *  except that there are no timeouts.  The time steps are performed in
+     *  native code, and control only returns to Java at scenario event time
+     *  points and when the progress monitor is due to be called (see
+     *  {@link ExecutionOptions#setProgressInterval}).
+     *
+     *  @param duration
+     *      How much the simulation time should be advanced.
+     *      This must be a positive number.
+     *  @param stepSize
+     *      The time step size.  This must be a positive number.
+     *  @param scenario
+     *      A scenario compiled for this execution, or <code>null</code> if
+     *      there are no events.
+     *  @param progressMonitor
+     *      An object for monitoring the simulation. May be null if this
+     *      functionality is not needed.
+     */
+    public void simulate(
+        double duration,
+        double stepSize,
+        CompiledScenario scenario,
+        SimulationProgressMonitor progressMonitor)
+        throws Exception
+    {
+        if (duration <= 0.0) {
+            throw new IllegalArgumentException("Nonpositive duration");
+        }
+        if (stepSize <= 0.0) {
+            throw new IllegalArgumentException("Nonpositive step size");
+        }
+
+        if (progressMonitor != null && !progressMonitor.progress(simTime_)) {
+            return;
+        }
+
+        final int timePointCount =
+            (scenario == null) ? 0 : scenario.getTimePointCount();
+        int next = (scenario == null) ? 0 : scenario.findTimePoint(currentTime());
+
+        final double endTime = currentTime() + duration;
+        while (true) {
+            final boolean eventDue =
+                next < timePointCount && scenario.getTimePoint(next) < endTime;
+            final double nextStop = eventDue ? scenario.getTimePoint(next) : endTime;
+            if (!simulateUntil(nextStop, stepSize, progressMonitor)) return;
+            if (!eventDue) break;
+            reconfigure(scenario.getBatch(next));
+            ++next;
+        }
+    }
+
+    /**
+     *  Forwards to {@link #simulate(double, double, CompiledScenario, SimulationProgressMonitor)},
+     *  with <code>scenario = null</code> and <code>progressMonitor = null</code>.
+     */
+    public void simulate(double duration, double stepSize) throws Exception
+    {
+        simulate(duration, stepSize, null, null);
+    }
+
+    /** Returns the current value of a real variable. */
+    public double getRealValue(Variable variable) throws Exception
+    {
+        CheckSelf();
+        return getRealValueNative(
+            nativePtr_, variable.getSlaveID(), variable.getVariableID());
+    }
+
+    /** Returns the current value of an integer variable. */
+    public int getIntegerValue(Variable variable) throws Exception
+    {
+        CheckSelf();
+        return getIntegerValueNative(
+            nativePtr_, variable.getSlaveID(), variable.getVariableID());
+    }
+
+    /** Returns the current value of a boolean variable. */
+    public boolean getBooleanValue(Variable variable) throws Exception
+    {
+        CheckSelf();
+        return getBooleanValueNative(
+            nativePtr_, variable.getSlaveID(), variable.getVariableID());
+    }
+
+    /** Returns the current value of a string variable. */
+    public String getStringValue(Variable variable) throws Exception
+    {
+        CheckSelf();
+        return getStringValueNative(
+            nativePtr_, variable.getSlaveID(), variable.getVariableID());
+    }
+
+
+    // =========================================================================
+
+    private void CheckSelf()
+    {
+        if (nativePtr_ == 0) {
+            throw new IllegalStateException("LocalExecution has been closed");
+        }
+    }
+
+    // Advances the simulation to targetTime, in steps of stepSize, the last
+    // of which may be shortened, and returns false iff the simulation was
+    // aborted by the progress monitor.  See Execution.simulateUntil().
+    private boolean simulateUntil(
+        double targetTime,
+        double stepSize,
+        SimulationProgressMonitor progressMonitor)
+        throws Exception
+    {
+        CheckSelf();
+        if (targetTime == currentTime()) return true;
+        assert(targetTime > currentTime());
+
+        final double origin = currentTime();
+        long tick = 0;
+        final long targetTick = Math.max(
+            1, (long) Math.ceil((targetTime - origin) / stepSize - TICK_TOLERANCE));
+
+        final int maxSteps = (progressMonitor == null) ? 0 : progressInterval_;
+        while (tick < targetTick) {
+            tick = simulateNative(
+                nativePtr_, origin, tick, targetTime, targetTick, stepSize, maxSteps);
+            simTime_ = (tick == targetTick) ? targetTime : origin + tick * stepSize;
+            if (progressMonitor != null && !progressMonitor.progress(currentTime())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The same as Execution.TICK_TOLERANCE.
+    private static final double TICK_TOLERANCE = 1e-6;
+
+    private static native long createNative(
+        String executionName, double startTime, double maxTime)
+        throws Exception;
+    private static native void destroyNative(long selfPtr);
+    private static native SlaveID addSlaveNative(
+        long selfPtr, long instancePtr, String name)
+        throws Exception;
+    private static native void setParallelismNative(long selfPtr, int threadCount)
+        throws Exception;
+    static native void reconfigureBatchNative(
+        long selfPtr,
+        SlaveID[] slaves,
+        int slaveCount,
+        int settingCount,
+        int[] slaveIndices,
+        int[] variableIDs,
+        byte[] valueTypes,
+        double[] realValues,
+        int[] integerValues,
+        boolean[] booleanValues,
+        String[] stringValues,
+        int[] connectedSlaveIndices,
+        int[] connectedVariableIDs,
+        String[] errors)
+        throws Exception;
+    private static native long simulateNative(
+        long selfPtr,
+        double origin,
+        long tick,
+        double targetTime,
+        long targetTick,
+        double stepSize,
+        int maxSteps)
+        throws Exception;
+    private static native double getRealValueNative(
+        long selfPtr, SlaveID slave, int variableID)
+        throws Exception;
+    private static native int getIntegerValueNative(
+        long selfPtr, SlaveID slave, int variableID)
+        throws Exception;
+    private static native boolean getBooleanValueNative(
+        long selfPtr, SlaveID slave, int variableID)
+        throws Exception;
+    private static native String getStringValueNative(
+        long selfPtr, SlaveID slave, int variableID)
+        throws Exception;
+
+    private long nativePtr_ = 0;
+    private NativeResources.Handle handle_;
+    private double simTime_;
+    private final int progressInterval_;
+    private int parallelism_ = 1;
+
+    // The native execution only has weak references to AbstractInstance
+    // objects, so we keep all the instances alive until it is closed.
+    private final List<Instance> instances_ = new ArrayList<Instance>();
+}
@@ -11,6 +11,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import no.viproma.coral.master.EntityNotFoundException;
 import no.viproma.coral.master.Execution;
@@ -19,10 +20,10 @@ import no.viproma.coral.master.ModelSlaveMap;
 import no.viproma.coral.master.ProviderCluster;
 import no.viproma.coral.model.Causality;
 import no.viproma.coral.model.ScalarValue;
-import no.viproma.coral.model.SlaveID;
+import no.viproma.coral.model.SlaveTypeDescription;
 import no.viproma.coral.model.Variability;
 import no.viproma.coral.model.VariableDescription;
-import no.viproma.coral.model.VariableSetting;
+import no.viproma.coral.slave.Instance;
 
 
 /**
@@ -41,6 +42,11 @@ import no.viproma.coral.model.VariableSetting;
  * are caught by this class, but there are some problems that can only be
  * detected when the slaves are instantiated.  Examples include network issues,
  * slaves that can only be instantiated a limited number of times, etc.
+ * <p>
+ * A model may also be built without a cluster, from slave type descriptions
+ * obtained elsewhere (e.g. {@link no.viproma.coral.fmi.FMU#getDescription}),
+ * and applied to a {@link LocalExecution} with slave instances supplied by
+ * the caller.
  */
 public class ModelBuilder
 {
@@ -82,6 +88,19 @@ public class ModelBuilder
         private Variable input_;
     }
 
+    /**
+     * Constructor which does not use a cluster.
+     * <p>
+     * Slaves can then only be added with
+     * {@link #addSlave(String, SlaveTypeDescription)}, and the model can only
+     * be applied to a {@link LocalExecution}, or to an {@link Execution}
+     * if all slaves can be taken from a {@linkplain #setSlavePool slave pool}.
+     */
+    public ModelBuilder()
+    {
+        this(null, 0, null, true);
+    }
+
     /**
      * Constructor.
      *
@@ -94,16 +113,53 @@ public class ModelBuilder
      */
     public ModelBuilder(ProviderCluster cluster, int commTimeout_ms)
     {
-        if (cluster == null) {
+        this(cluster, commTimeout_ms, null);
+    }
+
+    /**
+     * Constructor which uses a slave type cache.
+     * <p>
+     * Slave types are looked up in <code>slaveTypeCache</code> before the
+     * cluster is queried, and when the cluster is queried, the result is
+     * stored in the cache.  This way, the (potentially slow) slave type
+     * discovery can be skipped entirely when all the slave types used in
+     * the model are in the cache.
+     *
+     * @param cluster
+     *      A communication interface for the slave providers which will
+     *      be used to instantiate slaves.
+     * @param commTimeout_ms
+     *      The communications timeout used for requests to slave providers.
+     *      The value -1 means no timeout.
+     * @param slaveTypeCache
+     *      A slave type cache, or null to always query the cluster.
+     */
+    public ModelBuilder(
+        ProviderCluster cluster,
+        int commTimeout_ms,
+        SlaveTypeCache slaveTypeCache)
+    {
+        this(cluster, commTimeout_ms, slaveTypeCache, false);
+    }
+
+    private ModelBuilder(
+        ProviderCluster cluster,
+        int commTimeout_ms,
+        SlaveTypeCache slaveTypeCache,
+        boolean allowNoCluster)
+    {
+        if (cluster == null && !allowNoCluster) {
             throw new IllegalArgumentException("cluster is null");
         }
         cluster_               = cluster;
+        slaveTypeCache_        = slaveTypeCache;
         clusterCommTimeout_ms_ = commTimeout_ms;
         clusterSlaveTypes_     = new HashMap<String, ProviderCluster.SlaveType>();
         modelSlaveTypes_       = new HashMap<String, ModelSlaveType>();
         slaves_                = new HashMap<String, ModelSlaveType>();
         initialValues_         = new HashMap<String, Map<VariableDescription, ScalarValue>>();
         connections_           = new HashMap<String, Map<VariableDescription, Variable>>();
+        placementHints_        = new HashMap<String, String>();
     }
 
     /**
@@ -141,6 +197,57 @@ public class ModelBuilder
         slaves_.put(slaveName, type);
     }
 
+    /**
+     * Adds a slave of a type which is described directly, rather than
+     * looked up in the cluster.
+     * <p>
+     * This is mainly meant for models which are to be applied to a
+     * {@link LocalExecution}, where the caller supplies the slave instances.
+     * Slave types are identified by name, as in
+     * {@link #addSlave(String, String)}, so all slaves of the same type must
+     * be added with identical descriptions.
+     *
+     * @param slaveName
+     *      A unique name which will be associated with the slave. This has
+     *      the same restrictions as for {@link #addSlave(String, String)}.
+     * @param typeDescription
+     *      A description of the slave type.
+     *
+     * @throws IllegalArgumentException
+     *      If <code>slaveName</code> is not a valid name.
+     * @throws ModelConstructionException
+     *      If a slave with the given name already exists in the model, or
+     *      if a different slave type with the same name has already been
+     *      used.
+     */
+    public void addSlave(String slaveName, SlaveTypeDescription typeDescription)
+        throws ModelConstructionException
+    {
+        if (!isValidSlaveName(slaveName)) {
+            throw new IllegalArgumentException("Invalid slave name: " + slaveName);
+        }
+        if (typeDescription == null) {
+            throw new IllegalArgumentException("typeDescription is null");
+        }
+        if (slaves_.containsKey(slaveName)) {
+            throw new ModelConstructionException(
+                "A slave with the given name already exists: " + slaveName);
+        }
+        final String typeName = typeDescription.getName();
+        ModelSlaveType type = modelSlaveTypes_.get(typeName);
+        if (type == null) {
+            type = new ModelSlaveType(
+                new ProviderCluster.SlaveType(typeDescription, new String[0]));
+            modelSlaveTypes_.put(typeName, type);
+        } else if (!type.clusterSlaveType.getSlaveTypeDescription().getUUID()
+                    .equals(typeDescription.getUUID())) {
+            throw new ModelConstructionException(
+                "A different slave type with the same name has already been used: "
+                + typeName);
+        }
+        slaves_.put(slaveName, type);
+    }
+
     private static boolean isValidSlaveName(String s)
     {
         if (s.isEmpty()) return false;
@@ -193,6 +300,173 @@ public class ModelBuilder
         return st.clusterSlaveType;
     }
 
+    /**
+     * Specifies which slave provider should instantiate a slave.
+     * <p>
+     * By default, the provider is selected by the cluster's
+     * {@linkplain ProviderCluster#setPlacementStrategy placement strategy}
+     * when {@link #apply apply()} is called.  This function overrides that
+     * choice for a single slave, e.g. to keep slaves which exchange a lot
+     * of data on the same machine.
+     *
+     * @param slaveName
+     *      The name of a slave which has previously been added to the
+     *      simulation.
+     * @param slaveProviderID
+     *      The ID of a slave provider which offers the slave's type, or null
+     *      to let the placement strategy decide.
+     *
+     * @throws EntityNotFoundException
+     *      If <code>slaveName</code> does not refer to a slave in the
+     *      simulation.
+     * @throws ModelConstructionException
+     *      If the given provider does not offer the slave's type.
+     */
+    public void setPlacementHint(String slaveName, String slaveProviderID)
+        throws EntityNotFoundException, ModelConstructionException
+    {
+        ProviderCluster.SlaveType type = getSlaveTypeOf(slaveName);
+        if (slaveProviderID == null) {
+            placementHints_.remove(slaveName);
+            return;
+        }
+        for (String provider : type.getProviders()) {
+            if (provider.equals(slaveProviderID)) {
+                placementHints_.put(slaveName, slaveProviderID);
+                return;
+            }
+        }
+        throw new ModelConstructionException(
+            "Slave provider " + slaveProviderID + " does not offer the type of slave "
+            + slaveName + " (" + type.getSlaveTypeDescription().getName() + ")");
+    }
+
+    /**
+     * Returns the slave provider specified with {@link #setPlacementHint},
+     * or null if none has been specified for the given slave.
+     */
+    public String getPlacementHint(String slaveName)
+    {
+        return placementHints_.get(slaveName);
+    }
+
+    /**
+     * Assigns slaves to slave providers so as to minimise network traffic
+     * between them.
+     * <p>
+     * This partitions the model's connection graph across the providers
+     * which offer the slave types in the model, such that as few
+     * connections as possible cross a provider boundary, while the number
+     * of slaves on each provider is kept roughly proportional to its
+     * capacity.  Each slave provider is assumed to run on a separate host.
+     * <p>
+     * Slaves which already have a {@linkplain #setPlacementHint placement
+     * hint} keep it.  All other slaves are given a placement hint
+     * according to the computed plan, so that {@link #apply apply()}
+     * will instantiate each slave on its assigned provider.  Slaves that
+     * are added later are placed by the cluster's placement strategy,
+     * unless this function is called again.  Slaves whose type is not
+     * offered by any provider, such as those added with
+     * {@link #addSlave(String, SlaveTypeDescription)}, are left out of
+     * the plan and keep their current placement hint, if any.
+     *
+     * @param capacities
+     *      The relative capacity of each provider, keyed by provider ID,
+     *      e.g. its number of processor cores.  Providers which are not
+     *      in the map are assumed to have capacity 1.  May be null, in
+     *      which case all providers are assumed to have equal capacity.
+     * @param maxImbalance
+     *      How much the number of slaves on a provider may exceed its
+     *      share, as a fraction of that share.  For example, 0.1 allows
+     *      10% more slaves than a perfectly balanced placement.  Note that
+     *      the limit cannot always be respected, since some slave types
+     *      may only be offered by a few providers.
+     *
+     * @return
+     *      The provider ID assigned to each slave which has candidate
+     *      providers, keyed by slave name.
+     */
+    public Map<String, String> planPlacement(
+        Map<String, Double> capacities, double maxImbalance)
+    {
+        if (!(maxImbalance >= 0.0)) {
+            throw new IllegalArgumentException("Negative imbalance");
+        }
+
+        // Index the slaves and providers, in a deterministic order.
+        final List<String> slaveNames = new ArrayList<String>(new TreeSet<String>(slaves_.keySet()));
+        final Map<String, Integer> slaveIndices = new HashMap<String, Integer>();
+        final TreeSet<String> providerSet = new TreeSet<String>();
+        for (int i = 0; i < slaveNames.size(); ++i) {
+            slaveIndices.put(slaveNames.get(i), i);
+            for (String p : slaves_.get(slaveNames.get(i)).clusterSlaveType.getProviders()) {
+                providerSet.add(p);
+            }
+        }
+        final List<String> providers = new ArrayList<String>(providerSet);
+        final Map<String, Integer> providerIndices = new HashMap<String, Integer>();
+        final double[] providerCapacities = new double[providers.size()];
+        for (int i = 0; i < providers.size(); ++i) {
+            providerIndices.put(providers.get(i), i);
+            final Double c = capacities == null ? null : capacities.get(providers.get(i));
+            if (c != null && !(c > 0.0)) {
+                throw new IllegalArgumentException("Capacity must be positive");
+            }
+            providerCapacities[i] = c == null ? 1.0 : c;
+        }
+
+        final PlacementPlanner planner = new PlacementPlanner(
+            slaveNames.size(), providerCapacities, maxImbalance);
+        for (int i = 0; i < slaveNames.size(); ++i) {
+            final String name = slaveNames.get(i);
+            final List<Integer> candidates = new ArrayList<Integer>();
+            for (String p : slaves_.get(name).clusterSlaveType.getProviders()) {
+                candidates.add(providerIndices.get(p));
+            }
+            final int[] candidateArray = new int[candidates.size()];
+            for (int j = 0; j < candidateArray.length; ++j) {
+                candidateArray[j] = candidates.get(j);
+            }
+            planner.setCandidates(i, candidateArray);
+
+            final String hint = placementHints_.get(name);
+            if (hint != null) planner.fix(i, providerIndices.get(hint));
+        }
+        for (Map.Entry<String, Map<VariableDescription, Variable>> slaveConns :
+             connections_.entrySet())
+        {
+            final int input = slaveIndices.get(slaveConns.getKey());
+            for (Variable output : slaveConns.getValue().values()) {
+                planner.connect(input, slaveIndices.get(output.getSlaveName()));
+            }
+        }
+
+        final int[] assignment = planner.plan();
+        final Map<String, String> plan = new HashMap<String, String>();
+        for (int i = 0; i < slaveNames.size(); ++i) {
+            if (assignment[i] < 0) continue;
+            final String provider = providers.get(assignment[i]);
+            plan.put(slaveNames.get(i), provider);
+            placementHints_.put(slaveNames.get(i), provider);
+        }
+        return plan;
+    }
+
+    /**
+     * Specifies a pool of pre-instantiated slaves which {@link #apply apply()}
+     * should take slaves from, when it has slaves of the right type (and on
+     * the right provider, if a {@linkplain #setPlacementHint placement hint}
+     * has been given).  Slaves which cannot be taken from the pool are
+     * instantiated as usual.
+     *
+     * @param pool
+     *      A slave pool, or null to always instantiate new slaves.
+     */
+    public void setSlavePool(SlavePool pool)
+    {
+        slavePool_ = pool;
+    }
+
     /**
      * Sets the initial value of a variable, replacing any previous value.
      *
@@ -448,6 +722,29 @@ public class ModelBuilder
         return ret;
     }
 
+    /**
+     * Creates an immutable snapshot of the model, which can be applied to
+     * any number of executions.
+     * <p>
+     * All variable names are resolved and all initial values and
+     * connections are encoded in the returned object, so that
+     * {@link PreparedModel#apply} has nothing left to do but instantiate
+     * and configure the slaves.  The prepared model is not affected by
+     * later changes to this <code>ModelBuilder</code>.  It uses the
+     * cluster, slave type cache and slave pool of this object.
+     */
+    public PreparedModel prepare()
+    {
+        return new PreparedModel(
+            cluster_,
+            slaveTypeCache_,
+            slavePool_,
+            slaves_,
+            placementHints_,
+            initialValues_,
+            connections_);
+    }
+
     /**
      * Transfers the model structure to an execution controller.
      * <p>
@@ -458,13 +755,18 @@ public class ModelBuilder
      * <p>
      * It is strongly recommended that the execution
      * be in a "pristine" state, i.e. with no slaves already added.
+     * <p>
+     * This is equivalent to <code>prepare().apply(...)</code>.  When the
+     * same model is to be applied many times, it is more efficient to
+     * call {@link #prepare} once and reuse the result.
      *
      * @param execution
      *      The execution controller to which the model structure should be
      *      transfered.
      * @param instantiationTimeout_ms
-     *      The timeout that will be used for all
-     *      {@link ProviderCluster#instantiateSlave} calls.
+     *      How much time each slave gets to start up.  The slaves are
+     *      instantiated concurrently, using
+     *      {@link ProviderCluster#instantiateSlaves}.
      * @param commandTimeout_ms
      *      The timeout that will be used for all
      *      <code>ExecutionController</code> method calls.
@@ -478,63 +780,35 @@ public class ModelBuilder
         int commandTimeout_ms)
         throws Exception
     {
-        // Instantiate all slaves and add them to the execution
-        List<AddedSlave> slavesToAdd = new ArrayList<AddedSlave>();
-        for (Map.Entry<String, ModelSlaveType> e : slaves_.entrySet()) {
-            slavesToAdd.add(new AddedSlave(
-                cluster_.instantiateSlave(
-                    e.getValue().clusterSlaveType,
-                    instantiationTimeout_ms),
-                e.getKey()));
-        }
-        if (!slavesToAdd.isEmpty()) {
-            execution.addSlaves(slavesToAdd, commandTimeout_ms);
-        }
-
-        // Extract the slave IDs from the list of AddedSlaves
-        Map<String, SlaveID> slaveIDs = new HashMap<String, SlaveID>();
-        for (AddedSlave slave : slavesToAdd) {
-            slaveIDs.put(slave.getName(), slave.getID());
-        }
-
-        // Set initial values and make connections
-        List<SlaveConfig> slaveConfigs = new ArrayList<SlaveConfig>();
-        for (AddedSlave slave : slavesToAdd) {
-            List<VariableSetting> varSettings = new ArrayList<VariableSetting>();
-
-            Map<VariableDescription, ScalarValue> initialValues =
-                initialValues_.get(slave.getName());
-            if (initialValues != null) {
-                for (Map.Entry<VariableDescription, ScalarValue> iv :
-                        initialValues.entrySet()) {
-                    varSettings.add(new VariableSetting(
-                        iv.getKey().getID(), iv.getValue()));
-                }
-            }
-
-            Map<VariableDescription, ModelBuilder.Variable> connections =
-                connections_.get(slave.getName());
-            if (connections != null) {
-                for (Map.Entry<VariableDescription, ModelBuilder.Variable> cn :
-                        connections.entrySet()) {
-                    VariableDescription ownVar = cn.getKey();
-                    VariableDescription connVar = cn.getValue().getVariable();
-                    SlaveID connSlave = slaveIDs.get(cn.getValue().getSlaveName());
-                    varSettings.add(new VariableSetting(
-                        ownVar.getID(),
-                        new no.viproma.coral.model.Variable(connSlave, connVar.getID())));
-                }
-            }
-
-            if (!varSettings.isEmpty()) {
-                slaveConfigs.add(new SlaveConfig(slave.getID(), varSettings));
-            }
-        }
-        if (!slaveConfigs.isEmpty()) {
-            execution.reconfigure(slaveConfigs, commandTimeout_ms);
-        }
+        return prepare().apply(execution, instantiationTimeout_ms, commandTimeout_ms);
+    }
 
-        return new ModelSlaveMap(slaveIDs, slaves_);
+    /**
+     * Transfers the model structure to a local execution.
+     * <p>
+     * This adds the given slave instances to the execution, sets initial
+     * variable values and makes connections.  It is equivalent to
+     * <code>prepare().apply(execution, instances)</code>.
+     *
+     * @param execution
+     *      The execution to which the model structure should be transfered.
+     * @param instances
+     *      One slave instance for each slave in the model, keyed by slave
+     *      name.  The instances must be of the types that the slaves were
+     *      added with.
+     *
+     * @return
+     *      An object which contains mappings from slave names to slave IDs.
+     *
+     * @throws ModelConstructionException
+     *      If an instance is missing or has the wrong type.
+     */
+    public ModelSlaveMap apply(
+        LocalExecution execution,
+        Map<String, ? extends Instance> instances)
+        throws Exception
+    {
+        return prepare().apply(execution, instances);
     }
 
 
@@ -573,9 +847,15 @@ public class ModelBuilder
         throws EntityNotFoundException, Exception
     {
         ProviderCluster.SlaveType ret = clusterSlaveTypes_.get(typeName);
-        if (ret == null) {
-            for (ProviderCluster.SlaveType st :
-                    cluster_.getSlaveTypes(clusterCommTimeout_ms_)) {
+        if (ret == null && slaveTypeCache_ != null) {
+            ret = slaveTypeCache_.findSlaveType(typeName);
+            if (ret != null) clusterSlaveTypes_.put(typeName, ret);
+        }
+        if (ret == null && cluster_ != null) {
+            Iterable<ProviderCluster.SlaveType> slaveTypes =
+                cluster_.getSlaveTypes(clusterCommTimeout_ms_);
+            if (slaveTypeCache_ != null) slaveTypeCache_.update(slaveTypes);
+            for (ProviderCluster.SlaveType st : slaveTypes) {
                 // We only update our map if the slave type isn't there already,
                 // so the objects in clusterSlaveTypes_ don't get out of sync
                 // with those stored in modelSlaveTypes_.
@@ -626,10 +906,13 @@ public class ModelBuilder
     }
 
     private ProviderCluster cluster_;
+    private SlaveTypeCache slaveTypeCache_;
+    private SlavePool slavePool_;
     private int clusterCommTimeout_ms_;
     private Map<String, ProviderCluster.SlaveType> clusterSlaveTypes_;
     private Map<String, ModelSlaveType> modelSlaveTypes_;
     private Map<String, ModelSlaveType> slaves_;
     private Map<String, Map<VariableDescription, ScalarValue>> initialValues_;
     private Map<String, Map<VariableDescription, Variable>> connections_;
+    private Map<String, String> placementHints_;
 }
@@ -5,7 +5,6 @@
  */
 package no.viproma.coral.master;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import no.viproma.coral.master.EntityNotFoundException;
@@ -19,10 +18,10 @@ import no.viproma.coral.model.VariableDescription;
  * A mapping between slave names and slave IDs for an execution created by
  * {@link ModelBuilder}.
  * <p>
- * Objects of this type are created and returned by {@link ModelBuilder#apply},
- * and contains information about how the names specified to the
- * <code>ModelBuilder</code> are mapped to the numeric IDs used by
- * {@link Execution}.
+ * Objects of this type are created and returned by {@link ModelBuilder#apply}
+ * and {@link PreparedModel#apply}, and contains information about how the
+ * names specified to the <code>ModelBuilder</code> are mapped to the
+ * numeric IDs used by {@link Execution}.
  */
 public class ModelSlaveMap
 {
@@ -30,18 +29,17 @@ public class ModelSlaveMap
     //       to be a private class in ModelBuilder.  (It used to be, but then
     //       it was made package private for use here, solely because I was
     //       too lazy to do it properly.)
+
+    // The map shares slaveInfo with the caller, who must guarantee that it
+    // is never modified.  PreparedModel, which applies the same model many
+    // times, keeps its own deep copy of the ModelBuilder's slave information
+    // for this purpose.
     ModelSlaveMap(
         Map<String, SlaveID> slaveIDs,
         Map<String, ModelBuilder.ModelSlaveType> slaveInfo)
     {
         slaveIDs_ = slaveIDs;
-
-        // Do a deep copy of the non-immutable objects in slaveInfo, to make
-        // this object independent of changes in the ModelBuilder.
-        slaveInfo_ = new HashMap<String, ModelBuilder.ModelSlaveType>(slaveInfo);
-        for (ModelBuilder.ModelSlaveType e : slaveInfo_.values()) {
-            e.variables = new HashMap<String, VariableDescription>(e.variables);
-        }
+        slaveInfo_ = slaveInfo;
     }
 
     /**
@@ -81,16 +79,30 @@ public class ModelSlaveMap
     {
         SlaveID slaveID = getSlaveID(slaveName);
         VariableDescription varDesc =
-            slaveInfo_.get(slaveName).variables.get(variableName);
+            getVariableDescription(slaveName, variableName);
+        return new Variable(slaveID, varDesc.getID());
+    }
+
+    // Returns the description of a variable, or throws if the slave or the
+    // variable was not found in the model.
+    VariableDescription getVariableDescription(
+        String slaveName, String variableName)
+        throws EntityNotFoundException
+    {
+        ModelBuilder.ModelSlaveType slaveInfo = slaveInfo_.get(slaveName);
+        if (slaveInfo == null) {
+            throw new EntityNotFoundException("Unknown slave: " + slaveName);
+        }
+        VariableDescription varDesc = slaveInfo.variables.get(variableName);
         if (varDesc == null) {
             throw new EntityNotFoundException(
                 "Unknown variable: " + slaveName + "." + variableName);
         }
-        return new Variable(slaveID, varDesc.getID());
+        return varDesc;
     }
 
     // =========================================================================
 
-    private Map<String, SlaveID> slaveIDs_;
-    private Map<String, ModelBuilder.ModelSlaveType> slaveInfo_;
+    private final Map<String, SlaveID> slaveIDs_;
+    private final Map<String, ModelBuilder.ModelSlaveType> slaveInfo_;
 }
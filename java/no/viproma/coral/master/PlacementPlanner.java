@@ -0,0 +1,237 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.master;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Partitions a graph of connected slaves across slave providers.
+ * <p>
+ * The goal is to minimise the total weight of the connections whose
+ * endpoints end up on different providers, while keeping the number of
+ * slaves on each provider roughly proportional to its capacity.  The
+ * slaves are first placed greedily, in an order where each slave is the
+ * one most strongly connected to those already placed, so that tightly
+ * coupled groups are filled into the same provider.  The placement is then
+ * refined by repeatedly moving single slaves to the provider where most
+ * of their connections are, as long as that reduces the cut and respects
+ * the load limits.
+ * <p>
+ * Slaves and providers are identified by index.  This class is only used
+ * by {@link ModelBuilder#planPlacement}.
+ */
+final class PlacementPlanner
+{
+    // Maximum number of refinement passes over all slaves.
+    private static final int MAX_REFINEMENT_PASSES = 20;
+
+    /**
+     * Constructor.
+     *
+     * @param slaveCount
+     *      The number of slaves.
+     * @param capacities
+     *      The relative capacity of each provider.  All must be positive.
+     * @param maxImbalance
+     *      How much the number of slaves on a provider may exceed its fair
+     *      share, as a fraction of that share.
+     */
+    PlacementPlanner(int slaveCount, double[] capacities, double maxImbalance)
+    {
+        slaveCount_ = slaveCount;
+        providerCount_ = capacities.length;
+        capacities_ = capacities.clone();
+        candidates_ = new int[slaveCount][];
+        fixed_ = new int[slaveCount];
+        Arrays.fill(fixed_, -1);
+        neighbours_ = new ArrayList<Map<Integer, Integer>>(slaveCount);
+        for (int i = 0; i < slaveCount; ++i) {
+            neighbours_.add(new HashMap<Integer, Integer>());
+        }
+
+        double totalCapacity = 0.0;
+        for (double c : capacities) totalCapacity += c;
+        limits_ = new int[providerCount_];
+        for (int p = 0; p < providerCount_; ++p) {
+            limits_[p] = Math.max(1, (int) Math.ceil(
+                slaveCount * capacities[p] / totalCapacity * (1.0 + maxImbalance)));
+        }
+    }
+
+    /** Specifies which providers may host slave <code>s</code>. */
+    void setCandidates(int s, int[] providers)
+    {
+        candidates_[s] = providers;
+    }
+
+    /** Pins slave <code>s</code> to provider <code>p</code>. */
+    void fix(int s, int p)
+    {
+        fixed_[s] = p;
+    }
+
+    /** Adds a connection between two slaves. */
+    void connect(int s1, int s2)
+    {
+        if (s1 == s2) return;
+        addWeight(s1, s2);
+        addWeight(s2, s1);
+    }
+
+    /**
+     * Computes the placement.
+     *
+     * @return
+     *      The provider index for each slave, or -1 for slaves that have
+     *      no candidate providers.
+     */
+    int[] plan()
+    {
+        final int[] assignment = new int[slaveCount_];
+        Arrays.fill(assignment, -1);
+        final int[] loads = new int[providerCount_];
+
+        // Fixed slaves go first, so their neighbours are drawn to them.
+        final int[] attraction = new int[slaveCount_];
+        final boolean[] placed = new boolean[slaveCount_];
+        for (int s = 0; s < slaveCount_; ++s) {
+            if (fixed_[s] >= 0) place(s, fixed_[s], assignment, loads, placed, attraction);
+        }
+
+        // Greedy placement, always picking the unplaced slave which is most
+        // strongly connected to the placed ones, breaking ties by degree.
+        for (int n = 0; n < slaveCount_; ++n) {
+            int next = -1;
+            for (int s = 0; s < slaveCount_; ++s) {
+                if (placed[s]) continue;
+                if (next < 0
+                    || attraction[s] > attraction[next]
+                    || (attraction[s] == attraction[next] && degree(s) > degree(next)))
+                {
+                    next = s;
+                }
+            }
+            if (next < 0) break;
+            place(next, bestProvider(next, assignment, loads), assignment, loads, placed, attraction);
+        }
+
+        // Refinement
+        for (int pass = 0; pass < MAX_REFINEMENT_PASSES; ++pass) {
+            boolean moved = false;
+            for (int s = 0; s < slaveCount_; ++s) {
+                if (fixed_[s] >= 0 || assignment[s] < 0) continue;
+                final int from = assignment[s];
+                final Map<Integer, Integer> weights = weightsByProvider(s, assignment);
+                final int current = get(weights, from);
+                int to = from;
+                int bestGain = 0;
+                for (int p : candidates_[s]) {
+                    if (p == from || loads[p] >= limits_[p]) continue;
+                    final int gain = get(weights, p) - current;
+                    if (gain > bestGain) {
+                        to = p;
+                        bestGain = gain;
+                    }
+                }
+                if (to != from) {
+                    --loads[from];
+                    ++loads[to];
+                    assignment[s] = to;
+                    moved = true;
+                }
+            }
+            if (!moved) break;
+        }
+        return assignment;
+    }
+
+    // -------------------------------------------------------------------------
+
+    private void addWeight(int from, int to)
+    {
+        final Map<Integer, Integer> n = neighbours_.get(from);
+        n.put(to, get(n, to) + 1);
+    }
+
+    private int degree(int s)
+    {
+        int d = 0;
+        for (int w : neighbours_.get(s).values()) d += w;
+        return d;
+    }
+
+    // Places slave s on provider p, or just marks it as handled if p is -1.
+    private void place(
+        int s, int p, int[] assignment, int[] loads, boolean[] placed, int[] attraction)
+    {
+        placed[s] = true;
+        if (p < 0) return;
+        assignment[s] = p;
+        ++loads[p];
+        for (Map.Entry<Integer, Integer> e : neighbours_.get(s).entrySet()) {
+            attraction[e.getKey()] += e.getValue();
+        }
+    }
+
+    // Selects the provider with room that holds the most of the slave's
+    // neighbours, breaking ties by relative load.  If all candidates are
+    // full, the least loaded one is selected anyway.  Returns -1 if the
+    // slave has no candidates.
+    private int bestProvider(int s, int[] assignment, int[] loads)
+    {
+        final Map<Integer, Integer> weights = weightsByProvider(s, assignment);
+        int best = -1;
+        for (int p : candidates_[s]) {
+            if (best < 0 || isBetter(p, best, weights, loads)) best = p;
+        }
+        return best;
+    }
+
+    private boolean isBetter(
+        int p, int q, Map<Integer, Integer> weights, int[] loads)
+    {
+        final boolean pHasRoom = loads[p] < limits_[p];
+        final boolean qHasRoom = loads[q] < limits_[q];
+        if (pHasRoom != qHasRoom) return pHasRoom;
+        if (pHasRoom) {
+            final int pw = get(weights, p);
+            final int qw = get(weights, q);
+            if (pw != qw) return pw > qw;
+        }
+        return loads[p] / capacities_[p] < loads[q] / capacities_[q];
+    }
+
+    // Returns the total connection weight between slave s and the slaves
+    // placed on each provider.
+    private Map<Integer, Integer> weightsByProvider(int s, int[] assignment)
+    {
+        final Map<Integer, Integer> weights = new HashMap<Integer, Integer>();
+        for (Map.Entry<Integer, Integer> e : neighbours_.get(s).entrySet()) {
+            final int p = assignment[e.getKey()];
+            if (p >= 0) weights.put(p, get(weights, p) + e.getValue());
+        }
+        return weights;
+    }
+
+    private static int get(Map<Integer, Integer> map, int key)
+    {
+        final Integer value = map.get(key);
+        return value == null ? 0 : value;
+    }
+
+    private final int slaveCount_;
+    private final int providerCount_;
+    private final double[] capacities_;
+    private final int[] limits_;
+    private final int[][] candidates_;
+    private final int[] fixed_;
+    private final List<Map<Integer, Integer>> neighbours_;
+}
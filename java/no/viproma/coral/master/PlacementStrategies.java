@@ -0,0 +1,126 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.master;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/** Standard {@link PlacementStrategy} implementations. */
+public final class PlacementStrategies
+{
+    private PlacementStrategies() { }
+
+    /**
+     *  Returns a strategy which always selects the first provider that
+     *  offers the slave type.
+     */
+    public static PlacementStrategy first()
+    {
+        return new PlacementStrategy() {
+            public String selectProvider(
+                ProviderCluster.SlaveType slaveType,
+                Map<String, Integer> instanceCounts)
+            {
+                return slaveType.getProviders().iterator().next();
+            }
+        };
+    }
+
+    /**
+     *  Returns a strategy which cycles through the providers that offer
+     *  each slave type.
+     *  <p>
+     *  The returned object keeps track of its position for each slave type,
+     *  and should therefore not be shared between clusters.
+     */
+    public static PlacementStrategy roundRobin()
+    {
+        return new PlacementStrategy() {
+            public String selectProvider(
+                ProviderCluster.SlaveType slaveType,
+                Map<String, Integer> instanceCounts)
+            {
+                final String uuid = slaveType.getSlaveTypeDescription().getUUID();
+                Integer next = next_.get(uuid);
+                if (next == null) next = 0;
+
+                String selected = null;
+                int n = 0;
+                for (String provider : slaveType.getProviders()) {
+                    if (n == 0 || n == next) selected = provider;
+                    ++n;
+                }
+                next_.put(uuid, (next + 1) % n);
+                return selected;
+            }
+
+            private final Map<String, Integer> next_ = new HashMap<String, Integer>();
+        };
+    }
+
+    /**
+     *  Returns a strategy which selects the provider that has been assigned
+     *  the fewest slaves so far.
+     *  <p>
+     *  Ties are broken in favour of the provider listed first by
+     *  {@link ProviderCluster.SlaveType#getProviders}.
+     */
+    public static PlacementStrategy leastInstances()
+    {
+        return weighted(new HashMap<String, Double>(), 1.0);
+    }
+
+    /**
+     *  Returns a strategy which distributes slaves in proportion to the
+     *  capacity of each provider.
+     *  <p>
+     *  The selected provider is the one whose number of slaves, after the
+     *  new one has been added, is smallest relative to its capacity.
+     *
+     *  @param capacities
+     *      The relative capacity of each provider, keyed by provider ID,
+     *      e.g. its number of processor cores.  All values must be positive.
+     *      The map is copied.
+     *  @param defaultCapacity
+     *      The capacity assumed for providers which are not in
+     *      <code>capacities</code>.  Must be positive.
+     */
+    public static PlacementStrategy weighted(
+        Map<String, Double> capacities,
+        final double defaultCapacity)
+    {
+        if (!(defaultCapacity > 0.0)) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        for (Double c : capacities.values()) {
+            if (c == null || !(c > 0.0)) {
+                throw new IllegalArgumentException("Capacity must be positive");
+            }
+        }
+        final Map<String, Double> caps = new HashMap<String, Double>(capacities);
+        return new PlacementStrategy() {
+            public String selectProvider(
+                ProviderCluster.SlaveType slaveType,
+                Map<String, Integer> instanceCounts)
+            {
+                String selected = null;
+                double selectedLoad = Double.POSITIVE_INFINITY;
+                for (String provider : slaveType.getProviders()) {
+                    Integer count = instanceCounts.get(provider);
+                    Double capacity = caps.get(provider);
+                    double load = ((count == null ? 0 : count) + 1)
+                        / (capacity == null ? defaultCapacity : capacity);
+                    if (load < selectedLoad) {
+                        selected = provider;
+                        selectedLoad = load;
+                    }
+                }
+                return selected;
+            }
+        };
+    }
+}
@@ -0,0 +1,43 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.master;
+
+import java.util.Map;
+
+
+/**
+ *  A policy for selecting which slave provider should instantiate a slave.
+ *  <p>
+ *  A {@link ProviderCluster} consults its placement strategy whenever it is
+ *  asked to instantiate a slave of a given type without being told which
+ *  provider to use.  Some standard strategies are available from
+ *  {@link PlacementStrategies}.
+ *
+ *  @see ProviderCluster#setPlacementStrategy
+ */
+public interface PlacementStrategy
+{
+    /**
+     *  Selects a slave provider for a new slave.
+     *  <p>
+     *  This function is never called concurrently for the same
+     *  {@link ProviderCluster}.
+     *
+     *  @param slaveType
+     *      The type of the slave which is to be instantiated.
+     *  @param instanceCounts
+     *      The number of slaves which have been assigned to each slave
+     *      provider by the cluster so far, keyed by provider ID.  Providers
+     *      which have not been assigned any slaves are not included.
+     *
+     *  @return
+     *      One of the provider IDs returned by
+     *      {@link ProviderCluster.SlaveType#getProviders slaveType.getProviders()}.
+     */
+    String selectProvider(
+        ProviderCluster.SlaveType slaveType,
+        Map<String, Integer> instanceCounts);
+}
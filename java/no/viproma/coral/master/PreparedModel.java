@@ -0,0 +1,470 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.master;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import no.viproma.coral.model.ScalarValue;
+import no.viproma.coral.model.SlaveID;
+import no.viproma.coral.model.VariableDescription;
+import no.viproma.coral.net.SlaveLocator;
+import no.viproma.coral.slave.Instance;
+
+
+/**
+ * A model structure which is ready to be applied to executions.
+ * <p>
+ * Objects of this class are created with {@link ModelBuilder#prepare}, and
+ * contain an immutable snapshot of the model, with all names resolved to
+ * variable IDs and all initial values and connections encoded, by slave
+ * index, in the form that is passed to native code.  Applying a prepared model to an execution therefore involves
+ * no work apart from instantiating and configuring the slaves, which
+ * makes it well suited for setting up the same model many times, with
+ * only some {@linkplain Parameter parameter} values changed.
+ * <p>
+ * This class is thread safe.
+ */
+public final class PreparedModel
+{
+    /**
+     * A resolved reference to a variable in the model, which can be used
+     * to override its initial value in {@link PreparedModel#apply}.
+     * <p>
+     * A parameter may only be used with the prepared model it was obtained
+     * from.
+     */
+    public static final class Parameter
+    {
+        Parameter(
+            PreparedModel model,
+            int slaveIndex,
+            String slaveName,
+            VariableDescription variable)
+        {
+            model_ = model;
+            slaveIndex_ = slaveIndex;
+            slaveName_ = slaveName;
+            variable_ = variable;
+        }
+
+        /** Returns the slave name. */
+        public String getSlaveName() { return slaveName_; }
+
+        /** Returns the variable description. */
+        public VariableDescription getVariable() { return variable_; }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (!(other instanceof Parameter)) return false;
+            final Parameter p = (Parameter) other;
+            return p.model_ == model_
+                && p.slaveIndex_ == slaveIndex_
+                && p.variable_.getID() == variable_.getID();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * (31 * System.identityHashCode(model_) + slaveIndex_)
+                + variable_.getID();
+        }
+
+        final PreparedModel model_;
+        final int slaveIndex_;
+        private final String slaveName_;
+        private final VariableDescription variable_;
+    }
+
+    // The arguments are ModelBuilder's internal data structures, which are
+    // copied.
+    PreparedModel(
+        ProviderCluster cluster,
+        SlaveTypeCache slaveTypeCache,
+        SlavePool slavePool,
+        Map<String, ModelBuilder.ModelSlaveType> slaves,
+        Map<String, String> placementHints,
+        Map<String, Map<VariableDescription, ScalarValue>> initialValues,
+        Map<String, Map<VariableDescription, ModelBuilder.Variable>> connections)
+    {
+        cluster_ = cluster;
+        slaveTypeCache_ = slaveTypeCache;
+        slavePool_ = slavePool;
+
+        final int slaveCount = slaves.size();
+        slaveNames_ = new String[slaveCount];
+        slaveTypes_ = new ProviderCluster.SlaveType[slaveCount];
+        providers_ = new String[slaveCount];
+        slaveIndices_ = new HashMap<String, Integer>();
+        final Map<String, ModelBuilder.ModelSlaveType> slaveInfo =
+            new HashMap<String, ModelBuilder.ModelSlaveType>();
+        int i = 0;
+        for (Map.Entry<String, ModelBuilder.ModelSlaveType> e : slaves.entrySet()) {
+            slaveNames_[i] = e.getKey();
+            slaveTypes_[i] = e.getValue().clusterSlaveType;
+            providers_[i] = placementHints.get(e.getKey());
+            slaveIndices_.put(e.getKey(), i);
+            // ModelSlaveMap holds on to these, so make an independent copy.
+            final ModelBuilder.ModelSlaveType type =
+                new ModelBuilder.ModelSlaveType(e.getValue().clusterSlaveType);
+            type.variables = new HashMap<String, VariableDescription>(e.getValue().variables);
+            slaveInfo.put(e.getKey(), type);
+            ++i;
+        }
+        slaveInfo_ = Collections.unmodifiableMap(slaveInfo);
+
+        // Initial values first, so their indices in the template are the
+        // same as in initIndices_, then connections.
+        int initCount = 0;
+        for (Map<VariableDescription, ScalarValue> iv : initialValues.values()) {
+            initCount += iv.size();
+        }
+        int connCount = 0;
+        for (Map<VariableDescription, ModelBuilder.Variable> c : connections.values()) {
+            connCount += c.size();
+        }
+        initCount_ = initCount;
+        initIndices_ = new HashMap<Long, Integer>();
+        template_ = SlaveConfigBatch.template(slaveCount, initCount + connCount);
+        for (Map.Entry<String, Map<VariableDescription, ScalarValue>> slaveInits :
+                initialValues.entrySet()) {
+            final int slave = slaveIndices_.get(slaveInits.getKey());
+            for (Map.Entry<VariableDescription, ScalarValue> iv :
+                    slaveInits.getValue().entrySet()) {
+                initIndices_.put(key(slave, iv.getKey().getID()), template_.size());
+                template_.setValueAt(slave, iv.getKey().getID(), iv.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<VariableDescription, ModelBuilder.Variable>> slaveConns :
+                connections.entrySet()) {
+            final int input = slaveIndices_.get(slaveConns.getKey());
+            for (Map.Entry<VariableDescription, ModelBuilder.Variable> cn :
+                    slaveConns.getValue().entrySet()) {
+                template_.connectAt(
+                    input,
+                    cn.getKey().getID(),
+                    slaveIndices_.get(cn.getValue().getSlaveName()),
+                    cn.getValue().getVariable().getID());
+            }
+        }
+    }
+
+    /** Returns the number of slaves in the model. */
+    public int getSlaveCount()
+    {
+        return slaveNames_.length;
+    }
+
+    /**
+     * Looks up a variable whose initial value may be overridden in
+     * {@link #apply(Execution, Map, int, int)} or
+     * {@link #apply(LocalExecution, Map, Map)}.
+     *
+     * @throws EntityNotFoundException
+     *      If the slave or the variable was not found in the model.
+     */
+    public Parameter getParameter(String slaveName, String variableName)
+        throws EntityNotFoundException
+    {
+        final Integer slaveIndex = slaveIndices_.get(slaveName);
+        if (slaveIndex == null) {
+            throw new EntityNotFoundException("Unknown slave: " + slaveName);
+        }
+        final VariableDescription varDesc =
+            slaveInfo_.get(slaveName).variables.get(variableName);
+        if (varDesc == null) {
+            throw new EntityNotFoundException(
+                "Unknown variable: " + slaveName + "." + variableName);
+        }
+        return new Parameter(this, slaveIndex, slaveName, varDesc);
+    }
+
+    /**
+     * Forwards to {@link #apply(Execution, Map, int, int)} with no
+     * overrides.
+     */
+    public ModelSlaveMap apply(
+        Execution execution,
+        int instantiationTimeout_ms,
+        int commandTimeout_ms)
+        throws Exception
+    {
+        return apply(
+            execution,
+            Collections.<Parameter, ScalarValue>emptyMap(),
+            instantiationTimeout_ms,
+            commandTimeout_ms);
+    }
+
+    /**
+     * Transfers the model structure to an execution controller.
+     * <p>
+     * This does the same as {@link ModelBuilder#apply}, except that the
+     * initial values of the variables in <code>overrides</code> are
+     * replaced with the given values.
+     *
+     * @param execution
+     *      The execution controller to which the model structure should be
+     *      transfered.
+     * @param overrides
+     *      Variable values which override the model's initial values.
+     * @param instantiationTimeout_ms
+     *      How much time each slave gets to start up.
+     * @param commandTimeout_ms
+     *      The timeout that will be used for all
+     *      <code>ExecutionController</code> method calls.
+     *
+     * @return
+     *      An object which contains mappings from slave names to slave IDs.
+     *
+     * @throws ModelConstructionException
+     *      If an override value does not have the variable's data type, or
+     *      if a parameter was obtained from a different prepared model.
+     *      This is checked before any slaves are instantiated.
+     */
+    public ModelSlaveMap apply(
+        Execution execution,
+        Map<Parameter, ScalarValue> overrides,
+        int instantiationTimeout_ms,
+        int commandTimeout_ms)
+        throws Exception
+    {
+        final boolean[] overridden = checkOverrides(overrides);
+        final SlaveID[] slaveIDs = addSlaves(
+            execution, instantiationTimeout_ms, commandTimeout_ms);
+        final SlaveConfigBatch batch = makeBatch(slaveIDs, overrides, overridden);
+        if (batch.size() > 0) {
+            execution.reconfigure(batch, commandTimeout_ms);
+        }
+        return makeSlaveMap(slaveIDs);
+    }
+
+    /**
+     * Forwards to {@link #apply(LocalExecution, Map, Map)} with no
+     * overrides.
+     */
+    public ModelSlaveMap apply(
+        LocalExecution execution,
+        Map<String, ? extends Instance> instances)
+        throws Exception
+    {
+        return apply(
+            execution, instances, Collections.<Parameter, ScalarValue>emptyMap());
+    }
+
+    /**
+     * Transfers the model structure to a local execution.
+     * <p>
+     * This adds the given slave instances to the execution, sets initial
+     * variable values, with the values in <code>overrides</code> taking
+     * precedence, and makes connections.
+     *
+     * @param execution
+     *      The execution to which the model structure should be transfered.
+     * @param instances
+     *      One slave instance for each slave in the model, keyed by slave
+     *      name.  Each instance must have the same slave type UUID as the
+     *      type the slave was added to the model with.
+     * @param overrides
+     *      Variable values which override the model's initial values.
+     *
+     * @return
+     *      An object which contains mappings from slave names to slave IDs.
+     *
+     * @throws ModelConstructionException
+     *      If an instance is missing or has the wrong type, if an override
+     *      value does not have the variable's data type, or if a parameter
+     *      was obtained from a different prepared model.  This is checked
+     *      before any slaves are added to the execution.
+     */
+    public ModelSlaveMap apply(
+        LocalExecution execution,
+        Map<String, ? extends Instance> instances,
+        Map<Parameter, ScalarValue> overrides)
+        throws Exception
+    {
+        final boolean[] overridden = checkOverrides(overrides);
+        final Instance[] slaveInstances = new Instance[slaveNames_.length];
+        for (int i = 0; i < slaveNames_.length; ++i) {
+            slaveInstances[i] = instances.get(slaveNames_[i]);
+            if (slaveInstances[i] == null) {
+                throw new ModelConstructionException(
+                    "No instance given for slave: " + slaveNames_[i]);
+            }
+            final String expected = slaveTypes_[i].getSlaveTypeDescription().getUUID();
+            final String actual = slaveInstances[i].getTypeDescription().getUUID();
+            if (!expected.equals(actual)) {
+                throw new ModelConstructionException(
+                    "The instance given for slave " + slaveNames_[i]
+                    + " is not of type "
+                    + slaveTypes_[i].getSlaveTypeDescription().getName());
+            }
+        }
+
+        final SlaveID[] slaveIDs = new SlaveID[slaveNames_.length];
+        for (int i = 0; i < slaveNames_.length; ++i) {
+            slaveIDs[i] = execution.addSlave(slaveInstances[i], slaveNames_[i]);
+        }
+        final SlaveConfigBatch batch = makeBatch(slaveIDs, overrides, overridden);
+        if (batch.size() > 0) {
+            execution.reconfigure(batch);
+        }
+        return makeSlaveMap(slaveIDs);
+    }
+
+    // -------------------------------------------------------------------------
+
+    private static long key(int slaveIndex, int variableID)
+    {
+        return ((long) slaveIndex << 32) | (variableID & 0xFFFFFFFFL);
+    }
+
+    // Checks the overrides and finds out which initial values they replace.
+    // Returns null if there are no overrides.
+    private boolean[] checkOverrides(Map<Parameter, ScalarValue> overrides)
+        throws ModelConstructionException
+    {
+        if (overrides.isEmpty()) return null;
+        final boolean[] overridden = new boolean[initCount_];
+        for (Map.Entry<Parameter, ScalarValue> o : overrides.entrySet()) {
+            if (o.getKey().model_ != this) {
+                throw new ModelConstructionException(
+                    "Parameter " + o.getKey().getSlaveName() + "."
+                    + o.getKey().getVariable().getName()
+                    + " belongs to a different prepared model");
+            }
+            final VariableDescription varDesc = o.getKey().getVariable();
+            if (varDesc.getDataType() != o.getValue().getDataType()) {
+                throw new ModelConstructionException(
+                    "Attempted to set variable " + o.getKey().getSlaveName()
+                    + "." + varDesc.getName()
+                    + ", which is of type '" + varDesc.getDataType().name().toLowerCase()
+                    + "', to a value of type '"
+                    + o.getValue().getDataType().name().toLowerCase() + "'");
+            }
+            final Integer init = initIndices_.get(
+                key(o.getKey().slaveIndex_, varDesc.getID()));
+            if (init != null) overridden[init] = true;
+        }
+        return overridden;
+    }
+
+    // Creates a batch which sets initial values and makes connections, from
+    // the template and the overrides.
+    private SlaveConfigBatch makeBatch(
+        SlaveID[] slaveIDs,
+        Map<Parameter, ScalarValue> overrides,
+        boolean[] overridden)
+    {
+        final SlaveConfigBatch batch =
+            template_.withSlaves(slaveIDs, overridden, overrides.size());
+        for (Map.Entry<Parameter, ScalarValue> o : overrides.entrySet()) {
+            batch.setValueAt(
+                o.getKey().slaveIndex_,
+                o.getKey().getVariable().getID(),
+                o.getValue());
+        }
+        return batch;
+    }
+
+    private ModelSlaveMap makeSlaveMap(SlaveID[] slaveIDs)
+    {
+        final Map<String, SlaveID> slaveIDMap = new HashMap<String, SlaveID>();
+        for (int i = 0; i < slaveNames_.length; ++i) {
+            slaveIDMap.put(slaveNames_[i], slaveIDs[i]);
+        }
+        return new ModelSlaveMap(slaveIDMap, slaveInfo_);
+    }
+
+    // Takes slaves from the pool where possible, instantiates the rest
+    // concurrently, and adds them all to the execution.
+    private SlaveID[] addSlaves(
+        Execution execution,
+        int instantiationTimeout_ms,
+        int commandTimeout_ms)
+        throws Exception
+    {
+        final SlaveLocator[] locators = new SlaveLocator[slaveNames_.length];
+        final List<Integer> instantiated = new ArrayList<Integer>();
+        final List<SlaveInstantiation> instantiations = new ArrayList<SlaveInstantiation>();
+        for (int i = 0; i < slaveNames_.length; ++i) {
+            final String uuid = slaveTypes_[i].getSlaveTypeDescription().getUUID();
+            if (slavePool_ != null) {
+                locators[i] = slavePool_.take(uuid, providers_[i]);
+            }
+            if (locators[i] == null) {
+                instantiated.add(i);
+                instantiations.add(providers_[i] == null
+                    ? new SlaveInstantiation(slaveTypes_[i])
+                    : new SlaveInstantiation(providers_[i], uuid));
+            }
+        }
+        if (!instantiations.isEmpty()) {
+            if (cluster_ == null) {
+                throw new IllegalStateException(
+                    "Slaves must be instantiated, but the model has no cluster");
+            }
+            try {
+                cluster_.instantiateSlaves(instantiations, instantiationTimeout_ms);
+            } catch (Exception e) {
+                final StringBuilder msg = new StringBuilder(e.getMessage());
+                for (int i = 0; i < instantiations.size(); ++i) {
+                    final String error = instantiations.get(i).getError();
+                    if (error != null) {
+                        // The slave type information may be stale.
+                        if (slaveTypeCache_ != null) {
+                            slaveTypeCache_.remove(
+                                instantiations.get(i).getSlaveProviderID(),
+                                instantiations.get(i).getSlaveTypeUUID());
+                        }
+                        msg.append("\n  ").append(slaveNames_[instantiated.get(i)])
+                           .append(": ").append(error);
+                    }
+                }
+                throw new Exception(msg.toString(), e);
+            }
+        }
+        for (int i = 0; i < instantiations.size(); ++i) {
+            locators[instantiated.get(i)] = instantiations.get(i).getLocator();
+        }
+
+        final List<AddedSlave> slavesToAdd = new ArrayList<AddedSlave>(slaveNames_.length);
+        for (int i = 0; i < slaveNames_.length; ++i) {
+            slavesToAdd.add(new AddedSlave(locators[i], slaveNames_[i]));
+        }
+        if (!slavesToAdd.isEmpty()) {
+            execution.addSlaves(slavesToAdd, commandTimeout_ms);
+        }
+        final SlaveID[] slaveIDs = new SlaveID[slaveNames_.length];
+        for (int i = 0; i < slaveIDs.length; ++i) {
+            slaveIDs[i] = slavesToAdd.get(i).getID();
+        }
+        return slaveIDs;
+    }
+
+    private final ProviderCluster cluster_;
+    private final SlaveTypeCache slaveTypeCache_;
+    private final SlavePool slavePool_;
+
+    // Slaves, by index
+    private final String[] slaveNames_;
+    private final ProviderCluster.SlaveType[] slaveTypes_;
+    private final String[] providers_;
+    private final Map<String, Integer> slaveIndices_;
+    private final Map<String, ModelBuilder.ModelSlaveType> slaveInfo_;
+
+    // Initial values and connections, with slaves referred to by index.
+    // The first initCount_ settings are the initial values, whose indices
+    // are also stored in initIndices_, keyed by slave index and variable ID.
+    // The template is never modified after construction.
+    private final SlaveConfigBatch template_;
+    private final int initCount_;
+    private final Map<Long, Integer> initIndices_;
+}
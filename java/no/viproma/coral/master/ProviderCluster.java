@@ -7,9 +7,30 @@ package no.viproma.coral.master;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 
 import no.viproma.coral.Logging;
+import no.viproma.coral.NativeResources;
 import no.viproma.coral.model.SlaveTypeDescription;
 import no.viproma.coral.model.VariableDescription;
 import no.viproma.coral.net.SlaveLocator;
@@ -24,6 +45,13 @@ import no.viproma.coral.net.SlaveLocator;
  *  class is created, it will spawn a background thread that performs the actual
  *  communication with the slave providers.
  *  <p>
+ *  The underlying native cluster object is not known to be threadsafe, so
+ *  each one is only ever used by one thread at a time.  When several
+ *  threads use the cluster at once, e.g. to instantiate slaves in parallel
+ *  with {@link #instantiateSlaves}, additional native cluster objects are
+ *  created on demand and kept for later use.  Each of these discovers the
+ *  slave providers independently.
+ *  <p>
  *  Slave providers are discovered automatically by listening for UDP
  *  broadcast messages that they broadcast periodically.
  *  </p>
@@ -111,7 +139,15 @@ public class ProviderCluster implements AutoCloseable
             return Arrays.asList(providers_);
         }
 
-        SlaveType(
+        /**
+         *  Constructs an object which describes a slave type and the
+         *  providers that offer it.
+         *  <p>
+         *  Objects of this class are normally obtained from a
+         *  <code>ProviderCluster</code>, but this constructor can be used to
+         *  exercise a {@link PlacementStrategy} without a cluster.
+         */
+        public SlaveType(
             SlaveTypeDescription description,
             String[] providers)
         {
@@ -135,9 +171,9 @@ public class ProviderCluster implements AutoCloseable
     public ProviderCluster(InetSocketAddress discoveryEndpoint)
         throws Exception
     {
-        nativePtr_ = createNative(
-            discoveryEndpoint.getAddress().getHostAddress(),
-            discoveryEndpoint.getPort());
+        networkInterface_ = discoveryEndpoint.getAddress().getHostAddress();
+        discoveryPort_ = discoveryEndpoint.getPort();
+        idleChannels_.add(newChannel());
     }
 
     /**
@@ -152,12 +188,6 @@ public class ProviderCluster implements AutoCloseable
         this(new InetSocketAddress(bindAddress, 10272));
     }
 
-    @Override
-    protected void finalize()
-    {
-        if (nativePtr_ != 0) Logging.logNotClosedOnFinalization(getClass());
-    }
-
     /**
      *  Shuts down the communication interface and releases native resources
      *  (such as memory) associated with this object.
@@ -168,10 +198,16 @@ public class ProviderCluster implements AutoCloseable
     @Override
     public void close() throws Exception
     {
-        if (nativePtr_ != 0) {
-            destroyNative(nativePtr_);
-            nativePtr_ = 0;
+        if (closed_) return;
+        stopDiscoveryMonitor();
+        final List<Channel> idle;
+        synchronized (idleChannels_) {
+            closed_ = true;
+            idle = new ArrayList<Channel>(idleChannels_);
+            idleChannels_.clear();
         }
+        // Channels which are in use are destroyed when they are released.
+        for (Channel c : idle) c.destroy();
     }
 
     /**
@@ -192,7 +228,98 @@ public class ProviderCluster implements AutoCloseable
     public Iterable<SlaveType> getSlaveTypes(int timeout_ms) throws Exception
     {
         CheckSelf();
-        return Arrays.asList(getSlaveTypesNative(nativePtr_, timeout_ms));
+        final Channel channel = acquireChannel();
+        try {
+            return Arrays.asList(channel.getSlaveTypes(timeout_ms));
+        } finally {
+            releaseChannel(channel);
+        }
+    }
+
+    /**
+     *  Registers a listener which will be notified when slave providers
+     *  appear, disappear or change.
+     *  <p>
+     *  Changes are detected by polling, not pushed by the providers:  The
+     *  first time a listener is added (or {@link #getKnownSlaveTypes} is
+     *  called), the cluster starts a background thread which queries all
+     *  slave providers for their slave types every
+     *  {@linkplain #setDiscoveryInterval discovery interval}, and compares
+     *  the result with that of the previous query.  A change is therefore
+     *  noticed up to one interval, plus the duration of a query, after it
+     *  happens.  The thread has its own native cluster object, so the
+     *  queries never hold up other uses of the cluster.
+     *  The listener is immediately notified of all providers that are
+     *  already known, through {@link ProviderListener#providerAppeared}.
+     *  All notifications are delivered on the monitoring thread.
+     */
+    public void addProviderListener(final ProviderListener listener)
+    {
+        CheckSelf();
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener is null");
+        }
+        final ScheduledExecutorService monitor = startDiscoveryMonitor();
+        monitor.execute(new Runnable() {
+            public void run()
+            {
+                for (Map.Entry<String, List<SlaveType>> e : providerTypes_.entrySet()) {
+                    notifyListener(listener, e.getKey(), e.getValue(), Change.APPEARED);
+                }
+                listeners_.add(listener);
+            }
+        });
+    }
+
+    /** Unregisters a listener added with {@link #addProviderListener}. */
+    public void removeProviderListener(ProviderListener listener)
+    {
+        listeners_.remove(listener);
+    }
+
+    /**
+     *  Returns the slave types offered by all slave providers known so far,
+     *  without blocking.
+     *  <p>
+     *  Unlike {@link #getSlaveTypes}, this does not communicate with the
+     *  slave providers, but returns the result of the last query made by
+     *  the background monitoring thread (see {@link #addProviderListener}).
+     *  The first call starts the monitoring, and will typically return an
+     *  empty list.
+     */
+    public List<SlaveType> getKnownSlaveTypes()
+    {
+        CheckSelf();
+        startDiscoveryMonitor();
+        return knownSlaveTypes_;
+    }
+
+    /**
+     *  Returns the IDs of all slave providers known so far, without
+     *  blocking.
+     *  <p>
+     *  This is subject to the same conditions as {@link #getKnownSlaveTypes}.
+     */
+    public Set<String> getKnownProviders()
+    {
+        CheckSelf();
+        startDiscoveryMonitor();
+        return knownProviders_;
+    }
+
+    /**
+     *  Sets how often the background monitoring thread queries the slave
+     *  providers.
+     *  <p>
+     *  The default is 500 ms.  This must be called before the monitoring
+     *  starts to have any effect.
+     */
+    public void setDiscoveryInterval(int interval_ms)
+    {
+        if (interval_ms <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        discoveryInterval_ms_ = interval_ms;
     }
 
     /**
@@ -223,35 +350,485 @@ public class ProviderCluster implements AutoCloseable
         throws Exception
     {
         CheckSelf();
-        return instantiateSlaveNative(
-            nativePtr_,
-            slaveProviderID,
-            slaveTypeUUID,
-            timeout_ms);
+        addInstanceCount(slaveProviderID, 1);
+        return instantiateAssignedSlave(slaveProviderID, slaveTypeUUID, timeout_ms);
     }
 
     /**
-     * Forwards to {@link #instantiateSlave}, extracting the slave provider
-     * ID and slave type UUID from the given slaveType object.
+     * Forwards to {@link #instantiateSlave}, extracting the slave type UUID
+     * from the given slaveType object.
      * <p>
-     * An unspecified slave provider is selected from the list returned
-     * by {@link SlaveType#getProviders}.
+     * The slave provider is selected from the list returned by
+     * {@link SlaveType#getProviders} according to the cluster's
+     * {@linkplain #setPlacementStrategy placement strategy}.
      */
     public SlaveLocator instantiateSlave(SlaveType slaveType, int timeout_ms)
         throws Exception
     {
-        return instantiateSlave(
-            slaveType.getProviders().iterator().next(),
-            slaveType.getUUID(),
+        CheckSelf();
+        return instantiateAssignedSlave(
+            assignProvider(slaveType),
+            slaveType.getSlaveTypeDescription().getUUID(),
             timeout_ms);
     }
 
+    /**
+     *  Sets the strategy used to select a slave provider when a slave is
+     *  instantiated without specifying one.
+     *  <p>
+     *  The default is {@link PlacementStrategies#leastInstances}.
+     */
+    public void setPlacementStrategy(PlacementStrategy strategy)
+    {
+        if (strategy == null) {
+            throw new IllegalArgumentException("Placement strategy is null");
+        }
+        synchronized (instanceCounts_) {
+            placementStrategy_ = strategy;
+        }
+    }
+
+    /** Returns the current placement strategy. */
+    public PlacementStrategy getPlacementStrategy()
+    {
+        synchronized (instanceCounts_) {
+            return placementStrategy_;
+        }
+    }
+
+    /**
+     *  Returns the number of slaves that have been instantiated on each
+     *  slave provider using this object, keyed by provider ID.
+     *  <p>
+     *  Requests that are still in progress are included in the counts,
+     *  while requests that have failed are not.  Note that the cluster has
+     *  no way of knowing when slaves terminate, so the counts never
+     *  decrease.
+     *  <p>
+     *  The returned map is a snapshot, not a view.
+     */
+    public Map<String, Integer> getInstanceCounts()
+    {
+        synchronized (instanceCounts_) {
+            return new HashMap<String, Integer>(instanceCounts_);
+        }
+    }
+
+    /**
+     *  Requests that several slaves be spawned, with the requests being
+     *  processed concurrently.
+     *  <p>
+     *  This has the same effect as calling {@link #instantiateSlave} for
+     *  each element of <code>slaves</code>, except that up to
+     *  {@link #getMaxConcurrentInstantiations} requests are in flight at
+     *  the same time.  Since each request involves a network round trip
+     *  and the start-up of a slave, this can greatly reduce the time it
+     *  takes to set up large models.  Each request in flight uses a
+     *  separate native cluster object (see the class documentation).
+     *  Providers are assigned to all requests up front, so the placement
+     *  strategy sees the whole batch.
+     *  <p>
+     *  The function waits for all requests to complete, even if some of
+     *  them fail.  Afterwards, the {@link SlaveInstantiation#getLocator}
+     *  and {@link SlaveInstantiation#getError} functions of each element
+     *  can be queried for the result.
+     *
+     *  @param slaves
+     *      The slaves to instantiate.
+     *  @param timeout_ms
+     *      How much time each slave gets to start up.
+     *      The value -1 means no limit.
+     *
+     *  @throws Exception
+     *      If one or more slaves could not be instantiated.  Slaves which
+     *      <em>were</em> successfully instantiated are not affected by this.
+     */
+    public void instantiateSlaves(
+        final Iterable<SlaveInstantiation> slaves, final int timeout_ms)
+        throws Exception
+    {
+        CheckSelf();
+        final List<SlaveInstantiation> requests = new ArrayList<SlaveInstantiation>();
+        for (SlaveInstantiation s : slaves) requests.add(s);
+        if (requests.isEmpty()) return;
+
+        // Assign providers up front, so the placement strategy sees
+        // each assignment before making the next.
+        for (SlaveInstantiation s : requests) {
+            if (s.getSlaveProviderID() == null) {
+                s.setSlaveProviderID(assignProvider(s.getSlaveType()));
+            } else {
+                addInstanceCount(s.getSlaveProviderID(), 1);
+            }
+        }
+
+        final int threadCount =
+            Math.min(requests.size(), maxConcurrentInstantiations_);
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            threadCount, INSTANTIATION_THREAD_FACTORY);
+        try {
+            final List<Future<?>> results = new ArrayList<Future<?>>();
+            for (final SlaveInstantiation s : requests) {
+                results.add(executor.submit(new Runnable() {
+                    public void run()
+                    {
+                        try {
+                            s.setLocator(instantiateAssignedSlave(
+                                s.getSlaveProviderID(),
+                                s.getSlaveTypeUUID(),
+                                timeout_ms));
+                        } catch (Exception e) {
+                            s.setError(e.getMessage() == null
+                                ? e.toString()
+                                : e.getMessage());
+                        }
+                    }
+                }));
+            }
+            for (Future<?> r : results) r.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        int failed = 0;
+        String firstError = null;
+        for (SlaveInstantiation s : requests) {
+            if (s.getError() != null) {
+                if (firstError == null) firstError = s.getError();
+                ++failed;
+            }
+        }
+        if (failed > 0) {
+            throw new Exception(
+                "Failed to instantiate " + failed + " of " + requests.size()
+                + " slaves (" + firstError + ")");
+        }
+    }
+
+    /**
+     *  Sets the maximum number of slave instantiation requests that
+     *  {@link #instantiateSlaves} will have in flight at the same time.
+     *  <p>
+     *  The default value is 16.  This is also the maximum number of idle
+     *  native cluster objects that are kept for later use.
+     */
+    public void setMaxConcurrentInstantiations(int value)
+    {
+        if (value < 1) {
+            throw new IllegalArgumentException(
+                "Maximum number of concurrent instantiations must be positive");
+        }
+        maxConcurrentInstantiations_ = value;
+    }
+
+    /**
+     *  Returns the maximum number of slave instantiation requests that
+     *  {@link #instantiateSlaves} will have in flight at the same time.
+     */
+    public int getMaxConcurrentInstantiations()
+    {
+        return maxConcurrentInstantiations_;
+    }
+
+    /**
+     *  Returns the largest number of slave instantiation requests that have
+     *  been in flight at the same time, counting from the construction of
+     *  this object.
+     *  <p>
+     *  This may be used to check whether a higher
+     *  {@linkplain #setMaxConcurrentInstantiations maximum} would make a
+     *  difference.
+     */
+    public int getPeakConcurrentInstantiations()
+    {
+        return peakInstantiations_.get();
+    }
 
     // -------------------------------------------------------------------------
 
+    // A native cluster object, which is only used by one thread at a time.
+    private static final class Channel
+    {
+        Channel(ProviderCluster owner, long nativePtr, int serial)
+        {
+            nativePtr_ = nativePtr;
+            serial_ = serial;
+            handle_ = NativeResources.register(owner, nativePtr, ProviderCluster::destroyNative);
+        }
+
+        SlaveType[] getSlaveTypes(int timeout_ms) throws Exception
+        {
+            final SlaveType[] slaveTypes = getSlaveTypesNative(nativePtr_, timeout_ms);
+            for (SlaveType st : slaveTypes) {
+                for (String provider : st.getProviders()) knownProviders_.add(provider);
+            }
+            return slaveTypes;
+        }
+
+        // Waits until the channel has discovered the given provider, or
+        // until a few beacon periods have passed, whichever comes first.
+        // A new channel knows no providers, and would otherwise fail to
+        // instantiate slaves on them.
+        void awaitProvider(String slaveProviderID) throws Exception
+        {
+            final long deadline = System.currentTimeMillis() + PROVIDER_DISCOVERY_TIMEOUT_MS;
+            while (!knownProviders_.contains(slaveProviderID)) {
+                getSlaveTypes(PROVIDER_QUERY_TIMEOUT_MS);
+                if (knownProviders_.contains(slaveProviderID)
+                        || System.currentTimeMillis() >= deadline) {
+                    break;
+                }
+                Thread.sleep(PROVIDER_POLL_INTERVAL_MS);
+            }
+        }
+
+        SlaveLocator instantiateSlave(
+            String slaveProviderID, String slaveTypeUUID, int timeout_ms)
+            throws Exception
+        {
+            awaitProvider(slaveProviderID);
+            return instantiateSlaveNative(
+                nativePtr_, slaveProviderID, slaveTypeUUID, timeout_ms);
+        }
+
+        void destroy() throws Exception
+        {
+            handle_.unregister();
+            destroyNative(nativePtr_);
+        }
+
+        private final long nativePtr_;
+        // Channels which were created earlier have had more time to
+        // discover providers, so they are preferred.
+        private final int serial_;
+        private final NativeResources.Handle handle_;
+        private final Set<String> knownProviders_ = new HashSet<String>();
+    }
+
+    private static final int PROVIDER_DISCOVERY_TIMEOUT_MS = 5000;
+    private static final int PROVIDER_QUERY_TIMEOUT_MS = 1000;
+    private static final int PROVIDER_POLL_INTERVAL_MS = 100;
+
+    private Channel newChannel() throws Exception
+    {
+        final long nativePtr = createNative(networkInterface_, discoveryPort_);
+        return new Channel(this, nativePtr, channelSerial_.incrementAndGet());
+    }
+
+    // Takes an idle channel, preferring the oldest, or creates a new one.
+    private Channel acquireChannel() throws Exception
+    {
+        synchronized (idleChannels_) {
+            if (closed_) throw new IllegalStateException("Object has been closed");
+            final Channel c = idleChannels_.poll();
+            if (c != null) return c;
+        }
+        return newChannel();
+    }
+
+    // Returns a channel to the idle set, or destroys it if the cluster has
+    // been closed or enough channels are idle already.
+    private void releaseChannel(Channel channel) throws Exception
+    {
+        synchronized (idleChannels_) {
+            if (!closed_ && idleChannels_.size() < maxConcurrentInstantiations_) {
+                idleChannels_.add(channel);
+                return;
+            }
+        }
+        channel.destroy();
+    }
+
+    private enum Change { APPEARED, CHANGED, DISAPPEARED }
+
+    private synchronized ScheduledExecutorService startDiscoveryMonitor()
+    {
+        if (discoveryMonitor_ == null) {
+            discoveryMonitor_ = Executors.newSingleThreadScheduledExecutor(
+                DISCOVERY_THREAD_FACTORY);
+            discoveryMonitor_.scheduleWithFixedDelay(
+                new Runnable() {
+                    public void run() { pollProviders(); }
+                },
+                0,
+                discoveryInterval_ms_,
+                TimeUnit.MILLISECONDS);
+        }
+        return discoveryMonitor_;
+    }
+
+    private synchronized void stopDiscoveryMonitor() throws Exception
+    {
+        if (discoveryMonitor_ != null) {
+            discoveryMonitor_.shutdownNow();
+            // Wait for any ongoing query to finish before the native
+            // object is destroyed.
+            discoveryMonitor_.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            discoveryMonitor_ = null;
+            if (discoveryChannel_ != null) {
+                discoveryChannel_.destroy();
+                discoveryChannel_ = null;
+            }
+        }
+    }
+
+    // Queries the providers and notifies the listeners of any changes since
+    // the last query.  Only ever called on the monitoring thread.
+    private void pollProviders()
+    {
+        final SlaveType[] slaveTypes;
+        try {
+            if (discoveryChannel_ == null) discoveryChannel_ = newChannel();
+            slaveTypes = discoveryChannel_.getSlaveTypes(discoveryInterval_ms_ * 2);
+        } catch (Exception e) {
+            Logging.getLogger().log(Level.FINE, "Slave provider query failed", e);
+            return;
+        }
+
+        final Map<String, List<SlaveType>> newProviderTypes =
+            new TreeMap<String, List<SlaveType>>();
+        for (SlaveType st : slaveTypes) {
+            for (String provider : st.getProviders()) {
+                List<SlaveType> types = newProviderTypes.get(provider);
+                if (types == null) {
+                    types = new ArrayList<SlaveType>();
+                    newProviderTypes.put(provider, types);
+                }
+                types.add(st);
+            }
+        }
+
+        final Map<String, List<SlaveType>> oldProviderTypes = providerTypes_;
+        providerTypes_ = newProviderTypes;
+        knownSlaveTypes_ = Collections.unmodifiableList(Arrays.asList(slaveTypes));
+        knownProviders_ = Collections.unmodifiableSet(
+            new TreeSet<String>(newProviderTypes.keySet()));
+
+        for (Map.Entry<String, List<SlaveType>> e : newProviderTypes.entrySet()) {
+            final List<SlaveType> oldTypes = oldProviderTypes.get(e.getKey());
+            if (oldTypes == null) {
+                notifyListeners(e.getKey(), e.getValue(), Change.APPEARED);
+            } else if (!uuidsOf(oldTypes).equals(uuidsOf(e.getValue()))) {
+                notifyListeners(e.getKey(), e.getValue(), Change.CHANGED);
+            }
+        }
+        for (String provider : oldProviderTypes.keySet()) {
+            if (!newProviderTypes.containsKey(provider)) {
+                notifyListeners(provider, null, Change.DISAPPEARED);
+            }
+        }
+    }
+
+    private static Set<String> uuidsOf(List<SlaveType> slaveTypes)
+    {
+        final Set<String> uuids = new HashSet<String>();
+        for (SlaveType st : slaveTypes) {
+            uuids.add(st.getSlaveTypeDescription().getUUID());
+        }
+        return uuids;
+    }
+
+    private void notifyListeners(
+        String provider, List<SlaveType> slaveTypes, Change change)
+    {
+        for (ProviderListener listener : listeners_) {
+            notifyListener(listener, provider, slaveTypes, change);
+        }
+    }
+
+    private static void notifyListener(
+        ProviderListener listener,
+        String provider,
+        List<SlaveType> slaveTypes,
+        Change change)
+    {
+        try {
+            switch (change) {
+                case APPEARED:
+                    listener.providerAppeared(
+                        provider, Collections.unmodifiableList(slaveTypes));
+                    break;
+                case CHANGED:
+                    listener.providerChanged(
+                        provider, Collections.unmodifiableList(slaveTypes));
+                    break;
+                case DISAPPEARED:
+                    listener.providerDisappeared(provider);
+                    break;
+            }
+        } catch (RuntimeException e) {
+            // Let the other listeners, and later polls, go ahead anyway.
+            Logging.getLogger().log(
+                Level.WARNING, "Slave provider listener threw an exception", e);
+        }
+    }
+
+    // Selects a provider for a slave of the given type and counts the slave
+    // as assigned to it.
+    private String assignProvider(SlaveType slaveType)
+    {
+        synchronized (instanceCounts_) {
+            final String provider = placementStrategy_.selectProvider(
+                slaveType,
+                Collections.unmodifiableMap(new HashMap<String, Integer>(instanceCounts_)));
+            boolean valid = false;
+            for (String p : slaveType.getProviders()) {
+                if (p.equals(provider)) { valid = true; break; }
+            }
+            if (!valid) {
+                throw new IllegalStateException(
+                    "Placement strategy selected a provider which does not "
+                    + "offer the slave type: " + provider);
+            }
+            addInstanceCount(provider, 1);
+            return provider;
+        }
+    }
+
+    private void addInstanceCount(String slaveProviderID, int delta)
+    {
+        synchronized (instanceCounts_) {
+            Integer count = instanceCounts_.get(slaveProviderID);
+            int newCount = (count == null ? 0 : count) + delta;
+            if (newCount > 0) {
+                instanceCounts_.put(slaveProviderID, newCount);
+            } else {
+                instanceCounts_.remove(slaveProviderID);
+            }
+        }
+    }
+
+    // Instantiates a slave which has already been counted as assigned to
+    // the given provider, and uncounts it on failure.
+    private SlaveLocator instantiateAssignedSlave(
+        String slaveProviderID, String slaveTypeUUID, int timeout_ms)
+        throws Exception
+    {
+        boolean ok = false;
+        final int inFlight = instantiations_.incrementAndGet();
+        try {
+            int peak = peakInstantiations_.get();
+            while (inFlight > peak && !peakInstantiations_.compareAndSet(peak, inFlight)) {
+                peak = peakInstantiations_.get();
+            }
+            final Channel channel = acquireChannel();
+            try {
+                final SlaveLocator locator = channel.instantiateSlave(
+                    slaveProviderID, slaveTypeUUID, timeout_ms);
+                ok = true;
+                return locator;
+            } finally {
+                releaseChannel(channel);
+            }
+        } finally {
+            instantiations_.decrementAndGet();
+            if (!ok) addInstanceCount(slaveProviderID, -1);
+        }
+    }
+
     private void CheckSelf()
     {
-        if (nativePtr_ == 0) {
+        if (closed_) {
             throw new IllegalStateException("Object has been closed");
         }
     }
@@ -268,5 +845,62 @@ public class ProviderCluster implements AutoCloseable
         long selfPtr, String slaveProviderID, String slaveTypeUUID, int timeout_ms)
         throws Exception;
 
-    private long nativePtr_;
+    private static final ThreadFactory INSTANTIATION_THREAD_FACTORY =
+        new ThreadFactory() {
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(
+                    r, "jcoral-instantiation-" + threadCount_.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+
+            private final AtomicInteger threadCount_ = new AtomicInteger();
+        };
+
+    private static final ThreadFactory DISCOVERY_THREAD_FACTORY =
+        new ThreadFactory() {
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "jcoral-discovery");
+                t.setDaemon(true);
+                return t;
+            }
+        };
+
+    private final String networkInterface_;
+    private final int discoveryPort_;
+    private volatile boolean closed_ = false;
+
+    // Native cluster objects which are not currently in use.  Guarded by
+    // itself, as is closed_ when set.
+    private final PriorityQueue<Channel> idleChannels_ = new PriorityQueue<Channel>(
+        4,
+        new Comparator<Channel>() {
+            public int compare(Channel a, Channel b)
+            {
+                return Integer.compare(a.serial_, b.serial_);
+            }
+        });
+    private final AtomicInteger channelSerial_ = new AtomicInteger();
+
+    private volatile int maxConcurrentInstantiations_ = 16;
+    private final AtomicInteger instantiations_ = new AtomicInteger();
+    private final AtomicInteger peakInstantiations_ = new AtomicInteger();
+    private final Map<String, Integer> instanceCounts_ = new HashMap<String, Integer>();
+    private PlacementStrategy placementStrategy_ = PlacementStrategies.leastInstances();
+
+    // Provider monitoring.  providerTypes_ and discoveryChannel_ are only
+    // accessed on the monitoring thread, and when it has been stopped.
+    private ScheduledExecutorService discoveryMonitor_;
+    private Channel discoveryChannel_;
+    private volatile int discoveryInterval_ms_ = 500;
+    private final List<ProviderListener> listeners_ =
+        new CopyOnWriteArrayList<ProviderListener>();
+    private Map<String, List<SlaveType>> providerTypes_ =
+        new TreeMap<String, List<SlaveType>>();
+    private volatile List<SlaveType> knownSlaveTypes_ =
+        Collections.<SlaveType>emptyList();
+    private volatile Set<String> knownProviders_ =
+        Collections.<String>emptySet();
 }
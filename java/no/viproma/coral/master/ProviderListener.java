@@ -0,0 +1,53 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.master;
+
+import java.util.List;
+
+
+/**
+ * An interface for classes that want to be notified when slave providers
+ * appear, disappear or change the set of slave types they offer.
+ * <p>
+ * The functions are called from a background thread owned by the
+ * {@link ProviderCluster}, one at a time, and should return quickly.
+ *
+ * @see ProviderCluster#addProviderListener
+ */
+public interface ProviderListener
+{
+    /**
+     * Called when a slave provider has been discovered.
+     *
+     * @param slaveProviderID
+     *      The ID of the provider.
+     * @param slaveTypes
+     *      The slave types offered by the provider.
+     */
+    public void providerAppeared(
+        String slaveProviderID,
+        List<ProviderCluster.SlaveType> slaveTypes);
+
+    /**
+     * Called when a slave provider has added or removed slave types.
+     *
+     * @param slaveProviderID
+     *      The ID of the provider.
+     * @param slaveTypes
+     *      The slave types now offered by the provider.
+     */
+    public void providerChanged(
+        String slaveProviderID,
+        List<ProviderCluster.SlaveType> slaveTypes);
+
+    /**
+     * Called when a slave provider has stopped responding.
+     *
+     * @param slaveProviderID
+     *      The ID of the provider.
+     */
+    public void providerDisappeared(String slaveProviderID);
+}
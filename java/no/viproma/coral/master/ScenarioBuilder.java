@@ -6,6 +6,7 @@
 package no.viproma.coral.master;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.PriorityQueue;
@@ -13,8 +14,10 @@ import java.util.Queue;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
+import no.viproma.coral.master.CompiledScenario;
 import no.viproma.coral.master.ScenarioEvent;
 import no.viproma.coral.model.ScalarValue;
+import no.viproma.coral.model.Variable;
 
 
 /**
@@ -212,5 +215,81 @@ public class ScenarioBuilder
         return queue;
     }
 
+    /**
+     * Generates an execution-specific scenario in compiled form.
+     * <p>
+     * This is an alternative to {@link #build} which is better suited for
+     * scenarios with many events.  The returned object stores the slave
+     * configuration changes for each event time point as a precomputed
+     * {@link SlaveConfigBatch}.
+     *
+     * @param modelSlaveMap
+     *      Information about the slaves in the execution, as returned by
+     *      {@link ModelBuilder#apply}.
+     * @return
+     *      A compiled scenario which contains all events previously added
+     *      with {@link #addEvent}.  Events with the same time point keep
+     *      the order in which they were added.
+     * @throws EntityNotFoundException
+     *      If a slave/variable previously specified with {@code addEvent()}
+     *      was invalid.
+     */
+    public CompiledScenario compile(ModelSlaveMap modelSlaveMap)
+        throws EntityNotFoundException
+    {
+        // Sort the events by time.  Arrays.sort() is stable for objects,
+        // so events with the same time point keep their relative order.
+        Event[] sorted = events_.toArray(new Event[events_.size()]);
+        Arrays.sort(sorted, new Comparator<Event>() {
+            public int compare(Event e1, Event e2)
+            {
+                double t1 = e1.getTimePoint();
+                double t2 = e2.getTimePoint();
+                if (t1 < t2) return -1;
+                else if (t1 > t2) return 1;
+                else if (t1 == t2) return 0;
+                else throw new RuntimeException("Attempted to compare NaN values");
+            }
+        });
+
+        // Group the events by time point, and encode each group directly
+        // into a batch.
+        final int n = sorted.length;
+        List<Double> timePoints = new ArrayList<Double>();
+        List<Integer> firstEvents = new ArrayList<Integer>();
+        List<SlaveConfigBatch> batches = new ArrayList<SlaveConfigBatch>();
+        int begin = 0;
+        while (begin < n) {
+            final double t = sorted[begin].getTimePoint();
+            int end = begin + 1;
+            while (end < n && sorted[end].getTimePoint() == t) ++end;
+
+            SlaveConfigBatch batch = new SlaveConfigBatch(end - begin);
+            for (int i = begin; i < end; ++i) {
+                Event e = sorted[i];
+                Variable v = modelSlaveMap.getVariable(e.getSlaveName(), e.getVariableName());
+                batch.setValue(v.getSlaveID(), v.getVariableID(), e.getNewValue());
+            }
+            timePoints.add(t);
+            firstEvents.add(begin);
+            batches.add(batch);
+            begin = end;
+        }
+        firstEvents.add(n);
+
+        double[] timePointArray = new double[timePoints.size()];
+        for (int i = 0; i < timePointArray.length; ++i) {
+            timePointArray[i] = timePoints.get(i);
+        }
+        int[] firstEventArray = new int[firstEvents.size()];
+        for (int i = 0; i < firstEventArray.length; ++i) {
+            firstEventArray[i] = firstEvents.get(i);
+        }
+        return new CompiledScenario(
+            timePointArray,
+            firstEventArray,
+            batches.toArray(new SlaveConfigBatch[batches.size()]));
+    }
+
     private List<Event> events_;
 }
@@ -0,0 +1,217 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.master;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import no.viproma.coral.master.EntityNotFoundException;
+import no.viproma.coral.master.ModelSlaveMap;
+import no.viproma.coral.master.ScenarioEvent;
+import no.viproma.coral.master.ScenarioSource;
+import no.viproma.coral.model.ScalarValue;
+import no.viproma.coral.model.Variable;
+import no.viproma.coral.model.VariableDescription;
+
+
+/**
+ * A {@link ScenarioSource} which streams events from a text file.
+ * <p>
+ * The file must contain one event per line, on the form
+ * <pre>    time,slaveName,variableName,value</pre>
+ * where the value is interpreted according to the variable's data type:
+ * a floating-point number for real variables, a decimal integer for integer
+ * variables, <code>true</code>/<code>false</code> (or <code>1</code>/<code>0</code>)
+ * for boolean variables, and the rest of the line for string variables.
+ * Empty lines and lines that start with <code>#</code> are ignored.
+ * <p>
+ * The events must be sorted by time.  Only one line is read ahead of the
+ * simulation, so the file may be arbitrarily large.
+ * <p>
+ * Objects of this class should be closed with {@link #close} when they are
+ * no longer needed, to close the underlying file.
+ */
+public class ScenarioFileReader implements ScenarioSource, AutoCloseable
+{
+    /**
+     * Creates a reader which reads events from the given file, which is
+     * assumed to be UTF-8 encoded.
+     *
+     * @param file
+     *      The scenario file.
+     * @param modelSlaveMap
+     *      Information about the slaves in the execution, as returned by
+     *      {@link ModelBuilder#apply}.  This is used to map slave and
+     *      variable names to IDs.
+     */
+    public ScenarioFileReader(File file, ModelSlaveMap modelSlaveMap)
+        throws IOException
+    {
+        this(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8),
+             modelSlaveMap);
+    }
+
+    /**
+     * Creates a reader which reads events from a character stream.
+     * <p>
+     * The stream will be closed when {@link #close} is called.
+     */
+    public ScenarioFileReader(Reader reader, ModelSlaveMap modelSlaveMap)
+    {
+        if (modelSlaveMap == null) {
+            throw new IllegalArgumentException("modelSlaveMap is null");
+        }
+        reader_ = new BufferedReader(reader);
+        modelSlaveMap_ = modelSlaveMap;
+        variables_ = new HashMap<String, ResolvedVariable>();
+    }
+
+    /** Closes the underlying file or stream. */
+    @Override
+    public void close() throws IOException
+    {
+        reader_.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IOException
+     *      If the file could not be read, or if it contains a syntax error or
+     *      an event which is out of order.
+     * @throws EntityNotFoundException
+     *      If an event refers to an unknown slave or variable.
+     */
+    @Override
+    public ScenarioEvent peek() throws IOException, EntityNotFoundException
+    {
+        if (next_ == null && !eof_) next_ = readEvent();
+        return next_;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IOException
+     *      If the file could not be read, or if it contains a syntax error or
+     *      an event which is out of order.
+     * @throws EntityNotFoundException
+     *      If an event refers to an unknown slave or variable.
+     */
+    @Override
+    public ScenarioEvent next() throws IOException, EntityNotFoundException
+    {
+        ScenarioEvent e = peek();
+        next_ = null;
+        return e;
+    }
+
+    // =========================================================================
+
+    // A variable and its description, cached by name.
+    private static class ResolvedVariable
+    {
+        ResolvedVariable(Variable variable, VariableDescription description)
+        {
+            this.variable = variable;
+            this.description = description;
+        }
+
+        Variable variable;
+        VariableDescription description;
+    }
+
+    // Reads lines until an event is found, and returns it, or returns null
+    // at the end of the file.
+    private ScenarioEvent readEvent() throws IOException, EntityNotFoundException
+    {
+        String line;
+        while ((line = reader_.readLine()) != null) {
+            ++lineNumber_;
+            if (line.isEmpty() || line.charAt(0) == '#') continue;
+
+            String[] fields = line.split(",", 4);
+            if (fields.length != 4) {
+                throw syntaxError("Expected 4 comma-separated fields");
+            }
+            double timePoint;
+            try {
+                timePoint = Double.parseDouble(fields[0].trim());
+            } catch (NumberFormatException e) {
+                throw syntaxError("Invalid time point: " + fields[0]);
+            }
+            if (timePoint < lastTimePoint_) {
+                throw syntaxError("Event is out of order");
+            }
+            lastTimePoint_ = timePoint;
+
+            ResolvedVariable v = resolve(fields[1].trim(), fields[2].trim());
+            return new ScenarioEvent(
+                timePoint,
+                v.variable,
+                parseValue(v.description, fields[3]));
+        }
+        eof_ = true;
+        return null;
+    }
+
+    private ResolvedVariable resolve(String slaveName, String variableName)
+        throws EntityNotFoundException
+    {
+        String key = slaveName + "." + variableName;
+        ResolvedVariable v = variables_.get(key);
+        if (v == null) {
+            v = new ResolvedVariable(
+                modelSlaveMap_.getVariable(slaveName, variableName),
+                modelSlaveMap_.getVariableDescription(slaveName, variableName));
+            variables_.put(key, v);
+        }
+        return v;
+    }
+
+    private ScalarValue parseValue(VariableDescription variable, String text)
+        throws IOException
+    {
+        try {
+            switch (variable.getDataType()) {
+                case REAL:
+                    return new ScalarValue(Double.parseDouble(text.trim()));
+                case INTEGER:
+                    return new ScalarValue(Integer.parseInt(text.trim()));
+                case BOOLEAN:
+                    String b = text.trim();
+                    if (b.equals("true") || b.equals("1")) return new ScalarValue(true);
+                    if (b.equals("false") || b.equals("0")) return new ScalarValue(false);
+                    throw syntaxError("Invalid boolean value: " + text);
+                default:
+                    return new ScalarValue(text);
+            }
+        } catch (NumberFormatException e) {
+            throw syntaxError("Invalid value for variable "
+                + variable.getName() + ": " + text);
+        }
+    }
+
+    private IOException syntaxError(String msg)
+    {
+        return new IOException("Scenario file line " + lineNumber_ + ": " + msg);
+    }
+
+    private BufferedReader reader_;
+    private ModelSlaveMap modelSlaveMap_;
+    private Map<String, ResolvedVariable> variables_;
+    private ScenarioEvent next_;
+    private boolean eof_ = false;
+    private long lineNumber_ = 0;
+    private double lastTimePoint_ = Double.NEGATIVE_INFINITY;
+}
@@ -0,0 +1,34 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.master;
+
+import no.viproma.coral.master.ScenarioEvent;
+
+
+/**
+ * A source of scenario events which are consumed one at a time.
+ * <p>
+ * This interface lets {@link Execution#simulateStreaming} pull events
+ * lazily, as the simulation reaches them, so that the scenario never needs
+ * to be held in memory in its entirety.  Implementations must return the
+ * events in order of non-decreasing time.
+ *
+ * @see ScenarioFileReader
+ */
+public interface ScenarioSource
+{
+    /**
+     * Returns the next event without consuming it, or <code>null</code> if
+     * there are no more events.
+     */
+    ScenarioEvent peek() throws Exception;
+
+    /**
+     * Consumes and returns the next event, or returns <code>null</code> if
+     * there are no more events.
+     */
+    ScenarioEvent next() throws Exception;
+}
@@ -15,7 +15,10 @@ public interface SimulationProgressMonitor
     /**
      * Monitors and/or interrupts the progress of {@link Execution#simulate}.
      * <p>
-     * This function is called once per time step.
+     * This function is called once per time step, or once every
+     * {@link ExecutionOptions#getProgressInterval} time steps if
+     * that option has been set.  It is also called after the last time
+     * step before each scenario event and before the simulation stops.
      *
      * @param t
      *      The current logical time
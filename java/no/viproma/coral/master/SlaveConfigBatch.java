@@ -0,0 +1,413 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.master;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import no.viproma.coral.model.ScalarValue;
+import no.viproma.coral.model.SlaveID;
+import no.viproma.coral.model.Variable;
+import no.viproma.coral.model.VariableSetting;
+
+
+/**
+ *  A set of variable value and connection changes for any number of slaves,
+ *  stored as parallel arrays of primitives.
+ *  <p>
+ *  This class is used in calls to
+ *  {@link Execution#reconfigure(SlaveConfigBatch, int)} and
+ *  {@link LocalExecution#reconfigure}, and is an
+ *  alternative to a sequence of {@link SlaveConfig} objects which is
+ *  considerably cheaper to pass to native code when there are many
+ *  settings.  Changes for the same slave need not be contiguous.
+ *  <p>
+ *  The object may be reused for several calls, and may be emptied with
+ *  {@link #clear}.  If <code>reconfigure()</code> throws, {@link #getError}
+ *  may be called to figure out whether a particular slave contributed to the
+ *  failure, and if so, why.
+ */
+public final class SlaveConfigBatch
+{
+    /** Constructs an empty batch. */
+    public SlaveConfigBatch()
+    {
+        this(16);
+    }
+
+    /**
+     *  Constructs an empty batch with room for the given number of settings
+     *  before its internal arrays need to grow.
+     */
+    public SlaveConfigBatch(int initialCapacity)
+    {
+        if (initialCapacity < 1) initialCapacity = 1;
+        slaves_ = new SlaveID[4];
+        slaveIndexMap_ = new IdentityHashMap<SlaveID, Integer>();
+        slaveIndices_ = new int[initialCapacity];
+        variableIDs_ = new int[initialCapacity];
+        valueTypes_ = new byte[initialCapacity];
+        realValues_ = new double[initialCapacity];
+        integerValues_ = new int[initialCapacity];
+        booleanValues_ = new boolean[initialCapacity];
+        stringValues_ = new String[initialCapacity];
+        connectedSlaveIndices_ = new int[initialCapacity];
+        connectedVariableIDs_ = new int[initialCapacity];
+    }
+
+    /** Adds a change of the value of a real variable. */
+    public void setReal(SlaveID slave, int variableID, double value)
+    {
+        final int i = add(slave, variableID, VALUE_REAL);
+        realValues_[i] = value;
+    }
+
+    /** Adds a change of the value of an integer variable. */
+    public void setInteger(SlaveID slave, int variableID, int value)
+    {
+        final int i = add(slave, variableID, VALUE_INTEGER);
+        integerValues_[i] = value;
+    }
+
+    /** Adds a change of the value of a boolean variable. */
+    public void setBoolean(SlaveID slave, int variableID, boolean value)
+    {
+        final int i = add(slave, variableID, VALUE_BOOLEAN);
+        booleanValues_[i] = value;
+    }
+
+    /** Adds a change of the value of a string variable. */
+    public void setString(SlaveID slave, int variableID, String value)
+    {
+        if (value == null) throw new IllegalArgumentException("value is null");
+        final int i = add(slave, variableID, VALUE_STRING);
+        stringValues_[i] = value;
+    }
+
+    /** Adds a change of the value of a variable of any type. */
+    public void setValue(SlaveID slave, int variableID, ScalarValue value)
+    {
+        if (value == null) throw new IllegalArgumentException("value is null");
+        switch (value.getDataType()) {
+            case REAL:
+                setReal(slave, variableID, value.getRealValue());
+                break;
+            case INTEGER:
+                setInteger(slave, variableID, value.getIntegerValue());
+                break;
+            case BOOLEAN:
+                setBoolean(slave, variableID, value.getBooleanValue());
+                break;
+            case STRING:
+                setString(slave, variableID, value.getStringValue());
+                break;
+        }
+    }
+
+    /**
+     *  Adds a connection between an output variable and an input variable,
+     *  or breaks an existing one.
+     *
+     *  @param slave
+     *      The slave which owns the input variable.
+     *  @param inputVariableID
+     *      The ID of the input variable.
+     *  @param output
+     *      The output variable to connect to, or
+     *      {@link VariableSetting#NO_CONNECTION} to break the connection.
+     */
+    public void connect(SlaveID slave, int inputVariableID, Variable output)
+    {
+        final int i = add(slave, inputVariableID, VALUE_NONE);
+        setConnection(i, output);
+    }
+
+    /**
+     *  Adds a change which is specified by a {@link VariableSetting} object.
+     */
+    public void add(SlaveID slave, VariableSetting setting)
+    {
+        if (setting.hasValue()) {
+            setValue(slave, setting.getVariableID(), setting.getValue());
+            if (setting.isConnectionChange()) {
+                setConnection(size_ - 1, setting.getConnectedOutput());
+            }
+        } else {
+            connect(slave, setting.getVariableID(), setting.getConnectedOutput());
+        }
+    }
+
+    /** Returns the number of settings in the batch. */
+    public int size()
+    {
+        return size_;
+    }
+
+    /** Removes all settings and errors from the batch. */
+    public void clear()
+    {
+        Arrays.fill(slaves_, 0, slaveCount_, null);
+        Arrays.fill(stringValues_, 0, size_, null);
+        slaveIndexMap_.clear();
+        slaveCount_ = 0;
+        size_ = 0;
+        errors_ = null;
+    }
+
+    /**
+     *  Returns a textual description of any error that occurred while
+     *  configuring the given slave.
+     *  <p>
+     *  If this function is called before the object has been passed to
+     *  {@link Execution#reconfigure(SlaveConfigBatch, int)}, or if there were
+     *  no errors configuring this particular slave, it will return null.
+     */
+    public String getError(SlaveID slave)
+    {
+        if (errors_ == null) return null;
+        final Integer index = slaveIndexMap_.get(slave);
+        return (index == null || index >= errors_.length) ? null : errors_[index];
+    }
+
+    // =========================================================================
+
+    // Creates a template: a batch whose settings refer to slaves only by
+    // their index in an array of slave IDs which is supplied later, with
+    // withSlaves().  Settings are added with setValueAt() and connectAt().
+    static SlaveConfigBatch template(int slaveCount, int initialCapacity)
+    {
+        final SlaveConfigBatch batch = new SlaveConfigBatch(initialCapacity);
+        batch.slaves_ = new SlaveID[Math.max(slaveCount, 1)];
+        batch.slaveCount_ = slaveCount;
+        return batch;
+    }
+
+    // Adds a change of the value of a variable of the slave with the given
+    // index.
+    void setValueAt(int slaveIndex, int variableID, ScalarValue value)
+    {
+        switch (value.getDataType()) {
+            case REAL:
+                realValues_[addAt(slaveIndex, variableID, VALUE_REAL)] =
+                    value.getRealValue();
+                break;
+            case INTEGER:
+                integerValues_[addAt(slaveIndex, variableID, VALUE_INTEGER)] =
+                    value.getIntegerValue();
+                break;
+            case BOOLEAN:
+                booleanValues_[addAt(slaveIndex, variableID, VALUE_BOOLEAN)] =
+                    value.getBooleanValue();
+                break;
+            case STRING:
+                stringValues_[addAt(slaveIndex, variableID, VALUE_STRING)] =
+                    value.getStringValue();
+                break;
+        }
+    }
+
+    // Adds a connection between slaves with the given indices.
+    void connectAt(
+        int slaveIndex, int inputVariableID,
+        int outputSlaveIndex, int outputVariableID)
+    {
+        final int i = addAt(slaveIndex, inputVariableID, VALUE_NONE);
+        connectedSlaveIndices_[i] = outputSlaveIndex;
+        connectedVariableIDs_[i] = outputVariableID;
+    }
+
+    // Returns a copy of this template which refers to the given slaves,
+    // indexed as in the template.  Settings i for which skip[i] is true
+    // are left out; skip may be shorter than the batch, or null.  The copy
+    // has room for `extra` more settings.
+    SlaveConfigBatch withSlaves(SlaveID[] slaves, boolean[] skip, int extra)
+    {
+        assert slaves.length == slaveCount_;
+        final SlaveConfigBatch batch = new SlaveConfigBatch(size_ + extra);
+        batch.slaves_ = Arrays.copyOf(slaves, Math.max(slaves.length, 1));
+        batch.slaveCount_ = slaves.length;
+        for (int i = 0; i < slaves.length; ++i) {
+            batch.slaveIndexMap_.put(slaves[i], i);
+        }
+        if (skip == null) {
+            System.arraycopy(slaveIndices_, 0, batch.slaveIndices_, 0, size_);
+            System.arraycopy(variableIDs_, 0, batch.variableIDs_, 0, size_);
+            System.arraycopy(valueTypes_, 0, batch.valueTypes_, 0, size_);
+            System.arraycopy(realValues_, 0, batch.realValues_, 0, size_);
+            System.arraycopy(integerValues_, 0, batch.integerValues_, 0, size_);
+            System.arraycopy(booleanValues_, 0, batch.booleanValues_, 0, size_);
+            System.arraycopy(stringValues_, 0, batch.stringValues_, 0, size_);
+            System.arraycopy(connectedSlaveIndices_, 0, batch.connectedSlaveIndices_, 0, size_);
+            System.arraycopy(connectedVariableIDs_, 0, batch.connectedVariableIDs_, 0, size_);
+            batch.size_ = size_;
+        } else {
+            for (int j = 0; j < size_; ++j) {
+                if (j < skip.length && skip[j]) continue;
+                final int i = batch.size_++;
+                batch.slaveIndices_[i] = slaveIndices_[j];
+                batch.variableIDs_[i] = variableIDs_[j];
+                batch.valueTypes_[i] = valueTypes_[j];
+                batch.realValues_[i] = realValues_[j];
+                batch.integerValues_[i] = integerValues_[j];
+                batch.booleanValues_[i] = booleanValues_[j];
+                batch.stringValues_[i] = stringValues_[j];
+                batch.connectedSlaveIndices_[i] = connectedSlaveIndices_[j];
+                batch.connectedVariableIDs_[i] = connectedVariableIDs_[j];
+            }
+        }
+        return batch;
+    }
+
+    // Appends all settings in `other` to this batch.
+    void addAll(SlaveConfigBatch other)
+    {
+        for (int j = 0; j < other.size_; ++j) {
+            final int i = add(
+                other.slaves_[other.slaveIndices_[j]],
+                other.variableIDs_[j],
+                other.valueTypes_[j]);
+            realValues_[i] = other.realValues_[j];
+            integerValues_[i] = other.integerValues_[j];
+            booleanValues_[i] = other.booleanValues_[j];
+            stringValues_[i] = other.stringValues_[j];
+            final int c = other.connectedSlaveIndices_[j];
+            connectedSlaveIndices_[i] = (c < 0) ? c : slaveIndex(other.slaves_[c]);
+            connectedVariableIDs_[i] = other.connectedVariableIDs_[j];
+        }
+    }
+
+    // Called by Execution.reconfigure() to pass the batch to native code.
+    void reconfigure(long executionPtr, int timeout_ms) throws Exception
+    {
+        final String[] errors = new String[slaveCount_];
+        errors_ = errors;
+        Execution.reconfigureBatchNative(
+            executionPtr,
+            slaves_, slaveCount_,
+            size_,
+            slaveIndices_,
+            variableIDs_,
+            valueTypes_,
+            realValues_,
+            integerValues_,
+            booleanValues_,
+            stringValues_,
+            connectedSlaveIndices_,
+            connectedVariableIDs_,
+            errors,
+            timeout_ms);
+    }
+
+    // Called by LocalExecution.reconfigure() to pass the batch to native code.
+    void reconfigureLocal(long localExecutionPtr) throws Exception
+    {
+        final String[] errors = new String[slaveCount_];
+        errors_ = errors;
+        LocalExecution.reconfigureBatchNative(
+            localExecutionPtr,
+            slaves_, slaveCount_,
+            size_,
+            slaveIndices_,
+            variableIDs_,
+            valueTypes_,
+            realValues_,
+            integerValues_,
+            booleanValues_,
+            stringValues_,
+            connectedSlaveIndices_,
+            connectedVariableIDs_,
+            errors);
+    }
+
+    // Value type tags.  These must match the ones used in the native code.
+    static final byte VALUE_NONE = -1;
+    static final byte VALUE_REAL = 0;
+    static final byte VALUE_INTEGER = 1;
+    static final byte VALUE_BOOLEAN = 2;
+    static final byte VALUE_STRING = 3;
+
+    // Special values for connectedSlaveIndices_.
+    static final int NO_CONNECTION_CHANGE = -1;
+    static final int DISCONNECT = -2;
+
+    private int add(SlaveID slave, int variableID, byte valueType)
+    {
+        return addAt(slaveIndex(slave), variableID, valueType);
+    }
+
+    private int addAt(int slaveIndex, int variableID, byte valueType)
+    {
+        if (size_ == slaveIndices_.length) grow();
+        final int i = size_++;
+        slaveIndices_[i] = slaveIndex;
+        variableIDs_[i] = variableID;
+        valueTypes_[i] = valueType;
+        connectedSlaveIndices_[i] = NO_CONNECTION_CHANGE;
+        return i;
+    }
+
+    private void setConnection(int i, Variable output)
+    {
+        if (output == VariableSetting.NO_CONNECTION) {
+            connectedSlaveIndices_[i] = DISCONNECT;
+            connectedVariableIDs_[i] = 0;
+        } else {
+            connectedSlaveIndices_[i] = slaveIndex(output.getSlaveID());
+            connectedVariableIDs_[i] = output.getVariableID();
+        }
+    }
+
+    private int slaveIndex(SlaveID slave)
+    {
+        if (slave == null) throw new IllegalArgumentException("Slave ID is null");
+        final Integer index = slaveIndexMap_.get(slave);
+        if (index != null) return index;
+        if (slaveCount_ == slaves_.length) {
+            slaves_ = Arrays.copyOf(slaves_, 2 * slaveCount_);
+        }
+        slaves_[slaveCount_] = slave;
+        slaveIndexMap_.put(slave, slaveCount_);
+        return slaveCount_++;
+    }
+
+    private void grow()
+    {
+        final int n = 2 * slaveIndices_.length;
+        slaveIndices_ = Arrays.copyOf(slaveIndices_, n);
+        variableIDs_ = Arrays.copyOf(variableIDs_, n);
+        valueTypes_ = Arrays.copyOf(valueTypes_, n);
+        realValues_ = Arrays.copyOf(realValues_, n);
+        integerValues_ = Arrays.copyOf(integerValues_, n);
+        booleanValues_ = Arrays.copyOf(booleanValues_, n);
+        stringValues_ = Arrays.copyOf(stringValues_, n);
+        connectedSlaveIndices_ = Arrays.copyOf(connectedSlaveIndices_, n);
+        connectedVariableIDs_ = Arrays.copyOf(connectedVariableIDs_, n);
+    }
+
+    // The distinct slaves referred to by the settings, either as the slave
+    // to configure or as the owner of a connected output variable.
+    private SlaveID[] slaves_;
+    private int slaveCount_ = 0;
+    private Map<SlaveID, Integer> slaveIndexMap_;
+
+    // The settings.  slaveIndices_ and connectedSlaveIndices_ contain
+    // indices into slaves_.  Only one of the value arrays is used for each
+    // setting, as determined by valueTypes_.
+    private int size_ = 0;
+    private int[] slaveIndices_;
+    private int[] variableIDs_;
+    private byte[] valueTypes_;
+    private double[] realValues_;
+    private int[] integerValues_;
+    private boolean[] booleanValues_;
+    private String[] stringValues_;
+    private int[] connectedSlaveIndices_;
+    private int[] connectedVariableIDs_;
+
+    // Error messages from the last reconfiguration, indexed like slaves_.
+    private String[] errors_;
+}
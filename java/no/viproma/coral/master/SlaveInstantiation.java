@@ -0,0 +1,112 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.master;
+
+import no.viproma.coral.net.SlaveLocator;
+
+
+/**
+ *  Specifies a slave which is to be instantiated by a slave provider.
+ *  <p>
+ *  This class is used in calls to {@link ProviderCluster#instantiateSlaves}
+ *  to supply information about the slave which is to be instantiated, and
+ *  to obtain the result afterwards (including any errors that may have
+ *  occurred in the process).
+ *  <p>
+ *  After <code>instantiateSlaves</code> has completed, the
+ *  {@link #getLocator} and {@link #getError} functions can be queried for
+ *  information about the slave.
+ */
+public class SlaveInstantiation
+{
+    /**
+     *  Constructor.
+     *
+     *  @param slaveProviderID
+     *      The ID of the slave provider that should instantiate the slave.
+     *  @param slaveTypeUUID
+     *      The UUID that identifies the type of the slave that is to be
+     *      instantiated.
+     */
+    public SlaveInstantiation(String slaveProviderID, String slaveTypeUUID)
+    {
+        if (slaveProviderID == null) {
+            throw new IllegalArgumentException("Slave provider ID is null");
+        }
+        if (slaveTypeUUID == null) {
+            throw new IllegalArgumentException("Slave type UUID is null");
+        }
+        slaveProviderID_ = slaveProviderID;
+        slaveTypeUUID_ = slaveTypeUUID;
+    }
+
+    /**
+     *  Constructor which leaves the choice of slave provider to the cluster.
+     *  <p>
+     *  The provider is selected by the cluster's {@link PlacementStrategy}
+     *  among those returned by
+     *  {@link ProviderCluster.SlaveType#getProviders}.
+     */
+    public SlaveInstantiation(ProviderCluster.SlaveType slaveType)
+    {
+        if (slaveType == null) {
+            throw new IllegalArgumentException("Slave type is null");
+        }
+        slaveType_ = slaveType;
+        slaveTypeUUID_ = slaveType.getSlaveTypeDescription().getUUID();
+    }
+
+    /**
+     *  Returns the slave type that was passed to the constructor, or null
+     *  if the object was constructed with a provider ID and slave type UUID.
+     */
+    public ProviderCluster.SlaveType getSlaveType() { return slaveType_; }
+
+    /**
+     *  Returns the ID of the slave provider that should instantiate the slave.
+     *  <p>
+     *  If the provider was left for the cluster to choose, this returns null
+     *  until the object has been passed to
+     *  {@link ProviderCluster#instantiateSlaves}.
+     */
+    public String getSlaveProviderID() { return slaveProviderID_; }
+
+    void setSlaveProviderID(String value) { slaveProviderID_ = value; }
+
+    /** Returns the UUID of the slave type. */
+    public String getSlaveTypeUUID() { return slaveTypeUUID_; }
+
+    /**
+     *  Returns information about the slave's network location.
+     *  <p>
+     *  If this function is called before the object has been passed to
+     *  {@link ProviderCluster#instantiateSlaves}, or if the slave could not
+     *  be instantiated, it will return null.  In the latter case,
+     *  <code>instantiateSlaves</code> will have thrown an exception, and a
+     *  textual description of the error can be obtained by calling
+     *  {@link #getError}.
+     */
+    public SlaveLocator getLocator() { return locator_; }
+
+    void setLocator(SlaveLocator value) { locator_ = value; }
+
+    /**
+     *  Returns a textual description of any error that may have occurred.
+     *  <p>
+     *  If this function is called before the object has been passed to
+     *  {@link ProviderCluster#instantiateSlaves}, or if there were no errors
+     *  instantiating this particular slave, it will return null.
+     */
+    public String getError() { return error_; }
+
+    void setError(String value) { error_ = value; }
+
+    private ProviderCluster.SlaveType slaveType_;
+    private volatile String slaveProviderID_;
+    private String slaveTypeUUID_;
+    private volatile SlaveLocator locator_;
+    private volatile String error_;
+}
@@ -0,0 +1,311 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.master;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import no.viproma.coral.Logging;
+import no.viproma.coral.net.SlaveLocator;
+
+
+/**
+ *  A pool of slaves which have been instantiated in advance.
+ *  <p>
+ *  Instantiating a slave involves loading and initialising it on the
+ *  slave provider, which may take a considerable amount of time.  This
+ *  class keeps a configurable number of ready slaves of each type, so that
+ *  models can be set up without waiting for instantiation.  Whenever a
+ *  slave is {@linkplain #take taken} from the pool, a replacement is
+ *  instantiated in a background thread.
+ *  <p>
+ *  A pool may be passed to {@link ModelBuilder#setSlavePool}, in which case
+ *  {@link ModelBuilder#apply} takes slaves from it when possible.
+ *  <p>
+ *  Slaves which are not connected to an execution shut themselves down
+ *  after a while.  Pooled slaves are therefore discarded when they have
+ *  been idle for longer than the {@linkplain #setMaxIdleTime maximum idle
+ *  time}, which should be set lower than the slaves' own timeout.  Note
+ *  that a discarded slave keeps running on its provider, using memory and
+ *  possibly a process, until that timeout expires.  To avoid starting an
+ *  unbounded number of slaves for a pool which is not used, discarded
+ *  slaves are not replaced until a slave of the same type is requested
+ *  again with {@link #take}.  An idle pool thus costs at most one batch
+ *  of slaves per idle period.
+ *  <p>
+ *  Replacements are instantiated one at a time, so the background thread
+ *  uses no more than one of the cluster's native connections, and
+ *  foreground instantiations on the same cluster are never queued behind
+ *  a whole batch of pool refills.
+ *  <p>
+ *  Objects of this class should always be disposed of with {@link #close}
+ *  to stop the background thread.  This class is thread safe.
+ */
+public final class SlavePool implements AutoCloseable
+{
+    /**
+     *  Constructor.
+     *
+     *  @param cluster
+     *      The cluster used to instantiate slaves.
+     *  @param instantiationTimeout_ms
+     *      How much time each slave gets to start up.
+     *      The value -1 means no limit.
+     */
+    public SlavePool(ProviderCluster cluster, int instantiationTimeout_ms)
+    {
+        if (cluster == null) {
+            throw new IllegalArgumentException("cluster is null");
+        }
+        cluster_ = cluster;
+        instantiationTimeout_ms_ = instantiationTimeout_ms;
+        refiller_ = Executors.newSingleThreadScheduledExecutor(THREAD_FACTORY);
+        refiller_.scheduleWithFixedDelay(
+            new Runnable() {
+                public void run() { refill(); }
+            },
+            REFILL_INTERVAL_MS,
+            REFILL_INTERVAL_MS,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     *  Stops the background thread.
+     *  <p>
+     *  Slaves which are still in the pool are abandoned, and will shut
+     *  themselves down when they time out.
+     */
+    @Override
+    public void close() throws InterruptedException
+    {
+        refiller_.shutdownNow();
+        refiller_.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        synchronized (this) {
+            types_.clear();
+        }
+    }
+
+    /**
+     *  Sets the number of ready slaves of the given type that the pool
+     *  should maintain.
+     *  <p>
+     *  The pool is filled up in the background.  Setting the size to zero
+     *  stops the pool from instantiating more slaves of this type, but
+     *  does not discard the ones that are already in the pool.
+     */
+    public void setTargetSize(ProviderCluster.SlaveType slaveType, int size)
+    {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative pool size");
+        }
+        synchronized (this) {
+            final String uuid = slaveType.getSlaveTypeDescription().getUUID();
+            TypePool pool = types_.get(uuid);
+            if (pool == null) {
+                pool = new TypePool(slaveType);
+                types_.put(uuid, pool);
+            }
+            pool.targetSize = size;
+            pool.active = true;
+        }
+        scheduleRefill();
+    }
+
+    /**
+     *  Sets how long a slave may stay in the pool before it is discarded,
+     *  in milliseconds.  The default is one minute.
+     */
+    public synchronized void setMaxIdleTime(long maxIdleTime_ms)
+    {
+        if (maxIdleTime_ms <= 0) {
+            throw new IllegalArgumentException("Idle time must be positive");
+        }
+        maxIdleTime_ms_ = maxIdleTime_ms;
+    }
+
+    /** Returns the number of ready slaves of the given type. */
+    public synchronized int getAvailable(String slaveTypeUUID)
+    {
+        final TypePool pool = types_.get(slaveTypeUUID);
+        if (pool == null) return 0;
+        discardExpired(pool);
+        return pool.ready.size();
+    }
+
+    /**
+     *  Takes a slave of the given type out of the pool, on any provider.
+     *
+     *  @return
+     *      The location of a ready slave, or null if there are none.
+     */
+    public SlaveLocator take(String slaveTypeUUID)
+    {
+        return take(slaveTypeUUID, null);
+    }
+
+    /**
+     *  Takes a slave of the given type, running on the given provider,
+     *  out of the pool.
+     *
+     *  @param slaveTypeUUID
+     *      The slave type UUID.
+     *  @param slaveProviderID
+     *      The slave provider ID, or null to accept any provider.
+     *
+     *  @return
+     *      The location of a ready slave, or null if there are none.
+     */
+    public SlaveLocator take(String slaveTypeUUID, String slaveProviderID)
+    {
+        SlaveLocator locator = null;
+        synchronized (this) {
+            final TypePool pool = types_.get(slaveTypeUUID);
+            if (pool == null) return null;
+            discardExpired(pool);
+            // There is demand for this type again, so let the pool refill,
+            // whether or not a slave is available now.
+            final boolean wasIdle = !pool.active;
+            pool.active = true;
+            for (Iterator<PooledSlave> it = pool.ready.iterator(); it.hasNext(); ) {
+                final PooledSlave slave = it.next();
+                if (slaveProviderID == null || slaveProviderID.equals(slave.providerID)) {
+                    it.remove();
+                    locator = slave.locator;
+                    break;
+                }
+            }
+            if (locator == null && !wasIdle) return null;
+        }
+        scheduleRefill();
+        return locator;
+    }
+
+    // -------------------------------------------------------------------------
+
+    private static final long REFILL_INTERVAL_MS = 1000;
+
+    private void scheduleRefill()
+    {
+        try {
+            refiller_.execute(new Runnable() {
+                public void run() { refill(); }
+            });
+        } catch (RejectedExecutionException e) {
+            // The pool has been closed.
+        }
+    }
+
+    // Instantiates slaves, one at a time, to make up for any shortfall in
+    // the active pools.  Only ever called on the refill thread.
+    private void refill()
+    {
+        while (!Thread.currentThread().isInterrupted()) {
+            final TypePool pool;
+            final SlaveInstantiation si;
+            synchronized (this) {
+                pool = findShortPool();
+                if (pool == null) return;
+                si = new SlaveInstantiation(pool.slaveType);
+            }
+
+            try {
+                cluster_.instantiateSlaves(
+                    Collections.singletonList(si), instantiationTimeout_ms_);
+            } catch (Exception e) {
+                Logging.getLogger().log(
+                    Level.WARNING, "Failed to instantiate pooled slave", e);
+            }
+
+            synchronized (this) {
+                if (si.getLocator() == null) {
+                    // Try again at the next scheduled refill.
+                    return;
+                }
+                pool.ready.addLast(new PooledSlave(
+                    si.getLocator(), si.getSlaveProviderID(), System.currentTimeMillis()));
+            }
+        }
+    }
+
+    // Returns an active pool with fewer slaves than its target size, if any.
+    private TypePool findShortPool()
+    {
+        for (TypePool pool : types_.values()) {
+            discardExpired(pool);
+            if (pool.active && pool.ready.size() < pool.targetSize) {
+                return pool;
+            }
+        }
+        return null;
+    }
+
+    // Discards slaves that have been idle for too long, and stops refilling
+    // the pool until it is used again.
+    private void discardExpired(TypePool pool)
+    {
+        final long oldest = System.currentTimeMillis() - maxIdleTime_ms_;
+        while (!pool.ready.isEmpty() && pool.ready.peekFirst().created < oldest) {
+            pool.ready.removeFirst();
+            pool.active = false;
+        }
+    }
+
+    private static final class PooledSlave
+    {
+        PooledSlave(SlaveLocator locator, String providerID, long created)
+        {
+            this.locator = locator;
+            this.providerID = providerID;
+            this.created = created;
+        }
+
+        final SlaveLocator locator;
+        final String providerID;
+        final long created;
+    }
+
+    private static final class TypePool
+    {
+        TypePool(ProviderCluster.SlaveType slaveType)
+        {
+            this.slaveType = slaveType;
+        }
+
+        final ProviderCluster.SlaveType slaveType;
+        int targetSize;
+        // Whether the pool should be refilled.  False when slaves have
+        // expired without anyone taking one.
+        boolean active = true;
+        // Oldest first
+        final Deque<PooledSlave> ready = new ArrayDeque<PooledSlave>();
+    }
+
+    private static final ThreadFactory THREAD_FACTORY =
+        new ThreadFactory() {
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "jcoral-slave-pool");
+                t.setDaemon(true);
+                return t;
+            }
+        };
+
+    private final ProviderCluster cluster_;
+    private final int instantiationTimeout_ms_;
+    private final ScheduledExecutorService refiller_;
+    private final Map<String, TypePool> types_ = new HashMap<String, TypePool>();
+    private long maxIdleTime_ms_ = 60 * 1000;
+}
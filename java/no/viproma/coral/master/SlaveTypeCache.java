@@ -0,0 +1,330 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.master;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+import no.viproma.coral.Logging;
+import no.viproma.coral.model.SlaveTypeDescription;
+
+
+/**
+ * A cache of slave type information, which may be stored on disk.
+ * <p>
+ * Querying a {@link ProviderCluster} for the available slave types
+ * requires waiting for the providers to be discovered and then transferring
+ * the descriptions of all slave types, which may be a lot of data.  This
+ * class stores that information, keyed by slave type UUID and provider ID,
+ * so that it can be reused by several {@link ModelBuilder}s and, through
+ * {@link #save} and {@link #SlaveTypeCache(File) loading}, by later
+ * processes.
+ * <p>
+ * Each (provider, slave type) pair is stamped with the time it was last
+ * confirmed by the cluster, and pairs that are older than the
+ * {@linkplain #setMaxAge maximum age} are ignored by the lookup functions.
+ * Revalidation is therefore just a comparison of time stamps, and the
+ * cache only needs to be refreshed from the cluster when something is
+ * missing or stale.  If a slave cannot be instantiated from a cached
+ * entry, the entry should be {@linkplain #remove removed};
+ * {@link ModelBuilder#apply} does this automatically.
+ * <p>
+ * The on-disk format is a compact binary one, which is private to this
+ * library and may change between versions.  Files in an unrecognised
+ * format, and files which cannot be read, are ignored.
+ * <p>
+ * This class is thread safe.
+ */
+public final class SlaveTypeCache
+{
+    private static final int FILE_MAGIC = 0x4A435354; // "JCST"
+    private static final int FILE_VERSION = 1;
+
+    /** Constructs an empty, in-memory cache. */
+    public SlaveTypeCache()
+    {
+        file_ = null;
+    }
+
+    /**
+     * Constructs a cache which is stored in the given file.
+     * <p>
+     * If the file exists and is a valid cache file, its contents are
+     * loaded.  Otherwise, including when the file cannot be read or is
+     * corrupt, the cache starts out empty, and a warning is logged in the
+     * latter cases.  The file is only written when {@link #save} is called.
+     */
+    public SlaveTypeCache(File file)
+    {
+        if (file == null) {
+            throw new IllegalArgumentException("File is null");
+        }
+        file_ = file;
+        if (file.exists()) load();
+    }
+
+    /**
+     * Sets the maximum age of cache entries, in milliseconds.
+     * <p>
+     * Entries which have not been confirmed by the cluster within this
+     * time are ignored by the lookup functions.  The default is one day.
+     */
+    public synchronized void setMaxAge(long maxAge_ms)
+    {
+        if (maxAge_ms < 0) {
+            throw new IllegalArgumentException("Negative maximum age");
+        }
+        maxAge_ms_ = maxAge_ms;
+    }
+
+    /** Returns the maximum age of cache entries, in milliseconds. */
+    public synchronized long getMaxAge()
+    {
+        return maxAge_ms_;
+    }
+
+    /**
+     * Records the result of a {@link ProviderCluster#getSlaveTypes} call.
+     * <p>
+     * All the (provider, slave type) pairs in <code>slaveTypes</code> are
+     * marked as confirmed now.  Cached slave types which are no longer
+     * offered by a provider that appears in <code>slaveTypes</code> are
+     * removed for that provider.
+     */
+    public synchronized void update(Iterable<ProviderCluster.SlaveType> slaveTypes)
+    {
+        final long now = System.currentTimeMillis();
+        final Set<String> seenProviders = new HashSet<String>();
+        final Set<String> seenPairs = new HashSet<String>();
+        for (ProviderCluster.SlaveType st : slaveTypes) {
+            final SlaveTypeDescription description = st.getSlaveTypeDescription();
+            Entry entry = entries_.get(description.getUUID());
+            if (entry == null) {
+                entry = new Entry(description);
+                entries_.put(description.getUUID(), entry);
+            } else {
+                entry.description = description;
+            }
+            for (String provider : st.getProviders()) {
+                entry.providers.put(provider, now);
+                seenProviders.add(provider);
+                seenPairs.add(provider + '\0' + description.getUUID());
+            }
+        }
+
+        for (Iterator<Entry> it = entries_.values().iterator(); it.hasNext(); ) {
+            final Entry entry = it.next();
+            final String uuid = entry.description.getUUID();
+            for (Iterator<String> pit = entry.providers.keySet().iterator(); pit.hasNext(); ) {
+                final String provider = pit.next();
+                if (seenProviders.contains(provider)
+                    && !seenPairs.contains(provider + '\0' + uuid))
+                {
+                    pit.remove();
+                }
+            }
+            if (entry.providers.isEmpty()) it.remove();
+        }
+    }
+
+    /**
+     * Removes a (provider, slave type) pair from the cache, e.g. because a
+     * slave could not be instantiated from it.
+     */
+    public synchronized void remove(String slaveProviderID, String slaveTypeUUID)
+    {
+        final Entry entry = entries_.get(slaveTypeUUID);
+        if (entry == null) return;
+        entry.providers.remove(slaveProviderID);
+        if (entry.providers.isEmpty()) entries_.remove(slaveTypeUUID);
+    }
+
+    /** Removes all entries from the cache. */
+    public synchronized void clear()
+    {
+        entries_.clear();
+    }
+
+    /**
+     * Returns the slave type with the given UUID, or null if it is not in
+     * the cache or none of its providers have been confirmed recently
+     * enough.
+     * <p>
+     * The returned object only lists the providers which have been
+     * confirmed within the maximum age.
+     */
+    public synchronized ProviderCluster.SlaveType getSlaveType(String uuid)
+    {
+        final Entry entry = entries_.get(uuid);
+        return entry == null ? null : entry.toSlaveType(oldestValid());
+    }
+
+    /**
+     * Returns a slave type with the given name, or null if there is none.
+     * <p>
+     * If several slave types have the same name, it is unspecified which
+     * of them is returned.  Stale entries are treated as in
+     * {@link #getSlaveType}.
+     */
+    public synchronized ProviderCluster.SlaveType findSlaveType(String name)
+    {
+        final long oldest = oldestValid();
+        for (Entry entry : entries_.values()) {
+            if (entry.description.getName().equals(name)) {
+                final ProviderCluster.SlaveType st = entry.toSlaveType(oldest);
+                if (st != null) return st;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all slave types which have at least one provider that has
+     * been confirmed within the maximum age.
+     */
+    public synchronized List<ProviderCluster.SlaveType> getSlaveTypes()
+    {
+        final long oldest = oldestValid();
+        final List<ProviderCluster.SlaveType> ret = new ArrayList<ProviderCluster.SlaveType>();
+        for (Entry entry : entries_.values()) {
+            final ProviderCluster.SlaveType st = entry.toSlaveType(oldest);
+            if (st != null) ret.add(st);
+        }
+        return ret;
+    }
+
+    /**
+     * Writes the cache to the file that was passed to the constructor.
+     * <p>
+     * The data is first written to a temporary file, which then replaces
+     * the cache file, so other processes never see a partially written
+     * cache.  (On file systems that do not support atomic moves, the
+     * replacement is not atomic.)
+     *
+     * @throws IllegalStateException
+     *      If this is an in-memory cache.
+     */
+    public synchronized void save() throws IOException
+    {
+        if (file_ == null) {
+            throw new IllegalStateException("Cache is not associated with a file");
+        }
+        final File dir = file_.getAbsoluteFile().getParentFile();
+        final File temp = File.createTempFile(file_.getName() + ".new", ".tmp", dir);
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp))))
+            {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeInt(entries_.size());
+                for (Entry entry : entries_.values()) {
+                    entry.description.writeTo(out);
+                    out.writeInt(entry.providers.size());
+                    for (Map.Entry<String, Long> p : entry.providers.entrySet()) {
+                        out.writeUTF(p.getKey());
+                        out.writeLong(p.getValue());
+                    }
+                }
+            }
+            try {
+                Files.move(
+                    temp.toPath(),
+                    file_.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(
+                    temp.toPath(),
+                    file_.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            if (temp.exists()) temp.delete();
+        }
+    }
+
+    // -------------------------------------------------------------------------
+
+    // Loads the cache file.  Unreadable or corrupt files leave the cache
+    // empty.
+    private void load()
+    {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file_))))
+        {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                return;
+            }
+            final int entryCount = in.readInt();
+            final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+            for (int i = 0; i < entryCount; ++i) {
+                final Entry entry = new Entry(SlaveTypeDescription.readFrom(in));
+                final int providerCount = in.readInt();
+                for (int j = 0; j < providerCount; ++j) {
+                    final String provider = in.readUTF();
+                    entry.providers.put(provider, in.readLong());
+                }
+                entries.put(entry.description.getUUID(), entry);
+            }
+            entries_.putAll(entries);
+        } catch (IOException e) {
+            // A truncated or corrupt file is treated like an unrecognised
+            // one, but we let the user know.
+            Logging.getLogger().log(
+                Level.WARNING, "Ignoring unreadable slave type cache: " + file_, e);
+        }
+    }
+
+    private long oldestValid()
+    {
+        return System.currentTimeMillis() - maxAge_ms_;
+    }
+
+    private static final class Entry
+    {
+        Entry(SlaveTypeDescription description)
+        {
+            this.description = description;
+        }
+
+        ProviderCluster.SlaveType toSlaveType(long oldestValid)
+        {
+            final List<String> valid = new ArrayList<String>();
+            for (Map.Entry<String, Long> p : providers.entrySet()) {
+                if (p.getValue() >= oldestValid) valid.add(p.getKey());
+            }
+            if (valid.isEmpty()) return null;
+            return new ProviderCluster.SlaveType(
+                description, valid.toArray(new String[valid.size()]));
+        }
+
+        SlaveTypeDescription description;
+        // Provider ID -> time last confirmed
+        final Map<String, Long> providers = new LinkedHashMap<String, Long>();
+    }
+
+    private final File file_;
+    private final Map<String, Entry> entries_ = new LinkedHashMap<String, Entry>();
+    private long maxAge_ms_ = 24L * 60 * 60 * 1000;
+}
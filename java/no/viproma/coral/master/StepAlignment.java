@@ -0,0 +1,44 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.master;
+
+
+/**
+ * How {@link Execution#simulate} deals with scenario events that do not
+ * fall on the time step grid.
+ * <p>
+ * In all cases, time points are computed as an integer number of steps
+ * from a fixed origin, so rounding errors do not accumulate over long
+ * runs, and a time point which lies within a millionth of a step of a
+ * grid point is treated as lying on it.
+ *
+ * @see ExecutionOptions#setStepAlignment
+ */
+public enum StepAlignment
+{
+    /**
+     * Events are applied at their exact time points.  The last step before
+     * an event is shortened so that it ends at the event, and the step grid
+     * is restarted from there.
+     */
+    EXACT,
+
+    /**
+     * Each event is applied at the grid point nearest to its time point,
+     * where the grid starts at the simulation time at which
+     * <code>simulate()</code> was called.  All steps, except possibly the
+     * very last one, have the requested length.
+     */
+    SNAP,
+
+    /**
+     * Events are applied at their exact time points, but the interval
+     * before each event is divided into equal steps, none of which is
+     * longer than the requested step size.  This avoids short residual
+     * steps while keeping exact event timing.
+     */
+    SPREAD
+}
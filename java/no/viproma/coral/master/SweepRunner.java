@@ -0,0 +1,353 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.master;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import no.viproma.coral.model.ScalarValue;
+
+
+/**
+ * Runs many independent simulations of the same model concurrently.
+ * <p>
+ * Each simulation is set up from a common model template (a
+ * {@link ModelBuilder}), with a separate set of parameter values
+ * overriding the template's initial values.  The simulations are run
+ * by a fixed number of worker threads, each of which has at most one
+ * {@link Execution} at a time, and the results are delivered to a
+ * {@link ResultListener} as soon as each simulation is finished.
+ * <p>
+ * Each worker only ever uses its own <code>Execution</code>.  The workers
+ * share the template's {@link ProviderCluster}, which gives each thread
+ * that instantiates slaves a native cluster object of its own, so the
+ * workers can set up their simulations at the same time.  The model
+ * template is {@linkplain
+ * ModelBuilder#prepare prepared} once at the start of each {@link #run}
+ * call, so later changes to it only affect subsequent calls.
+ */
+public final class SweepRunner
+{
+    /** A set of variable values that override a model's initial values. */
+    public static final class ParameterSet
+    {
+        /**
+         * Sets the value of a variable, replacing any previous value.
+         * <p>
+         * The slave and variable names, and the data type of the value,
+         * are checked against the model when the simulation is set up.
+         * Errors are reported through the {@link ResultListener}.
+         *
+         * @return
+         *      This object, so calls may be chained.
+         */
+        public ParameterSet set(String slaveName, String variableName, ScalarValue value)
+        {
+            if (value == null) {
+                throw new IllegalArgumentException("Value is null");
+            }
+            values_.put(
+                slaveName + '.' + variableName,
+                new Entry(slaveName, variableName, value));
+            return this;
+        }
+
+        /** Returns the value of a variable, or null if it has not been set. */
+        public ScalarValue get(String slaveName, String variableName)
+        {
+            final Entry e = values_.get(slaveName + '.' + variableName);
+            return e == null ? null : e.value;
+        }
+
+        // Resolves the values against a prepared model.
+        Map<PreparedModel.Parameter, ScalarValue> toOverrides(PreparedModel model)
+            throws EntityNotFoundException
+        {
+            final Map<PreparedModel.Parameter, ScalarValue> overrides =
+                new HashMap<PreparedModel.Parameter, ScalarValue>();
+            for (Entry e : values_.values()) {
+                overrides.put(model.getParameter(e.slaveName, e.variableName), e.value);
+            }
+            return overrides;
+        }
+
+        private static final class Entry
+        {
+            Entry(String slaveName, String variableName, ScalarValue value)
+            {
+                this.slaveName = slaveName;
+                this.variableName = variableName;
+                this.value = value;
+            }
+
+            final String slaveName;
+            final String variableName;
+            final ScalarValue value;
+        }
+
+        private final Map<String, Entry> values_ = new LinkedHashMap<String, Entry>();
+    }
+
+    /** The work to be done for each simulation, after setup. */
+    public interface Job<R>
+    {
+        /**
+         * Runs a simulation and extracts its result.
+         * <p>
+         * This is called by a worker thread after the model has been
+         * applied to <code>execution</code> and the parameter values
+         * have been set.  The execution is closed afterwards.
+         *
+         * @param execution
+         *      The execution, with all slaves added and initialised.
+         * @param slaves
+         *      Mappings from slave names to IDs.
+         * @param parameters
+         *      The parameter values used for this simulation.
+         *
+         * @return
+         *      The result of the simulation, which is passed to the
+         *      {@link ResultListener}.
+         */
+        R run(Execution execution, ModelSlaveMap slaves, ParameterSet parameters)
+            throws Exception;
+    }
+
+    /** Receives the results of the simulations as they finish. */
+    public interface ResultListener<R>
+    {
+        /**
+         * Called when a simulation has finished or failed.
+         * <p>
+         * Calls are made from the worker threads, but never concurrently.
+         * If this function throws, no more simulations are started, and
+         * the exception is rethrown by {@link SweepRunner#run}.
+         *
+         * @param index
+         *      The position of the parameter set in the sequence passed to
+         *      <code>run()</code>, starting at zero.
+         * @param parameters
+         *      The parameter set.
+         * @param result
+         *      The value returned by {@link Job#run}, or null if the
+         *      simulation failed.
+         * @param error
+         *      The reason the simulation failed, or null if it succeeded.
+         */
+        void finished(int index, ParameterSet parameters, R result, Exception error)
+            throws Exception;
+    }
+
+    /**
+     * Returns a suitable default number of concurrent simulations, namely
+     * the number of processors available to this JVM.
+     * <p>
+     * This is appropriate when the slaves run on this machine.  When they
+     * run on slave providers elsewhere, the providers' total capacity
+     * should be taken into account instead.
+     */
+    public static int defaultParallelism()
+    {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param model
+     *      The model template.
+     * @param parallelism
+     *      The maximum number of simulations to run at the same time.
+     */
+    public SweepRunner(ModelBuilder model, int parallelism)
+    {
+        if (model == null) {
+            throw new IllegalArgumentException("Model is null");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        model_ = model;
+        parallelism_ = parallelism;
+    }
+
+    /**
+     * Sets the options used for each execution.
+     * <p>
+     * By default, an <code>ExecutionOptions</code> object with default
+     * settings is used.
+     */
+    public void setExecutionOptions(ExecutionOptions options)
+    {
+        executionOptions_ = options;
+    }
+
+    /**
+     * Sets the timeouts used when setting up each simulation.
+     *
+     * @param instantiationTimeout_ms
+     *      The timeout used for instantiating slaves.  The default is
+     *      30 seconds.
+     * @param commandTimeout_ms
+     *      The timeout used for execution commands.  The default is
+     *      one second.
+     */
+    public void setTimeouts(int instantiationTimeout_ms, int commandTimeout_ms)
+    {
+        instantiationTimeout_ms_ = instantiationTimeout_ms;
+        commandTimeout_ms_ = commandTimeout_ms;
+    }
+
+    /**
+     * Runs one simulation for each parameter set.
+     * <p>
+     * Parameter sets are taken from the iterator one at a time, as worker
+     * threads become available, so the sequence may be arbitrarily long
+     * and generated on demand.  This function returns when all simulations
+     * have finished and their results have been delivered.
+     *
+     * @param parameterSets
+     *      The parameter sets.  The iterator is only accessed by one thread
+     *      at a time.
+     * @param job
+     *      What to do in each simulation.
+     * @param listener
+     *      Receives the results.
+     *
+     * @return
+     *      The number of simulations that failed.
+     *
+     * @throws Exception
+     *      If <code>listener</code> or <code>parameterSets</code> threw.
+     */
+    public <R> int run(
+        final Iterator<ParameterSet> parameterSets,
+        final Job<R> job,
+        final ResultListener<R> listener)
+        throws Exception
+    {
+        final WorkQueue<R> queue =
+            new WorkQueue<R>(model_.prepare(), parameterSets, listener);
+        final ExecutorService workers = Executors.newFixedThreadPool(
+            parallelism_, THREAD_FACTORY);
+        try {
+            final List<Future<?>> results = new ArrayList<Future<?>>();
+            for (int i = 0; i < parallelism_; ++i) {
+                results.add(workers.submit(new Runnable() {
+                    public void run() { work(queue, job); }
+                }));
+            }
+            for (Future<?> r : results) r.get();
+        } finally {
+            workers.shutdown();
+        }
+        if (queue.abortCause != null) throw queue.abortCause;
+        return queue.failures;
+    }
+
+    // -------------------------------------------------------------------------
+
+    // The state shared between the workers in one run() call.
+    private static final class WorkQueue<R>
+    {
+        WorkQueue(
+            PreparedModel model,
+            Iterator<ParameterSet> parameterSets,
+            ResultListener<R> listener)
+        {
+            this.model = model;
+            this.parameterSets = parameterSets;
+            this.listener = listener;
+        }
+
+        final PreparedModel model;
+        final Iterator<ParameterSet> parameterSets;
+        final ResultListener<R> listener;
+        int nextIndex = 0;
+        int failures = 0;
+        Exception abortCause = null;
+    }
+
+    private <R> void work(WorkQueue<R> queue, Job<R> job)
+    {
+        while (true) {
+            final int index;
+            final ParameterSet parameters;
+            synchronized (queue) {
+                if (queue.abortCause != null) return;
+                try {
+                    if (!queue.parameterSets.hasNext()) return;
+                    parameters = queue.parameterSets.next();
+                } catch (Exception e) {
+                    queue.abortCause = e;
+                    return;
+                }
+                index = queue.nextIndex++;
+            }
+
+            R result = null;
+            Exception error = null;
+            try {
+                result = runOne(queue.model, index, parameters, job);
+            } catch (Exception e) {
+                error = e;
+            }
+
+            synchronized (queue) {
+                if (error != null) ++queue.failures;
+                if (queue.abortCause != null) return;
+                try {
+                    queue.listener.finished(index, parameters, result, error);
+                } catch (Exception e) {
+                    queue.abortCause = e;
+                    return;
+                }
+            }
+        }
+    }
+
+    private <R> R runOne(
+        PreparedModel model, int index, ParameterSet parameters, Job<R> job)
+        throws Exception
+    {
+        final Map<PreparedModel.Parameter, ScalarValue> overrides =
+            parameters.toOverrides(model);
+        final ExecutionOptions options =
+            executionOptions_ == null ? new ExecutionOptions() : executionOptions_;
+        try (Execution execution = new Execution("sweep_" + index, options)) {
+            final ModelSlaveMap slaves = model.apply(
+                execution, overrides, instantiationTimeout_ms_, commandTimeout_ms_);
+            return job.run(execution, slaves, parameters);
+        }
+    }
+
+    private static final ThreadFactory THREAD_FACTORY =
+        new ThreadFactory() {
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "jcoral-sweep-" + threadCount_.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+
+            private final AtomicInteger threadCount_ = new AtomicInteger();
+        };
+
+    private final ModelBuilder model_;
+    private final int parallelism_;
+    private volatile ExecutionOptions executionOptions_;
+    private volatile int instantiationTimeout_ms_ = 30 * 1000;
+    private volatile int commandTimeout_ms_ = 1000;
+}
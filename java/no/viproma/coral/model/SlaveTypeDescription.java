@@ -5,7 +5,14 @@
  */
 package no.viproma.coral.model;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import no.viproma.coral.model.Causality;
+import no.viproma.coral.model.DataType;
+import no.viproma.coral.model.Variability;
 import no.viproma.coral.model.VariableDescription;
 
 
@@ -33,7 +40,104 @@ public class SlaveTypeDescription
         return Arrays.asList(variables_);
     }
 
-    SlaveTypeDescription(
+    /**
+     * Writes the slave type description to a binary stream.
+     * <p>
+     * The format is compact, but not stable between versions of this
+     * library.  It is intended for caching, and the data can be read back
+     * with {@link #readFrom}.
+     */
+    public void writeTo(DataOutput out) throws IOException
+    {
+        writeString(out, name_);
+        writeString(out, uuid_);
+        writeString(out, description_);
+        writeString(out, author_);
+        writeString(out, version_);
+        out.writeInt(variables_.length);
+        for (VariableDescription v : variables_) {
+            out.writeInt(v.getID());
+            writeString(out, v.getName());
+            out.writeByte(v.getDataType().ordinal());
+            out.writeByte(v.getCausality().ordinal());
+            out.writeByte(v.getVariability().ordinal());
+        }
+    }
+
+    /**
+     * Reads a slave type description which has been written with
+     * {@link #writeTo}.
+     *
+     * @throws IOException
+     *      If reading fails or the data is malformed.
+     */
+    public static SlaveTypeDescription readFrom(DataInput in) throws IOException
+    {
+        final String name = readString(in);
+        final String uuid = readString(in);
+        final String description = readString(in);
+        final String author = readString(in);
+        final String version = readString(in);
+        final int variableCount = in.readInt();
+        if (variableCount < 0) {
+            throw new IOException("Invalid variable count: " + variableCount);
+        }
+        final VariableDescription[] variables = new VariableDescription[variableCount];
+        for (int i = 0; i < variableCount; ++i) {
+            final VariableDescription v = new VariableDescription();
+            v.setID(in.readInt());
+            v.setName(readString(in));
+            v.setDataType(readEnum(in, DataType.values()));
+            v.setCausality(readEnum(in, Causality.values()));
+            v.setVariability(readEnum(in, Variability.values()));
+            variables[i] = v;
+        }
+        return new SlaveTypeDescription(
+            name, uuid, description, author, version, variables);
+    }
+
+    // Strings are stored as length-prefixed UTF-8, since DataOutput.writeUTF()
+    // is limited to 64 kB.  A length of -1 means null.
+    private static void writeString(DataOutput out, String s) throws IOException
+    {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException
+    {
+        final int length = in.readInt();
+        if (length == -1) return null;
+        if (length < 0) throw new IOException("Invalid string length: " + length);
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static <E> E readEnum(DataInput in, E[] values) throws IOException
+    {
+        final int ordinal = in.readUnsignedByte();
+        if (ordinal >= values.length) {
+            throw new IOException("Invalid enum value: " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    /**
+     * Constructor.
+     * <p>
+     * Slave type descriptions are normally obtained from slave providers or
+     * FMUs, but may also be created directly, e.g. to describe a slave
+     * implemented in Java (see {@link no.viproma.coral.slave.AbstractInstance}).
+     * The UUID should uniquely identify the slave type, and must change if
+     * its variables change.
+     */
+    public SlaveTypeDescription(
         String name,
         String uuid,
         String description,
@@ -46,7 +150,7 @@ public class SlaveTypeDescription
         description_ = description;
         author_ = author;
         version_ = version;
-        variables_ = variables;
+        variables_ = variables.clone();
     }
 
     private String name_;
@@ -15,6 +15,25 @@ import no.viproma.coral.model.Variability;
  */
 public class VariableDescription
 {
+    /** Constructor. */
+    public VariableDescription(
+        int id,
+        String name,
+        DataType dataType,
+        Causality causality,
+        Variability variability)
+    {
+        id_ = id;
+        name_ = name;
+        dataType_ = dataType;
+        causality_ = causality;
+        variability_ = variability;
+    }
+
+    // Used by native code and SlaveTypeDescription.readFrom(), which fill
+    // in the fields with the setters.
+    VariableDescription() { }
+
     /**
      * An id_entifier whic uniquely refers to this variable in the context
      * of a single slave type.
@@ -0,0 +1,242 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.slave;
+
+import no.viproma.coral.NativeResources;
+import no.viproma.coral.model.SlaveTypeDescription;
+import no.viproma.coral.slave.Instance;
+
+
+/**
+ *  A base class for slaves that are implemented in Java.
+ *  <p>
+ *  Subclasses implement the slave's behaviour by overriding {@link #doStep}
+ *  and the getter and setter methods for the data types their variables
+ *  have.  Variables are identified by the IDs given in the
+ *  {@link SlaveTypeDescription} passed to the constructor.  Objects of
+ *  this class may be used wherever an {@link Instance} is accepted, e.g.
+ *  with {@link InProcessRunner}, {@link NetworkedRunner} and
+ *  {@link no.viproma.coral.master.LocalExecution}.
+ *  <p>
+ *  The methods are called from native code, by an adapter which makes the
+ *  object look like any other Coral slave instance.  The calls for real,
+ *  integer and boolean variables pass primitive values only, so no objects
+ *  are allocated when stepping a slave whose variables are all of these
+ *  types.
+ *  <p>
+ *  The methods are called by one thread at a time, but not necessarily
+ *  always the same thread.  Exceptions thrown by them are reported as
+ *  errors in the slave.
+ *  <p>
+ *  Objects of this class should always be disposed of with {@link #close} when
+ *  they are no longer needed, to avoid resource leaks in the underlying native
+ *  code. (A nice, automated way to do this is to use
+ *  <a href="https://docs.oracle.com/javase/tutorial/essential/exceptions/tryResourceClose.html">the
+ *  try-with-resources statement</a>.)  Runners and executions keep the
+ *  object reachable for as long as they use it, so it is safe to drop
+ *  other references to it after passing it to one of them.
+ */
+public abstract class AbstractInstance implements Instance
+{
+    static
+    {
+        System.loadLibrary("jcoral");
+    }
+
+    /**
+     *  Constructor.
+     *
+     *  @param typeDescription
+     *      A description of the slave type, including all its variables.
+     */
+    protected AbstractInstance(SlaveTypeDescription typeDescription)
+        throws Exception
+    {
+        if (typeDescription == null) {
+            throw new IllegalArgumentException("Type description is null");
+        }
+        typeDescription_ = typeDescription;
+        nativePtr_ = createNative(this, typeDescription);
+        handle_ = NativeResources.register(this, nativePtr_, AbstractInstance::destroyNative);
+    }
+
+    @Override
+    public void close()
+    {
+        if (nativePtr_ != 0) {
+            handle_.unregister();
+            destroyNative(nativePtr_);
+            nativePtr_ = 0;
+        }
+    }
+
+    @Override
+    public final SlaveTypeDescription getTypeDescription()
+    {
+        return typeDescription_;
+    }
+
+    @Override
+    public final long getNativeInstancePtr() { return nativePtr_; }
+
+    // =========================================================================
+
+    /**
+     *  Called when the slave is added to an execution, before the simulation
+     *  starts.  The default implementation does nothing.
+     *
+     *  @param slaveName
+     *      The name of the slave in the execution.
+     *  @param executionName
+     *      The name of the execution.
+     *  @param startTime
+     *      The start time of the simulation.
+     *  @param stopTime
+     *      The end time of the simulation, which may be infinite.
+     */
+    protected void setup(
+        String slaveName,
+        String executionName,
+        double startTime,
+        double stopTime)
+        throws Exception
+    {
+    }
+
+    /**
+     *  Called after the initial variable values have been set, before the
+     *  first time step.  The default implementation does nothing.
+     */
+    protected void startSimulation() throws Exception
+    {
+    }
+
+    /**
+     *  Called after the last time step.  The default implementation does
+     *  nothing.
+     */
+    protected void endSimulation() throws Exception
+    {
+    }
+
+    /**
+     *  Performs a time step.
+     *
+     *  @param currentTime
+     *      The simulation time at the start of the step.
+     *  @param deltaTime
+     *      The step size.
+     *
+     *  @return
+     *      Whether the step was completed successfully.  If this is false,
+     *      the simulation is aborted.
+     */
+    protected abstract boolean doStep(double currentTime, double deltaTime)
+        throws Exception;
+
+    /**
+     *  Returns the value of a real variable.  The default implementation
+     *  throws {@link UnsupportedOperationException}.
+     */
+    protected double getRealVariable(int variableID) throws Exception
+    {
+        throw unsupported(variableID);
+    }
+
+    /**
+     *  Returns the value of an integer variable.  The default implementation
+     *  throws {@link UnsupportedOperationException}.
+     */
+    protected int getIntegerVariable(int variableID) throws Exception
+    {
+        throw unsupported(variableID);
+    }
+
+    /**
+     *  Returns the value of a boolean variable.  The default implementation
+     *  throws {@link UnsupportedOperationException}.
+     */
+    protected boolean getBooleanVariable(int variableID) throws Exception
+    {
+        throw unsupported(variableID);
+    }
+
+    /**
+     *  Returns the value of a string variable.  The default implementation
+     *  throws {@link UnsupportedOperationException}.
+     */
+    protected String getStringVariable(int variableID) throws Exception
+    {
+        throw unsupported(variableID);
+    }
+
+    /**
+     *  Sets the value of a real variable.  The default implementation
+     *  throws {@link UnsupportedOperationException}.
+     *
+     *  @return
+     *      False if the value was invalid, but the slave can continue
+     *      (e.g. because the value was adjusted), true otherwise.
+     */
+    protected boolean setRealVariable(int variableID, double value) throws Exception
+    {
+        throw unsupported(variableID);
+    }
+
+    /**
+     *  Sets the value of an integer variable.  The default implementation
+     *  throws {@link UnsupportedOperationException}.
+     *
+     *  @return
+     *      See {@link #setRealVariable}.
+     */
+    protected boolean setIntegerVariable(int variableID, int value) throws Exception
+    {
+        throw unsupported(variableID);
+    }
+
+    /**
+     *  Sets the value of a boolean variable.  The default implementation
+     *  throws {@link UnsupportedOperationException}.
+     *
+     *  @return
+     *      See {@link #setRealVariable}.
+     */
+    protected boolean setBooleanVariable(int variableID, boolean value) throws Exception
+    {
+        throw unsupported(variableID);
+    }
+
+    /**
+     *  Sets the value of a string variable.  The default implementation
+     *  throws {@link UnsupportedOperationException}.
+     *
+     *  @return
+     *      See {@link #setRealVariable}.
+     */
+    protected boolean setStringVariable(int variableID, String value) throws Exception
+    {
+        throw unsupported(variableID);
+    }
+
+    // =========================================================================
+
+    private UnsupportedOperationException unsupported(int variableID)
+    {
+        return new UnsupportedOperationException(
+            "Slave type " + typeDescription_.getName()
+            + " does not support this operation on variable " + variableID);
+    }
+
+    private static native long createNative(
+        AbstractInstance self, SlaveTypeDescription typeDescription)
+        throws Exception;
+    private static native void destroyNative(long selfPtr);
+
+    private final SlaveTypeDescription typeDescription_;
+    private long nativePtr_ = 0;
+    private NativeResources.Handle handle_;
+}
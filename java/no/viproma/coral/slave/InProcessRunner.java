@@ -5,7 +5,7 @@
  */
 package no.viproma.coral.slave;
 
-import no.viproma.coral.Logging;
+import no.viproma.coral.NativeResources;
 import no.viproma.coral.net.SlaveLocator;
 import no.viproma.coral.slave.Instance;
 
@@ -23,7 +23,8 @@ import no.viproma.coral.slave.Instance;
  *  Note that it is up to client code to manage the threads; this does not
  *  happen automatically.  The central issue is that {@link #run} must be
  *  called in a different thread from the master, as it does not return before
- *  the execution is complete.
+ *  the execution is complete.  {@link InProcessRunnerGroup} can take care of
+ *  this for any number of slaves.
  *  <p>
  *  <strong>Warning:</strong>
  *  This class is not threadsafe.  Specifically, do not call methods
@@ -53,12 +54,8 @@ public class InProcessRunner implements AutoCloseable
     {
         nativePtr_ =
             createNative(slaveInstance.getNativeInstancePtr());
-    }
-
-    @Override
-    protected void finalize()
-    {
-        if (nativePtr_ != 0) Logging.logNotClosedOnFinalization(getClass());
+        handle_ = NativeResources.register(this, nativePtr_, InProcessRunner::destroyNative);
+        instance_ = slaveInstance;
     }
 
     /**
@@ -71,8 +68,10 @@ public class InProcessRunner implements AutoCloseable
     public void close()
     {
         if (nativePtr_ != 0) {
+            handle_.unregister();
             destroyNative(nativePtr_);
             nativePtr_ = 0;
+            instance_ = null;
         }
     }
 
@@ -106,4 +105,9 @@ public class InProcessRunner implements AutoCloseable
     private static native void runNative(long selfPtr) throws Exception;
 
     private long nativePtr_ = 0;
+    private NativeResources.Handle handle_;
+
+    // The native runner only has a weak reference to an AbstractInstance,
+    // so we keep it alive until the runner is closed.
+    private Instance instance_;
 }
@@ -0,0 +1,137 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.slave;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import no.viproma.coral.net.SlaveLocator;
+import no.viproma.coral.slave.Instance;
+
+
+/**
+ *  Runs any number of in-process slaves, each in a background thread with a
+ *  small stack.
+ *  <p>
+ *  This takes care of the thread management which {@link InProcessRunner}
+ *  leaves to client code: each slave added with {@link #add} gets a daemon
+ *  thread that runs it until its execution is closed, and {@link #join}
+ *  waits for all of them and reports any errors.
+ *  <p>
+ *  {@link InProcessRunner#run} runs the slave's own message loop, and
+ *  does not return until the execution is over, so a thread is needed for
+ *  each slave.  (For the same reason, running it on a virtual thread does
+ *  not help, as the thread is pinned to its carrier for as long as it is
+ *  in native code.)  What this class can do is to keep the cost of each
+ *  thread down, by giving it a stack that is only as large as the slave
+ *  needs; see {@link #InProcessRunnerGroup(long)}.  When the number of
+ *  threads must not grow with the size of the model, the slaves can be run
+ *  directly by a {@link no.viproma.coral.master.LocalExecution}, which uses
+ *  a fixed number of threads regardless of the number of slaves.
+ *  <p>
+ *  <strong>Warning:</strong>
+ *  This class is not threadsafe.
+ */
+public class InProcessRunnerGroup implements AutoCloseable
+{
+    /** Constructor which uses the JVM's default thread stack size. */
+    public InProcessRunnerGroup()
+    {
+        this(0);
+    }
+
+    /**
+     *  Constructor.
+     *
+     *  @param threadStackSize
+     *      The stack size for the slave threads, in bytes, or zero to use
+     *      the JVM's default.  The slave's time steps are performed in
+     *      this thread, so the stack must be large enough for the slave's
+     *      own code; a few hundred kilobytes is typically sufficient for
+     *      FMUs.  Note that the JVM may treat this as a hint only.
+     */
+    public InProcessRunnerGroup(long threadStackSize)
+    {
+        if (threadStackSize < 0) {
+            throw new IllegalArgumentException("Negative stack size");
+        }
+        threadStackSize_ = threadStackSize;
+    }
+
+    /**
+     *  Waits for all slaves to finish.
+     *
+     *  @see #join
+     */
+    @Override
+    public void close() throws Exception
+    {
+        join();
+    }
+
+    /**
+     *  Starts running a slave instance in a new background thread.
+     *  <p>
+     *  The group takes ownership of the instance, which is closed when the
+     *  slave finishes (or if this function throws).
+     *
+     *  @return
+     *      The location of the slave, which can be passed to
+     *      {@link no.viproma.coral.master.AddedSlave#AddedSlave}.
+     */
+    public SlaveLocator add(Instance instance) throws Exception
+    {
+        if (instance == null) {
+            throw new IllegalArgumentException("Instance is null");
+        }
+        final SlaveThread slave = SlaveThread.start(
+            instance, "jcoral-inprocess-slave-" + (++threadCount_), threadStackSize_);
+        slaves_.add(slave);
+        return slave.getLocator();
+    }
+
+    /** Returns the number of slaves that are still running. */
+    public int getRunningCount()
+    {
+        int n = 0;
+        for (SlaveThread s : slaves_) {
+            if (s.isAlive()) ++n;
+        }
+        return n;
+    }
+
+    /**
+     *  Waits for all slaves to finish.
+     *  <p>
+     *  The slaves finish when the executions they are part of are
+     *  {@linkplain no.viproma.coral.master.Execution#close closed}, so
+     *  this should be called after that.  (Note that if a slave was never
+     *  added to an execution, this will block indefinitely.)  Afterwards,
+     *  the group is empty and may be reused.
+     *
+     *  @throws Exception
+     *      If one or more slaves failed while they were running.  The
+     *      first error is thrown, with any others added to it as
+     *      {@linkplain Throwable#addSuppressed suppressed} exceptions.
+     */
+    public void join() throws Exception
+    {
+        final List<Exception> errors = new ArrayList<Exception>();
+        for (SlaveThread s : slaves_) {
+            s.join(0);
+            if (s.getError() != null) errors.add(s.getError());
+        }
+        slaves_.clear();
+        if (errors.isEmpty()) return;
+        final Exception first = errors.get(0);
+        for (int i = 1; i < errors.size(); ++i) first.addSuppressed(errors.get(i));
+        throw first;
+    }
+
+    private final long threadStackSize_;
+    private final List<SlaveThread> slaves_ = new ArrayList<SlaveThread>();
+    private int threadCount_ = 0;
+}
@@ -0,0 +1,192 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.slave;
+
+import no.viproma.coral.Logging;
+import no.viproma.coral.net.SlaveLocator;
+import no.viproma.coral.slave.InProcessRunner;
+import no.viproma.coral.slave.Instance;
+
+
+/**
+ *  Hosts an in-process slave which can be attached to one execution after
+ *  another.
+ *  <p>
+ *  An {@link InProcessRunner} can only serve a single execution, since
+ *  the slave is terminated along with the execution.  This class takes
+ *  care of creating a fresh slave instance and runner, and running it in
+ *  a background thread, each time the slave is {@linkplain #attach
+ *  attached} to a new execution.  Each execution thus starts with a slave
+ *  in its initial state, while the expensive parts of the setup, such as
+ *  importing and loading an FMU, are only done once:
+ *  <pre>
+ *  try (FMU fmu = importer.importFMU(fmuFile);
+ *       InProcessSlaveHost host = new InProcessSlaveHost(fmu::instantiateSlave)) {
+ *      for (...) {
+ *          try (Execution exe = new Execution(...)) {
+ *              exe.addSlaves(Arrays.asList(new AddedSlave(host.attach(), "slave")), timeout);
+ *              ...
+ *          }
+ *      }
+ *  }
+ *  </pre>
+ *  <p>
+ *  Slaves hosted by slave providers cannot be reused this way, as they
+ *  shut down when their execution is terminated.  See
+ *  {@link no.viproma.coral.master.SlavePool} for a way to reduce the
+ *  cost of instantiating those.
+ *  <p>
+ *  <strong>Warning:</strong>
+ *  This class is not threadsafe.
+ */
+public class InProcessSlaveHost implements AutoCloseable
+{
+    /** A source of new slave instances. */
+    public interface InstanceSource
+    {
+        /** Creates a new slave instance in its initial state. */
+        Instance newInstance() throws Exception;
+    }
+
+    /**
+     *  Constructor.
+     *
+     *  @param instanceSource
+     *      An object which creates a new slave instance each time the
+     *      slave is attached to an execution, e.g.
+     *      <code>fmu::instantiateSlave</code>.
+     */
+    public InProcessSlaveHost(InstanceSource instanceSource)
+    {
+        if (instanceSource == null) {
+            throw new IllegalArgumentException("Instance source is null");
+        }
+        instanceSource_ = instanceSource;
+    }
+
+    /**
+     *  Detaches the slave, if it is attached, waiting a limited time for
+     *  it to finish.
+     *  <p>
+     *  If the slave has not finished within ten seconds, e.g. because it
+     *  was never added to an execution, or its execution is still open, it
+     *  is left running in the background as described for {@link #attach},
+     *  and a warning is logged.
+     *
+     *  @see #detach(long)
+     */
+    @Override
+    public void close() throws Exception
+    {
+        if (!detach(CLOSE_TIMEOUT_MS)) {
+            Logging.getLogger().warning(
+                "In-process slave still running when its host was closed");
+            abandon();
+        }
+    }
+
+    /**
+     *  Creates a new slave instance and starts running it in a background
+     *  thread.
+     *  <p>
+     *  If the slave is already attached to an execution, it is detached
+     *  first.  This does not block: if the previous slave has not finished
+     *  yet, it is left to finish in the background when its execution is
+     *  closed, and releases its instance by itself.  Any error it reports
+     *  after that is logged rather than thrown.
+     *
+     *  @return
+     *      The location of the slave, which can be passed to
+     *      {@link no.viproma.coral.master.AddedSlave#AddedSlave}.
+     *
+     *  @throws Exception
+     *      If the previous slave had already finished with an error, or if
+     *      the new slave could not be created.
+     */
+    public SlaveLocator attach() throws Exception
+    {
+        if (!detach(0)) abandon();
+
+        session_ = SlaveThread.start(
+            instanceSource_.newInstance(), "jcoral-inprocess-slave", 0);
+        return session_.getLocator();
+    }
+
+    /**
+     *  Waits for the slave to finish and releases the slave instance.
+     *  <p>
+     *  The slave finishes when the execution it is attached to is
+     *  {@linkplain no.viproma.coral.master.Execution#close closed}, so
+     *  this should be called after that.  (Note that if the slave was never
+     *  added to an execution, this will block indefinitely; use
+     *  {@link #detach(long)} to avoid that.)  It does nothing if the slave
+     *  is not attached.
+     *
+     *  @throws Exception
+     *      If the slave failed while it was running.
+     */
+    public void detach() throws Exception
+    {
+        if (session_ == null) return;
+        session_.join(0);
+        finishSession();
+    }
+
+    /**
+     *  Waits a limited time for the slave to finish, and releases the slave
+     *  instance if it does.
+     *
+     *  @param timeout_ms
+     *      How long to wait, in milliseconds.  Zero means not to wait at
+     *      all, just to check whether the slave has finished.
+     *
+     *  @return
+     *      Whether the slave was detached (or was not attached in the first
+     *      place).  If false, the slave is still attached.
+     *
+     *  @throws Exception
+     *      If the slave failed while it was running.
+     */
+    public boolean detach(long timeout_ms) throws Exception
+    {
+        if (timeout_ms < 0) {
+            throw new IllegalArgumentException("Negative timeout");
+        }
+        if (session_ == null) return true;
+        if (timeout_ms > 0) session_.join(timeout_ms);
+        if (session_.isAlive()) return false;
+        finishSession();
+        return true;
+    }
+
+    /** Returns whether the slave is currently attached to an execution. */
+    public boolean isAttached()
+    {
+        return session_ != null;
+    }
+
+    // -------------------------------------------------------------------------
+
+    private static final long CLOSE_TIMEOUT_MS = 10 * 1000;
+
+    // Releases a session whose thread has finished, and throws its error.
+    private void finishSession() throws Exception
+    {
+        final Exception e = session_.getError();
+        session_ = null;
+        if (e != null) throw e;
+    }
+
+    // Leaves a running session to finish by itself.
+    private void abandon()
+    {
+        session_.abandon();
+        session_ = null;
+    }
+
+    private final InstanceSource instanceSource_;
+    private SlaveThread session_;
+}
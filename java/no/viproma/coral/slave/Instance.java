@@ -34,4 +34,112 @@ public interface Instance extends AutoCloseable
      *      to a shared pointer).
      */
     long getNativeInstancePtr();
+
+    /**
+     *  Retrieves the values of several real variables.
+     *  <p>
+     *  This and the other bulk variable accessors transfer all the values
+     *  in a single call to native code, which forwards them to the
+     *  underlying slave in a single batch.  The arrays may be reused from
+     *  call to call, and no objects are allocated for the transfer (except
+     *  for the values of string variables).
+     *  <p>
+     *  The variable accessors must not be called while the instance is
+     *  stepped or otherwise accessed by a runner or an execution in another
+     *  thread.
+     *
+     *  @param ids
+     *      The IDs of the variables to get.
+     *  @param values
+     *      An array of the same length as <code>ids</code>, which will be
+     *      filled with the variable values.
+     *
+     *  @throws IllegalArgumentException
+     *      If the arrays have different lengths.
+     *  @throws IllegalStateException
+     *      If the instance has been closed.
+     */
+    default void getReal(int[] ids, double[] values) throws Exception
+    {
+        InstanceVariables.getReal(this, ids, values);
+    }
+
+    /**
+     *  Retrieves the values of several integer variables.
+     *
+     *  @see #getReal
+     */
+    default void getInteger(int[] ids, int[] values) throws Exception
+    {
+        InstanceVariables.getInteger(this, ids, values);
+    }
+
+    /**
+     *  Retrieves the values of several boolean variables.
+     *
+     *  @see #getReal
+     */
+    default void getBoolean(int[] ids, boolean[] values) throws Exception
+    {
+        InstanceVariables.getBoolean(this, ids, values);
+    }
+
+    /**
+     *  Retrieves the values of several string variables.
+     *
+     *  @see #getReal
+     */
+    default void getString(int[] ids, String[] values) throws Exception
+    {
+        InstanceVariables.getString(this, ids, values);
+    }
+
+    /**
+     *  Sets the values of several real variables.
+     *
+     *  @param ids
+     *      The IDs of the variables to set.
+     *  @param values
+     *      The new variable values, in the same order as <code>ids</code>.
+     *
+     *  @return
+     *      False if some of the values were invalid, but the slave was able
+     *      to continue (e.g. by adjusting them), true otherwise.
+     *
+     *  @see #getReal
+     */
+    default boolean setReal(int[] ids, double[] values) throws Exception
+    {
+        return InstanceVariables.setReal(this, ids, values);
+    }
+
+    /**
+     *  Sets the values of several integer variables.
+     *
+     *  @see #setReal
+     */
+    default boolean setInteger(int[] ids, int[] values) throws Exception
+    {
+        return InstanceVariables.setInteger(this, ids, values);
+    }
+
+    /**
+     *  Sets the values of several boolean variables.
+     *
+     *  @see #setReal
+     */
+    default boolean setBoolean(int[] ids, boolean[] values) throws Exception
+    {
+        return InstanceVariables.setBoolean(this, ids, values);
+    }
+
+    /**
+     *  Sets the values of several string variables.
+     *
+     *  @see #setReal
+     */
+    default boolean setString(int[] ids, String[] values) throws Exception
+    {
+        return InstanceVariables.setString(this, ids, values);
+    }
 }
@@ -0,0 +1,94 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.slave;
+
+import no.viproma.coral.slave.Instance;
+
+
+// Implementation of the bulk variable accessors of Instance.  Each method
+// makes a single call to native code, which checks the arrays and forwards
+// the call to the batch accessors of the underlying C++ instance.
+final class InstanceVariables
+{
+    static
+    {
+        System.loadLibrary("jcoral");
+    }
+
+    private InstanceVariables() { }
+
+    static void getReal(Instance instance, int[] ids, double[] values)
+        throws Exception
+    {
+        getRealNative(instancePtr(instance), ids, values);
+    }
+
+    static void getInteger(Instance instance, int[] ids, int[] values)
+        throws Exception
+    {
+        getIntegerNative(instancePtr(instance), ids, values);
+    }
+
+    static void getBoolean(Instance instance, int[] ids, boolean[] values)
+        throws Exception
+    {
+        getBooleanNative(instancePtr(instance), ids, values);
+    }
+
+    static void getString(Instance instance, int[] ids, String[] values)
+        throws Exception
+    {
+        getStringNative(instancePtr(instance), ids, values);
+    }
+
+    static boolean setReal(Instance instance, int[] ids, double[] values)
+        throws Exception
+    {
+        return setRealNative(instancePtr(instance), ids, values);
+    }
+
+    static boolean setInteger(Instance instance, int[] ids, int[] values)
+        throws Exception
+    {
+        return setIntegerNative(instancePtr(instance), ids, values);
+    }
+
+    static boolean setBoolean(Instance instance, int[] ids, boolean[] values)
+        throws Exception
+    {
+        return setBooleanNative(instancePtr(instance), ids, values);
+    }
+
+    static boolean setString(Instance instance, int[] ids, String[] values)
+        throws Exception
+    {
+        return setStringNative(instancePtr(instance), ids, values);
+    }
+
+    private static long instancePtr(Instance instance)
+    {
+        final long ptr = instance.getNativeInstancePtr();
+        if (ptr == 0) throw new IllegalStateException("Instance is closed");
+        return ptr;
+    }
+
+    private static native void getRealNative(long instancePtr, int[] ids, double[] values)
+        throws Exception;
+    private static native void getIntegerNative(long instancePtr, int[] ids, int[] values)
+        throws Exception;
+    private static native void getBooleanNative(long instancePtr, int[] ids, boolean[] values)
+        throws Exception;
+    private static native void getStringNative(long instancePtr, int[] ids, String[] values)
+        throws Exception;
+    private static native boolean setRealNative(long instancePtr, int[] ids, double[] values)
+        throws Exception;
+    private static native boolean setIntegerNative(long instancePtr, int[] ids, int[] values)
+        throws Exception;
+    private static native boolean setBooleanNative(long instancePtr, int[] ids, boolean[] values)
+        throws Exception;
+    private static native boolean setStringNative(long instancePtr, int[] ids, String[] values)
+        throws Exception;
+}
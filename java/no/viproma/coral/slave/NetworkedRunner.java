@@ -6,7 +6,7 @@
 package no.viproma.coral.slave;
 
 import java.net.InetAddress;
-import no.viproma.coral.Logging;
+import no.viproma.coral.NativeResources;
 import no.viproma.coral.net.SlaveLocator;
 import no.viproma.coral.slave.Instance;
 
@@ -66,6 +66,8 @@ public class NetworkedRunner implements AutoCloseable
             controlPort,
             dataPubPort,
             commTimeout_s);
+        handle_ = NativeResources.register(this, nativePtr_, NetworkedRunner::destroyNative);
+        instance_ = slaveInstance;
     }
 
     /**
@@ -82,12 +84,6 @@ public class NetworkedRunner implements AutoCloseable
         this(slaveInstance, bindAddress, 0, 0, commTimeout_s);
     }
 
-    @Override
-    protected void finalize()
-    {
-        if (nativePtr_ != 0) Logging.logNotClosedOnFinalization(getClass());
-    }
-
     /**
      *  Releases native resources (such as memory) associated with this object.
      *  <p>
@@ -98,8 +94,10 @@ public class NetworkedRunner implements AutoCloseable
     public void close()
     {
         if (nativePtr_ != 0) {
+            handle_.unregister();
             destroyNative(nativePtr_);
             nativePtr_ = 0;
+            instance_ = null;
         }
     }
 
@@ -135,4 +133,9 @@ public class NetworkedRunner implements AutoCloseable
     private static native void runNative(long selfPtr) throws Exception;
 
     private long nativePtr_ = 0;
+    private NativeResources.Handle handle_;
+
+    // The native runner only has a weak reference to an AbstractInstance,
+    // so we keep it alive until the runner is closed.
+    private Instance instance_;
 }
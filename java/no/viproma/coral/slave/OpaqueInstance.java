@@ -5,7 +5,7 @@
  */
 package no.viproma.coral.slave;
 
-import no.viproma.coral.Logging;
+import no.viproma.coral.NativeResources;
 import no.viproma.coral.model.SlaveTypeDescription;
 import no.viproma.coral.slave.Instance;
 
@@ -20,18 +20,14 @@ public class OpaqueInstance implements Instance
     OpaqueInstance(long nativePtr)
     {
         nativePtr_ = nativePtr;
-    }
-
-    @Override
-    protected void finalize()
-    {
-        if (nativePtr_ != 0) Logging.logNotClosedOnFinalization(getClass());
+        handle_ = NativeResources.register(this, nativePtr_, OpaqueInstance::destroyNative);
     }
 
     @Override
     public void close()
     {
         if (nativePtr_ != 0) {
+            handle_.unregister();
             destroyNative(nativePtr_);
             nativePtr_ = 0;
         }
@@ -51,4 +47,5 @@ public class OpaqueInstance implements Instance
         throws Exception;
 
     private long nativePtr_ = 0;
+    private NativeResources.Handle handle_;
 }
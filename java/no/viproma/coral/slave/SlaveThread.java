@@ -0,0 +1,119 @@
+/* Copyright 2026-2026, SINTEF Ocean.
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package no.viproma.coral.slave;
+
+import java.util.logging.Level;
+
+import no.viproma.coral.Logging;
+import no.viproma.coral.net.SlaveLocator;
+import no.viproma.coral.slave.InProcessRunner;
+import no.viproma.coral.slave.Instance;
+
+
+// An in-process slave which runs in a daemon thread of its own until its
+// execution is over.  This is the common part of InProcessRunnerGroup and
+// InProcessSlaveHost.
+final class SlaveThread implements Runnable
+{
+    // Creates a runner for `instance` and starts running it.  The instance
+    // is closed when the slave finishes, or right away if this throws.
+    // A stack size of zero means the JVM's default.
+    static SlaveThread start(Instance instance, String threadName, long stackSize)
+        throws Exception
+    {
+        final InProcessRunner runner;
+        final SlaveLocator locator;
+        try {
+            runner = new InProcessRunner(instance);
+            try {
+                locator = runner.getLocator();
+            } catch (Exception e) {
+                runner.close();
+                throw e;
+            }
+        } catch (Exception e) {
+            instance.close();
+            throw e;
+        }
+
+        final SlaveThread slave =
+            new SlaveThread(instance, runner, locator, threadName, stackSize);
+        slave.thread_.start();
+        return slave;
+    }
+
+    public void run()
+    {
+        try (Instance i = instance_; InProcessRunner r = runner_) {
+            r.run();
+        } catch (Exception e) {
+            synchronized (this) {
+                error_ = e;
+                if (abandoned_) logError();
+            }
+        }
+    }
+
+    SlaveLocator getLocator()
+    {
+        return locator_;
+    }
+
+    boolean isAlive()
+    {
+        return thread_.isAlive();
+    }
+
+    // Waits for the slave to finish.  A timeout of zero means no limit, as
+    // for Thread.join().
+    void join(long timeout_ms) throws InterruptedException
+    {
+        thread_.join(timeout_ms);
+    }
+
+    // Returns the error the slave failed with, if it has finished.
+    synchronized Exception getError()
+    {
+        return error_;
+    }
+
+    // Called when nobody is going to wait for the slave any more.  Errors
+    // are logged instead.
+    synchronized void abandon()
+    {
+        abandoned_ = true;
+        if (error_ != null) logError();
+    }
+
+    // -------------------------------------------------------------------------
+
+    private SlaveThread(
+        Instance instance,
+        InProcessRunner runner,
+        SlaveLocator locator,
+        String threadName,
+        long stackSize)
+    {
+        instance_ = instance;
+        runner_ = runner;
+        locator_ = locator;
+        thread_ = new Thread(null, this, threadName, stackSize);
+        thread_.setDaemon(true);
+    }
+
+    private void logError()
+    {
+        Logging.getLogger().log(
+            Level.WARNING, "Abandoned in-process slave failed", error_);
+    }
+
+    private final Instance instance_;
+    private final InProcessRunner runner_;
+    private final SlaveLocator locator_;
+    private final Thread thread_;
+    private Exception error_;
+    private boolean abandoned_ = false;
+}
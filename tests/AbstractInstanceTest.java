@@ -0,0 +1,177 @@
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import no.viproma.coral.fmi.Importer;
+import no.viproma.coral.fmi.FMU;
+import no.viproma.coral.master.AddedSlave;
+import no.viproma.coral.master.Execution;
+import no.viproma.coral.master.LocalExecution;
+import no.viproma.coral.master.ModelBuilder;
+import no.viproma.coral.master.ModelSlaveMap;
+import no.viproma.coral.model.Causality;
+import no.viproma.coral.model.DataType;
+import no.viproma.coral.model.ScalarValue;
+import no.viproma.coral.model.SlaveTypeDescription;
+import no.viproma.coral.model.Variability;
+import no.viproma.coral.model.Variable;
+import no.viproma.coral.model.VariableDescription;
+import no.viproma.coral.slave.AbstractInstance;
+import no.viproma.coral.slave.InProcessRunnerGroup;
+import no.viproma.coral.slave.Instance;
+
+
+public class AbstractInstanceTest
+{
+    // A slave which computes y = k*u.
+    private static class Gain extends AbstractInstance
+    {
+        public static final int K = 0;
+        public static final int U = 1;
+        public static final int Y = 2;
+
+        public static final SlaveTypeDescription TYPE = new SlaveTypeDescription(
+            "gain",
+            "b3d1c6a2-4f0e-4a53-9a55-0c6f2b9e7d41",
+            "Multiplies its input by a constant",
+            "jcoral",
+            "1.0",
+            new VariableDescription[] {
+                new VariableDescription(K, "k", DataType.REAL, Causality.PARAMETER, Variability.FIXED),
+                new VariableDescription(U, "u", DataType.REAL, Causality.INPUT, Variability.CONTINUOUS),
+                new VariableDescription(Y, "y", DataType.REAL, Causality.OUTPUT, Variability.CONTINUOUS)
+            });
+
+        public Gain() throws Exception
+        {
+            super(TYPE);
+        }
+
+        @Override
+        protected void setup(String slaveName, String executionName, double startTime, double stopTime)
+        {
+            slaveName_ = slaveName;
+        }
+
+        @Override
+        protected boolean doStep(double currentTime, double deltaTime)
+        {
+            y_ = k_ * u_;
+            ++stepCount_;
+            return true;
+        }
+
+        @Override
+        protected double getRealVariable(int variableID)
+        {
+            switch (variableID) {
+                case K: return k_;
+                case U: return u_;
+                case Y: return y_;
+                default: throw new IllegalArgumentException("Invalid variable ID");
+            }
+        }
+
+        @Override
+        protected boolean setRealVariable(int variableID, double value)
+        {
+            switch (variableID) {
+                case K: k_ = value; return true;
+                case U: u_ = value; return true;
+                default: throw new IllegalArgumentException("Invalid variable ID");
+            }
+        }
+
+        public String slaveName_;
+        public int stepCount_ = 0;
+        public double k_ = 1.0;
+        public double u_ = 0.0;
+        public double y_ = 0.0;
+    }
+
+
+    public static void main(String[] args) throws Exception
+    {
+        final File testDataDir = new File(System.getenv("JCORAL_TEST_DATA_DIR"));
+
+        // Run a Java slave directly, together with an FMU.
+        try (
+            Importer importer = new Importer();
+            FMU fmuSine = importer.importUnpackedFMU(new File(testDataDir, "sine_fmu_unpacked"));
+            Instance sine = fmuSine.instantiateSlave();
+            Gain gain = new Gain();
+            LocalExecution exe = new LocalExecution("AbstractInstanceTest");
+        ) {
+            assert gain.getTypeDescription() == Gain.TYPE;
+            assert gain.getNativeInstancePtr() != 0;
+
+            ModelBuilder model = new ModelBuilder();
+            model.addSlave("sine", fmuSine.getDescription());
+            model.addSlave("gain", Gain.TYPE);
+            model.setInitialVariableValue("sine", "a", new ScalarValue(2.0));
+            model.setInitialVariableValue("gain", "k", new ScalarValue(3.0));
+            model.connectVariables("sine", "y", "gain", "u");
+
+            Map<String, Instance> instances = new HashMap<String, Instance>();
+            instances.put("sine", sine);
+            instances.put("gain", gain);
+            ModelSlaveMap slaveMap = model.apply(exe, instances);
+            assert "gain".equals(gain.slaveName_);
+            assert gain.k_ == 3.0;
+
+            exe.simulate(1.0, 0.1, null, null);
+            assert gain.stepCount_ == 10;
+
+            Variable y = slaveMap.getVariable("sine", "y");
+            Variable u = slaveMap.getVariable("gain", "u");
+            assert exe.getRealValue(u) == exe.getRealValue(y);
+            assert gain.u_ == exe.getRealValue(y);
+            assert exe.getRealValue(slaveMap.getVariable("gain", "y")) == gain.y_;
+
+            // Bulk variable access goes through the same callbacks.
+            assert gain.setReal(new int[] { Gain.K }, new double[] { 2.0 });
+            final double[] values = new double[3];
+            gain.getReal(new int[] { Gain.K, Gain.U, Gain.Y }, values);
+            assert values[0] == 2.0 && values[1] == gain.u_ && values[2] == gain.y_;
+            try { gain.getInteger(new int[] { Gain.K }, new int[1]); assert(false); } catch (Exception e) { }
+        }
+
+        // Run several Java slaves through in-process runners.
+        final int NO_TIMEOUT = -1;
+        final List<Gain> gains = new ArrayList<Gain>();
+        try (
+            InProcessRunnerGroup group = new InProcessRunnerGroup();
+            Execution execution = new Execution("AbstractInstanceTest_runner");
+        ) {
+            List<AddedSlave> slavesToAdd = new ArrayList<AddedSlave>();
+            for (int i = 0; i < 3; ++i) {
+                Gain gain = new Gain();
+                gains.add(gain);
+                slavesToAdd.add(new AddedSlave(group.add(gain), "gain" + i));
+            }
+            execution.addSlaves(slavesToAdd, NO_TIMEOUT);
+            execution.simulate(0.5, 0.1, NO_TIMEOUT, NO_TIMEOUT);
+            assert execution.currentTime() == 0.5;
+        }
+        for (int i = 0; i < gains.size(); ++i) {
+            assert ("gain" + i).equals(gains.get(i).slaveName_);
+            assert gains.get(i).stepCount_ >= 5;
+            assert gains.get(i).getNativeInstancePtr() == 0;
+        }
+
+        // The execution keeps a slave alive even if nobody else refers to it.
+        try (LocalExecution exe = new LocalExecution("AbstractInstanceTest_unreferenced")) {
+            Gain gain = new Gain();
+            final WeakReference<Gain> gainRef = new WeakReference<Gain>(gain);
+            exe.addSlave(gain, "gain");
+            gain = null;
+            for (int i = 0; i < 3; ++i) System.gc();
+            assert gainRef.get() != null;
+            exe.simulate(0.5, 0.1, null, null);
+            assert gainRef.get().stepCount_ == 5;
+        }
+    }
+}
@@ -1,8 +1,12 @@
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 import no.viproma.coral.master.AddedSlave;
 import no.viproma.coral.master.Execution;
@@ -11,6 +15,7 @@ import no.viproma.coral.master.ProviderCluster;
 import no.viproma.coral.model.ScalarValue;
 import no.viproma.coral.master.SimulationProgressMonitor;
 import no.viproma.coral.master.SlaveConfig;
+import no.viproma.coral.master.SlaveConfigBatch;
 import no.viproma.coral.model.SlaveID;
 import no.viproma.coral.net.SlaveLocator;
 import no.viproma.coral.model.Variable;
@@ -70,7 +75,7 @@ public class ExecutionTest
         ExecutionOptions exeOptions = new ExecutionOptions();
         exeOptions.setSimTime(0.0, endTime);
         try (
-        Execution exe = new Execution("ExecutionControllerTest", exeOptions);
+        final Execution exe = new Execution("ExecutionControllerTest", exeOptions);
         ) {
 
         // Spawn slaves and add them to the execution
@@ -106,6 +111,88 @@ public class ExecutionTest
         slaveConfigs.add(new SlaveConfig(identID, identConfig));
         exe.reconfigure(slaveConfigs, commandTimeout_ms);
 
+        // Observe the sine output
+        List<Variable> observedReals = new ArrayList<Variable>();
+        observedReals.add(new Variable(sineID, sineVariableIDs.get("y")));
+        Execution.Observer observer = exe.createObserver(observedReals, null, null);
+        assert observer.getRealVariableCount() == 1;
+        assert observer.getIntegerVariableCount() == 0;
+        assert observer.getBooleanVariableCount() == 0;
+        final double[] y = new double[1];
+
+        // ...and have the values written to a buffer that only has room for
+        // three records, so the async steps below will wrap around
+        ByteBuffer buffer = ByteBuffer.allocateDirect(
+            Execution.Observer.BUFFER_HEADER_SIZE + 3 * observer.getRecordSize());
+        observer.setBuffer(buffer);
+        assert observer.getRecordCapacity() == 3;
+        assert observer.getRecordCount() == 0;
+
+        // Perform a few time steps asynchronously
+        final int asyncSteps = 5;
+        for (int i = 0; i < asyncSteps; ++i) {
+            exe.stepAsync(stepSize, stepTimeout_ms)
+                .thenCompose(
+                    new Function<Execution.StepResult, CompletableFuture<Void>>() {
+                        public CompletableFuture<Void> apply(Execution.StepResult r)
+                        {
+                            assert r == Execution.StepResult.COMPLETE;
+                            return exe.acceptStepAsync(commandTimeout_ms);
+                        }
+                    })
+                .get();
+            observer.read(y, null, null, commandTimeout_ms);
+            assert Math.abs(y[0] - (2.0 + Math.sin(2*Math.PI*exe.currentTime()))) < 1e-9;
+        }
+        assert Math.abs(exe.currentTime() - asyncSteps * stepSize) < 1e-9;
+
+        // Check the last three records in the buffer.  Record n holds the
+        // values at the end of step n, which is the (n+1)th step.
+        assert observer.getRecordCount() == asyncSteps;
+        for (long n = asyncSteps - 3; n < asyncSteps; ++n) {
+            final int pos = observer.getRecordPosition(n);
+            assert pos == Execution.Observer.BUFFER_HEADER_SIZE
+                + (n % 3) * observer.getRecordSize();
+            final double t = (n + 1) * stepSize;
+            assert buffer.getLong(pos + Execution.Observer.STEP_ID_OFFSET) == n;
+            assert Math.abs(buffer.getDouble(pos + Execution.Observer.TIME_OFFSET) - t) < 1e-9;
+            assert Math.abs(buffer.getDouble(pos + observer.getRealOffset(0))
+                            - (2.0 + Math.sin(2*Math.PI*t))) < 1e-9;
+        }
+        observer.setBuffer(null);
+        assert observer.getBuffer() == null;
+        try {
+            observer.getRecordPosition(0);
+            assert false : "getRecordPosition() allowed without a buffer";
+        } catch (IllegalStateException e) { }
+        try {
+            observer.getRecordCount();
+            assert false : "getRecordCount() allowed without a buffer";
+        } catch (IllegalStateException e) { }
+
+        // Check that other operations are refused while a step is pending.
+        // The step is held back by the executor until we run it ourselves.
+        final List<Runnable> heldTasks = new ArrayList<Runnable>();
+        Executor holdingExecutor = new Executor() {
+            public void execute(Runnable task) { heldTasks.add(task); }
+        };
+        CompletableFuture<Execution.StepResult> heldStep =
+            exe.stepAsync(stepSize, stepTimeout_ms, holdingExecutor);
+        try {
+            exe.acceptStep(commandTimeout_ms);
+            assert false : "acceptStep() allowed during asynchronous step";
+        } catch (IllegalStateException e) { }
+        try {
+            exe.stepAsync(stepSize, stepTimeout_ms);
+            assert false : "stepAsync() allowed during asynchronous step";
+        } catch (IllegalStateException e) { }
+        assert heldTasks.size() == 1;
+        assert !heldStep.isDone();
+        heldTasks.get(0).run();
+        assert heldStep.get() == Execution.StepResult.COMPLETE;
+        exe.acceptStepAsync(commandTimeout_ms).get();
+        assert Math.abs(exe.currentTime() - (asyncSteps + 1) * stepSize) < 1e-9;
+
         // Run half of the simulation
         SimulationProgressMonitor progress = new SimulationProgressMonitor() {
             final int percentStep_ = 10;
@@ -120,12 +207,14 @@ public class ExecutionTest
             }
         };
         exe.simulate(
-            endTime / 2,
+            endTime / 2 - exe.currentTime(),
             stepSize,
             null,
             stepTimeout_ms,
             commandTimeout_ms,
             progress);
+        observer.read(y, null, null, commandTimeout_ms);
+        assert Math.abs(y[0] - (2.0 + Math.sin(2*Math.PI*exe.currentTime()))) < 1e-9;
 
         // Change connections
         List<VariableSetting> sineConfig2 = new ArrayList<VariableSetting>();
@@ -141,6 +230,17 @@ public class ExecutionTest
         slaveConfigs2.add(new SlaveConfig(identID, identConfig2));
         exe.reconfigure(slaveConfigs2, commandTimeout_ms);
 
+        // Change a few values using the compact representation
+        SlaveConfigBatch batch = new SlaveConfigBatch();
+        batch.setReal(sineID, sineVariableIDs.get("a"), 1.0);
+        batch.setInteger(identID, identVariableIDs.get("integerIn"), 456);
+        batch.setBoolean(identID, identVariableIDs.get("booleanIn"), false);
+        batch.setString(identID, identVariableIDs.get("stringIn"), "Goodbye");
+        assert batch.size() == 4;
+        exe.reconfigure(batch, commandTimeout_ms);
+        assert batch.getError(sineID) == null;
+        assert batch.getError(identID) == null;
+
         // Run the remaining half of the simulation
         exe.simulate(
             endTime / 2,
@@ -149,6 +249,9 @@ public class ExecutionTest
             stepTimeout_ms,
             commandTimeout_ms,
             progress);
+        observer.read(y, null, null, commandTimeout_ms);
+        assert Math.abs(y[0] - (1.0 + Math.sin(2*Math.PI*exe.currentTime()))) < 1e-9;
+        observer.close();
 
         // Close the try-with-resources statements we've opened above
         }}
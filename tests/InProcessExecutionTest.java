@@ -9,6 +9,8 @@ import no.viproma.coral.master.Execution;
 import no.viproma.coral.model.SlaveID;
 import no.viproma.coral.net.SlaveLocator;
 import no.viproma.coral.slave.InProcessRunner;
+import no.viproma.coral.slave.InProcessRunnerGroup;
+import no.viproma.coral.slave.InProcessSlaveHost;
 import no.viproma.coral.slave.Instance;
 import no.viproma.coral.slave.InstanceFactory;
 
@@ -100,6 +102,61 @@ public class InProcessExecutionTest
 
             // Run simulation.
             execution.simulate(1.0, 0.1, NO_TIMEOUT, NO_TIMEOUT);
+            assert execution.currentTime() == 1.0;
+        }
+
+        // Run the same slave in several executions in a row.
+        try (
+            Importer importer = new Importer();
+            FMU fmu = importer.importFMU(new File(testDataDir, "identity.fmu"));
+            InProcessSlaveHost host = new InProcessSlaveHost(fmu::instantiateSlave);
+        ) {
+            for (int run = 0; run < 3; ++run) {
+                try (Execution execution = new Execution("InProcessExecutionTest_reuse" + run)) {
+                    List<AddedSlave> slavesToAdd = new ArrayList<AddedSlave>();
+                    slavesToAdd.add(new AddedSlave(host.attach(), "slave"));
+                    execution.addSlaves(slavesToAdd, NO_TIMEOUT);
+                    assert host.isAttached();
+                    execution.simulate(0.5, 0.1, NO_TIMEOUT, NO_TIMEOUT);
+                    assert execution.currentTime() == 0.5;
+                }
+                host.detach();
+                assert !host.isAttached();
+            }
+        }
+
+        // Attaching again, or closing the host, must not wait for slaves that
+        // were never added to an execution.
+        try (
+            Importer importer = new Importer();
+            FMU fmu = importer.importFMU(new File(testDataDir, "identity.fmu"));
+        ) {
+            InProcessSlaveHost host = new InProcessSlaveHost(fmu::instantiateSlave);
+            host.attach();
+            host.attach();
+            assert host.isAttached();
+            assert !host.detach(100);
+            assert host.isAttached();
+            host.close();
+            assert !host.isAttached();
+        }
+
+        // Run many slaves, each in a thread with a small stack.
+        try (
+            Importer importer = new Importer();
+            FMU fmu = importer.importFMU(new File(testDataDir, "identity.fmu"));
+            InProcessRunnerGroup group = new InProcessRunnerGroup(512 * 1024);
+            Execution execution = new Execution("InProcessExecutionTest_group");
+        ) {
+            final int slaveCount = 20;
+            List<AddedSlave> slavesToAdd = new ArrayList<AddedSlave>();
+            for (int i = 0; i < slaveCount; ++i) {
+                slavesToAdd.add(new AddedSlave(group.add(fmu.instantiateSlave()), "slave" + i));
+            }
+            execution.addSlaves(slavesToAdd, NO_TIMEOUT);
+            assert group.getRunningCount() == slaveCount;
+            execution.simulate(0.5, 0.1, NO_TIMEOUT, NO_TIMEOUT);
+            assert execution.currentTime() == 0.5;
         }
     }
 }
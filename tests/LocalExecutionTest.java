@@ -0,0 +1,133 @@
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import no.viproma.coral.fmi.Importer;
+import no.viproma.coral.fmi.FMU;
+import no.viproma.coral.master.CompiledScenario;
+import no.viproma.coral.master.LocalExecution;
+import no.viproma.coral.master.ModelBuilder;
+import no.viproma.coral.master.ModelConstructionException;
+import no.viproma.coral.master.ModelSlaveMap;
+import no.viproma.coral.master.ScenarioBuilder;
+import no.viproma.coral.model.ScalarValue;
+import no.viproma.coral.model.Variable;
+import no.viproma.coral.slave.Instance;
+
+
+public class LocalExecutionTest
+{
+    public static void main(String[] args) throws Exception
+    {
+        final File testDataDir = new File(System.getenv("JCORAL_TEST_DATA_DIR"));
+
+        try (
+            Importer importer = new Importer();
+            FMU fmuId = importer.importFMU(new File(testDataDir, "identity.fmu"));
+            FMU fmuSine = importer.importUnpackedFMU(new File(testDataDir, "sine_fmu_unpacked"));
+        ) {
+            // Build the model from the FMUs' own descriptions; no cluster
+            // is needed.
+            ModelBuilder model = new ModelBuilder();
+            model.addSlave("sine", fmuSine.getDescription());
+            model.addSlave("id",   fmuId.getDescription());
+            model.setInitialVariableValue("sine", "a", new ScalarValue(2.0));
+            model.setInitialVariableValue("sine", "w", new ScalarValue(2*Math.PI));
+            model.connectVariables("sine", "y", "id", "realIn");
+            try { model.addSlave("sine", fmuId.getDescription()); assert(false); } catch (ModelConstructionException e) { }
+
+            // There are no providers to place the slaves on.
+            assert model.planPlacement(null, 0.1).isEmpty();
+            assert model.getPlacementHint("sine") == null;
+
+            ScenarioBuilder scenarioBuilder = new ScenarioBuilder();
+            scenarioBuilder.addEvent(0.5, "sine", "b", new ScalarValue(5.0));
+
+            double sequentialY;
+
+            try (
+                Instance sine = fmuSine.instantiateSlave();
+                Instance id = fmuId.instantiateSlave();
+                LocalExecution exe = new LocalExecution("LocalExecutionTest");
+            ) {
+                // Instances of the wrong type are rejected.
+                Map<String, Instance> wrong = new HashMap<String, Instance>();
+                wrong.put("sine", id);
+                wrong.put("id", sine);
+                try { model.apply(exe, wrong); assert(false); } catch (ModelConstructionException e) { }
+
+                Map<String, Instance> instances = new HashMap<String, Instance>();
+                instances.put("sine", sine);
+                instances.put("id", id);
+                ModelSlaveMap slaveMap = model.apply(exe, instances);
+
+                CompiledScenario scenario = scenarioBuilder.compile(slaveMap);
+                exe.simulate(1.0, 0.1, scenario, null);
+                assert exe.currentTime() == 1.0;
+
+                Variable b = slaveMap.getVariable("sine", "b");
+                Variable y = slaveMap.getVariable("sine", "y");
+                Variable realIn = slaveMap.getVariable("id", "realIn");
+                assert exe.getRealValue(b) == 5.0;
+                assert exe.getRealValue(realIn) == exe.getRealValue(y);
+
+                sequentialY = exe.getRealValue(y);
+
+                exe.step(0.1);
+                assert Math.abs(exe.currentTime() - 1.1) < 1e-9;
+                assert exe.getRealValue(realIn) == exe.getRealValue(y);
+
+                // Access the slave's variables directly between steps.
+                final int[] integerIn = { slaveMap.getVariable("id", "integerIn").getVariableID() };
+                final int[] booleanIn = { slaveMap.getVariable("id", "booleanIn").getVariableID() };
+                final int[] stringIn = { slaveMap.getVariable("id", "stringIn").getVariableID() };
+                assert id.setInteger(integerIn, new int[] { 42 });
+                assert id.setBoolean(booleanIn, new boolean[] { true });
+                assert id.setString(stringIn, new String[] { "foo" });
+                exe.step(0.1);
+
+                final int[] integerOut = { slaveMap.getVariable("id", "integerOut").getVariableID() };
+                final int[] booleanOut = { slaveMap.getVariable("id", "booleanOut").getVariableID() };
+                final int[] stringOut = { slaveMap.getVariable("id", "stringOut").getVariableID() };
+                final int[] reals = { realIn.getVariableID(), realIn.getVariableID() };
+                final int[] integerValues = new int[1];
+                final boolean[] booleanValues = new boolean[1];
+                final String[] stringValues = new String[1];
+                final double[] realValues = new double[2];
+                id.getInteger(integerOut, integerValues);
+                id.getBoolean(booleanOut, booleanValues);
+                id.getString(stringOut, stringValues);
+                id.getReal(reals, realValues);
+                assert integerValues[0] == 42;
+                assert booleanValues[0];
+                assert "foo".equals(stringValues[0]);
+                assert realValues[0] == exe.getRealValue(realIn);
+                assert realValues[1] == realValues[0];
+                try { id.getReal(reals, new double[1]); assert(false); } catch (IllegalArgumentException e) { }
+                try { id.getReal(new int[] { -1 }, new double[1]); assert(false); } catch (IllegalArgumentException e) { }
+            }
+
+            // Stepping in parallel gives the same results.
+            try (
+                Instance sine = fmuSine.instantiateSlave();
+                Instance id = fmuId.instantiateSlave();
+                LocalExecution exe = new LocalExecution("LocalExecutionTest_parallel");
+            ) {
+                exe.setParallelism(2);
+                assert exe.getParallelism() == 2;
+                try { exe.setParallelism(0); assert(false); } catch (IllegalArgumentException e) { }
+
+                Map<String, Instance> instances = new HashMap<String, Instance>();
+                instances.put("sine", sine);
+                instances.put("id", id);
+                ModelSlaveMap slaveMap = model.apply(exe, instances);
+                exe.simulate(1.0, 0.1, scenarioBuilder.compile(slaveMap), null);
+
+                Variable y = slaveMap.getVariable("sine", "y");
+                Variable realIn = slaveMap.getVariable("id", "realIn");
+                assert exe.getRealValue(y) == sequentialY;
+                assert exe.getRealValue(realIn) == sequentialY;
+            }
+        }
+    }
+}
@@ -1,16 +1,32 @@
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import no.viproma.coral.master.Execution;
 import no.viproma.coral.master.ExecutionOptions;
 import no.viproma.coral.master.EntityNotFoundException;
 import no.viproma.coral.master.ModelBuilder;
 import no.viproma.coral.master.ModelConstructionException;
+import no.viproma.coral.master.ModelSlaveMap;
+import no.viproma.coral.master.PreparedModel;
 import no.viproma.coral.master.ProviderCluster;
+import no.viproma.coral.master.ProviderListener;
 import no.viproma.coral.model.ScalarValue;
 import no.viproma.coral.master.SimulationProgressMonitor;
+import no.viproma.coral.master.SlavePool;
+import no.viproma.coral.master.SlaveTypeCache;
+import no.viproma.coral.master.SweepRunner;
 
 
 public class ModelBuilderTest
@@ -31,10 +47,41 @@ public class ModelBuilderTest
         ProviderCluster cluster =
             new ProviderCluster(InetAddress.getByName("localhost"));
         ) {
-        Thread.sleep(2000); // Allow time to discover providers
+        // Wait for a provider to be discovered.  The providers keep running
+        // for as long as the tests do, so we can't make one disappear, but
+        // we check that the notifications we get are consistent.  (Errors
+        // thrown by a listener would only stop the monitoring thread.)
+        final CountDownLatch providerFound = new CountDownLatch(1);
+        final Set<String> providers = Collections.synchronizedSet(new HashSet<String>());
+        final List<String> listenerErrors =
+            Collections.synchronizedList(new ArrayList<String>());
+        cluster.addProviderListener(new ProviderListener() {
+            public void providerAppeared(String id, List<ProviderCluster.SlaveType> types)
+            {
+                if (!providers.add(id)) listenerErrors.add("Appeared twice: " + id);
+                if (types.isEmpty()) listenerErrors.add("No slave types: " + id);
+                providerFound.countDown();
+            }
+
+            public void providerChanged(String id, List<ProviderCluster.SlaveType> types)
+            {
+                if (!providers.contains(id)) listenerErrors.add("Changed while absent: " + id);
+            }
+
+            public void providerDisappeared(String id)
+            {
+                if (!providers.remove(id)) listenerErrors.add("Disappeared while absent: " + id);
+            }
+        });
+        assert (providerFound.await(10, TimeUnit.SECONDS));
+        assert (!cluster.getKnownProviders().isEmpty());
+        assert (!cluster.getKnownSlaveTypes().isEmpty());
 
         // Build the model
-        ModelBuilder model = new ModelBuilder(cluster, commandTimeout_ms);
+        File typeCacheFile = File.createTempFile("ModelBuilderTest", ".cache");
+        typeCacheFile.deleteOnExit();
+        SlaveTypeCache typeCache = new SlaveTypeCache(typeCacheFile);
+        ModelBuilder model = new ModelBuilder(cluster, commandTimeout_ms, typeCache);
         model.addSlave("sine", "no.viproma.demo.sine");
         model.addSlave("id",   "no.viproma.demo.identity");
         model.setInitialVariableValue("sine", "a", new ScalarValue(2.0));
@@ -44,6 +91,23 @@ public class ModelBuilderTest
         model.setInitialVariableValue("id", "stringIn", new ScalarValue("Hello World"));
         model.connectVariables("sine", "y", "id", "realIn");
 
+        // The slave types should now be cached, also on disk
+        typeCache.save();
+        SlaveTypeCache loadedTypeCache = new SlaveTypeCache(typeCacheFile);
+        assert (loadedTypeCache.findSlaveType("no.viproma.demo.sine") != null);
+        assert (loadedTypeCache.findSlaveType("no.viproma.demo.identity") != null);
+
+        // A corrupt cache file is ignored
+        File corruptCacheFile = File.createTempFile("ModelBuilderTest", ".cache");
+        corruptCacheFile.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(corruptCacheFile))) {
+            out.writeInt(0x4A435354); // magic number
+            out.writeInt(1);          // version
+            out.writeInt(1);          // entry count
+            out.writeInt(-5);         // invalid string length
+        }
+        assert (new SlaveTypeCache(corruptCacheFile).getSlaveTypes().isEmpty());
+
         // Test that the methods above handle errors properly
         try { model.addSlave("foo:)", "no.viproma.demo.sine"); assert(false); } catch (IllegalArgumentException e) { }
         try { model.addSlave("_foo", "no.viproma.demo.sine"); assert(false); } catch (IllegalArgumentException e) { }
@@ -82,6 +146,17 @@ public class ModelBuilderTest
         try { model.getInitialVariableValue("foo", "a"); assert(false); } catch (EntityNotFoundException e) { }
         try { model.getInitialVariableValue("id", "foo"); assert(false); } catch (EntityNotFoundException e) { }
 
+        String sineProvider = model.getSlaveTypeOf("sine").getProviders().iterator().next();
+        model.setPlacementHint("sine", sineProvider);
+        assert (model.getPlacementHint("sine").equals(sineProvider));
+        assert (model.getPlacementHint("id") == null);
+        try { model.setPlacementHint("foo", sineProvider); assert(false); } catch (EntityNotFoundException e) { }
+        try { model.setPlacementHint("sine", "noSuchProvider"); assert(false); } catch (ModelConstructionException e) { }
+        Map<String, String> placement = model.planPlacement(null, 0.1);
+        assert (placement.size() == 2);
+        assert (placement.get("sine").equals(sineProvider));
+        assert (placement.get("id").equals(model.getPlacementHint("id")));
+
         List<ModelBuilder.Connection> allConnections = model.getConnections();
         assert(allConnections.size() == 1);
         assert(allConnections.get(0).getOutput().getSlaveName().equals("sine"));
@@ -113,6 +188,10 @@ public class ModelBuilderTest
         exeOptions.setSimTime(0.0, endTime);
         try (Execution exe = new Execution("ModelBuilderTest", exeOptions)) {
         model.apply(exe, slaveInstantiationTimeout_ms, commandTimeout_ms);
+        int instanceCount = 0;
+        for (int n : cluster.getInstanceCounts().values()) instanceCount += n;
+        assert (instanceCount == 2);
+        assert (cluster.getInstanceCounts().get(sineProvider) >= 1);
 
         // Run simulation
         exe.simulate(
@@ -134,7 +213,161 @@ public class ModelBuilderTest
                 }
             });
 
-        // Close the try-with-resources statements we've opened above
-        }}
+        }
+
+        // Apply the model again, taking the sine slave from a pool.  The
+        // pool's target size is set to zero once it has a slave ready, so
+        // it doesn't instantiate a replacement behind our back.
+        ProviderCluster.SlaveType sineType = model.getSlaveTypeOf("sine");
+        String sineUUID = sineType.getSlaveTypeDescription().getUUID();
+        try (SlavePool pool = new SlavePool(cluster, slaveInstantiationTimeout_ms)) {
+            pool.setTargetSize(sineType, 1);
+            for (int i = 0; i < 300 && pool.getAvailable(sineUUID) == 0; ++i) {
+                Thread.sleep(100);
+            }
+            assert (pool.getAvailable(sineUUID) == 1);
+            pool.setTargetSize(sineType, 0);
+
+            int instancesBefore = 0;
+            for (int n : cluster.getInstanceCounts().values()) instancesBefore += n;
+            model.setSlavePool(pool);
+            try (Execution exe = new Execution("ModelBuilderTest_pooled", exeOptions)) {
+                model.apply(exe, slaveInstantiationTimeout_ms, commandTimeout_ms);
+                exe.simulate(0.1, stepSize, stepTimeout_ms, commandTimeout_ms);
+            }
+            model.setSlavePool(null);
+            int instancesAfter = 0;
+            for (int n : cluster.getInstanceCounts().values()) instancesAfter += n;
+            assert (pool.getAvailable(sineUUID) == 0);
+            assert (instancesAfter == instancesBefore + 1); // only "id" was instantiated
+
+            // Slaves that have been idle for too long are discarded
+            pool.setTargetSize(sineType, 1);
+            for (int i = 0; i < 300 && pool.getAvailable(sineUUID) == 0; ++i) {
+                Thread.sleep(100);
+            }
+            assert (pool.getAvailable(sineUUID) == 1);
+            pool.setTargetSize(sineType, 0);
+            pool.setMaxIdleTime(1);
+            Thread.sleep(10);
+            assert (pool.getAvailable(sineUUID) == 0);
+            assert (pool.take(sineUUID) == null);
+
+            // ...and not replaced until someone asks for a slave again
+            pool.setMaxIdleTime(1000);
+            pool.setTargetSize(sineType, 1);
+            for (int i = 0; i < 300 && pool.getAvailable(sineUUID) == 0; ++i) {
+                Thread.sleep(10);
+            }
+            assert (pool.getAvailable(sineUUID) == 1);
+            int instancesFilled = 0;
+            for (int n : cluster.getInstanceCounts().values()) instancesFilled += n;
+            Thread.sleep(4000); // several refill intervals after expiry
+            assert (pool.getAvailable(sineUUID) == 0);
+            int instancesIdle = 0;
+            for (int n : cluster.getInstanceCounts().values()) instancesIdle += n;
+            assert (instancesIdle == instancesFilled);
+            assert (pool.take(sineUUID) == null);
+            for (int i = 0; i < 300 && pool.getAvailable(sineUUID) == 0; ++i) {
+                Thread.sleep(10);
+            }
+            assert (pool.getAvailable(sineUUID) == 1);
+            pool.setTargetSize(sineType, 0);
+        }
+
+        // Apply a prepared model, first with an overridden initial value and
+        // then without, and check that sine.y = a + sin(2*pi*t) in both cases.
+        PreparedModel prepared = model.prepare();
+        assert (prepared.getSlaveCount() == 2);
+        Map<PreparedModel.Parameter, ScalarValue> overrides =
+            new HashMap<PreparedModel.Parameter, ScalarValue>();
+        overrides.put(prepared.getParameter("sine", "a"), new ScalarValue(5.0));
+        try {
+            prepared.getParameter("sine", "noSuchVariable");
+            assert false : "getParameter() accepted an unknown variable";
+        } catch (EntityNotFoundException e) { }
+
+        // Parameters can't be used with a different prepared model, even one
+        // with the same structure
+        PreparedModel otherPrepared = model.prepare();
+        assert (!otherPrepared.getParameter("sine", "a").equals(prepared.getParameter("sine", "a")));
+        try (Execution exe = new Execution("ModelBuilderTest_foreignParameter", exeOptions)) {
+            prepared.apply(
+                exe,
+                Collections.singletonMap(
+                    otherPrepared.getParameter("sine", "a"), new ScalarValue(5.0)),
+                slaveInstantiationTimeout_ms,
+                commandTimeout_ms);
+            assert false : "apply() accepted a parameter from another model";
+        } catch (ModelConstructionException e) { }
+        final double[] expectedA = { 5.0, 2.0 };
+        for (int run = 0; run < 2; ++run) {
+            try (Execution exe = new Execution("ModelBuilderTest_prepared" + run, exeOptions)) {
+                ModelSlaveMap slaves = prepared.apply(
+                    exe,
+                    run == 0
+                        ? overrides
+                        : Collections.<PreparedModel.Parameter, ScalarValue>emptyMap(),
+                    slaveInstantiationTimeout_ms,
+                    commandTimeout_ms);
+                try (Execution.Observer observer = exe.createObserver(
+                        Collections.singletonList(slaves.getVariable("sine", "y")),
+                        null,
+                        null)) {
+                    exe.simulate(0.1, stepSize, stepTimeout_ms, commandTimeout_ms);
+                    final double[] y = new double[1];
+                    observer.read(y, null, null, commandTimeout_ms);
+                    final double expectedY =
+                        expectedA[run] + Math.sin(2*Math.PI*exe.currentTime());
+                    assert Math.abs(y[0] - expectedY) < 1e-9 : "sine.y = " + y[0];
+                }
+            }
+        }
+
+        // Run a small parameter sweep over the same model
+        List<SweepRunner.ParameterSet> parameterSets =
+            new ArrayList<SweepRunner.ParameterSet>();
+        for (int i = 1; i <= 4; ++i) {
+            parameterSets.add(new SweepRunner.ParameterSet()
+                .set("sine", "a", new ScalarValue((double) i)));
+        }
+        // The last one has the wrong data type, and should fail.
+        parameterSets.add(new SweepRunner.ParameterSet()
+            .set("sine", "a", new ScalarValue(1)));
+        SweepRunner sweep = new SweepRunner(model, 2);
+        sweep.setExecutionOptions(exeOptions);
+        sweep.setTimeouts(slaveInstantiationTimeout_ms, commandTimeout_ms);
+        final Set<Integer> finished = new HashSet<Integer>();
+        int failures = sweep.run(
+            parameterSets.iterator(),
+            new SweepRunner.Job<Double>() {
+                public Double run(
+                    Execution exe,
+                    ModelSlaveMap slaves,
+                    SweepRunner.ParameterSet p)
+                    throws Exception
+                {
+                    exe.simulate(0.1, stepSize, stepTimeout_ms, commandTimeout_ms);
+                    return exe.currentTime();
+                }
+            },
+            new SweepRunner.ResultListener<Double>() {
+                public void finished(
+                    int index,
+                    SweepRunner.ParameterSet p,
+                    Double result,
+                    Exception error)
+                {
+                    assert (finished.add(index));
+                    assert ((index < 4) == (error == null));
+                }
+            });
+        assert (failures == 1);
+        assert (finished.size() == 5);
+
+        assert (listenerErrors.isEmpty()) : listenerErrors;
+
+        // Close the try-with-resources statement we've opened above
+        }
     }
 }
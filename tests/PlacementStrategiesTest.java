@@ -0,0 +1,83 @@
+import java.util.HashMap;
+import java.util.Map;
+
+import no.viproma.coral.master.PlacementStrategies;
+import no.viproma.coral.master.PlacementStrategy;
+import no.viproma.coral.master.ProviderCluster;
+import no.viproma.coral.model.SlaveTypeDescription;
+import no.viproma.coral.model.VariableDescription;
+
+
+public class PlacementStrategiesTest
+{
+    public static void main(String[] args) throws Exception
+    {
+        ProviderCluster.SlaveType typeA = new ProviderCluster.SlaveType(
+            new SlaveTypeDescription(
+                "typeA", "uuidA", "", "", "1.0", new VariableDescription[0]),
+            new String[] { "p1", "p2", "p3" });
+        ProviderCluster.SlaveType typeB = new ProviderCluster.SlaveType(
+            new SlaveTypeDescription(
+                "typeB", "uuidB", "", "", "1.0", new VariableDescription[0]),
+            new String[] { "p2", "p3" });
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+
+        // first() ignores the instance counts
+        PlacementStrategy first = PlacementStrategies.first();
+        assert first.selectProvider(typeA, counts).equals("p1");
+        counts.put("p1", 10);
+        assert first.selectProvider(typeA, counts).equals("p1");
+        assert first.selectProvider(typeB, counts).equals("p2");
+        counts.clear();
+
+        // roundRobin() cycles through the providers of each type separately
+        PlacementStrategy roundRobin = PlacementStrategies.roundRobin();
+        assert roundRobin.selectProvider(typeA, counts).equals("p1");
+        assert roundRobin.selectProvider(typeA, counts).equals("p2");
+        assert roundRobin.selectProvider(typeB, counts).equals("p2");
+        assert roundRobin.selectProvider(typeA, counts).equals("p3");
+        assert roundRobin.selectProvider(typeB, counts).equals("p3");
+        assert roundRobin.selectProvider(typeA, counts).equals("p1");
+        assert roundRobin.selectProvider(typeB, counts).equals("p2");
+
+        // leastInstances() picks the provider with the lowest count, and the
+        // first one listed in case of a tie
+        PlacementStrategy leastInstances = PlacementStrategies.leastInstances();
+        assert leastInstances.selectProvider(typeA, counts).equals("p1");
+        counts.put("p1", 2);
+        counts.put("p2", 1);
+        assert leastInstances.selectProvider(typeA, counts).equals("p3");
+        counts.put("p3", 1);
+        assert leastInstances.selectProvider(typeA, counts).equals("p2");
+        assert leastInstances.selectProvider(typeB, counts).equals("p2");
+        counts.put("p2", 2);
+        assert leastInstances.selectProvider(typeB, counts).equals("p3");
+        counts.clear();
+
+        // weighted() distributes slaves in proportion to capacity
+        Map<String, Double> capacities = new HashMap<String, Double>();
+        capacities.put("p1", 2.0);
+        PlacementStrategy weighted = PlacementStrategies.weighted(capacities, 1.0);
+        for (int i = 0; i < 8; ++i) {
+            String p = weighted.selectProvider(typeA, counts);
+            Integer c = counts.get(p);
+            counts.put(p, (c == null ? 0 : c) + 1);
+        }
+        assert counts.get("p1") == 4;
+        assert counts.get("p2") == 2;
+        assert counts.get("p3") == 2;
+        assert weighted.selectProvider(typeA, counts).equals("p1");
+        assert weighted.selectProvider(typeB, counts).equals("p2");
+        counts.clear();
+
+        try {
+            capacities.put("p2", 0.0);
+            PlacementStrategies.weighted(capacities, 1.0);
+            assert false : "weighted() accepted a zero capacity";
+        } catch (IllegalArgumentException e) { }
+        try {
+            PlacementStrategies.weighted(new HashMap<String, Double>(), -1.0);
+            assert false : "weighted() accepted a negative default capacity";
+        } catch (IllegalArgumentException e) { }
+    }
+}
@@ -0,0 +1,62 @@
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import no.viproma.coral.master.ProviderCluster;
+import no.viproma.coral.master.SlaveInstantiation;
+
+
+public class ProviderClusterTest
+{
+    public static void main(String[] args) throws Exception
+    {
+        final int slaveInstantiationTimeout_ms = 30*1000;
+        final int commandTimeout_ms = 1000;
+
+        try (
+        ProviderCluster cluster =
+            new ProviderCluster(InetAddress.getByName("localhost"));
+        ) {
+        Thread.sleep(2000); // Allow time to discover providers
+
+        ProviderCluster.SlaveType sine = null;
+        for (ProviderCluster.SlaveType st :
+                cluster.getSlaveTypes(commandTimeout_ms)) {
+            if (st.getSlaveTypeDescription().getName().equals("no.viproma.demo.sine")) {
+                sine = st;
+            }
+        }
+        if (sine == null) {
+            throw new Exception("Slave type 'no.viproma.demo.sine' not available");
+        }
+        assert cluster.getPeakConcurrentInstantiations() == 0;
+
+        // Instantiate twice as many slaves as we allow requests in flight.
+        // Each request takes at least as long as it takes to start a slave,
+        // so all the worker threads should be busy at the same time, but
+        // never more of them than the limit allows.
+        final int maxConcurrent = 3;
+        cluster.setMaxConcurrentInstantiations(maxConcurrent);
+        List<SlaveInstantiation> instantiations = new ArrayList<SlaveInstantiation>();
+        for (int i = 0; i < 2 * maxConcurrent; ++i) {
+            instantiations.add(new SlaveInstantiation(sine));
+        }
+        cluster.instantiateSlaves(instantiations, slaveInstantiationTimeout_ms);
+        for (SlaveInstantiation si : instantiations) {
+            assert si.getLocator() != null;
+            assert si.getError() == null;
+        }
+        assert cluster.getPeakConcurrentInstantiations() == maxConcurrent
+            : "Peak concurrency: " + cluster.getPeakConcurrentInstantiations();
+
+        // A single instantiation doesn't raise the peak.
+        assert cluster.instantiateSlave(sine, slaveInstantiationTimeout_ms) != null;
+        assert cluster.getPeakConcurrentInstantiations() == maxConcurrent;
+
+        try {
+            cluster.setMaxConcurrentInstantiations(0);
+            assert false : "setMaxConcurrentInstantiations() accepted zero";
+        } catch (IllegalArgumentException e) { }
+        }
+    }
+}
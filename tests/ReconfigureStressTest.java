@@ -0,0 +1,128 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import no.viproma.coral.NativeResources;
+import no.viproma.coral.fmi.Importer;
+import no.viproma.coral.fmi.FMU;
+import no.viproma.coral.master.AddedSlave;
+import no.viproma.coral.master.Execution;
+import no.viproma.coral.master.SlaveConfig;
+import no.viproma.coral.model.ScalarValue;
+import no.viproma.coral.model.SlaveID;
+import no.viproma.coral.model.VariableDescription;
+import no.viproma.coral.model.VariableSetting;
+import no.viproma.coral.slave.InProcessRunner;
+import no.viproma.coral.slave.Instance;
+
+
+// Passes a very large number of variable settings to Execution.reconfigure()
+// several times over, and checks that neither the JVM heap nor the process'
+// resident memory keeps growing from round to round.
+public class ReconfigureStressTest
+{
+    private static final int SETTING_COUNT = 100000;
+    private static final int ROUNDS = 5;
+    private static final long MAX_GROWTH_BYTES = 64L * 1024 * 1024;
+
+    public static void main(String[] args) throws Exception
+    {
+        final File testDataDir = new File(System.getenv("JCORAL_TEST_DATA_DIR"));
+        final int NO_TIMEOUT = -1;
+
+        try (
+            Importer importer = new Importer();
+            FMU fmu = importer.importFMU(new File(testDataDir, "identity.fmu"));
+            Instance instance = fmu.instantiateSlave();
+            InProcessRunner runner = new InProcessRunner(instance);
+        ) {
+            int realInID = -1;
+            for (VariableDescription v : fmu.getDescription().getVariables()) {
+                if (v.getName().equals("realIn")) realInID = v.getID();
+            }
+            assert realInID >= 0;
+
+            // Run the slave in a background thread.
+            Thread slaveThread = new Thread() {
+                public void run()
+                {
+                    try {
+                        runner.run();
+                    } catch (Exception e) {
+                        System.err.println("Error: Exception thrown in slave thread:");
+                        e.printStackTrace(System.err);
+                    }
+                }
+            };
+            slaveThread.start();
+
+            try (Execution execution = new Execution("ReconfigureStressTest")) {
+            List<AddedSlave> slavesToAdd = new ArrayList<AddedSlave>();
+            slavesToAdd.add(new AddedSlave(runner.getLocator(), "identity"));
+            execution.addSlaves(slavesToAdd, NO_TIMEOUT);
+            SlaveID slaveID = slavesToAdd.get(0).getID();
+
+            List<VariableSetting> settings = new ArrayList<VariableSetting>(SETTING_COUNT);
+            for (int i = 0; i < SETTING_COUNT; ++i) {
+                settings.add(new VariableSetting(realInID, new ScalarValue((double) i)));
+            }
+            List<SlaveConfig> slaveConfigs = new ArrayList<SlaveConfig>();
+            slaveConfigs.add(new SlaveConfig(slaveID, settings));
+
+            long baselineHeap = 0, baselineRss = 0;
+            for (int round = 0; round < ROUNDS; ++round) {
+                execution.reconfigure(slaveConfigs, NO_TIMEOUT);
+                assert slaveConfigs.get(0).getError() == null;
+                execution.step(0.1, NO_TIMEOUT);
+                execution.acceptStep(NO_TIMEOUT);
+
+                final long heap = usedHeap();
+                final long rss = residentMemory();
+                System.out.println(
+                    "Round " + round + ": heap = " + heap + " bytes, RSS = " + rss + " bytes");
+                if (round == 0) {
+                    baselineHeap = heap;
+                    baselineRss = rss;
+                } else {
+                    assert heap - baselineHeap < MAX_GROWTH_BYTES;
+                    assert rss - baselineRss < MAX_GROWTH_BYTES;
+                }
+            }
+            }
+
+            // Closing the execution makes the slave terminate.
+            slaveThread.join();
+        }
+
+        // Everything was closed, so no native resources should remain.
+        NativeResources.logLive();
+        assert NativeResources.getLiveCount() == 0;
+    }
+
+    private static long usedHeap()
+    {
+        System.gc();
+        final Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // Returns the resident set size of the process, or 0 if it can't be
+    // determined on this platform.
+    private static long residentMemory() throws Exception
+    {
+        final File status = new File("/proc/self/status");
+        if (!status.exists()) return 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(status))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) {
+                    final String[] fields = line.trim().split("\\s+");
+                    return Long.parseLong(fields[1]) * 1024;
+                }
+            }
+        }
+        return 0;
+    }
+}
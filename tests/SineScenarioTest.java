@@ -1,9 +1,14 @@
+import java.io.IOException;
+import java.io.StringReader;
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.SortedMap;
 
+import no.viproma.coral.master.CompiledScenario;
+import no.viproma.coral.master.EntityNotFoundException;
 import no.viproma.coral.master.Execution;
 import no.viproma.coral.master.ExecutionOptions;
 import no.viproma.coral.master.ModelBuilder;
@@ -11,8 +16,10 @@ import no.viproma.coral.master.ModelSlaveMap;
 import no.viproma.coral.master.ProviderCluster;
 import no.viproma.coral.master.ScenarioBuilder;
 import no.viproma.coral.master.ScenarioEvent;
+import no.viproma.coral.master.ScenarioFileReader;
 import no.viproma.coral.master.SimulationProgressMonitor;
 import no.viproma.coral.model.ScalarValue;
+import no.viproma.coral.model.Variable;
 
 
 public class SineScenarioTest
@@ -74,6 +81,21 @@ public class SineScenarioTest
         Queue<ScenarioEvent> scenario = scenarioBuilder.build(slaveMap);
         assert scenario.element().getTimePoint() == 3.0;
 
+        // ...and streamed from a scenario file
+        try (ScenarioFileReader reader = new ScenarioFileReader(
+                new StringReader(
+                    "# time,slave,variable,value\n" +
+                    "3.0,sine1,b,3.0\n" +
+                    "\n" +
+                    "6.0,sine2,w,6.283185307179586\n"),
+                slaveMap)) {
+            assert reader.peek().getTimePoint() == 3.0;
+            assert reader.next().getTimePoint() == 3.0;
+            assert reader.next().getTimePoint() == 6.0;
+            assert reader.peek() == null;
+            assert reader.next() == null;
+        }
+
         // Run simulation
         exe.simulate(
             endTime,
@@ -94,7 +116,128 @@ public class SineScenarioTest
                 }
             });
 
-        // Close the try-with-resources statements we've opened above
-        }}
+        }
+
+        // Run the same scenario, with an extra event, in compiled form in a
+        // new execution, and check the outputs along the way
+        scenarioBuilder.addEvent(6.0, "sine1", "w", new ScalarValue(4*Math.PI));
+        try (Execution exe = new Execution("SineScenarioTest-compiled", exeOptions)) {
+        ModelSlaveMap slaveMap =
+            model.apply(exe, slaveInstantiationTimeout_ms, commandTimeout_ms);
+        CompiledScenario compiled = scenarioBuilder.compile(slaveMap);
+        assert compiled.getEventCount() == 3;
+        assert compiled.getTimePointCount() == 2;
+        assert compiled.getTimePoint(0) == 3.0;
+        assert compiled.getTimePoint(1) == 6.0;
+        assert compiled.getEventCountAt(0) == 1;
+        assert compiled.getEventCountAt(1) == 2;
+
+        Execution.Observer observer = createObserver(exe, slaveMap);
+        exe.simulateCompiled(
+            2.25, stepSize, compiled, stepTimeout_ms, commandTimeout_ms, null);
+        assert exe.currentTime() == 2.25;
+        checkOutputs(exe, observer, 2.0, 2*Math.PI, 4.0, 4*Math.PI, commandTimeout_ms);
+
+        exe.simulateCompiled(
+            2.0, stepSize, compiled, stepTimeout_ms, commandTimeout_ms, null);
+        assert exe.currentTime() == 4.25;
+        checkOutputs(exe, observer, 3.0, 2*Math.PI, 4.0, 4*Math.PI, commandTimeout_ms);
+
+        exe.simulateCompiled(
+            2.875, stepSize, compiled, stepTimeout_ms, commandTimeout_ms, null);
+        assert exe.currentTime() == 7.125;
+        checkOutputs(exe, observer, 3.0, 4*Math.PI, 4.0, 2*Math.PI, commandTimeout_ms);
+        }
+
+        // Run the original scenario again, streamed from a scenario file, in
+        // a new execution
+        try (Execution exe = new Execution("SineScenarioTest-streaming", exeOptions)) {
+        ModelSlaveMap slaveMap =
+            model.apply(exe, slaveInstantiationTimeout_ms, commandTimeout_ms);
+        Execution.Observer observer = createObserver(exe, slaveMap);
+        try (ScenarioFileReader reader = new ScenarioFileReader(
+                new StringReader(
+                    "# time,slave,variable,value\n" +
+                    "3.0,sine1,b,3.0\n" +
+                    "6.0,sine2,w,6.283185307179586\n"),
+                slaveMap)) {
+            exe.simulateStreaming(
+                2.25, stepSize, reader, stepTimeout_ms, commandTimeout_ms, null);
+            assert exe.currentTime() == 2.25;
+            assert reader.peek().getTimePoint() == 3.0;
+            checkOutputs(exe, observer, 2.0, 2*Math.PI, 4.0, 4*Math.PI, commandTimeout_ms);
+
+            exe.simulateStreaming(
+                2.0, stepSize, reader, stepTimeout_ms, commandTimeout_ms, null);
+            assert exe.currentTime() == 4.25;
+            assert reader.peek().getTimePoint() == 6.0;
+            checkOutputs(exe, observer, 3.0, 2*Math.PI, 4.0, 4*Math.PI, commandTimeout_ms);
+
+            exe.simulateStreaming(
+                2.875, stepSize, reader, stepTimeout_ms, commandTimeout_ms, null);
+            assert exe.currentTime() == 7.125;
+            assert reader.peek() == null;
+            checkOutputs(exe, observer, 3.0, 2*Math.PI, 4.0, 2*Math.PI, commandTimeout_ms);
+        }
+
+        // Invalid scenario files are rejected when the bad line is reached
+        String[] badScenarios = {
+            "3.0,sine1,b\n",
+            "three,sine1,b,3.0\n",
+            "3.0,sine1,b,three\n",
+            "6.0,sine1,b,3.0\n3.0,sine1,b,2.0\n",
+        };
+        for (String bad : badScenarios) {
+            try (ScenarioFileReader reader =
+                    new ScenarioFileReader(new StringReader(bad), slaveMap)) {
+                while (reader.next() != null) { }
+                assert false : "Invalid scenario accepted: " + bad;
+            } catch (IOException e) { }
+        }
+        try (ScenarioFileReader reader = new ScenarioFileReader(
+                new StringReader("3.0,sine3,b,3.0\n"), slaveMap)) {
+            reader.next();
+            assert false : "Unknown slave accepted";
+        } catch (EntityNotFoundException e) { }
+
+        // ...and the error propagates out of simulateStreaming()
+        try (ScenarioFileReader reader = new ScenarioFileReader(
+                new StringReader("8.0,sine1,b,1.0\n7.5,sine1,b,2.0\n"),
+                slaveMap)) {
+            exe.simulateStreaming(
+                1.0, stepSize, reader, stepTimeout_ms, commandTimeout_ms, null);
+            assert false : "Out-of-order event accepted";
+        } catch (IOException e) { }
+        }
+
+        // Close the try-with-resources statement we've opened above
+        }
+    }
+
+    // Creates an observer for the outputs of sine1 and sine2.
+    static Execution.Observer createObserver(Execution exe, ModelSlaveMap slaveMap)
+        throws Exception
+    {
+        List<Variable> outputs = new ArrayList<Variable>();
+        outputs.add(slaveMap.getVariable("sine1", "y"));
+        outputs.add(slaveMap.getVariable("sine2", "y"));
+        return exe.createObserver(outputs, null, null);
+    }
+
+    // Checks that the outputs of sine1 and sine2 are b*sin(w*t) at the
+    // execution's current time, for the given values of b and w.
+    static void checkOutputs(
+        Execution exe,
+        Execution.Observer observer,
+        double b1, double w1,
+        double b2, double w2,
+        int timeout_ms)
+        throws Exception
+    {
+        final double t = exe.currentTime();
+        double[] y = new double[2];
+        observer.read(y, null, null, timeout_ms);
+        assert Math.abs(y[0] - b1 * Math.sin(w1 * t)) < 1e-6;
+        assert Math.abs(y[1] - b2 * Math.sin(w2 * t)) < 1e-6;
     }
 }
@@ -0,0 +1,125 @@
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import no.viproma.coral.master.Execution;
+import no.viproma.coral.master.ExecutionOptions;
+import no.viproma.coral.master.ModelBuilder;
+import no.viproma.coral.master.ModelSlaveMap;
+import no.viproma.coral.master.ProviderCluster;
+import no.viproma.coral.master.ScenarioBuilder;
+import no.viproma.coral.master.ScenarioEvent;
+import no.viproma.coral.master.ScenarioSource;
+import no.viproma.coral.master.SimulationProgressMonitor;
+import no.viproma.coral.master.StepAlignment;
+import no.viproma.coral.model.ScalarValue;
+
+
+public class StepAlignmentTest
+{
+    // Define misc. timeouts
+    static final int slaveInstantiationTimeout_ms = 30*1000;
+    static final int commandTimeout_ms = 1000;
+    static final int stepTimeout_ms = 2000;
+
+    // ...and other quantities.  The event does not fall on the step grid.
+    static final double stepSize = 0.3;
+    static final double eventTime = 1.0;
+    static final double endTime = 2.0;
+
+    public static void main(String[] args) throws Exception
+    {
+        try (
+        ProviderCluster cluster =
+            new ProviderCluster(InetAddress.getByName("localhost"));
+        ) {
+        Thread.sleep(2000); // wait for the info to trickle in
+
+        ModelBuilder model = new ModelBuilder(cluster, commandTimeout_ms);
+        model.addSlave("sine", "no.viproma.demo.sine");
+        ScenarioBuilder scenarioBuilder = new ScenarioBuilder();
+        scenarioBuilder.addEvent(eventTime, "sine", "b", new ScalarValue(2.0));
+
+        // The step before the event is shortened, and the grid restarts at
+        // the event.
+        checkSteps(
+            model, scenarioBuilder, StepAlignment.EXACT,
+            new double[] { 0.3, 0.6, 0.9, 1.0, 1.3, 1.6, 1.9, 2.0 },
+            1.0);
+
+        // The event is moved to the nearest grid point, and only the very
+        // last step is shortened.
+        checkSteps(
+            model, scenarioBuilder, StepAlignment.SNAP,
+            new double[] { 0.3, 0.6, 0.9, 1.2, 1.5, 1.8, 2.0 },
+            0.9);
+
+        // The intervals before and after the event are divided into four
+        // equal steps each.
+        checkSteps(
+            model, scenarioBuilder, StepAlignment.SPREAD,
+            new double[] { 0.25, 0.5, 0.75, 1.0, 1.25, 1.5, 1.75, 2.0 },
+            1.0);
+
+        // Close the try-with-resources statement we've opened above
+        }
+    }
+
+    // Runs the scenario from 0 to endTime with the given alignment policy,
+    // and checks the times at which the steps ended and at which the event
+    // was applied.
+    static void checkSteps(
+        ModelBuilder model,
+        ScenarioBuilder scenarioBuilder,
+        StepAlignment alignment,
+        double[] expectedStepTimes,
+        double expectedEventTime)
+        throws Exception
+    {
+        ExecutionOptions exeOptions = new ExecutionOptions();
+        exeOptions.setSimTime(0.0, endTime);
+        exeOptions.setStepAlignment(alignment);
+        try (Execution exe = new Execution("StepAlignmentTest", exeOptions)) {
+            ModelSlaveMap slaveMap =
+                model.apply(exe, slaveInstantiationTimeout_ms, commandTimeout_ms);
+            final Queue<ScenarioEvent> scenario = scenarioBuilder.build(slaveMap);
+
+            // Record the time whenever an event is consumed, and (since the
+            // progress interval is 1) whenever a step has been completed.
+            final List<Double> eventTimes = new ArrayList<Double>();
+            final List<Double> stepTimes = new ArrayList<Double>();
+            exe.simulateStreaming(
+                endTime,
+                stepSize,
+                new ScenarioSource() {
+                    public ScenarioEvent peek() { return scenario.peek(); }
+                    public ScenarioEvent next() {
+                        eventTimes.add(exe.currentTime());
+                        return scenario.poll();
+                    }
+                },
+                stepTimeout_ms,
+                commandTimeout_ms,
+                new SimulationProgressMonitor() {
+                    public boolean progress(double t) {
+                        stepTimes.add(t);
+                        return true;
+                    }
+                });
+
+            // The monitor is also called once before the first step.
+            assert stepTimes.size() == expectedStepTimes.length + 1
+                : alignment + ": " + stepTimes;
+            assert stepTimes.get(0) == 0.0;
+            for (int i = 0; i < expectedStepTimes.length; ++i) {
+                assert Math.abs(stepTimes.get(i+1) - expectedStepTimes[i]) < 1e-9
+                    : alignment + ": " + stepTimes;
+            }
+            assert stepTimes.get(expectedStepTimes.length) == endTime;
+            assert eventTimes.size() == 1;
+            assert Math.abs(eventTimes.get(0) - expectedEventTime) < 1e-9
+                : alignment + ": " + eventTimes;
+        }
+    }
+}